@@ -65,6 +65,7 @@ public class CleanupCommand extends Command {
 		OptionSpec<Void> optionNoOlderVersionRemoval = parser.acceptsAll(asList("O", "no-delete-older-than"));
 		OptionSpec<Void> optionNoVersionRemovalByInterval = parser.acceptsAll(asList("I", "no-delete-interval"));
 		OptionSpec<Void> optionNoRemoveTempFiles = parser.acceptsAll(asList("T", "no-temp-removal"));
+		OptionSpec<Void> optionNoSnapshot = parser.acceptsAll(asList("S", "no-snapshot"));
 		OptionSpec<String> optionKeepMinTime = parser.acceptsAll(asList("o", "delete-older-than"))
 				.withRequiredArg().ofType(String.class);
 
@@ -82,6 +83,9 @@ public class CleanupCommand extends Command {
 		// -I, --no-delete-interval
 		operationOptions.setRemoveVersionsByInterval(!options.has(optionNoVersionRemovalByInterval));
 
+		// -S, --no-snapshot
+		operationOptions.setCreateSnapshot(!options.has(optionNoSnapshot));
+
 		// -o=<time>, --delete-older-than=<time>
 		if (options.has(optionKeepMinTime)) {
 			long keepDeletedFilesForSeconds = CommandLineUtil.parseTimePeriod(options.valueOf(optionKeepMinTime));
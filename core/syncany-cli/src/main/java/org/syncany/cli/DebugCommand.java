@@ -28,6 +28,8 @@ import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 
 import org.apache.commons.io.IOUtils;
+import org.syncany.database.dao.SqlStatementStat;
+import org.syncany.database.dao.SqlStatementStats;
 import org.syncany.operations.OperationOptions;
 import org.syncany.operations.OperationResult;
 
@@ -35,6 +37,13 @@ import org.syncany.operations.OperationResult;
  * Intentionally undocumented command to help debugging the application. Implements various
  * helpers for the repository and the local directory.
  * 
+ * <p>Available debug commands:
+ * <ul>
+ *  <li><tt>sy debug decrypt &lt;file&gt;</tt>: Decrypts a repository file and prints it to STDOUT</li>
+ *  <li><tt>sy debug sqlstats &lt;command&gt; [&lt;args&gt;]</tt>: Runs a command (e.g. 'status' or 'down'),
+ *      and prints execution statistics for each SQL statement resource it ran</li>
+ * </ul>
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class DebugCommand extends Command {
@@ -53,6 +62,8 @@ public class DebugCommand extends Command {
 	@Override
 	public int execute(String[] operationArgs) throws Exception {
 		OptionParser parser = new OptionParser();
+		parser.allowsUnrecognizedOptions(); // Passed on in 'sqlstats'
+		
 		OptionSet options = parser.parse(operationArgs);	
 
 		// Files
@@ -65,6 +76,9 @@ public class DebugCommand extends Command {
 			if ("decrypt".equals(debugCommand)) {
 				runDebugCommand(newNonOptionArgs);
 			}
+			else if ("sqlstats".equals(debugCommand)) {
+				return runSqlStatsCommand(newNonOptionArgs);
+			}
 		}
 		
 		throw new Exception("Invalid syntax. No command given or command unknown.");
@@ -93,6 +107,76 @@ public class DebugCommand extends Command {
 		System.exit(0);
 	}
 	
+	private int runSqlStatsCommand(List<?> nonOptionArgs) throws Exception {
+		logger.log(Level.INFO, "Running 'sqlstats' command with arguments: "+nonOptionArgs);
+		
+		if (nonOptionArgs.size() < 1) {
+			throw new Exception("Invalid syntax for 'sqlstats' command. Command expected, e.g. 'sy debug sqlstats status'.");
+		}
+		
+		if (!isInitializedScope()) {
+			throw new Exception("Command 'debug' can only be run in initialized local dir.");
+		}
+		
+		String commandName = nonOptionArgs.get(0).toString();
+		Command command = CommandFactory.getInstance(commandName);
+		
+		if (command == null || command instanceof DebugCommand) {
+			throw new Exception("Invalid command for 'sqlstats': " + commandName);
+		}
+		
+		String[] commandArgs = new String[nonOptionArgs.size() - 1];
+		
+		for (int i = 1; i < nonOptionArgs.size(); i++) {
+			commandArgs[i - 1] = nonOptionArgs.get(i).toString();
+		}
+		
+		// Run command with empty statistics (recording is disabled by default)
+		SqlStatementStats statementStats = SqlStatementStats.getInstance(config.getDatabaseFile());
+		statementStats.reset();
+		statementStats.setEnabled(true);
+		
+		command.setConfig(config);
+		command.setLocalDir(localDir);
+		command.setOut(out);
+		
+		int exitCode = command.execute(commandArgs);
+		statementStats.setEnabled(false);
+		
+		printSqlStats(statementStats.getStats());		
+		return exitCode;
+	}
+
+	private void printSqlStats(List<SqlStatementStat> statementStatList) {
+		long totalExecutionCount = 0;
+		long totalTime = 0;
+		int resourceColumnWidth = "Resource".length();
+		
+		for (SqlStatementStat statementStat : statementStatList) {
+			totalExecutionCount += statementStat.getExecutionCount();
+			totalTime += statementStat.getTotalTime();
+			resourceColumnWidth = Math.max(resourceColumnWidth, statementStat.getResourceId().length());
+		}
+		
+		out.println();
+		out.println(String.format("SQL statistics: %d resource(s), %d execution(s), %.1f ms total", statementStatList.size(), totalExecutionCount, totalTime / 1000.0));
+		out.println();
+		out.println(String.format("%-" + resourceColumnWidth + "s %8s %9s %10s %9s %9s  %s", "Resource", "Calls", "Rows", "Total ms", "Avg ms", "Max ms", 
+				"Latency histogram (<0.1/<1/<10/<100/<1000/>=1000 ms)"));
+		
+		for (SqlStatementStat statementStat : statementStatList) {
+			StringBuilder latencyHistogram = new StringBuilder();
+			
+			for (long bucketCount : statementStat.getLatencyHistogram()) {
+				latencyHistogram.append((latencyHistogram.length() > 0) ? "/" : "").append(bucketCount);
+			}
+			
+			out.println(String.format("%-" + resourceColumnWidth + "s %8d %9d %10.1f %9.3f %9.1f  %s", statementStat.getResourceId(), statementStat.getExecutionCount(), 
+					statementStat.getRowCount(), statementStat.getTotalTime() / 1000.0, statementStat.getAverageTime() / 1000.0, 
+					statementStat.getMaxTime() / 1000.0, latencyHistogram));
+		}
+	}
+	
 	private boolean isInitializedScope() {
 		return config != null;
 	}
@@ -36,6 +36,7 @@ import org.syncany.operations.down.DownOperationOptions;
 import org.syncany.operations.down.DownOperationOptions.DownConflictStrategy;
 import org.syncany.operations.down.DownOperationResult;
 import org.syncany.operations.down.DownOperationResult.DownResultCode;
+import org.syncany.util.FileUtil;
 
 import com.google.common.eventbus.Subscribe;
 
@@ -134,7 +135,14 @@ public class DownCommand extends Command {
 		String fileDescription = syncEvent.getFileDescription();
 		int currentFileIndex = syncEvent.getCurrentFileIndex();
 		int maxFileCount = syncEvent.getMaxFileCount();
+		long downloadedSize = syncEvent.getDownloadedSize();
 		
-		out.printr("Downloading " + fileDescription + " "+ currentFileIndex + "/" + maxFileCount + " ...");			
+		if (downloadedSize > 0) {
+			out.printr("Downloading " + fileDescription + " " + currentFileIndex + "/" + maxFileCount + " (" + FileUtil.formatFileSize(downloadedSize)
+					+ ") ...");
+		}
+		else {
+			out.printr("Downloading " + fileDescription + " "+ currentFileIndex + "/" + maxFileCount + " ...");
+		}
 	}
 }
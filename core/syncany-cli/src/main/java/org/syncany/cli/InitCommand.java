@@ -30,6 +30,7 @@ import org.syncany.config.to.RepoTOFactory;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherSpecs;
 import org.syncany.crypto.CipherUtil;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
 import org.syncany.operations.OperationResult;
 import org.syncany.operations.init.GenlinkOperationOptions;
 import org.syncany.operations.init.InitOperation;
@@ -97,6 +98,7 @@ public class InitCommand extends AbstractInitCommand {
 		OptionSpec<Void> optionShortUrl = parser.acceptsAll(asList("s", "short"));
 		OptionSpec<Void> optionHeadlessMode = parser.acceptsAll(asList("l", "headless"));
 		OptionSpec<String> optionPassword = parser.acceptsAll(asList("password")).withRequiredArg();
+		OptionSpec<Void> optionBinaryDatabase = parser.acceptsAll(asList("B", "binary-database"));
 
 		OptionSet options = parser.parse(operationArguments);
 
@@ -134,6 +136,11 @@ public class InitCommand extends AbstractInitCommand {
 		ConfigTO configTO = createConfigTO(transferSettings);
 		RepoTO repoTO = repoTOFactory.createRepoTO();
 
+		// Database format: --binary-database
+		if (options.has(optionBinaryDatabase)) {
+			repoTO.setDatabaseFormat(DatabaseFormat.BINARY);
+		}
+
 		operationOptions.setLocalDir(localDir);
 		operationOptions.setConfigTO(configTO);
 		operationOptions.setRepoTO(repoTO);
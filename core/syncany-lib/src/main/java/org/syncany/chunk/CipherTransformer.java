@@ -43,6 +43,11 @@ import org.syncany.util.StringUtil;
  * key. It can be instantiated using a property list (from a config file) or
  * by passing the dependencies to the constructor.
  * 
+ * <p>If the optional {@link #PROPERTY_SEGMENT_SIZE} setting is set, the segmented
+ * crypto format ({@link MultiCipherOutputStream#STREAM_VERSION_SEGMENTED}) is written, which
+ * allows parallel encryption and decryption. Reading always supports both formats. Note 
+ * that clients without support for the segmented format cannot read it.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class CipherTransformer extends Transformer {
@@ -50,24 +55,32 @@ public class CipherTransformer extends Transformer {
 	public static final String PROPERTY_CIPHER_SPECS = "cipherspecs";
 	public static final String PROPERTY_MASTER_KEY = "masterkey";
 	public static final String PROPERTY_MASTER_KEY_SALT = "mastersalt";
+	public static final String PROPERTY_SEGMENT_SIZE = "segmentsize";
 	
 	private List<CipherSpec> cipherSpecs;
 	private CipherSession cipherSession;
+	private int segmentSize;
 	
 	public CipherTransformer() {
 		this.cipherSpecs = new ArrayList<CipherSpec>();
 		this.cipherSession = null;
+		this.segmentSize = 0;
 	}
 	
     public CipherTransformer(List<CipherSpec> cipherSpecs, SaltedSecretKey masterKey) {
+    	this(cipherSpecs, masterKey, 0);
+    }    
+    
+    public CipherTransformer(List<CipherSpec> cipherSpecs, SaltedSecretKey masterKey, int segmentSize) {
     	this.cipherSpecs = cipherSpecs;
     	this.cipherSession = new CipherSession(masterKey);
+    	this.segmentSize = segmentSize;
     }    
     
     /**
      * Initializes the cipher transformer using a settings map. Required settings
      * are: {@link #PROPERTY_CIPHER_SPECS}, {@link #PROPERTY_MASTER_KEY} and 
-     * {@link #PROPERTY_MASTER_KEY_SALT}.
+     * {@link #PROPERTY_MASTER_KEY_SALT}. Optional settings are: {@link #PROPERTY_SEGMENT_SIZE}.
      */
     @Override
     public void init(Map<String, String> settings) throws Exception {
@@ -81,6 +94,7 @@ public class CipherTransformer extends Transformer {
     	
     	initCipherSpecs(cipherSpecsListStr);
     	initCipherSession(masterKeyStr, masterKeySaltStr);    	
+    	initSegmentSize(settings.get(PROPERTY_SEGMENT_SIZE));
     }
     
     private void initCipherSpecs(String cipherSpecListStr) throws Exception {
@@ -98,6 +112,16 @@ public class CipherTransformer extends Transformer {
     	}
 	}
 
+	private void initSegmentSize(String segmentSizeStr) throws Exception {
+		if (segmentSizeStr != null) {
+			segmentSize = Integer.parseInt(segmentSizeStr);
+			
+			if (segmentSize < 0) {
+				throw new Exception("Invalid value for setting '" + PROPERTY_SEGMENT_SIZE + "': " + segmentSizeStr);
+			}
+		}
+	}
+
 	private void initCipherSession(String masterKeyStr, String masterKeySaltStr) {
 		byte[] masterKeySalt = StringUtil.fromHex(masterKeySaltStr);
 		byte[] masterKeyBytes = StringUtil.fromHex(masterKeyStr);
@@ -112,7 +136,12 @@ public class CipherTransformer extends Transformer {
 			throw new RuntimeException("Cipher session is not initialized. Call init() before!");
 		}
 		
-    	return new MultiCipherOutputStream(out, cipherSpecs, cipherSession);    	
+		if (segmentSize > 0) {
+			return new MultiCipherOutputStream(out, cipherSpecs, cipherSession, MultiCipherOutputStream.STREAM_VERSION_SEGMENTED, segmentSize);
+		}
+		else {
+			return new MultiCipherOutputStream(out, cipherSpecs, cipherSession);
+		}
     }
 
     @Override
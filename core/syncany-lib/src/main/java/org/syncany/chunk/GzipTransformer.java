@@ -29,11 +29,38 @@ import java.util.zip.GZIPOutputStream;
  * Implements a {@link Transformer} that transforms the input/output stream
  * using the Gzip compression algorithm.
  * 
+ * <p>The compression level can be set via the {@link #PROPERTY_LEVEL} setting. If
+ * {@link #PROPERTY_SKIP_INCOMPRESSIBLE} is enabled (disabled by default), the stream is 
+ * probed for its entropy in windows of {@link #ENTROPY_PROBE_SIZE} bytes. Windows that are 
+ * very likely incompressible (JPEG, ZIP, videos, ...) are written as stored (uncompressed) 
+ * deflate blocks, all other windows are compressed. The output remains a valid Gzip stream, 
+ * so the read path is not affected.
+ * 
+ * <p>If {@link #PROPERTY_THREADS} is set to a value greater than one, the output
+ * is compressed block-wise in parallel using the {@link ParallelGZIPOutputStream}.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class GzipTransformer extends Transformer {
     public static final String TYPE = "gzip";
+    public static final String PROPERTY_LEVEL = "level";
+    public static final String PROPERTY_SKIP_INCOMPRESSIBLE = "skipincompressible";
+    public static final String PROPERTY_THREADS = "threads";
+    
+    /**
+     * Size of the windows (in bytes) for which the entropy is estimated
+     */
+    public static final int ENTROPY_PROBE_SIZE = 64 * 1024;
+    
+    /**
+     * Shannon entropy (in bits per byte) above which data is considered 
+     * incompressible. Random/compressed data is very close to 8.0.
+     */
+    public static final double ENTROPY_INCOMPRESSIBLE_THRESHOLD = 7.5;
+    
 	private int level;
+	private boolean skipIncompressible;
+	private int threads;
     
     public GzipTransformer() {
         this(Deflater.DEFAULT_COMPRESSION, null);
@@ -44,22 +71,66 @@ public class GzipTransformer extends Transformer {
     }
     
     public GzipTransformer(int level, Transformer nextTransformer) {
+        this(level, false, nextTransformer);
+    }
+    
+    public GzipTransformer(int level, boolean skipIncompressible, Transformer nextTransformer) {
+        this(level, skipIncompressible, 1, nextTransformer);
+    }
+    
+    public GzipTransformer(int level, boolean skipIncompressible, int threads, Transformer nextTransformer) {
         super(nextTransformer);
+        
         this.level = level;
+        this.skipIncompressible = skipIncompressible;
+        this.threads = threads;
     }
     
+    /**
+     * Initializes the Gzip transformer using a settings map. Optional settings
+     * are: {@link #PROPERTY_LEVEL} (1-9, or -1 for the default level) and 
+     * {@link #PROPERTY_SKIP_INCOMPRESSIBLE} (true/false) and {@link #PROPERTY_THREADS} (>= 1).
+     */
     @Override
     public void init(Map<String, String> settings) throws Exception {
-    	// Nothing here    	
+    	if (settings == null) {
+    		return;
+    	}
+    	
+    	String levelStr = settings.get(PROPERTY_LEVEL);
+    	String skipIncompressibleStr = settings.get(PROPERTY_SKIP_INCOMPRESSIBLE);
+    	String threadsStr = settings.get(PROPERTY_THREADS);
+    	
+    	if (levelStr != null) {
+    		level = Integer.parseInt(levelStr);
+    		
+    		if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+    			throw new Exception("Invalid value for setting '" + PROPERTY_LEVEL + "': " + levelStr + " (must be 1-9, or -1)");
+    		}
+    	}
+    	
+    	if (skipIncompressibleStr != null) {
+    		skipIncompressible = Boolean.parseBoolean(skipIncompressibleStr);
+    	}
+    	
+    	if (threadsStr != null) {
+    		threads = Integer.parseInt(threadsStr);
+    		
+    		if (threads < 1) {
+    			throw new Exception("Invalid value for setting '" + PROPERTY_THREADS + "': " + threadsStr + " (must be >= 1)");
+    		}
+    	}
     }
     
     @Override
     public OutputStream createOutputStream(OutputStream out) throws IOException {
-        if (nextTransformer == null) {
-            return new GZIPOutputStreamEx(out, level);
+        OutputStream nextOutputStream = (nextTransformer == null) ? out : nextTransformer.createOutputStream(out);
+        
+        if (threads > 1) {
+            return new ParallelGZIPOutputStream(nextOutputStream, level, skipIncompressible, threads);
         }
         else {
-            return new GZIPOutputStreamEx(nextTransformer.createOutputStream(out), level);
+            return new GZIPOutputStreamEx(nextOutputStream, level, skipIncompressible);
         }
     }
 
@@ -73,13 +144,110 @@ public class GzipTransformer extends Transformer {
         }
     }
     
+    /**
+     * Estimates the Shannon entropy of the given data and returns whether the data is
+     * very likely incompressible, i.e. whether its entropy exceeds 
+     * {@link #ENTROPY_INCOMPRESSIBLE_THRESHOLD}.
+     * 
+     * @param data Sample data to probe
+     * @param length Number of bytes in the data array to consider
+     * @return Returns true if compressing the data is very likely a waste of CPU
+     */
+    public static boolean isIncompressible(byte[] data, int length) {
+    	if (length <= 0) {
+    		return false;
+    	}
+    	
+    	int[] frequencies = new int[256];
+    	
+    	for (int i = 0; i < length; i++) {
+    		frequencies[data[i] & 0xff]++;
+    	}
+    	
+    	double entropy = 0;
+    	
+    	for (int frequency : frequencies) {
+    		if (frequency > 0) {
+    			double probability = (double) frequency / length;
+    			entropy -= probability * Math.log(probability);
+    		}
+    	}
+    	
+    	return entropy / Math.log(2) > ENTROPY_INCOMPRESSIBLE_THRESHOLD;
+    }
+    
     public static class GZIPOutputStreamEx extends GZIPOutputStream {
+    	private int level;
+    	private byte[] probeBuffer;
+    	private int probeLength;
+    	
         /**
          * Level is 1-9 -- 1 being best speed, and 9 being best compression
          */
         public GZIPOutputStreamEx(OutputStream out, int level) throws IOException {
+            this(out, level, false);
+        }
+        
+        /**
+         * Level is 1-9 -- 1 being best speed, and 9 being best compression. If 
+         * skipIncompressible is set, the data is buffered and probed in windows of
+         * {@link GzipTransformer#ENTROPY_PROBE_SIZE} bytes, and incompressible windows 
+         * are written without compression.
+         */
+        public GZIPOutputStreamEx(OutputStream out, int level, boolean skipIncompressible) throws IOException {
             super(out);
             def.setLevel(level);
+            
+            this.level = level;
+            this.probeBuffer = (skipIncompressible) ? new byte[ENTROPY_PROBE_SIZE] : null;
+            this.probeLength = 0;
+        }
+        
+        @Override
+        public synchronized void write(byte[] buf, int off, int len) throws IOException {
+        	if (probeBuffer == null) {
+        		super.write(buf, off, len);
+        		return;
+        	}
+        	
+        	while (len > 0) {
+        		int probeBytes = Math.min(len, probeBuffer.length - probeLength);
+        		
+        		System.arraycopy(buf, off, probeBuffer, probeLength, probeBytes);
+        		probeLength += probeBytes;
+        		
+        		off += probeBytes;
+        		len -= probeBytes;
+        		
+        		if (probeLength == probeBuffer.length) {
+        			writeProbeBuffer();
+        		}
+        	}
+        }
+        
+        @Override
+        public void finish() throws IOException {
+        	if (probeBuffer != null) {
+        		writeProbeBuffer();
+        	}
+        	
+        	super.finish();
+        }
+        
+        /**
+         * Writes the current window with the level matching its entropy. The level
+         * change applies to the data deflated from now on, so the preceding windows 
+         * keep their level.
+         */
+        private void writeProbeBuffer() throws IOException {
+        	if (probeLength == 0) {
+        		return;
+        	}
+        	
+        	def.setLevel(isIncompressible(probeBuffer, probeLength) ? Deflater.NO_COMPRESSION : level);
+        	super.write(probeBuffer, 0, probeLength);
+        	
+        	probeLength = 0;
         }
     }    
     
@@ -0,0 +1,300 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.chunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Implements a Gzip output stream that compresses independent blocks of the 
+ * input in parallel (similar to <tt>pigz</tt>). 
+ * 
+ * <p>The input is split into blocks of {@link #DEFAULT_BLOCK_SIZE} bytes. Each block is
+ * compressed by a raw {@link Deflater} on a shared thread pool, primed with the last 32 KB 
+ * of the previous block as dictionary to keep the compression ratio close to a 
+ * single-threaded stream. Non-final blocks end with a sync flush, so that the
+ * concatenated blocks form one valid deflate stream. The resulting output is a 
+ * single Gzip member that can be read with the regular {@link GZIPInputStream}.
+ * 
+ * <p>The number of blocks in flight is bounded by the number of threads passed
+ * to the constructor, so memory usage is limited to roughly 
+ * <tt>threads * 2 * blockSize</tt>.
+ * 
+ * @see GzipTransformer
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+	public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final byte[] GZIP_HEADER = new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+	private static ExecutorService compressorPool;
+
+	private final int level;
+	private final boolean skipIncompressible;
+	private final int maxPendingBlocks;
+	private final int blockSize;
+
+	private final CRC32 crc;
+	private final LinkedList<Future<byte[]>> pendingBlocks;
+
+	private long uncompressedSize;
+	private byte[] block;
+	private int blockLength;
+	private byte[] dictionary;
+	private boolean finished;
+
+	public ParallelGZIPOutputStream(OutputStream out, int level, int threads) throws IOException {
+		this(out, level, false, threads, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ParallelGZIPOutputStream(OutputStream out, int level, boolean skipIncompressible, int threads) throws IOException {
+		this(out, level, skipIncompressible, threads, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ParallelGZIPOutputStream(OutputStream out, int level, boolean skipIncompressible, int threads, int blockSize) throws IOException {
+		super(out);
+
+		if (threads < 1 || blockSize < DICTIONARY_SIZE) {
+			throw new IllegalArgumentException("Threads must be >= 1 and block size must be >= " + DICTIONARY_SIZE);
+		}
+
+		this.level = level;
+		this.skipIncompressible = skipIncompressible;
+		this.maxPendingBlocks = threads;
+		this.blockSize = blockSize;
+
+		this.crc = new CRC32();
+		this.pendingBlocks = new LinkedList<Future<byte[]>>();
+
+		this.uncompressedSize = 0;
+		this.block = new byte[blockSize];
+		this.blockLength = 0;
+		this.dictionary = null;
+		this.finished = false;
+
+		out.write(GZIP_HEADER);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		if (finished) {
+			throw new IOException("Write beyond end of stream");
+		}
+
+		while (len > 0) {
+			int copyLength = Math.min(len, blockSize - blockLength);
+
+			System.arraycopy(buf, off, block, blockLength, copyLength);
+			blockLength += copyLength;
+
+			off += copyLength;
+			len -= copyLength;
+
+			if (blockLength == blockSize) {
+				submitBlock(false);
+			}
+		}
+	}
+
+	/**
+	 * Writes all blocks that have been compressed so far to the underlying stream and 
+	 * flushes it. Data of the current (incomplete) block is not flushed, because that 
+	 * would break the fixed block boundaries.
+	 */
+	@Override
+	public void flush() throws IOException {
+		while (!pendingBlocks.isEmpty()) {
+			writeNextPendingBlock();
+		}
+
+		out.flush();
+	}
+
+	/**
+	 * Compresses the remaining data and writes the Gzip trailer, without closing
+	 * the underlying stream.
+	 */
+	public void finish() throws IOException {
+		if (!finished) {
+			submitBlock(true);
+			finished = true;
+
+			while (!pendingBlocks.isEmpty()) {
+				writeNextPendingBlock();
+			}
+
+			writeTrailer();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		}
+		finally {
+			cancelPendingBlocks();
+			out.close();
+		}
+	}
+
+	private void submitBlock(boolean lastBlock) throws IOException {
+		// Decided per block, so incompressible data does not affect the blocks around it
+		boolean incompressible = skipIncompressible && GzipTransformer.isIncompressible(block, blockLength);
+		int blockLevel = (incompressible) ? Deflater.NO_COMPRESSION : level;
+
+		crc.update(block, 0, blockLength);
+		uncompressedSize += blockLength;
+
+		pendingBlocks.add(getCompressorPool().submit(new BlockCompressor(block, blockLength, dictionary, blockLevel, lastBlock)));
+
+		dictionary = (blockLength >= DICTIONARY_SIZE) ? Arrays.copyOfRange(block, blockLength - DICTIONARY_SIZE, blockLength) : null;
+		block = (lastBlock) ? null : new byte[blockSize];
+		blockLength = 0;
+
+		while (pendingBlocks.size() > maxPendingBlocks) {
+			writeNextPendingBlock();
+		}
+	}
+
+	private void writeNextPendingBlock() throws IOException {
+		Future<byte[]> pendingBlock = pendingBlocks.removeFirst();
+
+		try {
+			out.write(pendingBlock.get());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for compressed block", e);
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Cannot compress block", e.getCause());
+		}
+	}
+
+	private void writeTrailer() throws IOException {
+		writeIntLE((int) crc.getValue());
+		writeIntLE((int) uncompressedSize); // ISIZE is the size modulo 2^32
+	}
+
+	private void writeIntLE(int value) throws IOException {
+		out.write(new byte[] { (byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24) });
+	}
+
+	private void cancelPendingBlocks() {
+		for (Future<byte[]> pendingBlock : pendingBlocks) {
+			pendingBlock.cancel(false);
+		}
+
+		pendingBlocks.clear();
+	}
+
+	private static synchronized ExecutorService getCompressorPool() {
+		if (compressorPool == null) {
+			final AtomicInteger threadNumber = new AtomicInteger(0);
+
+			compressorPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "GzipCompress-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+
+					return thread;
+				}
+			});
+		}
+
+		return compressorPool;
+	}
+
+	private static class BlockCompressor implements Callable<byte[]> {
+		private final byte[] data;
+		private final int length;
+		private final byte[] dictionary;
+		private final int level;
+		private final boolean lastBlock;
+
+		public BlockCompressor(byte[] data, int length, byte[] dictionary, int level, boolean lastBlock) {
+			this.data = data;
+			this.length = length;
+			this.dictionary = dictionary;
+			this.level = level;
+			this.lastBlock = lastBlock;
+		}
+
+		@Override
+		public byte[] call() throws Exception {
+			Deflater deflater = new Deflater(level, true);
+
+			try {
+				ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream(length / 2 + 64);
+				byte[] buffer = new byte[16 * 1024];
+
+				if (dictionary != null) {
+					deflater.setDictionary(dictionary);
+				}
+
+				deflater.setInput(data, 0, length);
+
+				if (lastBlock) {
+					deflater.finish();
+
+					while (!deflater.finished()) {
+						int compressedLength = deflater.deflate(buffer);
+						compressedBytes.write(buffer, 0, compressedLength);
+					}
+				}
+				else {
+					int compressedLength;
+
+					do {
+						compressedLength = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+						compressedBytes.write(buffer, 0, compressedLength);
+					}
+					while (compressedLength == buffer.length);
+				}
+
+				return compressedBytes.toByteArray();
+			}
+			finally {
+				deflater.end();
+			}
+		}
+	}
+}
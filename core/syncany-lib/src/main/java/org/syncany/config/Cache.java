@@ -49,6 +49,7 @@ public class Cache {
 	private static String FILE_FORMAT_MULTICHUNK_ENCRYPTED = "multichunk-%s";
 	private static String FILE_FORMAT_MULTICHUNK_DECRYPTED = "multichunk-%s-decrypted";
     private static String FILE_FORMAT_DATABASE_FILE_ENCRYPTED = "%s";
+    private static String FILE_FORMAT_DATABASE_FILE_DECRYPTED = "%s-decrypted";
     
     private long keepBytes;
     private File cacheDir;
@@ -81,6 +82,13 @@ public class Cache {
 		return getFileInCache(FILE_FORMAT_DATABASE_FILE_ENCRYPTED, name);		
 	}    
 
+    /**
+     * Returns a file path of a decrypted database remote file.
+     */
+	public File getDecryptedDatabaseFile(String name) {
+		return getFileInCache(FILE_FORMAT_DATABASE_FILE_DECRYPTED, name);		
+	}    
+
 	public long getKeepBytes() {
 		return keepBytes;
 	}
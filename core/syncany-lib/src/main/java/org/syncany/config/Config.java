@@ -34,6 +34,7 @@ import org.syncany.config.to.RepoTO.TransformerTO;
 import org.syncany.crypto.SaltedSecretKey;
 import org.syncany.database.DatabaseConnectionFactory;
 import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
 import org.syncany.plugins.Plugins;
 import org.syncany.plugins.transfer.TransferPlugin;
 import org.syncany.plugins.transfer.TransferSettings;
@@ -67,6 +68,8 @@ public class Config {
 
 	// File in .syncany/db
 	public static final String FILE_DATABASE = "local.db";
+	public static final String FILE_CHUNK_INDEX = "local.db.chunkindex";
+	public static final String FILE_CHUNK_FILTER = "local.db.chunkfilter";
 
 	// Files in .syncany/state
 	public static final String FILE_PORT = "port.xml";
@@ -94,6 +97,7 @@ public class Config {
 	private Chunker chunker;
 	private MultiChunker multiChunker;
 	private Transformer transformer;
+	private DatabaseFormat databaseFormat;
 	private IgnoredFiles ignoredFiles;
 
 	static {
@@ -152,6 +156,7 @@ public class Config {
 			initChunker(repoTO);
 			initMultiChunker(repoTO);
 			initTransformers(repoTO);
+			initDatabaseFormat(repoTO);
 		}
 		catch (Exception e) {
 			throw new ConfigException("Unable to initialize repository information from config.", e);
@@ -219,6 +224,10 @@ public class Config {
 		}
 	}
 
+	private void initDatabaseFormat(RepoTO repoTO) {
+		databaseFormat = (repoTO.getDatabaseFormat() != null) ? repoTO.getDatabaseFormat() : DatabaseFormat.XML;
+	}
+
 	private void initConnection(ConfigTO configTO) throws ConfigException {
 		if (configTO.getTransferSettings() != null) {
 			plugin = Plugins.get(configTO.getTransferSettings().getType(), TransferPlugin.class);
@@ -308,6 +317,18 @@ public class Config {
 		return transformer;
 	}
 
+	public void setTransformer(Transformer transformer) {
+		this.transformer = transformer;
+	}
+
+	public DatabaseFormat getDatabaseFormat() {
+		return databaseFormat;
+	}
+
+	public void setDatabaseFormat(DatabaseFormat databaseFormat) {
+		this.databaseFormat = databaseFormat;
+	}
+
 	public void setCache(Cache cache) {
 		this.cache = cache;
 	}
@@ -336,6 +357,14 @@ public class Config {
 		return new File(databaseDir, FILE_DATABASE);
 	}
 
+	public File getChunkIndexFile() {
+		return new File(databaseDir, FILE_CHUNK_INDEX);
+	}
+
+	public File getChunkFilterFile() {
+		return new File(databaseDir, FILE_CHUNK_FILTER);
+	}
+
 	public File getPortFile() {
 		return new File(stateDir, FILE_PORT);
 	}
@@ -36,6 +36,7 @@ import org.syncany.config.ConfigException;
 import org.syncany.crypto.CipherSpec;
 import org.syncany.crypto.CipherUtil;
 import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
 import org.syncany.util.StringUtil;
 
 /**
@@ -65,6 +66,9 @@ public class RepoTO {
 	@ElementList(name = "transformers", required = false, entry = "transformer")
 	private ArrayList<TransformerTO> transformers;
 
+	@Element(name = "databaseformat", required = false)
+	private DatabaseFormat databaseFormat;
+
 	public byte[] getRepoId() {
 		return repoId;
 	}
@@ -136,6 +140,18 @@ public class RepoTO {
 		this.transformers = (transformers != null) ? new ArrayList<TransformerTO>(transformers) : null;
 	}
 
+	/**
+	 * Returns the format in which new database files are written to the repository,
+	 * or <tt>null</tt> if not set (XML). Older clients can only read XML database files.
+	 */
+	public DatabaseFormat getDatabaseFormat() {
+		return databaseFormat;
+	}
+
+	public void setDatabaseFormat(DatabaseFormat databaseFormat) {
+		this.databaseFormat = databaseFormat;
+	}
+
 	/**
 	 * Configuration object for the deduplication chunker. As of
 	 * today, this is a key/value based configuration.
@@ -22,8 +22,11 @@ import java.security.NoSuchProviderException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +34,9 @@ import javax.crypto.SecretKey;
 
 import org.syncany.util.StringUtil;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * The cipher session is used by the {@link MultiCipherOutputStream} and the
  * {@link MultiCipherInputStream} to reference the application's master key,
@@ -49,23 +55,32 @@ import org.syncany.util.StringUtil;
  *
  *   <li>Keys used by {@link MultiCipherInputStream} (when reading files) are
  *       cached in order to minimize the amount of keys that have to be created when
- *       files are processed.
+ *       files are processed. The least recently used keys are evicted first.
  * </ul>
  *
+ * <p>A cipher session is thread-safe, i.e. one session (and therefore one 
+ * {@link org.syncany.chunk.CipherTransformer CipherTransformer}) can be shared 
+ * by many threads encrypting and decrypting concurrently. Hits and misses of both 
+ * caches are counted and can be retrieved for diagnostic purposes.
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class CipherSession {
 	private static final Logger logger = Logger.getLogger(CipherSession.class.getSimpleName());
-	private static final int DEFAULT_SECRET_KEY_READ_CACHE_SIZE = 20;
+	private static final int DEFAULT_SECRET_KEY_READ_CACHE_SIZE = 1000;
 	private static final int DEFAULT_SECRET_KEY_WRITE_REUSE_COUNT = 100;
+	private static final int SECRET_KEY_READ_CACHE_CONCURRENCY_LEVEL = 4;
 
 	private SecretKey masterKey;
 
-	private Map<CipherSpecWithSalt, SecretKeyCacheEntry> secretKeyReadCache;
-	private int secretKeyReadCacheSize;
+	private Cache<CipherSpecWithSalt, SaltedSecretKey> secretKeyReadCache;
+	private AtomicLong secretKeyReadCacheHits;
+	private AtomicLong secretKeyReadCacheMisses;
 
 	private Map<CipherSpec, SecretKeyCacheEntry> secretKeyWriteCache;
 	private int secretKeyWriteReuseCount;
+	private long secretKeyWriteCacheHits;
+	private long secretKeyWriteCacheMisses;
 
 	/**
 	 * Creates a new cipher session, using the given master key. Derived keys will be created
@@ -95,11 +110,17 @@ public class CipherSession {
 	public CipherSession(SaltedSecretKey masterKey, int secretKeyReadCacheSize, int secretKeyWriteReuseCount) {
 		this.masterKey = masterKey;
 
-		this.secretKeyReadCache = new LinkedHashMap<CipherSpecWithSalt, SecretKeyCacheEntry>();
-		this.secretKeyReadCacheSize = secretKeyReadCacheSize;
+		// A single segment for small caches keeps the eviction order strictly LRU
+		int concurrencyLevel = (secretKeyReadCacheSize < 100) ? 1 : SECRET_KEY_READ_CACHE_CONCURRENCY_LEVEL;
+		
+		this.secretKeyReadCache = CacheBuilder.newBuilder().maximumSize(secretKeyReadCacheSize).concurrencyLevel(concurrencyLevel).build();
+		this.secretKeyReadCacheHits = new AtomicLong(0);
+		this.secretKeyReadCacheMisses = new AtomicLong(0);
 
 		this.secretKeyWriteCache = new HashMap<CipherSpec, SecretKeyCacheEntry>();
 		this.secretKeyWriteReuseCount = secretKeyWriteReuseCount;
+		this.secretKeyWriteCacheHits = 0;
+		this.secretKeyWriteCacheMisses = 0;
 	}
 
 	/**
@@ -117,50 +138,56 @@ public class CipherSession {
 	 * <p>If a new key needs to be created, {@link CipherUtil} is used to do so.
 	 *
 	 * <p>Contrary to the read cache, the write cache key is a only {@link CipherSpec}, i.e. only one secret key
-	 * per cipher spec can be held in the cache.
+	 * per cipher spec can be held in the cache. Access to the write cache is synchronized, so that the 
+	 * re-use count is never exceeded, even if many threads request write keys concurrently.
 	 *
 	 * @param cipherSpec Defines the type of key to be created (or retrieved); used as key for the cache retrieval
 	 * @return Returns a newly created secret key or a cached key
 	 * @throws Exception If an error occurs with key creation
 	 */
 	public SaltedSecretKey getWriteSecretKey(CipherSpec cipherSpec) throws Exception {
-		SecretKeyCacheEntry secretKeyCacheEntry = secretKeyWriteCache.get(cipherSpec);
-
-		// Remove key if use more than X times
-		if (secretKeyCacheEntry != null && secretKeyCacheEntry.getUseCount() >= secretKeyWriteReuseCount) {
-			logger.log(Level.FINE, "- Removed WRITE secret key from cache, because it was used " + secretKeyCacheEntry.getUseCount() + " times.");
-
-			secretKeyWriteCache.remove(cipherSpec);
-			secretKeyCacheEntry = null;
-		}
-
-		// Return cached key, or create a new one
-		if (secretKeyCacheEntry != null) {
-			secretKeyCacheEntry.increaseUseCount();
-
-			logger.log(Level.FINE, "- Using CACHED WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
-					+ StringUtil.toHex(secretKeyCacheEntry.getSaltedSecretKey().getSalt()));
-			return secretKeyCacheEntry.getSaltedSecretKey();
-		}
-		else {
-			SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec);
-
-			secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
-			secretKeyWriteCache.put(cipherSpec, secretKeyCacheEntry);
-
-			logger.log(Level.FINE, "- Created NEW WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
-					+ ", and added to cache, with salt " + StringUtil.toHex(saltedSecretKey.getSalt()));
-			return saltedSecretKey;
+		synchronized (secretKeyWriteCache) {
+			SecretKeyCacheEntry secretKeyCacheEntry = secretKeyWriteCache.get(cipherSpec);
+	
+			// Remove key if use more than X times
+			if (secretKeyCacheEntry != null && secretKeyCacheEntry.getUseCount() >= secretKeyWriteReuseCount) {
+				logger.log(Level.FINE, "- Removed WRITE secret key from cache, because it was used " + secretKeyCacheEntry.getUseCount() + " times.");
+	
+				secretKeyWriteCache.remove(cipherSpec);
+				secretKeyCacheEntry = null;
+			}
+	
+			// Return cached key, or create a new one
+			if (secretKeyCacheEntry != null) {
+				secretKeyCacheEntry.increaseUseCount();
+				secretKeyWriteCacheHits++;
+	
+				logger.log(Level.FINE, "- Using CACHED WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
+						+ StringUtil.toHex(secretKeyCacheEntry.getSaltedSecretKey().getSalt()));
+				return secretKeyCacheEntry.getSaltedSecretKey();
+			}
+			else {
+				SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec);
+	
+				secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
+				secretKeyWriteCache.put(cipherSpec, secretKeyCacheEntry);
+				secretKeyWriteCacheMisses++;
+	
+				logger.log(Level.FINE, "- Created NEW WRITE secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
+						+ ", and added to cache, with salt " + StringUtil.toHex(saltedSecretKey.getSalt()));
+				return saltedSecretKey;
+			}
 		}
 	}
 
 	/**
 	 * Creates a new secret key or retrieves it from the read cache. If the given cipher spec / salt combination
-	 * is found in the cache, the cached secret key is returned. If not, a new key is created. Keys are removed
-	 * from the cache when the cache reached the size defined by {@link #secretKeyReadCacheSize} (as set in
-	 * {@link #CipherSession(SaltedSecretKey, int, int) the constructor}.
+	 * is found in the cache, the cached secret key is returned. If not, a new key is created. The least recently 
+	 * used keys are removed from the cache when the cache reached the size defined by {@link #secretKeyReadCacheSize} 
+	 * (as set in {@link #CipherSession(SaltedSecretKey, int, int) the constructor}.
 	 *
-	 * <p>If a new key needs to be created, {@link CipherUtil} is used to do so.
+	 * <p>If a new key needs to be created, {@link CipherUtil} is used to do so. If multiple threads request the
+	 * same key at the same time, the key is only derived once.
 	 *
 	 * <p>Contrary to the write cache, the read cache key is a combination of {@link CipherSpec} and a salt. For
 	 * each cipher spec, multiple salted keys can reside in the cache at the same time.
@@ -170,31 +197,67 @@ public class CipherSession {
 	 * @return Returns a newly created secret key or a cached key
 	 * @throws Exception If an error occurs with key creation
 	 */
-	public SaltedSecretKey getReadSecretKey(CipherSpec cipherSpec, byte[] salt) throws Exception {
-		CipherSpecWithSalt cipherSpecWithSalt = new CipherSpecWithSalt(cipherSpec, salt);
-		SecretKeyCacheEntry secretKeyCacheEntry = secretKeyReadCache.get(cipherSpecWithSalt);
+	public SaltedSecretKey getReadSecretKey(final CipherSpec cipherSpec, final byte[] salt) throws Exception {
+		final AtomicBoolean keyCreated = new AtomicBoolean(false);
+		SaltedSecretKey saltedSecretKey = null;
+
+		try {
+			saltedSecretKey = secretKeyReadCache.get(new CipherSpecWithSalt(cipherSpec, salt), new Callable<SaltedSecretKey>() {
+				@Override
+				public SaltedSecretKey call() throws Exception {
+					keyCreated.set(true);
+					return createSaltedSecretKey(cipherSpec, salt);
+				}
+			});
+		}
+		catch (ExecutionException e) {
+			throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+		}
 
-		if (secretKeyCacheEntry != null) {
-			logger.log(Level.FINE, "- Using CACHED READ secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm() + ", with salt "
+		if (keyCreated.get()) {
+			secretKeyReadCacheMisses.incrementAndGet();
+
+			logger.log(Level.FINE, "- Created NEW READ secret key " + saltedSecretKey.getAlgorithm() + ", and added to cache, with salt "
 					+ StringUtil.toHex(salt));
-			return secretKeyCacheEntry.getSaltedSecretKey();
 		}
 		else {
-			if (secretKeyReadCache.size() >= secretKeyReadCacheSize) {
-				CipherSpecWithSalt firstKey = secretKeyReadCache.keySet().iterator().next();
-				secretKeyReadCache.remove(firstKey);
+			secretKeyReadCacheHits.incrementAndGet();
 
-				logger.log(Level.FINE, "- Removed oldest READ secret key from cache.");
-			}
+			logger.log(Level.FINE, "- Using CACHED READ secret key " + saltedSecretKey.getAlgorithm() + ", with salt " + StringUtil.toHex(salt));
+		}
 
-			SaltedSecretKey saltedSecretKey = createSaltedSecretKey(cipherSpec, salt);
-			secretKeyCacheEntry = new SecretKeyCacheEntry(saltedSecretKey);
+		return saltedSecretKey;
+	}
 
-			secretKeyReadCache.put(cipherSpecWithSalt, secretKeyCacheEntry);
+	/**
+	 * Returns the number of read keys that were served from the read cache.
+	 */
+	public long getReadCacheHits() {
+		return secretKeyReadCacheHits.get();
+	}
 
-			logger.log(Level.FINE, "- Created NEW READ secret key " + secretKeyCacheEntry.getSaltedSecretKey().getAlgorithm()
-					+ ", and added to cache, with salt " + StringUtil.toHex(salt));
-			return saltedSecretKey;
+	/**
+	 * Returns the number of read keys that had to be derived from the master key.
+	 */
+	public long getReadCacheMisses() {
+		return secretKeyReadCacheMisses.get();
+	}
+
+	/**
+	 * Returns the number of write keys that were re-used from the write cache.
+	 */
+	public long getWriteCacheHits() {
+		synchronized (secretKeyWriteCache) {
+			return secretKeyWriteCacheHits;
+		}
+	}
+
+	/**
+	 * Returns the number of write keys that had to be derived from the master key.
+	 */
+	public long getWriteCacheMisses() {
+		synchronized (secretKeyWriteCache) {
+			return secretKeyWriteCacheMisses;
 		}
 	}
 
@@ -77,6 +77,13 @@ public abstract class CipherSpec {
 		return ivSize;
 	}
 
+	/**
+	 * Returns the size of the authentication tag (in bits) that the cipher appends to
+	 * the ciphertext. The ciphertext of a plaintext is always exactly this many bits longer
+	 * than the plaintext.
+	 */
+	public abstract int getTagSize();
+
 	public abstract OutputStream newCipherOutputStream(OutputStream underlyingOutputStream, byte[] secretKey, byte[] iv) throws CipherException;
 
 	public abstract InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException;
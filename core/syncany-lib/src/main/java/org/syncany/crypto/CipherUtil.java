@@ -71,11 +71,13 @@ import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
 import org.bouncycastle.crypto.params.HKDFParameters;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.util.Memoable;
 
 /**
  * The cipher utility provides functions to create a master key using PBKDF2,
@@ -230,7 +232,10 @@ public class CipherUtil {
 	public static SaltedSecretKey createDerivedKey(byte[] inputKeyMaterial, byte[] inputSalt, String outputKeyAlgorithm, int outputKeySize)
 			throws InvalidKeySpecException, NoSuchAlgorithmException, NoSuchProviderException {
 
-		HKDFBytesGenerator hkdf = new HKDFBytesGenerator(KEY_DERIVATION_DIGEST);
+		// Digests are stateful; copy the template so that keys can be derived concurrently
+		Digest keyDerivationDigest = (Digest) ((Memoable) KEY_DERIVATION_DIGEST).copy();
+
+		HKDFBytesGenerator hkdf = new HKDFBytesGenerator(keyDerivationDigest);
 		hkdf.init(new HKDFParameters(inputKeyMaterial, inputSalt, KEY_DERIVATION_INFO));
 
 		byte[] derivedKey = new byte[outputKeySize / 8];
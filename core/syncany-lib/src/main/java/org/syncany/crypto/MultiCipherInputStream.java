@@ -21,11 +21,20 @@ import static org.syncany.crypto.CipherParams.CRYPTO_PROVIDER_ID;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 
+/**
+ * Implements an input stream that decrypts and verifies data written by the 
+ * {@link MultiCipherOutputStream}. Both the nested stream format (version 1) and
+ * the segmented format (version 2) are supported; the version is read from the header.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
 public class MultiCipherInputStream extends InputStream {
 	private InputStream underlyingInputStream;
 
@@ -63,19 +72,30 @@ public class MultiCipherInputStream extends InputStream {
 		return cipherInputStream.read(b, off, len);
 	}
 	
+	@Override
+	public long skip(long n) throws IOException {
+		readHeader();
+		return cipherInputStream.skip(n);
+	}
+	
 	@Override
 	public void close() throws IOException {
-		cipherInputStream.close();
+		if (cipherInputStream != null) {
+			cipherInputStream.close();
+		}
+		else {
+			underlyingInputStream.close();
+		}
 	}	
 	
 	private void readHeader() throws IOException {
 		if (!headerRead) {
 			try {
 				readAndVerifyMagicNoHmac(underlyingInputStream);
-				readAndVerifyVersionNoHmac(underlyingInputStream);
+				byte streamVersion = readAndVerifyVersionNoHmac(underlyingInputStream);
 
 				headerHmac = readHmacSaltAndInitHmac(underlyingInputStream, cipherSession);				
-				cipherInputStream = readCipherSpecsAndUpdateHmac(underlyingInputStream, headerHmac, cipherSession);
+				cipherInputStream = readCipherSpecsAndUpdateHmac(underlyingInputStream, streamVersion, headerHmac, cipherSession);
 
 				readAndVerifyHmac(underlyingInputStream, headerHmac);			
 			}
@@ -96,12 +116,14 @@ public class MultiCipherInputStream extends InputStream {
 		}
 	}
 
-	private void readAndVerifyVersionNoHmac(InputStream inputStream) throws IOException {
+	private byte readAndVerifyVersionNoHmac(InputStream inputStream) throws IOException {
 		byte streamVersion = (byte) inputStream.read();
 		
-		if (streamVersion != MultiCipherOutputStream.STREAM_VERSION) {
+		if (streamVersion != MultiCipherOutputStream.STREAM_VERSION && streamVersion != MultiCipherOutputStream.STREAM_VERSION_SEGMENTED) {
 			throw new IOException("Stream version not supported: "+streamVersion);
 		}		
+		
+		return streamVersion;
 	}
 	
 	private Mac readHmacSaltAndInitHmac(InputStream inputStream, CipherSession cipherSession) throws Exception {
@@ -114,9 +136,12 @@ public class MultiCipherInputStream extends InputStream {
 		return hmac;
 	}
 	
-	private InputStream readCipherSpecsAndUpdateHmac(InputStream underlyingInputStream, Mac hmac, CipherSession cipherSession) throws Exception {
+	private InputStream readCipherSpecsAndUpdateHmac(InputStream underlyingInputStream, byte streamVersion, Mac hmac, CipherSession cipherSession) throws Exception {
 		int cipherSpecCount = readByteAndUpdateHmac(underlyingInputStream, hmac);		
-		InputStream nestedCipherInputStream = underlyingInputStream;
+		
+		List<CipherSpec> cipherSpecs = new ArrayList<CipherSpec>();
+		List<byte[]> secretKeys = new ArrayList<byte[]>();
+		List<byte[]> ivs = new ArrayList<byte[]>();
 		
 		for (int i=0; i<cipherSpecCount; i++) {
 			int cipherSpecId = readByteAndUpdateHmac(underlyingInputStream, hmac);				
@@ -130,10 +155,30 @@ public class MultiCipherInputStream extends InputStream {
 			byte[] iv = readAndUpdateHmac(underlyingInputStream, cipherSpec.getIvSize()/8, hmac);
 			
 			SecretKey secretKey = cipherSession.getReadSecretKey(cipherSpec, salt);			
-			nestedCipherInputStream = cipherSpec.newCipherInputStream(nestedCipherInputStream, secretKey.getEncoded(), iv);		
+			
+			cipherSpecs.add(cipherSpec);
+			secretKeys.add(secretKey.getEncoded());
+			ivs.add(iv);
 		}	 
 		
-		return nestedCipherInputStream;
+		if (streamVersion == MultiCipherOutputStream.STREAM_VERSION_SEGMENTED) {
+			int segmentSize = readIntAndUpdateHmac(underlyingInputStream, hmac);
+			
+			if (segmentSize <= 0) {
+				throw new IOException("Invalid segment size: " + segmentSize);
+			}
+			
+			return new SegmentedCipherInputStream(underlyingInputStream, new SegmentCipher(cipherSpecs, secretKeys, ivs, segmentSize));
+		}
+		else {
+			InputStream nestedCipherInputStream = underlyingInputStream;
+			
+			for (int i = 0; i < cipherSpecs.size(); i++) {
+				nestedCipherInputStream = cipherSpecs.get(i).newCipherInputStream(nestedCipherInputStream, secretKeys.get(i), ivs.get(i));
+			}
+			
+			return nestedCipherInputStream;
+		}
 	}
 
 	private void readAndVerifyHmac(InputStream inputStream, Mac hmac) throws Exception {
@@ -159,6 +204,11 @@ public class MultiCipherInputStream extends InputStream {
 		return bytes;
 	}
 
+	private int readIntAndUpdateHmac(InputStream inputStream, Mac hmac) throws IOException {
+		byte[] bytes = readAndUpdateHmac(inputStream, 4, hmac);
+		return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+	}
+
 	private int readByteAndUpdateHmac(InputStream inputStream, Mac hmac) throws IOException {
 		int abyte = inputStream.read();
 		hmac.update((byte) abyte);
@@ -21,6 +21,7 @@ import static org.syncany.crypto.CipherParams.CRYPTO_PROVIDER_ID;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.crypto.Mac;
@@ -45,10 +46,19 @@ import org.syncany.crypto.specs.HmacSha256CipherSpec;
  *      12             yes (in header)  Salt for cipher i (12 bytes)
  *      aa             yes (in header)  IV for cipher i (cipher specific length, 0..x)
  *      
+ *    
+ *    04               yes (in header)  Segment size (4 bytes, only in version 2)
+ *      
  *    20               no               Header HMAC (20 bytes, for "HmacSHA1")
  *    bb               yes (in mode)    Ciphertext (HMAC'd by mode, e.g. GCM)
  * </pre>
  * 
+ * In version 1 ({@link #STREAM_VERSION}), the ciphertext is one nested cipher stream over
+ * the entire plaintext. In version 2 ({@link #STREAM_VERSION_SEGMENTED}), the plaintext is split 
+ * into segments that are encrypted and authenticated independently (see {@link SegmentedCipherOutputStream}).
+ * This allows parallel encryption/decryption, and verification before the entire file is read.
+ * Both versions are readable by the {@link MultiCipherInputStream}.
+ * 
  * It follows a few Do's and Don'ts:
  * - http://blog.cryptographyengineering.com/2011/11/how-not-to-use-symmetric-encryption.html
  * - http://security.stackexchange.com/questions/30170/after-how-much-data-encryption-aes-256-we-should-change-key
@@ -63,6 +73,8 @@ import org.syncany.crypto.specs.HmacSha256CipherSpec;
 public class MultiCipherOutputStream extends OutputStream {
 	public static final byte[] STREAM_MAGIC = new byte[] { 0x53, 0x79, 0x02, 0x05 };
 	public static final byte STREAM_VERSION = 1;
+	public static final byte STREAM_VERSION_SEGMENTED = 2;
+	public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
 
 	public static final int SALT_SIZE = 12;	
 	public static final CipherSpec HMAC_SPEC = new HmacSha256CipherSpec();
@@ -72,16 +84,31 @@ public class MultiCipherOutputStream extends OutputStream {
 	private List<CipherSpec> cipherSpecs;
 	private CipherSession cipherSession;
 	private OutputStream cipherOutputStream;
+	private byte streamVersion;
+	private int segmentSize;
 
 	private boolean headerWritten;	
 	private Mac headerHmac;
 	
 	public MultiCipherOutputStream(OutputStream out, List<CipherSpec> cipherSpecs, CipherSession cipherSession) throws IOException {
+		this(out, cipherSpecs, cipherSession, STREAM_VERSION, 0);
+	}
+	
+	public MultiCipherOutputStream(OutputStream out, List<CipherSpec> cipherSpecs, CipherSession cipherSession, byte streamVersion, int segmentSize) throws IOException {
+		if (streamVersion != STREAM_VERSION && streamVersion != STREAM_VERSION_SEGMENTED) {
+			throw new IllegalArgumentException("Stream version not supported: " + streamVersion);
+		}
+		else if (streamVersion == STREAM_VERSION_SEGMENTED && segmentSize <= 0) {
+			throw new IllegalArgumentException("Segment size must be positive: " + segmentSize);
+		}
+		
 		this.underlyingOutputStream = out;	
 		
 		this.cipherSpecs = cipherSpecs;		
 		this.cipherSession = cipherSession;		
 		this.cipherOutputStream = null;
+		this.streamVersion = streamVersion;
+		this.segmentSize = segmentSize;
 		
 		this.headerWritten = false;
 		this.headerHmac = null;		
@@ -107,6 +134,7 @@ public class MultiCipherOutputStream extends OutputStream {
 	
 	@Override
 	public void close() throws IOException {
+		writeHeader();
 		cipherOutputStream.close();
 	}
 		
@@ -121,12 +149,13 @@ public class MultiCipherOutputStream extends OutputStream {
 
 				// Write header
 				writeNoHmac(underlyingOutputStream, STREAM_MAGIC);
-				writeNoHmac(underlyingOutputStream, STREAM_VERSION);
+				writeNoHmac(underlyingOutputStream, streamVersion);
 				writeNoHmac(underlyingOutputStream, hmacSecretKey.getSalt());			
 				writeAndUpdateHmac(underlyingOutputStream, cipherSpecs.size());
 
-				cipherOutputStream = underlyingOutputStream;
-
+				List<byte[]> secretKeys = new ArrayList<byte[]>();
+				List<byte[]> ivs = new ArrayList<byte[]>();
+				
 				for (CipherSpec cipherSpec : cipherSpecs) { 
 					SaltedSecretKey saltedSecretKey = cipherSession.getWriteSecretKey(cipherSpec);				
 					byte[] iv = CipherUtil.createRandomArray(cipherSpec.getIvSize()/8);
@@ -135,10 +164,26 @@ public class MultiCipherOutputStream extends OutputStream {
 					writeAndUpdateHmac(underlyingOutputStream, saltedSecretKey.getSalt());
 					writeAndUpdateHmac(underlyingOutputStream, iv);
 
-					cipherOutputStream = cipherSpec.newCipherOutputStream(cipherOutputStream, saltedSecretKey.getEncoded(), iv);	        
+					secretKeys.add(saltedSecretKey.getEncoded());
+					ivs.add(iv);
 				}	
 
+				if (streamVersion == STREAM_VERSION_SEGMENTED) {
+					writeAndUpdateHmac(underlyingOutputStream, toBytes(segmentSize));
+				}
+				
 				writeNoHmac(underlyingOutputStream, headerHmac.doFinal());
+				
+				if (streamVersion == STREAM_VERSION_SEGMENTED) {
+					cipherOutputStream = new SegmentedCipherOutputStream(underlyingOutputStream, new SegmentCipher(cipherSpecs, secretKeys, ivs, segmentSize));
+				}
+				else {
+					cipherOutputStream = underlyingOutputStream;
+					
+					for (int i = 0; i < cipherSpecs.size(); i++) {
+						cipherOutputStream = cipherSpecs.get(i).newCipherOutputStream(cipherOutputStream, secretKeys.get(i), ivs.get(i));
+					}
+				}
 			}
 			catch (Exception e) {
 				throw new IOException(e);
@@ -147,6 +192,10 @@ public class MultiCipherOutputStream extends OutputStream {
 		}
 	}	
 
+	private static byte[] toBytes(int value) {
+		return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+	}
+
 	private void writeNoHmac(OutputStream outputStream, byte[] bytes) throws IOException {
 		outputStream.write(bytes);
 	}
@@ -0,0 +1,185 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Encrypts and decrypts single segments of the segmented crypto format 
+ * (see {@link SegmentedCipherOutputStream}), using one to many ciphers.
+ * 
+ * <p>Each segment is encrypted with all ciphers, in the order of the cipher spec list.
+ * The nonce of each segment is derived from the cipher's IV (as written to the header) 
+ * by XOR'ing the segment index into the second to fifth last bytes, and a 'last segment' 
+ * flag into the last byte, similar to the STREAM construction by Hoang, Reyhanitabar, 
+ * Rogaway and Vizár. This prevents reordering, dropping and truncating segments.
+ * 
+ * <p>Segments are independent of each other, so they can be encrypted and decrypted
+ * in parallel and in any order. This class is immutable and thread-safe.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+class SegmentCipher {
+	private static final byte LAST_SEGMENT_FLAG = 0x01;
+	private static ExecutorService segmentCipherPool;
+
+	private final List<CipherSpec> cipherSpecs;
+	private final List<byte[]> secretKeys;
+	private final List<byte[]> ivs;
+	private final int segmentSize;
+	private final int tagOverhead;
+
+	public SegmentCipher(List<CipherSpec> cipherSpecs, List<byte[]> secretKeys, List<byte[]> ivs, int segmentSize) {
+		this.cipherSpecs = cipherSpecs;
+		this.secretKeys = secretKeys;
+		this.ivs = ivs;
+		this.segmentSize = segmentSize;
+		this.tagOverhead = calculateTagOverhead(cipherSpecs);
+	}
+
+	/**
+	 * Returns the maximum plaintext size of a segment.
+	 */
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * Returns the ciphertext size of a full segment, i.e. the segment size plus
+	 * the size of the authentication tags of all ciphers.
+	 */
+	public int getCiphertextSegmentSize() {
+		return segmentSize + tagOverhead;
+	}
+
+	/**
+	 * Returns the number of bytes the ciphers add to each segment.
+	 */
+	public int getTagOverhead() {
+		return tagOverhead;
+	}
+
+	public byte[] encrypt(byte[] plaintext, int length, int segmentIndex, boolean lastSegment) throws IOException {
+		byte[] data = (plaintext.length == length) ? plaintext : copyOf(plaintext, length);
+
+		try {
+			for (int i = 0; i < cipherSpecs.size(); i++) {
+				ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream(data.length + tagOverhead);
+				OutputStream cipherOutputStream = cipherSpecs.get(i).newCipherOutputStream(ciphertextOutputStream, secretKeys.get(i),
+						deriveSegmentIv(ivs.get(i), segmentIndex, lastSegment));
+
+				cipherOutputStream.write(data);
+				cipherOutputStream.close();
+
+				data = ciphertextOutputStream.toByteArray();
+			}
+
+			return data;
+		}
+		catch (CipherException e) {
+			throw new IOException("Cannot encrypt segment " + segmentIndex, e);
+		}
+	}
+
+	public byte[] decrypt(byte[] ciphertext, int length, int segmentIndex, boolean lastSegment) throws IOException {
+		byte[] data = (ciphertext.length == length) ? ciphertext : copyOf(ciphertext, length);
+
+		try {
+			for (int i = cipherSpecs.size() - 1; i >= 0; i--) {
+				InputStream cipherInputStream = cipherSpecs.get(i).newCipherInputStream(new ByteArrayInputStream(data), secretKeys.get(i),
+						deriveSegmentIv(ivs.get(i), segmentIndex, lastSegment));
+
+				data = IOUtils.toByteArray(cipherInputStream);
+				cipherInputStream.close();
+			}
+
+			return data;
+		}
+		catch (CipherException e) {
+			throw new IOException("Cannot decrypt segment " + segmentIndex, e);
+		}
+		catch (IOException e) {
+			throw new IOException("Integrity exception: Cannot decrypt or verify segment " + segmentIndex, e);
+		}
+	}
+
+	private byte[] deriveSegmentIv(byte[] iv, int segmentIndex, boolean lastSegment) {
+		byte[] segmentIv = copyOf(iv, iv.length);
+		int counterOffset = iv.length - 5;
+
+		segmentIv[counterOffset] ^= (byte) (segmentIndex >>> 24);
+		segmentIv[counterOffset + 1] ^= (byte) (segmentIndex >>> 16);
+		segmentIv[counterOffset + 2] ^= (byte) (segmentIndex >>> 8);
+		segmentIv[counterOffset + 3] ^= (byte) segmentIndex;
+
+		if (lastSegment) {
+			segmentIv[iv.length - 1] ^= LAST_SEGMENT_FLAG;
+		}
+
+		return segmentIv;
+	}
+
+	private static byte[] copyOf(byte[] data, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(data, 0, copy, 0, length);
+
+		return copy;
+	}
+
+	private static int calculateTagOverhead(List<CipherSpec> cipherSpecs) {
+		int tagOverhead = 0;
+
+		for (CipherSpec cipherSpec : cipherSpecs) {
+			tagOverhead += cipherSpec.getTagSize() / 8;
+		}
+
+		return tagOverhead;
+	}
+
+	/**
+	 * Returns a shared thread pool used to encrypt/decrypt segments in parallel.
+	 */
+	public static synchronized ExecutorService getSegmentCipherPool() {
+		if (segmentCipherPool == null) {
+			final AtomicInteger threadNumber = new AtomicInteger(0);
+
+			segmentCipherPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "SegmentCipher-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+
+					return thread;
+				}
+			});
+		}
+
+		return segmentCipherPool;
+	}
+}
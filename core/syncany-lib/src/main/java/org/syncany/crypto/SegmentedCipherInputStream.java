@@ -0,0 +1,229 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Implements an input stream that decrypts and verifies the segmented crypto 
+ * format written by the {@link SegmentedCipherOutputStream}. 
+ * 
+ * <p>Segments are read ahead and decrypted in parallel on a shared thread pool. Each
+ * segment is verified independently, i.e. plaintext is returned as soon as its segment
+ * has been verified, and not only after the entire stream has been read. Truncated,
+ * reordered or tampered segments cause an {@link IOException}.
+ * 
+ * <p>{@link #skip(long) Skipping} over whole segments does not decrypt them, which makes
+ * reading at an offset much cheaper than reading the entire stream.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SegmentedCipherInputStream extends InputStream {
+	private final PushbackInputStream underlyingInputStream;
+	private final SegmentCipher segmentCipher;
+	private final int maxPendingSegments;
+	private final LinkedList<Future<byte[]>> pendingSegments;
+
+	private int nextSegmentIndex;
+	private boolean lastSegmentRead;
+
+	private byte[] plaintext;
+	private int plaintextOffset;
+
+	SegmentedCipherInputStream(InputStream underlyingInputStream, SegmentCipher segmentCipher) {
+		this.underlyingInputStream = new PushbackInputStream(underlyingInputStream, 1);
+		this.segmentCipher = segmentCipher;
+		this.maxPendingSegments = Runtime.getRuntime().availableProcessors() + 1;
+		this.pendingSegments = new LinkedList<Future<byte[]>>();
+
+		this.nextSegmentIndex = 0;
+		this.lastSegmentRead = false;
+
+		this.plaintext = null;
+		this.plaintextOffset = 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int read = read(b, 0, 1);
+
+		return (read == -1) ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		if (!fillPlaintext()) {
+			return -1;
+		}
+
+		int readLength = Math.min(len, plaintext.length - plaintextOffset);
+		System.arraycopy(plaintext, plaintextOffset, b, off, readLength);
+		plaintextOffset += readLength;
+
+		return readLength;
+	}
+
+	/**
+	 * Skips the given number of plaintext bytes. Whole segments that are skipped are
+	 * read from the underlying stream, but not decrypted or verified.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+
+		// Skip buffered plaintext first
+		if (plaintext != null) {
+			int bufferedSkip = (int) Math.min(n, plaintext.length - plaintextOffset);
+
+			plaintextOffset += bufferedSkip;
+			skipped += bufferedSkip;
+		}
+
+		// Skip entire segments without decrypting them
+		while (n - skipped >= segmentCipher.getSegmentSize() && pendingSegments.isEmpty() && !lastSegmentRead) {
+			CiphertextSegment ciphertextSegment = readCiphertextSegment();
+
+			if (ciphertextSegment.lastSegment) {
+				submitSegment(ciphertextSegment); // Last segment must be verified; might be shorter
+			}
+			else {
+				skipped += segmentCipher.getSegmentSize();
+			}
+		}
+
+		// Skip the rest by reading
+		while (skipped < n && fillPlaintext()) {
+			int readSkip = (int) Math.min(n - skipped, plaintext.length - plaintextOffset);
+
+			plaintextOffset += readSkip;
+			skipped += readSkip;
+		}
+
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (plaintext != null) ? plaintext.length - plaintextOffset : 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Future<byte[]> pendingSegment : pendingSegments) {
+			pendingSegment.cancel(false);
+		}
+
+		pendingSegments.clear();
+		underlyingInputStream.close();
+	}
+
+	private boolean fillPlaintext() throws IOException {
+		while (plaintext == null || plaintextOffset == plaintext.length) {
+			while (!lastSegmentRead && pendingSegments.size() < maxPendingSegments) {
+				submitSegment(readCiphertextSegment());
+			}
+
+			if (pendingSegments.isEmpty()) {
+				return false;
+			}
+
+			plaintext = takeNextPendingSegment();
+			plaintextOffset = 0;
+		}
+
+		return true;
+	}
+
+	private CiphertextSegment readCiphertextSegment() throws IOException {
+		byte[] ciphertext = new byte[segmentCipher.getCiphertextSegmentSize()];
+		int ciphertextLength = IOUtils.read(underlyingInputStream, ciphertext);
+		boolean lastSegment;
+
+		if (ciphertextLength < ciphertext.length) {
+			lastSegment = true;
+		}
+		else {
+			int nextByte = underlyingInputStream.read();
+
+			if (nextByte == -1) {
+				lastSegment = true;
+			}
+			else {
+				underlyingInputStream.unread(nextByte);
+				lastSegment = false;
+			}
+		}
+
+		if (lastSegment && ciphertextLength < segmentCipher.getTagOverhead()) {
+			throw new IOException("Integrity exception: Ciphertext truncated, last segment missing.");
+		}
+
+		lastSegmentRead = lastSegment;
+		return new CiphertextSegment(ciphertext, ciphertextLength, nextSegmentIndex++, lastSegment);
+	}
+
+	private void submitSegment(final CiphertextSegment ciphertextSegment) {
+		pendingSegments.add(SegmentCipher.getSegmentCipherPool().submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return segmentCipher.decrypt(ciphertextSegment.ciphertext, ciphertextSegment.length, ciphertextSegment.index,
+						ciphertextSegment.lastSegment);
+			}
+		}));
+	}
+
+	private byte[] takeNextPendingSegment() throws IOException {
+		try {
+			return pendingSegments.removeFirst().get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for decrypted segment", e);
+		}
+		catch (ExecutionException e) {
+			throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	private static class CiphertextSegment {
+		private final byte[] ciphertext;
+		private final int length;
+		private final int index;
+		private final boolean lastSegment;
+
+		public CiphertextSegment(byte[] ciphertext, int length, int index, boolean lastSegment) {
+			this.ciphertext = ciphertext;
+			this.length = length;
+			this.index = index;
+			this.lastSegment = lastSegment;
+		}
+	}
+}
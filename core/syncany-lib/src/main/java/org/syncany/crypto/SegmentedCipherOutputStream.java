@@ -0,0 +1,172 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.crypto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Implements an output stream that splits the plaintext into fixed-size segments 
+ * and encrypts each segment independently, using the {@link SegmentCipher}. It is used 
+ * by the {@link MultiCipherOutputStream} for the segmented crypto format 
+ * ({@link MultiCipherOutputStream#STREAM_VERSION_SEGMENTED}).
+ * 
+ * <p>Format (after the {@link MultiCipherOutputStream} header):
+ * <pre>
+ *    Length           Description
+ *    ----------------------------------------------
+ *    for i := 0..m-1:
+ *      ss + tt        Ciphertext of segment i (segment size + tag sizes of all ciphers)
+ *      
+ *    xx + tt          Ciphertext of the last segment (0..segment size, plus tags; always present)
+ * </pre>
+ * 
+ * <p>Because segments are independent, they are encrypted in parallel on a shared 
+ * thread pool. The number of segments in flight is bounded, so memory usage is limited 
+ * to a few segments per stream.
+ * 
+ * @see SegmentedCipherInputStream
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SegmentedCipherOutputStream extends OutputStream {
+	private final OutputStream underlyingOutputStream;
+	private final SegmentCipher segmentCipher;
+	private final int maxPendingSegments;
+	private final LinkedList<Future<byte[]>> pendingSegments;
+
+	private byte[] segment;
+	private int segmentLength;
+	private int segmentIndex;
+	private boolean closed;
+
+	SegmentedCipherOutputStream(OutputStream underlyingOutputStream, SegmentCipher segmentCipher) {
+		this.underlyingOutputStream = underlyingOutputStream;
+		this.segmentCipher = segmentCipher;
+		this.maxPendingSegments = Runtime.getRuntime().availableProcessors() + 1;
+		this.pendingSegments = new LinkedList<Future<byte[]>>();
+
+		this.segment = new byte[segmentCipher.getSegmentSize()];
+		this.segmentLength = 0;
+		this.segmentIndex = 0;
+		this.closed = false;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+
+		while (len > 0) {
+			// A full segment is only submitted if more data follows; otherwise it is the last segment
+			if (segmentLength == segment.length) {
+				submitSegment(false);
+			}
+
+			int copyLength = Math.min(len, segment.length - segmentLength);
+			System.arraycopy(b, off, segment, segmentLength, copyLength);
+
+			segmentLength += copyLength;
+			off += copyLength;
+			len -= copyLength;
+		}
+	}
+
+	/**
+	 * Writes all segments that have been encrypted so far and flushes the underlying
+	 * stream. The current (incomplete) segment is not written, because its
+	 * length and position are only known once it is full or the stream is closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		while (!pendingSegments.isEmpty()) {
+			writeNextPendingSegment();
+		}
+
+		underlyingOutputStream.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+
+			try {
+				submitSegment(true);
+
+				while (!pendingSegments.isEmpty()) {
+					writeNextPendingSegment();
+				}
+			}
+			finally {
+				for (Future<byte[]> pendingSegment : pendingSegments) {
+					pendingSegment.cancel(false);
+				}
+
+				underlyingOutputStream.close();
+			}
+		}
+	}
+
+	private void submitSegment(final boolean lastSegment) throws IOException {
+		final byte[] segmentData = segment;
+		final int segmentDataLength = segmentLength;
+		final int currentSegmentIndex = segmentIndex;
+
+		if (segmentIndex == Integer.MAX_VALUE) {
+			throw new IOException("Maximum number of segments reached.");
+		}
+
+		pendingSegments.add(SegmentCipher.getSegmentCipherPool().submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return segmentCipher.encrypt(segmentData, segmentDataLength, currentSegmentIndex, lastSegment);
+			}
+		}));
+
+		segment = (lastSegment) ? null : new byte[segmentCipher.getSegmentSize()];
+		segmentLength = 0;
+		segmentIndex++;
+
+		while (pendingSegments.size() > maxPendingSegments) {
+			writeNextPendingSegment();
+		}
+	}
+
+	private void writeNextPendingSegment() throws IOException {
+		try {
+			underlyingOutputStream.write(pendingSegments.removeFirst().get());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for encrypted segment", e);
+		}
+		catch (ExecutionException e) {
+			throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+}
@@ -17,41 +17,219 @@
  */
 package org.syncany.crypto.specs;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.Provider;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.io.IOUtils;
 import org.bouncycastle.crypto.engines.AESEngine;
 import org.bouncycastle.crypto.modes.AEADBlockCipher;
 import org.bouncycastle.crypto.modes.GCMBlockCipher;
 import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.syncany.crypto.CipherException;
+import org.syncany.crypto.CipherParams;
 import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherUtil;
 
 /**
+ * Implements AES/GCM cipher specs using one of two engines: The pure-Java 
+ * Bouncy Castle implementation, or the JCE provider of the JVM (typically <tt>SunJCE</tt>), 
+ * which can use the AES-NI and CLMUL CPU intrinsics and is hence much faster.
+ * 
+ * <p>Both engines produce the same ciphertext (ciphertext + 128-bit tag), so the
+ * choice of engine does not affect the crypto format. The preferred encryption engine is 
+ * determined once per cipher spec: The JCE engine is only used if it is not Bouncy Castle itself,
+ * if the JCE policy allows the key size, and if a self-test shows that it produces 
+ * the same ciphertext as Bouncy Castle and detects tampered ciphertexts (the 
+ * <tt>CipherInputStream</tt> of JDK 7 does not, see {@link Engine#JCE}).
+ * 
+ * <p>Decryption always uses Bouncy Castle by default: The JCE implementation buffers the 
+ * entire ciphertext until the tag is verified, and is not faster than Bouncy Castle for 
+ * streamed decryption.
+ * 
  * @author pheckel
- *
  */
 public abstract class AesGcmCipherSpec extends CipherSpec {
+	private static final Logger logger = Logger.getLogger(AesGcmCipherSpec.class.getSimpleName());
 	private static final int MAC_SIZE = 128;		
+	private static final int SELF_TEST_PLAINTEXT_SIZE = 1000;
 
+	/**
+	 * Identifies the implementation used to encrypt/decrypt data with AES/GCM.
+	 */
+	public enum Engine {
+		/**
+		 * Pure-Java Bouncy Castle implementation (lightweight API). Always available, and
+		 * not restricted by the JCE policy.
+		 */
+		BOUNCY_CASTLE,
+		
+		/**
+		 * JCE provider of the JVM, e.g. <tt>SunJCE</tt>. Uses HotSpot's AES/GHASH intrinsics,
+		 * but is restricted by the JCE policy. Only used for encryption; decryption always uses
+		 * {@link #BOUNCY_CASTLE}: The JCE implementation buffers the entire ciphertext until the
+		 * tag is verified, and the <tt>CipherInputStream</tt> of JDK 7 silently ignores a tag
+		 * mismatch, i.e. it does not detect tampered ciphertexts.
+		 */
+		JCE
+	}
+	
+	private Engine preferredEngine;
+	private Provider jceProvider;
+	
 	public AesGcmCipherSpec(int id, String algorithm, int keySize, int ivSize, boolean needsUnlimitedStrength) {
 		super(id, algorithm, keySize, ivSize, needsUnlimitedStrength);
 	}
 		
+	@Override
+	public int getTagSize() {
+		return MAC_SIZE;
+	}
+	
 	@Override
 	public OutputStream newCipherOutputStream(OutputStream underlyingOutputStream, byte[] secretKey, byte[] iv) throws CipherException {
-		AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine()); 
-		cipher.init(true, new AEADParameters(new KeyParameter(secretKey), MAC_SIZE, iv));
-		
-		return new org.bouncycastle.crypto.io.CipherOutputStream(underlyingOutputStream, cipher);
+		return newCipherOutputStream(underlyingOutputStream, secretKey, iv, getPreferredEngine());
 	}
 
 	@Override
 	public InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv) throws CipherException {
-		AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine()); 
-		cipher.init(false, new AEADParameters(new KeyParameter(secretKey), MAC_SIZE, iv));
+		return newCipherInputStream(underlyingInputStream, secretKey, iv, Engine.BOUNCY_CASTLE);
+	}
+	
+	public OutputStream newCipherOutputStream(OutputStream underlyingOutputStream, byte[] secretKey, byte[] iv, Engine engine) throws CipherException {
+		if (engine == Engine.JCE) {
+			return new javax.crypto.CipherOutputStream(underlyingOutputStream, newJceCipher(Cipher.ENCRYPT_MODE, secretKey, iv));
+		}
+		else {
+			AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine()); 
+			cipher.init(true, new AEADParameters(new KeyParameter(secretKey), MAC_SIZE, iv));
+			
+			return new org.bouncycastle.crypto.io.CipherOutputStream(underlyingOutputStream, cipher);
+		}
+	}
+
+	public InputStream newCipherInputStream(InputStream underlyingInputStream, byte[] secretKey, byte[] iv, Engine engine) throws CipherException {
+		if (engine == Engine.JCE) {
+			return new javax.crypto.CipherInputStream(underlyingInputStream, newJceCipher(Cipher.DECRYPT_MODE, secretKey, iv));
+		}
+		else {
+			AEADBlockCipher cipher = new GCMBlockCipher(new AESEngine()); 
+			cipher.init(false, new AEADParameters(new KeyParameter(secretKey), MAC_SIZE, iv));
+			
+			return new org.bouncycastle.crypto.io.CipherInputStream(underlyingInputStream, cipher);
+		}
+	}
+	
+	/**
+	 * Returns the fastest encryption engine that is available and compatible for this 
+	 * cipher spec. The result is determined on the first call and cached afterwards.
+	 */
+	public synchronized Engine getPreferredEngine() {
+		if (preferredEngine == null) {
+			preferredEngine = (isJceEngineUsable()) ? Engine.JCE : Engine.BOUNCY_CASTLE;
+			logger.log(Level.INFO, "Using " + preferredEngine + " encryption engine for " + this + ((jceProvider != null) ? " (" + jceProvider.getName() + ")" : ""));
+		}
+		
+		return preferredEngine;
+	}
+	
+	private Cipher newJceCipher(int mode, byte[] secretKey, byte[] iv) throws CipherException {
+		try {
+			Cipher cipher = (jceProvider != null) ? Cipher.getInstance(getAlgorithm(), jceProvider) : Cipher.getInstance(getAlgorithm());
+			cipher.init(mode, new SecretKeySpec(secretKey, "AES"), new GCMParameterSpec(MAC_SIZE, iv));
+			
+			return cipher;
+		}
+		catch (Exception e) {
+			throw new CipherException("Cannot create JCE cipher for " + this, e);
+		}
+	}
+	
+	private boolean isJceEngineUsable() {
+		try {
+			Provider provider = Cipher.getInstance(getAlgorithm()).getProvider();
+			
+			if (CipherParams.CRYPTO_PROVIDER_ID.equals(provider.getName())) {
+				logger.log(Level.FINE, "JCE engine for " + this + " is Bouncy Castle; no advantage over lightweight API.");
+				return false;
+			}
+			
+			if (Cipher.getMaxAllowedKeyLength("AES") < getKeySize()) {
+				logger.log(Level.FINE, "JCE engine for " + this + " not usable; key size restricted by JCE policy.");
+				return false;
+			}
+			
+			jceProvider = provider;
+			
+			if (!isJceEngineCompatible()) {
+				logger.log(Level.WARNING, "JCE engine for " + this + " (" + provider.getName() + ") failed self-test; using Bouncy Castle.");
+				jceProvider = null;
+				
+				return false;
+			}
+			
+			return true;
+		}
+		catch (Exception e) {
+			logger.log(Level.FINE, "JCE engine for " + this + " not available.", e);
+			jceProvider = null;
+			
+			return false;
+		}
+	}
+	
+	private boolean isJceEngineCompatible() throws Exception {
+		byte[] secretKey = CipherUtil.createRandomArray(getKeySize() / 8);
+		byte[] iv = CipherUtil.createRandomArray(getIvSize() / 8);
+		byte[] plaintext = CipherUtil.createRandomArray(SELF_TEST_PLAINTEXT_SIZE);
+		
+		// Both engines must produce the same ciphertext and decrypt it
+		byte[] bcCiphertext = encrypt(plaintext, secretKey, iv, Engine.BOUNCY_CASTLE);
+		byte[] jceCiphertext = encrypt(plaintext, secretKey, iv, Engine.JCE);
+		
+		if (!Arrays.equals(bcCiphertext, jceCiphertext) || !Arrays.equals(plaintext, decrypt(bcCiphertext, secretKey, iv, Engine.JCE))) {
+			return false;
+		}
+		
+		// Tampered ciphertext must be detected (JDK 7 CipherInputStream does not)
+		jceCiphertext[SELF_TEST_PLAINTEXT_SIZE / 2] ^= 0x01;
+		
+		try {
+			decrypt(jceCiphertext, secretKey, iv, Engine.JCE);
+			return false;
+		}
+		catch (IOException e) {
+			return true;
+		}
+	}
+	
+	private byte[] encrypt(byte[] plaintext, byte[] secretKey, byte[] iv, Engine engine) throws Exception {
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+		OutputStream cipherOutputStream = newCipherOutputStream(ciphertextOutputStream, secretKey, iv, engine);
+		
+		cipherOutputStream.write(plaintext);
+		cipherOutputStream.close();
+		
+		return ciphertextOutputStream.toByteArray();
+	}
+	
+	private byte[] decrypt(byte[] ciphertext, byte[] secretKey, byte[] iv, Engine engine) throws Exception {
+		InputStream cipherInputStream = newCipherInputStream(new ByteArrayInputStream(ciphertext), secretKey, iv, engine);
+		byte[] plaintext = IOUtils.toByteArray(cipherInputStream);
+		
+		cipherInputStream.close();
 		
-		return new org.bouncycastle.crypto.io.CipherInputStream(underlyingInputStream, cipher);
+		return plaintext;
 	}
 }
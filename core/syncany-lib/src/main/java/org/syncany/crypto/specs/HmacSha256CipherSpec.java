@@ -32,6 +32,11 @@ public class HmacSha256CipherSpec extends CipherSpec {
 		super(-1, "HmacSHA256", 256, -1, false);
 	}
 		
+	@Override
+	public int getTagSize() {
+		return 256;
+	}
+	
 	@Override
 	public OutputStream newCipherOutputStream(OutputStream underlyingOutputStream, byte[] secretKey, byte[] iv) throws CipherException {
 		throw new RuntimeException("Cannot create cipher.");
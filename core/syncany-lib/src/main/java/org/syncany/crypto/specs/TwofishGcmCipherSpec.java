@@ -35,6 +35,11 @@ public abstract class TwofishGcmCipherSpec extends CipherSpec {
 		super(id, algorithm, keySize, ivSize, needsUnlimitedStrength);
 	}
 		
+	@Override
+	public int getTagSize() {
+		return MAC_SIZE;
+	}
+	
 	@Override
 	public OutputStream newCipherOutputStream(OutputStream underlyingOutputStream, byte[] secretKey, byte[] iv) throws CipherException {
 		AEADBlockCipher cipher = new GCMBlockCipher(new TwofishEngine()); 
@@ -27,11 +27,15 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.syncany.database.dao.ApplicationSqlDao;
+import org.syncany.database.dao.SqlStatementCache;
+import org.syncany.database.dao.SqlStatementStats;
 import org.syncany.util.FileUtil;
 import org.syncany.util.SqlRunner;
 
@@ -49,9 +53,19 @@ public class DatabaseConnectionFactory {
 	private static final Logger logger = Logger.getLogger(DatabaseConnectionFactory.class.getSimpleName());
 
 	public static final String DATABASE_DRIVER = "org.hsqldb.jdbcDriver";
-	public static final String DATABASE_CONNECTION_FILE_STRING = "jdbc:hsqldb:file:%DATABASEFILE%;user=sa;password=;create=true;write_delay=false;hsqldb.write_delay=false";
+
+	// Note: Results with more than 'result_max_memory_rows' rows are buffered on disk by HSQLDB,
+	//       so that large results can be read with a SqlResultIterator in bounded memory.
+	public static final String DATABASE_CONNECTION_FILE_STRING = "jdbc:hsqldb:file:%DATABASEFILE%;user=sa;password=;create=true;write_delay=false;hsqldb.write_delay=false;hsqldb.result_max_memory_rows=50000;hsqldb.tx=mvcc";
+
 	public static final String DATABASE_RESOURCE_PATTERN = "/org/syncany/database/sql/%s";
 	public static final String DATABASE_RESOURCE_CREATE_ALL = "script.create.all.sql";
+	public static final String DATABASE_RESOURCE_UPGRADE_BINARY_IDS = "script.upgrade.binaryids.sql";
+	public static final String DATABASE_RESOURCE_UPGRADE_FILE_TREE = "script.upgrade.filetree.sql";
+
+	private static final String DATABASE_SETTING_BINARY_IDS_UPGRADE = "schema.upgrade.binaryids";
+	private static final String DATABASE_UPGRADE_STARTED = "started";
+	private static final String DATABASE_UPGRADE_DONE = "done";
 
 	public static final Map<String, String> DATABASE_STATEMENTS = new HashMap<String, String>();
 
@@ -71,7 +85,7 @@ public class DatabaseConnectionFactory {
 	 * and the application tables are created.
 	 *
 	 * @param databaseFile File at which to create/load the database
-	 * @param readOnly True if this connection is only used for reading.
+	 * @param readOnly True if this connection is only used for reading. Read-only connections are in auto-commit mode.
 	 * @return Returns a valid database connection
 	 */
 	public static Connection createConnection(File databaseFile, boolean readOnly) {
@@ -82,7 +96,12 @@ public class DatabaseConnectionFactory {
 			connectionString += ";hsqldb.sqllog=3";
 		}
 
-		return createConnection(connectionString, readOnly);
+		Connection connection = createConnection(connectionString, readOnly);
+
+		// Record executions of all statements (per database, shared by all its connections), once enabled
+		SqlStatementCache.getInstance(connection).setStatementStats(SqlStatementStats.getInstance(databaseFile));
+
+		return connection;
 	}
 
 	/**
@@ -127,16 +146,36 @@ public class DatabaseConnectionFactory {
 		try {
 			Connection connection = DriverManager.getConnection(connectionString);
 			connection.setAutoCommit(false);
-			connection.setReadOnly(readOnly);
 
-			// We use UNCOMMITTED read to enable operations to alter the database and continue
-			// with those changes, but still roll back the database if something goes wrong later.
-			connection.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+			// We use multi-version concurrency control (MVCC), so that readers (e.g. the daemon's
+			// web/API requests) are neither blocked by nor block long write transactions in up/down.
+			// Each connection sees its own uncommitted changes, and only committed changes of others.
+			connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
 
-			// Test and create tables
+			// Test and create tables, or upgrade them
 			if (!tablesExist(connection)) {
 				createTables(connection);
 			}
+			else {
+				if (!hasMvccTransactionControl(connection)) {
+					enableMvccTransactionControl(connection);
+				}
+
+				if (hasHexIdColumns(connection) || isUpgradeStarted(connection, DATABASE_SETTING_BINARY_IDS_UPGRADE)) {
+					upgradeHexIdColumns(connection);
+				}
+
+				if (!hasCurrentFileTreeTable(connection)) {
+					createCurrentFileTreeTable(connection);
+				}
+
+				endInterruptedBulkLoad(connection);
+			}
+
+			// Read-only connections do not keep a transaction open between queries. In MVCC mode,
+			// schema changes and checkpoints wait for all open transactions to end.
+			connection.setReadOnly(readOnly);
+			connection.setAutoCommit(readOnly);
 
 			return connection;
 		}
@@ -151,9 +190,9 @@ public class DatabaseConnectionFactory {
 	}
 
 	private static boolean tablesExist(Connection connection) throws SQLException {
-		try (ResultSet resultSet = connection.prepareStatement(
-				"SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_TABLES WHERE TABLE_TYPE='TABLE'")
-				.executeQuery()) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(
+				"SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_TABLES WHERE TABLE_TYPE='TABLE'");
+				ResultSet resultSet = preparedStatement.executeQuery()) {
 			resultSet.next();
 			int numberOfTables = resultSet.getInt(1);
 			logger.log(Level.INFO, "Found " + numberOfTables + " tables.");
@@ -177,6 +216,200 @@ public class DatabaseConnectionFactory {
 		connection.setAutoCommit(false);
 	}
 
+	/**
+	 * Checks whether the database uses multi-version concurrency control (MVCC). Databases
+	 * created by older versions use the default table-level locks.
+	 */
+	private static boolean hasMvccTransactionControl(Connection connection) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(
+				"SELECT PROPERTY_VALUE FROM INFORMATION_SCHEMA.SYSTEM_PROPERTIES WHERE PROPERTY_NAME='hsqldb.tx'");
+				ResultSet resultSet = preparedStatement.executeQuery()) {
+
+			return resultSet.next() && "mvcc".equalsIgnoreCase(resultSet.getString(1));
+		}
+	}
+
+	/**
+	 * Switches the transaction control of an existing database to MVCC. The setting is
+	 * persisted, so this is only done once per database.
+	 */
+	private static void enableMvccTransactionControl(Connection connection) throws SQLException {
+		logger.log(Level.INFO, "Database uses lock-based transaction control. Switching to MVCC ...");
+
+		boolean readOnly = connection.isReadOnly();
+
+		connection.setReadOnly(false);
+		connection.setAutoCommit(true);
+
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+		}
+
+		connection.setAutoCommit(false);
+		connection.setReadOnly(readOnly);
+	}
+
+	/**
+	 * Checks whether the checksum and identifier columns are still stored as hex-encoded
+	 * <tt>varchar(40)</tt> columns, i.e. whether the database was created by an older version.
+	 */
+	private static boolean hasHexIdColumns(Connection connection) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(
+				"SELECT DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA='PUBLIC' AND TABLE_NAME='CHUNK' AND COLUMN_NAME='CHECKSUM'");
+				ResultSet resultSet = preparedStatement.executeQuery()) {
+
+			return resultSet.next() && resultSet.getString(1).startsWith("CHARACTER");
+		}
+	}
+
+	/**
+	 * Converts all checksum and identifier columns from hex-encoded <tt>varchar(40)</tt> to
+	 * <tt>varbinary(20)</tt> in place. Since foreign keys on the converted columns prevent altering
+	 * their types, and their names are auto-generated, all foreign keys are dropped here and
+	 * re-created by the upgrade script.
+	 * 
+	 * <p>The steps run in auto-commit mode and cannot be undone as a whole. Instead, the upgrade
+	 * is marked as started in the <i>general_settings</i> table before the first change, and only 
+	 * marked as done after the last step succeeded. If it is interrupted in between, all steps
+	 * (which are idempotent) are repeated when the database is next opened.
+	 */
+	private static void upgradeHexIdColumns(Connection connection) throws SQLException, IOException {
+		logger.log(Level.INFO, "Database has hex-encoded ID columns. Upgrading to binary columns using " + DATABASE_RESOURCE_UPGRADE_BINARY_IDS);
+
+		boolean readOnly = connection.isReadOnly();
+
+		connection.setReadOnly(false);
+		connection.setAutoCommit(true);
+
+		writeGeneralSetting(connection, DATABASE_SETTING_BINARY_IDS_UPGRADE, DATABASE_UPGRADE_STARTED);
+
+		Map<String, String> foreignKeys = new HashMap<String, String>();
+
+		try (PreparedStatement preparedStatement = connection.prepareStatement(
+				"SELECT CONSTRAINT_NAME, TABLE_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS WHERE CONSTRAINT_SCHEMA='PUBLIC' AND CONSTRAINT_TYPE='FOREIGN KEY'");
+				ResultSet resultSet = preparedStatement.executeQuery()) {
+
+			while (resultSet.next()) {
+				foreignKeys.put(resultSet.getString("CONSTRAINT_NAME"), resultSet.getString("TABLE_NAME"));
+			}
+		}
+
+		for (Map.Entry<String, String> foreignKey : foreignKeys.entrySet()) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("ALTER TABLE " + foreignKey.getValue() + " DROP CONSTRAINT " + foreignKey.getKey());
+			}
+		}
+
+		String fullResourcePath = String.format(DATABASE_RESOURCE_PATTERN, DATABASE_RESOURCE_UPGRADE_BINARY_IDS);
+		InputStream inputStream = DatabaseConnectionFactory.class.getResourceAsStream(fullResourcePath);
+
+		SqlRunner.runScript(connection, inputStream);
+
+		writeGeneralSetting(connection, DATABASE_SETTING_BINARY_IDS_UPGRADE, DATABASE_UPGRADE_DONE);
+		connection.setAutoCommit(false);
+		connection.setReadOnly(readOnly);
+	}
+
+	/**
+	 * Checks whether the upgrade with the given setting key has been started, but 
+	 * has not been completed, e.g. because the process was killed during the upgrade. 
+	 */
+	private static boolean isUpgradeStarted(Connection connection, String upgradeSettingKey) throws SQLException {
+		return DATABASE_UPGRADE_STARTED.equals(readGeneralSetting(connection, upgradeSettingKey));
+	}
+
+	private static String readGeneralSetting(Connection connection, String key) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(getStatement("application.select.all.readGeneralSettings.sql"))) {
+			preparedStatement.setString(1, key);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return (resultSet.next()) ? resultSet.getString(1) : null;
+			}
+		}
+	}
+
+	private static void writeGeneralSetting(Connection connection, String key, String value) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(getStatement("application.insert.all.writeGeneralSettings.sql"))) {
+			preparedStatement.setString(1, key);
+			preparedStatement.setString(2, value);
+
+			preparedStatement.executeUpdate();
+		}
+	}
+
+	/**
+	 * Checks whether other connections to the database are open (in this process). If that is the
+	 * case, a bulk load might be in progress, and the database must not be repaired.
+	 *
+	 * <p>HSQLDB occasionally fails to list the sessions while another session is closed
+	 * concurrently. Since the repair can safely be done on the next start, this method
+	 * assumes other sessions in that case.
+	 */
+	private static boolean hasOtherSessions(Connection connection) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SYSTEM_SESSIONS");
+				ResultSet resultSet = preparedStatement.executeQuery()) {
+
+			resultSet.next();
+			return resultSet.getInt(1) > 1;
+		}
+		catch (SQLException e) {
+			logger.log(Level.WARNING, "Cannot list database sessions; assuming other sessions are open.", e);
+			return true;
+		}
+	}
+
+	/**
+	 * Ends a bulk load that was started, but never ended, e.g. because the process was killed
+	 * during the initial 'down'. Ending the bulk load re-creates the missing indices and the
+	 * current file tree, and re-enables foreign key checks and the redo log. A bulk load is only
+	 * ended if no other connection is open, since it might still be running in this process.
+	 *
+	 * @see ApplicationSqlDao#isBulkLoadInterrupted()
+	 */
+	private static void endInterruptedBulkLoad(Connection connection) {
+		ApplicationSqlDao applicationDao = new ApplicationSqlDao(connection);
+
+		if (applicationDao.isBulkLoadInterrupted() && !hasOtherSessions(connection)) {
+			logger.log(Level.WARNING, "Database is still in bulk-load mode; bulk load was interrupted. Ending bulk load ...");
+			applicationDao.endBulkLoad();
+		}
+	}
+
+	/**
+	 * Checks whether the materialized current file tree table <i>filetree_current</i> exists,
+	 * i.e. whether the database was created by a version that maintains it.
+	 */
+	private static boolean hasCurrentFileTreeTable(Connection connection) throws SQLException {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(
+				"SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA='PUBLIC' AND TABLE_NAME='FILETREE_CURRENT'");
+				ResultSet resultSet = preparedStatement.executeQuery()) {
+
+			resultSet.next();
+			return resultSet.getInt(1) > 0;
+		}
+	}
+
+	/**
+	 * Creates the table <i>filetree_current</i> and fills it from the <i>fileversion_master_last</i>
+	 * view. From then on, the table is updated incrementally by the DAOs.
+	 */
+	private static void createCurrentFileTreeTable(Connection connection) throws SQLException, IOException {
+		logger.log(Level.INFO, "Database has no current file tree table. Creating it using " + DATABASE_RESOURCE_UPGRADE_FILE_TREE);
+
+		boolean readOnly = connection.isReadOnly();
+
+		connection.setReadOnly(false);
+		connection.setAutoCommit(true);
+
+		String fullResourcePath = String.format(DATABASE_RESOURCE_PATTERN, DATABASE_RESOURCE_UPGRADE_FILE_TREE);
+		InputStream inputStream = DatabaseConnectionFactory.class.getResourceAsStream(fullResourcePath);
+
+		SqlRunner.runScript(connection, inputStream);
+
+		connection.setAutoCommit(false);
+		connection.setReadOnly(readOnly);
+	}
+
 	// TODO [low] Shouldn't the SqlRunner be used here? If so, the SqlRunner also needs refactoring.
 	private static String readDatabaseStatement(InputStream inputStream) {
 		try {
@@ -198,5 +198,9 @@ public class PartialFileHistory {
 		public static FileHistoryId parseFileId(String s) {
 			return new FileHistoryId(ObjectId.parseObjectId(s));
 		}
+
+		public static FileHistoryId fromBytes(byte[] array) {
+			return new FileHistoryId(array);
+		}
 	}
 }
@@ -21,7 +21,6 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,6 +40,8 @@ import org.syncany.database.dao.FileContentSqlDao;
 import org.syncany.database.dao.FileHistorySqlDao;
 import org.syncany.database.dao.FileVersionSqlDao;
 import org.syncany.database.dao.MultiChunkSqlDao;
+import org.syncany.database.dao.SqlResultIterator;
+import org.syncany.database.dao.SqlStatementCache;
 import org.syncany.operations.cleanup.CleanupOperationOptions.TimeUnit;
 import org.syncany.operations.down.DatabaseBranch;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
@@ -79,7 +80,7 @@ public class SqlDatabase {
 	public SqlDatabase(Config config, boolean readOnly) {
 		this.connection = config.createDatabaseConnection(readOnly);
 		this.applicationDao = new ApplicationSqlDao(connection);
-		this.chunkDao = new ChunkSqlDao(connection);
+		this.chunkDao = new ChunkSqlDao(connection, config.getChunkIndexFile(), config.getChunkFilterFile());
 		this.fileContentDao = new FileContentSqlDao(connection);
 		this.fileVersionDao = new FileVersionSqlDao(connection);
 		this.fileHistoryDao = new FileHistorySqlDao(connection, fileVersionDao);
@@ -96,6 +97,19 @@ public class SqlDatabase {
 
 	public void commit() throws SQLException {
 		connection.commit();
+		chunkDao.syncCache();
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "Committed database; " + getStatementCache());
+		}
+	}
+
+	/**
+	 * Returns the {@link SqlStatementCache} of this database's connection, e.g. to query
+	 * how many statements were prepared and how much time was saved by reusing them.
+	 */
+	public SqlStatementCache getStatementCache() {
+		return SqlStatementCache.getInstance(connection);
 	}
 
 	@Override
@@ -103,6 +117,7 @@ public class SqlDatabase {
 		try {
 			if (!connection.isClosed()) {
 				connection.commit();
+				SqlStatementCache.removeInstance(connection);
 				connection.close();
 			}
 		}
@@ -113,6 +128,7 @@ public class SqlDatabase {
 
 	public void rollback() throws SQLException {
 		connection.rollback();
+		chunkDao.discardPendingChunks();
 	}
 
 	public void removeUnreferencedDatabaseEntities() {
@@ -163,25 +179,134 @@ public class SqlDatabase {
 		applicationDao.writeCleanupTime(cleanupTime);		
 	}
 
+	public Long getCompactTime() {
+		return applicationDao.getCompactTime();
+	}
+
+	public void writeCompactTime(long compactTime) {
+		applicationDao.writeCompactTime(compactTime);
+	}
+
 	public void deleteAll() {
 		applicationDao.deleteAll();
+		chunkDao.clearCache();
 	}
 
 	public void shutdown() {
 		applicationDao.shutdown();
 	}
 
+	/**
+	 * Closes this database's connection. Unlike {@link #shutdown()}, this does not shut
+	 * down the database itself, i.e. other connections can still be used.
+	 */
+	public void close() {
+		try {
+			if (!connection.isClosed()) {
+				SqlStatementCache.removeInstance(connection);
+				connection.close();
+			}
+		}
+		catch (SQLException e) {
+			logger.log(Level.WARNING, "Cannot close database connection.", e);
+		}
+	}
+
+	/**
+	 * Compacts the database, i.e. creates missing non-primary indices and reclaims the
+	 * dead space in the data file.
+	 *
+	 * @see ApplicationSqlDao#compact()
+	 */
+	public void compact() throws SQLException {
+		applicationDao.compact();
+		commit();
+	}
+
+	public long getDataFileSize() {
+		return applicationDao.getDataFileSize();
+	}
+
+	public long getDataFileDeadSpace() {
+		return applicationDao.getDataFileDeadSpace();
+	}
+
+	public boolean hasOtherActiveTransactions() {
+		return applicationDao.hasOtherActiveTransactions();
+	}
+
+	/**
+	 * Switches the database to bulk-load mode, if (and only if) it does not contain any
+	 * database versions yet. Bulk-load mode is meant to quickly write a large number of
+	 * database versions, e.g. on the first 'down' of a new client.
+	 *
+	 * <p>Since dropping and re-creating the indices waits for all other transactions to
+	 * end, bulk-load mode is not enabled if other connections have open transactions.
+	 *
+	 * <p>Changes made in bulk-load mode cannot be rolled back. Once all changes are written
+	 * and committed (see {@link #commit()}), the mode must be ended with {@link #endBulkLoad()}.
+	 * If writing or committing fails, it must be ended with {@link #abortBulkLoad()} instead.
+	 *
+	 * @see ApplicationSqlDao#beginBulkLoad()
+	 * @return Returns <tt>true</tt> if bulk-load mode was enabled, <tt>false</tt> otherwise
+	 */
+	public boolean beginBulkLoad() {
+		if (databaseVersionDao.getDatabaseVersionCount() > 0) {
+			return false;
+		}
+
+		if (applicationDao.hasOtherActiveTransactions()) {
+			logger.log(Level.INFO, "Other connections have open transactions. Not using bulk-load mode.");
+			return false;
+		}
+
+		applicationDao.beginBulkLoad();
+		databaseVersionDao.setBulkLoad(true);
+
+		return true;
+	}
+
+	public boolean isBulkLoad() {
+		return databaseVersionDao.isBulkLoad();
+	}
+
+	/**
+	 * Ends the bulk-load mode, i.e. re-creates the indices and the current file tree. This does not
+	 * commit any pending changes: Since HSQLDB commits the current transaction before every
+	 * schema change, this method must only be called after {@link #commit()}.
+	 *
+	 * @see ApplicationSqlDao#endBulkLoad()
+	 */
+	public void endBulkLoad() {
+		databaseVersionDao.setBulkLoad(false);
+		applicationDao.endBulkLoad();
+	}
+
+	/**
+	 * Ends the bulk-load mode and deletes everything written since it was started. Since
+	 * bulk-load mode is only enabled for empty databases, this restores the previous state.
+	 */
+	public void abortBulkLoad() throws SQLException {
+		deleteAll();
+		commit();
+		endBulkLoad();
+	}
+
 	// Database version
 
-	public Iterator<DatabaseVersion> getDirtyDatabaseVersions() {
+	public SqlResultIterator<DatabaseVersion> getDirtyDatabaseVersions() {
 		return databaseVersionDao.getDirtyDatabaseVersions();
 	}
 
-	public Iterator<DatabaseVersion> getDatabaseVersionsTo(String machineName, long maxLocalClientVersion) {
+	public SqlResultIterator<DatabaseVersion> getDatabaseVersionsTo(String machineName, long maxLocalClientVersion) {
 		return databaseVersionDao.getDatabaseVersionsTo(machineName, maxLocalClientVersion);
 	}
 
-	public Iterator<DatabaseVersion> getLastDatabaseVersions(int maxDatabaseVersionCount, int startDatabaseVersionIndex, int maxFileHistoryCount) {
+	public SqlResultIterator<DatabaseVersion> getMasterDatabaseVersions() {
+		return databaseVersionDao.getMasterDatabaseVersions();
+	}
+
+	public SqlResultIterator<DatabaseVersion> getLastDatabaseVersions(int maxDatabaseVersionCount, int startDatabaseVersionIndex, int maxFileHistoryCount) {
 		return databaseVersionDao.getLastDatabaseVersions(maxDatabaseVersionCount, startDatabaseVersionIndex, maxFileHistoryCount);
 	}
 
@@ -229,6 +354,10 @@ public class SqlDatabase {
 		return fileHistoryDao.getFileHistoriesWithFileVersions();
 	}
 
+	public SqlResultIterator<PartialFileHistory> getFileHistoriesWithFileVersionsIterator(int fetchSize) {
+		return fileHistoryDao.getFileHistoriesWithFileVersionsIterator(fetchSize);
+	}
+
 	public Map<FileHistoryId, PartialFileHistory> getFileHistories(List<FileHistoryId> fileHistoryIds) {
 		return fileHistoryDao.getFileHistories(fileHistoryIds);
 	}
@@ -237,7 +366,7 @@ public class SqlDatabase {
 		return fileHistoryDao.getFileHistoriesWithLastVersion();
 	}
 
-	public Collection<PartialFileHistory> getFileHistoriesWithLastVersionByChecksumSizeAndModifiedDate(String checksum, long size, Date modifiedDate) {
+	public Collection<PartialFileHistory> getFileHistoriesWithLastVersionByChecksumSizeAndModifiedDate(FileChecksum checksum, long size, Date modifiedDate) {
 		return fileHistoryDao.getFileHistoriesByChecksumSizeAndModifiedDate(checksum, size, modifiedDate);
 	}
 
@@ -259,6 +388,10 @@ public class SqlDatabase {
 		return fileVersionDao.getCurrentFileTree();
 	}
 
+	public SqlResultIterator<FileVersion> getCurrentFileTreeIterator(int fetchSize) {
+		return fileVersionDao.getCurrentFileTreeIterator(fetchSize);
+	}
+
 	public void removeSmallerOrEqualFileVersions(Map<FileHistoryId, FileVersion> purgeFileVersions) throws SQLException {
 		fileVersionDao.removeFileVersions(purgeFileVersions);
 	}
@@ -273,6 +406,12 @@ public class SqlDatabase {
 		return fileVersionDao.getFileList(pathExpression, date, fileHistoryId, recursive, deleted, fileTypes);
 	}
 
+	public SqlResultIterator<FileVersion> getFileListIterator(String pathExpression, Date date, boolean fileHistoryId, boolean recursive,
+			boolean deleted, Set<FileType> fileTypes, int fetchSize) {
+
+		return fileVersionDao.getFileListIterator(pathExpression, date, fileHistoryId, recursive, deleted, fileTypes, fetchSize);
+	}
+
 	public List<FileVersion> getFileHistory(FileHistoryId fileHistoryId) {
 		return fileVersionDao.getFileHistory(fileHistoryId);
 	}
@@ -289,6 +428,10 @@ public class SqlDatabase {
 		return fileVersionDao.getFileHistoriesToPurgeBefore(timestamp);
 	}
 
+	public SqlResultIterator<PartialFileHistory> getFileHistoriesToPurgeBeforeIterator(long timestamp, int fetchSize) {
+		return fileVersionDao.getFileHistoriesToPurgeBeforeIterator(timestamp, fetchSize);
+	}
+
 	public Map<FileHistoryId, FileVersion> getDeletedFileVersions() {
 		return fileVersionDao.getDeletedFileVersions();
 	}
@@ -331,6 +474,10 @@ public class SqlDatabase {
 		return multiChunkDao.getMultiChunks();
 	}
 
+	public SqlResultIterator<MultiChunkEntry> getMultiChunksIterator(int fetchSize) {
+		return multiChunkDao.getMultiChunksIterator(fetchSize);
+	}
+
 	public void writeMuddyMultiChunks(Map<DatabaseVersionHeader, Collection<MultiChunkEntry>> muddyMultiChunks) throws SQLException {
 		multiChunkDao.writeMuddyMultiChunks(muddyMultiChunks);
 	}
@@ -349,6 +496,10 @@ public class SqlDatabase {
 		return chunkDao.getChunks(vectorClock);
 	}
 
+	public boolean mightContainChunk(ChunkChecksum chunkChecksum) {
+		return chunkDao.mightContainChunk(chunkChecksum);
+	}
+
 	public ChunkEntry getChunk(ChunkChecksum chunkChecksum) {
 		return chunkDao.getChunk(chunkChecksum);
 	}
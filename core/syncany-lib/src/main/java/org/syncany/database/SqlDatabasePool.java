@@ -0,0 +1,206 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+
+/**
+ * Small pool of read-only {@link SqlDatabase}s, shared by all readers of one folder's
+ * local database (e.g. the daemon's request handlers, or the file system actions of
+ * the 'down' operation).
+ *
+ * <p>Since the database runs in MVCC mode and read-only connections are in auto-commit
+ * mode, pooled readers neither block nor are blocked by long write transactions, e.g.
+ * of 'up' or 'down'. Without the pool, every reader opened its own connection, which
+ * was only closed when it was garbage collected.
+ *
+ * <p>Every user of the shared pool of a folder gets it via {@link #open(Config)} and must
+ * {@link #close()} it when done, ideally in a <tt>finally</tt> block. The pool and its
+ * connections are closed when the last user closes it. Long-running operations (e.g. 'watch'
+ * or 'down') keep the pool open for their entire run, so that short-lived users in between
+ * (e.g. the daemon's request handlers, or single file system actions) reuse its connections.
+ *
+ * <p>Databases are taken from the pool with {@link #borrow()}, and must be given back
+ * with {@link #release(SqlDatabase)}, ideally in a <tt>finally</tt> block. If all
+ * databases are in use, {@link #borrow()} waits until one is released.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SqlDatabasePool {
+	private static final Logger logger = Logger.getLogger(SqlDatabasePool.class.getSimpleName());
+
+	public static final int DEFAULT_MAX_SIZE = 4;
+	private static final Map<File, SqlDatabasePool> instances = new HashMap<File, SqlDatabasePool>();
+
+	private final Config config;
+	private final int maxSize;
+	private final Semaphore availableDatabases;
+	private final Queue<SqlDatabase> idleDatabases;
+
+	private int users;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new pool for the local database of the given config. Use {@link #open(Config)}
+	 * to get the shared pool of a folder instead.
+	 */
+	public SqlDatabasePool(Config config, int maxSize) {
+		this.config = config;
+		this.maxSize = maxSize;
+		this.availableDatabases = new Semaphore(maxSize, true);
+		this.idleDatabases = new ConcurrentLinkedQueue<SqlDatabase>();
+		this.users = 1;
+		this.closed = false;
+	}
+
+	/**
+	 * Returns the shared pool for the local database of the given config, and creates
+	 * a new one if none exists yet (or the previous one has been closed). The caller
+	 * must {@link #close()} the pool when it no longer needs it.
+	 */
+	public static SqlDatabasePool open(Config config) {
+		File databaseFile = config.getDatabaseFile().getAbsoluteFile();
+
+		synchronized (instances) {
+			SqlDatabasePool databasePool = instances.get(databaseFile);
+
+			if (databasePool == null) {
+				databasePool = new SqlDatabasePool(config, DEFAULT_MAX_SIZE);
+				instances.put(databaseFile, databasePool);
+			}
+			else {
+				databasePool.users++;
+			}
+
+			return databasePool;
+		}
+	}
+
+	/**
+	 * Returns an idle read-only database from the pool, or opens a new one if none is idle.
+	 * If all databases of the pool are in use, this method waits until one is released.
+	 */
+	public SqlDatabase borrow() {
+		if (closed) {
+			throw new IllegalStateException("Database pool is closed.");
+		}
+
+		availableDatabases.acquireUninterruptibly();
+
+		try {
+			SqlDatabase database;
+
+			while ((database = idleDatabases.poll()) != null) {
+				if (isUsable(database)) {
+					return database;
+				}
+			}
+
+			logger.log(Level.FINE, "No idle database in pool; opening new read-only database connection ...");
+			return new SqlDatabase(config, true);
+		}
+		catch (RuntimeException e) {
+			availableDatabases.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a database taken by {@link #borrow()} to the pool. If the pool has been
+	 * closed in the meantime, the database is closed instead.
+	 */
+	public void release(SqlDatabase database) {
+		if (database == null) {
+			return;
+		}
+
+		if (closed || !isUsable(database)) {
+			database.close();
+		}
+		else {
+			idleDatabases.offer(database);
+		}
+
+		availableDatabases.release();
+	}
+
+	/**
+	 * Gives up the caller's use of the pool. If this was the last user, all idle databases
+	 * are closed and the pool is removed from the shared instances. Databases that are
+	 * currently in use are closed when they are released.
+	 */
+	public void close() {
+		synchronized (instances) {
+			if (closed || --users > 0) {
+				return;
+			}
+
+			closed = true;
+			File databaseFile = config.getDatabaseFile().getAbsoluteFile();
+
+			if (instances.get(databaseFile) == this) {
+				instances.remove(databaseFile);
+			}
+		}
+
+		logger.log(Level.FINE, "Last user closed database pool; closing " + idleDatabases.size() + " idle database(s) ...");
+
+		SqlDatabase database;
+
+		while ((database = idleDatabases.poll()) != null) {
+			database.close();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getIdleCount() {
+		return idleDatabases.size();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private boolean isUsable(SqlDatabase database) {
+		try {
+			return !database.getConnection().isClosed();
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SqlDatabasePool[database=" + config.getDatabaseFile() + ", idle=" + idleDatabases.size() + ", maxSize=" + maxSize + ", closed="
+				+ closed + "]";
+	}
+}
@@ -17,10 +17,24 @@
  */
 package org.syncany.database;
 
-import java.util.TreeMap;
-import java.util.regex.Matcher;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
+import org.syncany.util.StringUtil;
+
 /**
  * Implements a vector clock that records the time stamps of all send and receive
  * events. It contains functions to compare and merge two vector clocks.
@@ -35,26 +49,45 @@ import java.util.regex.Pattern;
  *  <li>Event A and B happened simultaneously (no cause/effect relationship)</li>
  * </ul>
  *
+ * <p>Vector clocks are cloned and compared very often during reconciliation. To keep this
+ * cheap with many clients, machine names are interned to small integer IDs (per JVM), and
+ * each clock entry is packed into a single <tt>long</tt> (client ID in the upper bits, time
+ * in the lower {@value #TIME_BITS} bits). Entries are kept sorted by client ID, so that
+ * {@link #compare(VectorClock, VectorClock) compare()} is a simple, allocation-free merge
+ * of two arrays. The client IDs never leave the JVM: {@link #toString()} and {@link #toBytes()}
+ * use machine names, sorted alphabetically.
+ *
  * @author Frits de Nijs
  * @author Peter Dijkshoorn
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
-public class VectorClock extends TreeMap<String, Long> {
-	private static final long serialVersionUID = 109876543L;	
-	
-	private static final Pattern CLOCK_PATTERN = Pattern.compile("\\(([^)]*)\\)");
-	private static final int CLOCK_PATTERN_GROUP_CONTENT = 1;
-	
-	private static final Pattern ENTRY_PATTERN = Pattern.compile("([a-zA-Z]+)(\\d+)");
-	private static final int ENTRY_PATTERN_GROUP_NAME = 1;
-	private static final int ENTRY_PATTERN_GROUP_TIME = 2;
-
-	public static final Pattern MACHINE_PATTERN = Pattern.compile("[a-zA-Z]+");	
+public class VectorClock implements Serializable, Cloneable {
+	private static final long serialVersionUID = 109876543L;
+
+	private static final int TIME_BITS = 48;
+	private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+	private static final int MAX_CLIENT_ID = (1 << (63 - TIME_BITS)) - 1;
+
+	private static final long[] EMPTY_ENTRIES = new long[0];
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Map<String, Integer> clientIds = new ConcurrentHashMap<String, Integer>();
+	private static final List<String> clientNames = new ArrayList<String>();
+
+	public static final Pattern MACHINE_PATTERN = Pattern.compile("[a-zA-Z]+");
 
 	public enum VectorClockComparison {
 		SMALLER, GREATER, EQUAL, SIMULTANEOUS;
 	}
 
+	private transient long[] entries;
+	private transient String serializedVectorClock;
+
+	public VectorClock() {
+		this.entries = EMPTY_ENTRIES;
+		this.serializedVectorClock = null;
+	}
+
 	/**
 	 * Increases the component of a unit by 1.
 	 *
@@ -64,8 +97,8 @@ public class VectorClock extends TreeMap<String, Long> {
 	public Long incrementClock(String unit) {
 		validateUnitName(unit);
 
-		Long newValue = (containsKey(unit)) ? get(unit).longValue() + 1 : 1L;
-		put(unit, newValue);
+		long newValue = get(unit) + 1;
+		setTime(internClientId(unit), newValue);
 
 		return newValue;
 	}
@@ -84,33 +117,94 @@ public class VectorClock extends TreeMap<String, Long> {
 	 */
 	public void setClock(String unit, long value) {
 		validateUnitName(unit);
-		put(unit, value);
+		setTime(internClientId(unit), value);
 	}
 
 	/**
 	 * Retrieve the unit's value
 	 *
 	 * @param unit The identifier of the vector element being retrieved
-	 * @return Returns the value of the unit (if existent), or <tt>null</tt> if it does not exist
+	 * @return Returns the value of the unit (if existent), or <tt>0</tt> if it does not exist
 	 */
 	public Long getClock(String unit) {
 		return get(unit);
 	}
 
-	@Override
-	public Long get(Object unit) { // TODO [low] This should not be used, or shoul it? Why inherit from TreeMap?
-		Long lResult = super.get(unit);
+	/**
+	 * Retrieve the unit's value, or <tt>0</tt> if the unit is not part of this clock.
+	 */
+	public long get(String unit) {
+		Integer clientId = clientIds.get(unit);
+
+		if (clientId != null) {
+			int entryIndex = indexOf(clientId);
+
+			if (entryIndex >= 0) {
+				return entries[entryIndex] & TIME_MASK;
+			}
+		}
+
+		return 0L;
+	}
+
+	/**
+	 * Returns the number of units in this clock (including units with value <tt>0</tt>).
+	 */
+	public int size() {
+		return entries.length;
+	}
+
+	public boolean isEmpty() {
+		return entries.length == 0;
+	}
+
+	/**
+	 * Returns the entries of this clock, sorted by machine name. Unlike the internal
+	 * representation, the returned list is not packed and should not be used in hot paths.
+	 */
+	public List<Map.Entry<String, Long>> entrySet() {
+		List<Map.Entry<String, Long>> entryList = new ArrayList<Map.Entry<String, Long>>(entries.length);
 
-		if (lResult == null) {
-			lResult = 0L;
+		for (long entry : entries) {
+			entryList.add(new SimpleImmutableEntry<String, Long>(getClientName(entry), entry & TIME_MASK));
 		}
 
-		return lResult;
+		Collections.sort(entryList, new Comparator<Map.Entry<String, Long>>() {
+			@Override
+			public int compare(Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2) {
+				return entry1.getKey().compareTo(entry2.getKey());
+			}
+		});
+
+		return entryList;
 	}
 
 	@Override
 	public VectorClock clone() {
-		return (VectorClock) super.clone();
+		VectorClock clonedVectorClock = new VectorClock();
+
+		clonedVectorClock.entries = entries; // Copy-on-write, see setTime()
+		clonedVectorClock.serializedVectorClock = serializedVectorClock;
+
+		return clonedVectorClock;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		if (!(obj instanceof VectorClock)) {
+			return false;
+		}
+
+		return Arrays.equals(entries, ((VectorClock) obj).entries);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(entries);
 	}
 
 	@Override
@@ -120,57 +214,158 @@ public class VectorClock extends TreeMap<String, Long> {
 		 * It is used in hundreds of tests! Don't mess with it!
 		 */
 
-		Object[] lIDs = keySet().toArray();
-		Object[] lRequests = values().toArray();
+		if (serializedVectorClock == null) {
+			StringBuilder builder = new StringBuilder();
+			builder.append('(');
+
+			List<Map.Entry<String, Long>> entryList = entrySet();
 
-		StringBuilder builder = new StringBuilder();
-		builder.append('(');
-		for (int i = 0; i < lRequests.length; i++) {
-			builder.append(lIDs[i]);
-			builder.append(lRequests[i].toString());
+			for (int i = 0; i < entryList.size(); i++) {
+				builder.append(entryList.get(i).getKey());
+				builder.append(entryList.get(i).getValue());
 
-			if (i + 1 < lRequests.length) {
-				builder.append(',');
+				if (i + 1 < entryList.size()) {
+					builder.append(',');
+				}
 			}
-		}
 
-		builder.append(')');
+			builder.append(')');
+			serializedVectorClock = builder.toString();
+		}
 
-		return builder.toString();
+		return serializedVectorClock;
 	}
-	
+
 	/**
 	 * Converts a serialized vector clock back into a {@link VectorClock} object.
 	 * @see #toString()
 	 */
 	public static VectorClock parseVectorClock(String serializedVectorClock) {
+		int length = serializedVectorClock.length();
+
+		if (length < 2 || serializedVectorClock.charAt(0) != '(' || serializedVectorClock.charAt(length - 1) != ')') {
+			throw new IllegalArgumentException("Not a valid vector clock: " + serializedVectorClock);
+		}
+
 		VectorClock vectorClock = new VectorClock();
-		
-		Matcher clockMatcher = CLOCK_PATTERN.matcher(serializedVectorClock);
-		
-		if (clockMatcher.matches()) {
-			String clockContents = clockMatcher.group(CLOCK_PATTERN_GROUP_CONTENT);
-			String[] clockEntries = clockContents.split(",");
-			
-			for (String clockEntry : clockEntries) {
-				Matcher clockEntryMatcher = ENTRY_PATTERN.matcher(clockEntry);
-				
-				if (clockEntryMatcher.matches()) {
-					String machineName = clockEntryMatcher.group(ENTRY_PATTERN_GROUP_NAME);
-					Long clockValue = Long.parseLong(clockEntryMatcher.group(ENTRY_PATTERN_GROUP_TIME));
-					
-					vectorClock.put(machineName, clockValue);
-				}
-				else {
-					throw new IllegalArgumentException("Not a valid vector clock, entry does not match pattern: " + clockEntry);
-				}
+		int position = 1;
+
+		while (position < length - 1) {
+			int entryEnd = serializedVectorClock.indexOf(',', position);
+			entryEnd = (entryEnd >= 0) ? entryEnd : length - 1;
+
+			int nameEnd = position;
+
+			while (nameEnd < entryEnd && isMachineNameChar(serializedVectorClock.charAt(nameEnd))) {
+				nameEnd++;
 			}
-			
-			return vectorClock;
+
+			if (nameEnd == position || nameEnd == entryEnd) {
+				throw new IllegalArgumentException("Not a valid vector clock, entry does not match pattern: "
+						+ serializedVectorClock.substring(position, entryEnd));
+			}
+
+			String machineName = serializedVectorClock.substring(position, nameEnd);
+			long clockValue = parseClockValue(serializedVectorClock, nameEnd, entryEnd);
+
+			vectorClock.setTime(internClientId(machineName), clockValue);
+			position = entryEnd + 1;
 		}
-		else {
-			throw new IllegalArgumentException("Not a valid vector clock: " + serializedVectorClock);
+
+		return vectorClock;
+	}
+
+	private static boolean isMachineNameChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static long parseClockValue(String serializedVectorClock, int start, int end) {
+		long value = 0;
+
+		for (int i = start; i < end; i++) {
+			char c = serializedVectorClock.charAt(i);
+
+			if (c < '0' || c > '9' || value > (TIME_MASK - (c - '0')) / 10) {
+				throw new IllegalArgumentException("Not a valid vector clock, invalid time value: " + serializedVectorClock.substring(start, end));
+			}
+
+			value = value * 10 + (c - '0');
+		}
+
+		return value;
+	}
+
+	/**
+	 * Serializes this vector clock into a stable, compact binary form, independent of the
+	 * internal client IDs: the number of entries, followed by the machine name (length and
+	 * UTF-8 bytes) and time of each entry, sorted by machine name. All numbers are encoded as
+	 * unsigned variable-length integers (7 bits per byte).
+	 *
+	 * @see #fromBytes(byte[])
+	 */
+	public byte[] toBytes() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(4 + entries.length * 8);
+		writeVarLong(out, entries.length);
+
+		for (Map.Entry<String, Long> entry : entrySet()) {
+			byte[] machineNameBytes = StringUtil.toBytesUTF8(entry.getKey());
+
+			writeVarLong(out, machineNameBytes.length);
+			out.write(machineNameBytes, 0, machineNameBytes.length);
+			writeVarLong(out, entry.getValue());
 		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Converts a binary vector clock (as created by {@link #toBytes()}) back into a
+	 * {@link VectorClock} object.
+	 */
+	public static VectorClock fromBytes(byte[] serializedVectorClock) {
+		VectorClock vectorClock = new VectorClock();
+		int[] position = new int[] { 0 };
+
+		long entryCount = readVarLong(serializedVectorClock, position);
+
+		for (long i = 0; i < entryCount; i++) {
+			long machineNameLength = readVarLong(serializedVectorClock, position);
+
+			if (machineNameLength > serializedVectorClock.length - position[0]) {
+				throw new IllegalArgumentException("Not a valid binary vector clock, machine name length too large: " + machineNameLength);
+			}
+
+			String machineName = new String(serializedVectorClock, position[0], (int) machineNameLength, UTF8);
+			position[0] += (int) machineNameLength;
+
+			vectorClock.setClock(machineName, readVarLong(serializedVectorClock, position));
+		}
+
+		return vectorClock;
+	}
+
+	private static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.write((int) value);
+	}
+
+	private static long readVarLong(byte[] bytes, int[] position) {
+		long value = 0;
+
+		for (int shift = 0; shift < 64 && position[0] < bytes.length; shift += 7) {
+			int b = bytes[position[0]++] & 0xFF;
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalArgumentException("Not a valid binary vector clock, invalid variable-length integer.");
 	}
 
 	/**
@@ -181,59 +376,162 @@ public class VectorClock extends TreeMap<String, Long> {
 	 * Two. VectorComparison.SMALLER If One < Two. VectorComparison.SIMULTANEOUS
 	 * If One != Two.
 	 *
+	 * <p>Missing entries are treated as <tt>0</tt>. Since the entries of both clocks are
+	 * sorted by client ID, this walks both arrays once and does not allocate any objects.
+	 *
 	 * @param clock1 First Clock being compared.
 	 * @param clock2 Second Clock being compared.
 	 * @return VectorComparison value indicating how One relates to Two.
 	 */
 	public static VectorClockComparison compare(VectorClock clock1, VectorClock clock2) {
+		long[] entries1 = clock1.entries;
+		long[] entries2 = clock2.entries;
+
 		// Initially we assume it is all possible things.
-		boolean isEqual = true;
 		boolean isGreater = true;
 		boolean isSmaller = true;
 
-		// Go over all elements in Clock one.
-		for (String lEntry : clock1.keySet()) {
-			// Compare if also present in clock two.
-			if (clock2.containsKey(lEntry)) {
-				// If there is a difference, it can never be equal.
-				// Greater / smaller depends on the difference.
-				if (clock1.get(lEntry) < clock2.get(lEntry)) {
-					isEqual = false;
-					isGreater = false;
-				}
-				if (clock1.get(lEntry) > clock2.get(lEntry)) {
-					isEqual = false;
-					isSmaller = false;
-				}
+		int index1 = 0;
+		int index2 = 0;
+
+		while ((index1 < entries1.length || index2 < entries2.length) && (isGreater || isSmaller)) {
+			long time1;
+			long time2;
+
+			if (index2 >= entries2.length || (index1 < entries1.length && clientId(entries1[index1]) < clientId(entries2[index2]))) {
+				time1 = entries1[index1++] & TIME_MASK; // Only in clock one, assume zero in two
+				time2 = 0;
 			}
-			// Else assume zero (default value is 0).
-			else if (clock1.get(lEntry) != 0) {
-				isEqual = false;
-				isSmaller = false;
+			else if (index1 >= entries1.length || clientId(entries2[index2]) < clientId(entries1[index1])) {
+				time1 = 0; // Only in clock two, assume zero in one
+				time2 = entries2[index2++] & TIME_MASK;
+			}
+			else {
+				time1 = entries1[index1++] & TIME_MASK;
+				time2 = entries2[index2++] & TIME_MASK;
 			}
-		}
 
-		// Go over all elements in Clock two.
-		for (String lEntry : clock2.keySet()) {
-			// Only elements we have not found in One still need to be checked.
-			if (!clock1.containsKey(lEntry) && (clock2.get(lEntry) != 0)) {
-				isEqual = false;
+			// If there is a difference, it can never be equal.
+			// Greater / smaller depends on the difference.
+			if (time1 < time2) {
 				isGreater = false;
 			}
+			else if (time1 > time2) {
+				isSmaller = false;
+			}
 		}
 
 		// Return based on determined information.
-		if (isEqual) {
+		if (isGreater && isSmaller) {
 			return VectorClockComparison.EQUAL;
 		}
-		else if (isGreater && !isSmaller) {
+		else if (isGreater) {
 			return VectorClockComparison.GREATER;
 		}
-		else if (isSmaller && !isGreater) {
+		else if (isSmaller) {
 			return VectorClockComparison.SMALLER;
 		}
 		else {
 			return VectorClockComparison.SIMULTANEOUS;
 		}
 	}
+
+	private void setTime(int clientId, long time) {
+		if (time < 0 || time > TIME_MASK) {
+			throw new IllegalArgumentException("Vector clock time must be between 0 and " + TIME_MASK + ", but was " + time);
+		}
+
+		long newEntry = ((long) clientId << TIME_BITS) | time;
+		int entryIndex = indexOf(clientId);
+
+		// Entries are never modified in place, because clones share the array
+		long[] newEntries;
+
+		if (entryIndex >= 0) {
+			newEntries = entries.clone();
+			newEntries[entryIndex] = newEntry;
+		}
+		else {
+			int insertIndex = -(entryIndex + 1);
+
+			newEntries = new long[entries.length + 1];
+			System.arraycopy(entries, 0, newEntries, 0, insertIndex);
+			System.arraycopy(entries, insertIndex, newEntries, insertIndex + 1, entries.length - insertIndex);
+			newEntries[insertIndex] = newEntry;
+		}
+
+		entries = newEntries;
+		serializedVectorClock = null;
+	}
+
+	private int indexOf(int clientId) {
+		int low = 0;
+		int high = entries.length - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int middleClientId = clientId(entries[middle]);
+
+			if (middleClientId < clientId) {
+				low = middle + 1;
+			}
+			else if (middleClientId > clientId) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+
+		return -(low + 1);
+	}
+
+	private static int clientId(long entry) {
+		return (int) (entry >>> TIME_BITS);
+	}
+
+	private static String getClientName(long entry) {
+		synchronized (clientNames) {
+			return clientNames.get(clientId(entry));
+		}
+	}
+
+	private static int internClientId(String machineName) {
+		Integer clientId = clientIds.get(machineName);
+
+		if (clientId != null) {
+			return clientId;
+		}
+
+		synchronized (clientNames) {
+			clientId = clientIds.get(machineName);
+
+			if (clientId == null) {
+				if (clientNames.size() > MAX_CLIENT_ID) {
+					throw new IllegalStateException("Too many different machine names in vector clocks: " + clientNames.size());
+				}
+
+				clientId = clientNames.size();
+
+				clientNames.add(machineName);
+				clientIds.put(machineName, clientId);
+			}
+
+			return clientId;
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeUTF(toString());
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		VectorClock vectorClock = parseVectorClock(in.readUTF());
+
+		entries = vectorClock.entries;
+		serializedVectorClock = vectorClock.serializedVectorClock;
+	}
 }
@@ -46,11 +46,19 @@ public abstract class AbstractSqlDao {
 		return getStatement(connection, resourceId);
 	}
 	
+	/**
+	 * Returns a prepared statement for the given SQL resource identifier. Statements are
+	 * taken from the {@link SqlStatementCache} of the connection and returned to it when
+	 * they are closed, so they must always be closed after use.
+	 */
 	protected PreparedStatement getStatement(Connection overrideConnection, String resourceId) throws SQLException {
-		return overrideConnection.prepareStatement(DatabaseConnectionFactory.getStatement(resourceId));
+		return SqlStatementCache.getInstance(overrideConnection).getStatement(resourceId);
 	}
 	
 	protected void runScript(String resourceId) throws SQLException, IOException {
+		long scriptStartTime = System.nanoTime();
 		SqlRunner.runScript(connection, DatabaseConnectionFactory.getStatementInputStream(resourceId));
+
+		SqlStatementCache.getInstance(connection).recordExecution(resourceId, System.nanoTime() - scriptStartTime);
 	}
 }
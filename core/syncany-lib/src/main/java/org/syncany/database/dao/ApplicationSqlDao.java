@@ -21,6 +21,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -38,6 +39,15 @@ import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 public class ApplicationSqlDao extends AbstractSqlDao {
 	protected static final Logger logger = Logger.getLogger(ApplicationSqlDao.class.getSimpleName());
 
+	private static final long BULK_LOAD_MAX_CACHE_SIZE_KB = 1024 * 1024;
+	private static final int BULK_LOAD_CACHE_ROWS_PER_KB = 2;
+
+	private static final String BULK_LOAD_SETTING = "bulkLoad";
+	private static final String BULK_LOAD_SETTING_CACHE_SIZE = "bulkLoad.previousCacheSize";
+	private static final String BULK_LOAD_SETTING_CACHE_ROWS = "bulkLoad.previousCacheRows";
+	private static final String BULK_LOAD_STARTED = "started";
+	private static final String BULK_LOAD_DONE = "done";
+
 	public ApplicationSqlDao(Connection connection) {
 		super(connection);
 	}
@@ -75,7 +85,7 @@ public class ApplicationSqlDao extends AbstractSqlDao {
 					String clientName = resultSet.getString("client");
 					int fileNumber = resultSet.getInt("filenumber");
 
-					highestKnownDatabaseFilenameNumbers.put(clientName, (long) fileNumber);
+					highestKnownDatabaseFilenameNumbers.setClock(clientName, fileNumber);
 				}
 
 				return highestKnownDatabaseFilenameNumbers;
@@ -133,6 +143,181 @@ public class ApplicationSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	/**
+	 * Checks whether any other connection (session) currently has an open transaction.
+	 *
+	 * <p>In MVCC mode, schema changes (e.g. dropping indices) and checkpoints wait until
+	 * all other transactions have ended. This method can be used to avoid waiting for
+	 * connections that do not commit (in time).
+	 */
+	public boolean hasOtherActiveTransactions() {
+		try (PreparedStatement preparedStatement = getStatement("application.select.all.getOtherActiveTransactionCount.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return resultSet.next() && resultSet.getInt("transaction_count") > 0;
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Switches the database to bulk-load mode: The redo log and foreign key checks are
+	 * disabled, all non-primary indices are dropped, and the row cache is enlarged to up
+	 * to a quarter of the maximum heap size.
+	 *
+	 * <p>This mode is meant to quickly fill an <b>empty</b> database. Since the
+	 * database is not logged, changes made in bulk-load mode cannot be rolled back, and
+	 * are only persisted by {@link #endBulkLoad()}.
+	 *
+	 * <p>Before the database is switched, a marker is persisted in the <i>general_settings</i>
+	 * table. If the process dies before {@link #endBulkLoad()} is called, the marker is still
+	 * set when the database is opened the next time (see {@link #isBulkLoadInterrupted()}), and the
+	 * bulk-load mode can be ended then.
+	 *
+	 * <p><b>Note:</b> This method commits the current transaction.
+	 */
+	public void beginBulkLoad() {
+		try {
+			connection.commit();
+
+			long bulkLoadCacheSize = Math.min(BULK_LOAD_MAX_CACHE_SIZE_KB, Runtime.getRuntime().maxMemory() / 4 / 1024);
+			long bulkLoadCacheRows = bulkLoadCacheSize * BULK_LOAD_CACHE_ROWS_PER_KB;
+
+			logger.log(Level.INFO, "SQL: Beginning bulk load; cache size " + bulkLoadCacheSize + " KB, " + bulkLoadCacheRows + " rows ...");
+
+			writeSetting(BULK_LOAD_SETTING_CACHE_SIZE, readDatabaseProperty("hsqldb.cache_size"));
+			writeSetting(BULK_LOAD_SETTING_CACHE_ROWS, readDatabaseProperty("hsqldb.cache_rows"));
+			writeSetting(BULK_LOAD_SETTING, BULK_LOAD_STARTED);
+
+			connection.commit();
+
+			executeStatement("SET FILES CACHE SIZE " + bulkLoadCacheSize);
+			executeStatement("SET FILES CACHE ROWS " + bulkLoadCacheRows);
+
+			runScript("script.bulkload.begin.sql");
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Cannot begin bulk load.", e);
+		}
+	}
+
+	/**
+	 * Ends the bulk-load mode started by {@link #beginBulkLoad()}: Indices are re-created, the
+	 * current file tree is rebuilt, foreign key checks and the redo log are re-enabled, and the
+	 * database is persisted using a <tt>CHECKPOINT</tt>.
+	 *
+	 * <p>Ending the bulk-load mode is idempotent, so it can also be used to end a bulk load
+	 * that was interrupted (see {@link #isBulkLoadInterrupted()}).
+	 *
+	 * <p><b>Note:</b> Like all schema changes, re-creating the indices commits the current
+	 * transaction. This method must hence only be called after the data written in bulk-load
+	 * mode has been committed.
+	 */
+	public void endBulkLoad() {
+		try {
+			logger.log(Level.INFO, "SQL: Ending bulk load; re-creating indices and persisting database ...");
+			runScript("script.bulkload.end.sql");
+
+			String previousCacheSize = readSetting(BULK_LOAD_SETTING_CACHE_SIZE);
+			String previousCacheRows = readSetting(BULK_LOAD_SETTING_CACHE_ROWS);
+
+			if (previousCacheSize != null && previousCacheRows != null) {
+				executeStatement("SET FILES CACHE SIZE " + Long.parseLong(previousCacheSize));
+				executeStatement("SET FILES CACHE ROWS " + Long.parseLong(previousCacheRows));
+			}
+
+			writeSetting(BULK_LOAD_SETTING, BULK_LOAD_DONE);
+			connection.commit();
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Cannot end bulk load.", e);
+		}
+	}
+
+	/**
+	 * Checks whether the bulk-load mode was started, but never ended, e.g. because the
+	 * process was killed while writing the database versions. In that case, the redo log and
+	 * foreign key checks are still disabled, indices are missing, and the current file tree
+	 * is outdated, until {@link #endBulkLoad()} is called.
+	 */
+	public boolean isBulkLoadInterrupted() {
+		return BULK_LOAD_STARTED.equals(readSetting(BULK_LOAD_SETTING));
+	}
+
+	/**
+	 * Compacts the database: Missing non-primary indices are created, and the data file
+	 * (including all indices) is rewritten without dead space using a <tt>CHECKPOINT DEFRAG</tt>.
+	 * Dead space accumulates over time when rows are deleted, e.g. when old file versions are purged.
+	 *
+	 * <p>Like all schema changes and checkpoints, this waits until all other transactions have
+	 * ended (see {@link #hasOtherActiveTransactions()}).
+	 *
+	 * <p><b>Note:</b> This method commits the current transaction.
+	 */
+	public void compact() {
+		try {
+			logger.log(Level.INFO, "SQL: Compacting database; creating missing indices and defragmenting data file ...");
+
+			connection.commit();
+
+			runScript("script.compact.sql");
+			executeStatement("CHECKPOINT DEFRAG");
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Cannot compact database.", e);
+		}
+	}
+
+	/**
+	 * Returns the used size of the HSQLDB data file (in bytes), i.e. the file in which all
+	 * cached tables are stored. The used size includes the dead space.
+	 */
+	public long getDataFileSize() {
+		try (PreparedStatement preparedStatement = getStatement("application.select.all.getDataFileInfo.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return (resultSet.next()) ? resultSet.getLong("file_free_pos") : 0;
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the amount of dead space in the data file (in bytes), i.e. the space that is
+	 * no longer used by any row, but has not been reused or reclaimed yet.
+	 *
+	 * <p>HSQLDB over-counts the lost bytes after large deletes (they may exceed the file size),
+	 * so the returned value is capped at the used size of the data file.
+	 */
+	public long getDataFileDeadSpace() {
+		try (PreparedStatement preparedStatement = getStatement("application.select.all.getDataFileInfo.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return (resultSet.next()) ? Math.min(resultSet.getLong("file_lost_bytes"), resultSet.getLong("file_free_pos")) : 0;
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private String readDatabaseProperty(String propertyName) throws SQLException {
+		try (PreparedStatement preparedStatement = getStatement("application.select.all.readDatabaseProperty.sql")) {
+			preparedStatement.setString(1, propertyName);
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				return (resultSet.next()) ? resultSet.getString("property_value") : null;
+			}
+		}
+	}
+
+	private void executeStatement(String sqlStatement) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sqlStatement);
+		}
+	}
+
 	/**
 	 * Shuts down the HSQL database, i.e. persists all data, closes all connections
 	 * and unlocks the database for other processes.
@@ -147,6 +332,8 @@ public class ApplicationSqlDao extends AbstractSqlDao {
 			logger.log(Level.FINE, "Could not shutdown the connection", e);
 		}
 		finally {
+			SqlStatementCache.removeInstance(connection);
+
 			try {
 				connection.close();
 			}
@@ -172,6 +359,14 @@ public class ApplicationSqlDao extends AbstractSqlDao {
 		writeSetting("cleanupTime", "" + cleanupTime);
 	}
 
+	public Long getCompactTime() {
+		return readSettingAsLong("compactTime");
+	}
+
+	public void writeCompactTime(long compactTime) {
+		writeSetting("compactTime", "" + compactTime);
+	}
+
 	public Long readSettingAsLong(String key) {
 		try {
 			String strValue = readSetting(key);
@@ -0,0 +1,506 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * The chunk Bloom filter is a persisted, scalable Bloom filter over all known chunk
+ * checksums. It is used to answer "this chunk is definitely new" during indexing without
+ * consulting the {@link ChunkIndex}, which is what happens for almost every chunk during
+ * an initial import.
+ *
+ * <p>The filter consists of a chain of stages. Each stage is a classic Bloom filter sized
+ * for a fixed number of entries. When the last stage is full, a new stage with twice the
+ * capacity and half the false positive rate is appended, so that the overall false positive
+ * rate stays below twice the rate of the first stage (see Almeida et al., "Scalable Bloom
+ * Filters"). A lookup checks all stages.
+ *
+ * <p>Because a Bloom filter may contain more entries than the database without harm, adding
+ * chunks of a transaction that is later rolled back leaves the filter usable. Removed chunks,
+ * however, can only be dropped by rebuilding the filter via {@link #clear(long)}. Like the
+ * {@link ChunkIndex}, a persisted filter is only trusted if it was synced via {@link #sync()}.
+ *
+ * <p>File layout: A fixed-size header (magic, version, clean flag, number of stages and
+ * instance token), followed by the stages. Each stage consists of a stage header (capacity, entry count,
+ * number of bits and number of hash functions) and the bit array.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ChunkBloomFilter {
+	private static final Logger logger = Logger.getLogger(ChunkBloomFilter.class.getSimpleName());
+
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.005;
+
+	private static final int MAGIC = 0x53594246; // "SYBF"
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 64;
+	private static final int HEADER_OFFSET_MAGIC = 0;
+	private static final int HEADER_OFFSET_VERSION = 4;
+	private static final int HEADER_OFFSET_CLEAN = 8;
+	private static final int HEADER_OFFSET_STAGE_COUNT = 12;
+	private static final int HEADER_OFFSET_TOKEN = 16;
+
+	private static final int STAGE_HEADER_SIZE = 32;
+	private static final int STAGE_OFFSET_CAPACITY = 0;
+	private static final int STAGE_OFFSET_COUNT = 8;
+	private static final int STAGE_OFFSET_BITS = 16;
+	private static final int STAGE_OFFSET_HASHES = 24;
+
+	private static final long MIN_STAGE_CAPACITY = 64 * 1024;
+	private static final long MAX_STAGE_BITS = (Integer.MAX_VALUE - STAGE_HEADER_SIZE) / 64 * 64 * 8L;
+	private static final int STAGE_GROWTH_FACTOR = 2;
+	private static final double STAGE_TIGHTENING_RATIO = 0.5;
+
+	private static final ConcurrentMap<String, ChunkBloomFilter> openFilters = new MapMaker().weakValues().makeMap();
+	private static final Random tokenRandom = new Random();
+
+	private File filterFile;
+	private double falsePositiveRate;
+
+	private ByteBuffer header;
+	private List<Stage> stages;
+	private long count;
+	private long token;
+
+	private boolean valid;
+	private boolean clean;
+
+	private ChunkBloomFilter(File filterFile, double falsePositiveRate) {
+		this.filterFile = filterFile;
+		this.falsePositiveRate = falsePositiveRate;
+		this.stages = new ArrayList<Stage>();
+		this.valid = false;
+		this.clean = false;
+	}
+
+	/**
+	 * Creates a new, empty Bloom filter that lives in off-heap direct buffers and
+	 * is never persisted.
+	 */
+	public static ChunkBloomFilter createInMemory(double falsePositiveRate) {
+		ChunkBloomFilter bloomFilter = new ChunkBloomFilter(null, falsePositiveRate);
+		bloomFilter.open();
+
+		return bloomFilter;
+	}
+
+	/**
+	 * Opens the Bloom filter backed by the given file. Within one JVM, all callers
+	 * opening the same file share the same instance.
+	 *
+	 * <p>Like for the {@link ChunkIndex}, a shared instance is only returned if the file
+	 * still exists and carries the instance's token. A filter whose file was deleted or
+	 * replaced would otherwise answer "definitely new" for chunks that are known.
+	 *
+	 * <p>If the file does not exist or has not been properly synced, the returned
+	 * filter is not {@link #isValid() valid} and must be rebuilt by the caller.
+	 */
+	public static ChunkBloomFilter open(File filterFile) {
+		String filterKey = filterFile.getAbsolutePath();
+
+		synchronized (openFilters) {
+			ChunkBloomFilter bloomFilter = openFilters.get(filterKey);
+
+			if (bloomFilter != null && !bloomFilter.isBackedByFilterFile()) {
+				logger.log(Level.INFO, "Chunk Bloom filter file " + filterFile + " was deleted or replaced. Opening it again ...");
+
+				openFilters.remove(filterKey, bloomFilter);
+				bloomFilter = null;
+			}
+
+			if (bloomFilter == null) {
+				bloomFilter = new ChunkBloomFilter(filterFile, DEFAULT_FALSE_POSITIVE_RATE);
+				bloomFilter.open();
+
+				openFilters.put(filterKey, bloomFilter);
+			}
+
+			return bloomFilter;
+		}
+	}
+
+	/**
+	 * Returns whether the filter contains (at least) all chunks written so far, i.e.
+	 * whether it can be used for lookups without rebuilding it first.
+	 */
+	public synchronized boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Returns the number of chunks added to the filter. Because the filter cannot
+	 * detect duplicates with certainty, this number may be higher than the number
+	 * of distinct chunks.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of stages of this scalable Bloom filter.
+	 */
+	public synchronized int getStageCount() {
+		return stages.size();
+	}
+
+	/**
+	 * Marks the filter as outdated. The next user must rebuild it using {@link #clear(long)}
+	 * and {@link #add(ChunkChecksum)} before using it.
+	 */
+	public synchronized void invalidate() {
+		valid = false;
+		markDirty();
+	}
+
+	/**
+	 * Empties the filter and sizes the first stage for the expected number of entries. After
+	 * this call, the filter is {@link #isValid() valid} and can be filled using {@link #add(ChunkChecksum)}.
+	 *
+	 * @param expectedCount Number of entries the caller is about to add
+	 */
+	public synchronized void clear(long expectedCount) {
+		markDirty();
+
+		stages.clear();
+		count = 0;
+
+		addStage(HEADER_SIZE, Math.max(MIN_STAGE_CAPACITY, expectedCount * STAGE_GROWTH_FACTOR), falsePositiveRate);
+
+		valid = true;
+		writeHeader();
+	}
+
+	/**
+	 * Returns <tt>false</tt> if the chunk with the given checksum is definitely not
+	 * in the filter, and <tt>true</tt> if it might be.
+	 */
+	public synchronized boolean mightContain(ChunkChecksum chunkChecksum) {
+		long[] hashes = hash(chunkChecksum.getBytes());
+
+		for (Stage stage : stages) {
+			if (stage.mightContain(hashes[0], hashes[1])) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Adds the chunk with the given checksum to the filter, unless the filter
+	 * indicates that it might already be present.
+	 */
+	public synchronized void add(ChunkChecksum chunkChecksum) {
+		long[] hashes = hash(chunkChecksum.getBytes());
+
+		for (Stage stage : stages) {
+			if (stage.mightContain(hashes[0], hashes[1])) {
+				return;
+			}
+		}
+
+		Stage lastStage = stages.get(stages.size() - 1);
+
+		if (lastStage.count >= lastStage.capacity) {
+			long nextOffset = lastStage.offset + STAGE_HEADER_SIZE + lastStage.numBits / 8;
+			double nextFalsePositiveRate = falsePositiveRate * Math.pow(STAGE_TIGHTENING_RATIO, stages.size());
+
+			logger.log(Level.FINE, "Chunk Bloom filter stage " + stages.size() + " full. Adding new stage ...");
+
+			lastStage = addStage(nextOffset, lastStage.capacity * STAGE_GROWTH_FACTOR, nextFalsePositiveRate);
+			writeHeader();
+		}
+
+		markDirty();
+		lastStage.add(hashes[0], hashes[1]);
+
+		count++;
+	}
+
+	/**
+	 * Flushes the filter to disk (if it is file-backed) and marks it as clean, so that
+	 * it can be re-used when the database is next opened. This should be called whenever
+	 * the database transaction that wrote new chunks is committed.
+	 */
+	public synchronized void sync() {
+		if (!clean && valid) {
+			for (Stage stage : stages) {
+				forceBuffer(stage.buffer);
+			}
+
+			clean = true;
+			header.putInt(HEADER_OFFSET_CLEAN, 1);
+
+			forceBuffer(header);
+		}
+	}
+
+	/**
+	 * Deletes the filter file and removes this instance from the shared instances, so that
+	 * the next {@link #open(File)} starts with an empty, invalid filter. This instance is
+	 * invalidated, but stays usable for callers that still hold it.
+	 */
+	public void delete() {
+		if (filterFile != null) {
+			synchronized (openFilters) {
+				openFilters.remove(filterFile.getAbsolutePath(), this);
+			}
+		}
+
+		synchronized (this) {
+			invalidate();
+
+			if (filterFile != null) {
+				filterFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the filter file on disk is (still) the file mapped by this instance,
+	 * i.e. whether it exists, is large enough and carries the token of this instance.
+	 */
+	private synchronized boolean isBackedByFilterFile() {
+		Stage lastStage = stages.get(stages.size() - 1);
+
+		if (!filterFile.isFile() || filterFile.length() < lastStage.offset + STAGE_HEADER_SIZE + lastStage.numBits / 8) {
+			return false;
+		}
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(filterFile, "r")) {
+			randomAccessFile.seek(HEADER_OFFSET_TOKEN);
+			return randomAccessFile.readLong() == token;
+		}
+		catch (IOException e) {
+			logger.log(Level.FINE, "Cannot read chunk Bloom filter file " + filterFile, e);
+			return false;
+		}
+	}
+
+	private void open() {
+		header = map(0, HEADER_SIZE);
+		token = createToken();
+
+		if (filterFile != null && header.getInt(HEADER_OFFSET_MAGIC) == MAGIC && header.getInt(HEADER_OFFSET_VERSION) == VERSION) {
+			clean = header.getInt(HEADER_OFFSET_CLEAN) == 1;
+			valid = clean;
+
+			if (valid) {
+				int stageCount = header.getInt(HEADER_OFFSET_STAGE_COUNT);
+				long stageOffset = HEADER_SIZE;
+
+				for (int i = 0; i < stageCount; i++) {
+					Stage stage = loadStage(stageOffset);
+
+					stages.add(stage);
+					count += stage.count;
+
+					stageOffset += STAGE_HEADER_SIZE + stage.numBits / 8;
+				}
+
+				valid = stageCount > 0;
+				logger.log(Level.INFO, "Loaded chunk Bloom filter from " + filterFile + " (" + count + " chunks, " + stageCount + " stage(s)).");
+			}
+			else {
+				logger.log(Level.INFO, "Chunk Bloom filter at " + filterFile + " was not synced properly. Needs to be rebuilt.");
+			}
+		}
+
+		if (!valid) {
+			clear(0);
+			invalidate();
+		}
+
+		header.putLong(HEADER_OFFSET_TOKEN, token);
+	}
+
+	private static long createToken() {
+		long newToken = 0;
+
+		while (newToken == 0) { // Files written by older versions have no token
+			newToken = tokenRandom.nextLong();
+		}
+
+		return newToken;
+	}
+
+	private Stage addStage(long offset, long capacity, double stageFalsePositiveRate) {
+		long numBits = (long) Math.ceil(-capacity * Math.log(stageFalsePositiveRate) / (Math.log(2) * Math.log(2)));
+		numBits = Math.min(MAX_STAGE_BITS, (numBits + 63) / 64 * 64);
+
+		int numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+
+		ByteBuffer buffer = map(offset, (int) (STAGE_HEADER_SIZE + numBits / 8));
+
+		if (filterFile != null) {
+			zeroBuffer(buffer);
+		}
+
+		buffer.putLong(STAGE_OFFSET_CAPACITY, capacity);
+		buffer.putLong(STAGE_OFFSET_COUNT, 0);
+		buffer.putLong(STAGE_OFFSET_BITS, numBits);
+		buffer.putInt(STAGE_OFFSET_HASHES, numHashes);
+
+		Stage stage = new Stage(offset, buffer);
+		stages.add(stage);
+
+		return stage;
+	}
+
+	private Stage loadStage(long offset) {
+		ByteBuffer stageHeader = map(offset, STAGE_HEADER_SIZE);
+		long numBits = stageHeader.getLong(STAGE_OFFSET_BITS);
+
+		return new Stage(offset, map(offset, (int) (STAGE_HEADER_SIZE + numBits / 8)));
+	}
+
+	private void markDirty() {
+		if (clean) {
+			clean = false;
+			header.putInt(HEADER_OFFSET_CLEAN, 0);
+		}
+	}
+
+	private void writeHeader() {
+		header.putInt(HEADER_OFFSET_MAGIC, MAGIC);
+		header.putInt(HEADER_OFFSET_VERSION, VERSION);
+		header.putInt(HEADER_OFFSET_CLEAN, clean ? 1 : 0);
+		header.putInt(HEADER_OFFSET_STAGE_COUNT, stages.size());
+		header.putLong(HEADER_OFFSET_TOKEN, token);
+	}
+
+	private ByteBuffer map(long position, int size) {
+		if (filterFile == null) {
+			return ByteBuffer.allocateDirect(size);
+		}
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(filterFile, "rw"); FileChannel fileChannel = randomAccessFile.getChannel()) {
+			return fileChannel.map(MapMode.READ_WRITE, position, size);
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Cannot map chunk Bloom filter file " + filterFile, e);
+		}
+	}
+
+	private void zeroBuffer(ByteBuffer buffer) {
+		byte[] zeros = new byte[64 * 1024];
+		ByteBuffer duplicate = buffer.duplicate();
+
+		duplicate.clear();
+
+		while (duplicate.hasRemaining()) {
+			duplicate.put(zeros, 0, Math.min(zeros.length, duplicate.remaining()));
+		}
+	}
+
+	private void forceBuffer(ByteBuffer buffer) {
+		if (buffer instanceof MappedByteBuffer) {
+			((MappedByteBuffer) buffer).force();
+		}
+	}
+
+	private static long[] hash(byte[] key) {
+		// Two independent 64-bit hashes (FNV-1a with different offsets, followed
+		// by the MurmurHash3 finalizer) for Kirsch-Mitzenmacher double hashing
+		long hash1 = 0xcbf29ce484222325L;
+		long hash2 = 0x84222325cbf29ce4L;
+
+		for (byte b : key) {
+			hash1 = (hash1 ^ (b & 0xff)) * 0x100000001b3L;
+			hash2 = (hash2 ^ (b & 0xff)) * 0x100000001b3L;
+		}
+
+		return new long[] { mix(hash1), mix(hash2) | 1 };
+	}
+
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+
+	private static class Stage {
+		private long offset;
+		private ByteBuffer buffer;
+
+		private long capacity;
+		private long count;
+		private long numBits;
+		private int numHashes;
+
+		public Stage(long offset, ByteBuffer buffer) {
+			this.offset = offset;
+			this.buffer = buffer;
+
+			this.capacity = buffer.getLong(STAGE_OFFSET_CAPACITY);
+			this.count = buffer.getLong(STAGE_OFFSET_COUNT);
+			this.numBits = buffer.getLong(STAGE_OFFSET_BITS);
+			this.numHashes = buffer.getInt(STAGE_OFFSET_HASHES);
+		}
+
+		public boolean mightContain(long hash1, long hash2) {
+			for (int i = 0; i < numHashes; i++) {
+				long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+
+				if ((buffer.getLong(getWordPosition(bit)) & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		public void add(long hash1, long hash2) {
+			for (int i = 0; i < numHashes; i++) {
+				long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+				int wordPosition = getWordPosition(bit);
+
+				buffer.putLong(wordPosition, buffer.getLong(wordPosition) | (1L << bit));
+			}
+
+			count++;
+			buffer.putLong(STAGE_OFFSET_COUNT, count);
+		}
+
+		private int getWordPosition(long bit) {
+			return STAGE_HEADER_SIZE + (int) (bit >>> 6) * 8;
+		}
+	}
+}
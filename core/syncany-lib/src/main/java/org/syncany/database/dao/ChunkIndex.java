@@ -0,0 +1,642 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * The chunk index is an off-heap open-addressing hash table that maps raw chunk
+ * checksums to the chunk size and the database version the chunk was first written in.
+ * It is used by the {@link ChunkSqlDao} to answer chunk lookups during indexing without
+ * keeping millions of {@link ChunkEntry} objects on the Java heap.
+ *
+ * <p>If a file is given, the table is memory-mapped from that file and persisted next
+ * to the HSQLDB database files. A persisted index is only trusted if it was properly
+ * synced via {@link #sync()}; the owning DAO additionally compares the number of entries
+ * against the chunk table before using it. If no file is given, the table lives in a
+ * direct buffer and is lost when the index is garbage collected.
+ *
+ * <p>Entries cannot be removed individually. Instead, the index is invalidated via
+ * {@link #invalidate()} and rebuilt from the database via {@link #clear(long)} and
+ * {@link #put(ChunkChecksum, int, long) put()}.
+ *
+ * <p>File layout: A fixed-size header (magic, version, clean flag, capacity, entry count,
+ * region offset and instance token), followed by the slot region. Each slot holds the key length
+ * (0 for an empty slot), the key, the chunk size and the database version ID. Growing
+ * or clearing the table writes a fresh file next to the index file and replaces the
+ * index file with it, so the file never holds more than the live region. The buffers
+ * of the replaced file are unmapped right away.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ChunkIndex {
+	private static final Logger logger = Logger.getLogger(ChunkIndex.class.getSimpleName());
+
+	public static final int MAX_KEY_LENGTH = 20;
+
+	private static final int MAGIC = 0x53594349; // "SYCI"
+	private static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 64;
+	private static final int HEADER_OFFSET_MAGIC = 0;
+	private static final int HEADER_OFFSET_VERSION = 4;
+	private static final int HEADER_OFFSET_CLEAN = 8;
+	private static final int HEADER_OFFSET_CAPACITY = 16;
+	private static final int HEADER_OFFSET_COUNT = 24;
+	private static final int HEADER_OFFSET_REGION = 32;
+	private static final int HEADER_OFFSET_TOKEN = 40;
+
+	private static final int SLOT_SIZE = 36;
+	private static final int SLOT_OFFSET_KEY = 1;
+	private static final int SLOT_OFFSET_SIZE = 24;
+	private static final int SLOT_OFFSET_DATABASE_VERSION = 28;
+
+	private static final int SEGMENT_SLOTS_BITS = 20;
+	private static final int SEGMENT_SLOTS = 1 << SEGMENT_SLOTS_BITS;
+
+	private static final long MIN_CAPACITY = 1 << 12;
+	private static final double MAX_LOAD_FACTOR = 0.7;
+	private static final double REBUILD_LOAD_FACTOR = 0.4;
+
+	private static final ConcurrentMap<String, ChunkIndex> openIndexes = new MapMaker().weakValues().makeMap();
+	private static final Random tokenRandom = new Random();
+
+	private File indexFile;
+	private ByteBuffer header;
+	private ByteBuffer[] segments;
+
+	private long capacity;
+	private long count;
+	private long regionOffset;
+	private long token;
+
+	private boolean valid;
+	private boolean clean;
+
+	private ChunkIndex(File indexFile) {
+		this.indexFile = indexFile;
+		this.valid = false;
+		this.clean = false;
+	}
+
+	/**
+	 * Creates a new, empty chunk index that lives entirely in an off-heap
+	 * direct buffer and is never persisted.
+	 */
+	public static ChunkIndex createInMemory() {
+		ChunkIndex chunkIndex = new ChunkIndex(null);
+		chunkIndex.open();
+
+		return chunkIndex;
+	}
+
+	/**
+	 * Opens the chunk index backed by the given file. Within one JVM, all callers
+	 * opening the same file share the same instance, so that incremental updates
+	 * by one DAO are visible to all others.
+	 *
+	 * <p>A shared instance is only returned if the file on disk is still the one it
+	 * has mapped, i.e. if the file exists and carries the instance's token in its header.
+	 * If the file was deleted or replaced, the index is opened from the file again.
+	 *
+	 * <p>If the file does not exist or has not been properly synced, the returned
+	 * index is not {@link #isValid() valid} and must be rebuilt by the caller.
+	 */
+	public static ChunkIndex open(File indexFile) {
+		String indexKey = indexFile.getAbsolutePath();
+
+		synchronized (openIndexes) {
+			ChunkIndex chunkIndex = openIndexes.get(indexKey);
+
+			if (chunkIndex != null && !chunkIndex.isBackedByIndexFile()) {
+				logger.log(Level.INFO, "Chunk index file " + indexFile + " was deleted or replaced. Opening it again ...");
+
+				openIndexes.remove(indexKey, chunkIndex);
+				chunkIndex = null;
+			}
+
+			if (chunkIndex == null) {
+				chunkIndex = new ChunkIndex(indexFile);
+				chunkIndex.open();
+
+				openIndexes.put(indexKey, chunkIndex);
+			}
+
+			return chunkIndex;
+		}
+	}
+
+	/**
+	 * Returns whether the index content reflects all chunks written so far, i.e.
+	 * whether it can be used for lookups without rebuilding it first.
+	 */
+	public synchronized boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Returns the number of chunks in the index.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of slots in the live region of the index.
+	 */
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Marks the index as outdated. The next user must rebuild it using {@link #clear(long)}
+	 * and {@link #put(ChunkChecksum, int, long) put()} before using it. This is necessary
+	 * whenever chunks are removed or changed in the database.
+	 */
+	public synchronized void invalidate() {
+		valid = false;
+		markDirty();
+	}
+
+	/**
+	 * Empties the index and sizes it for the expected number of entries. After this call,
+	 * the index is {@link #isValid() valid} and can be filled using {@link #put(ChunkChecksum, int, long) put()}.
+	 *
+	 * @param expectedCount Number of entries the caller is about to insert
+	 */
+	public synchronized void clear(long expectedCount) {
+		long newCapacity = MIN_CAPACITY;
+
+		while (newCapacity * REBUILD_LOAD_FACTOR < expectedCount) {
+			newCapacity <<= 1;
+		}
+
+		rewrite(newCapacity, false);
+		valid = true;
+	}
+
+	/**
+	 * Looks up the chunk with the given checksum and returns a new {@link ChunkEntry}
+	 * if it is present in the index, or <tt>null</tt> otherwise.
+	 */
+	public synchronized ChunkEntry get(ChunkChecksum chunkChecksum) {
+		long slot = findSlot(chunkChecksum.getBytes());
+		return (slot >= 0) ? new ChunkEntry(chunkChecksum, getSlotBuffer(slot).getInt(getSlotPosition(slot) + SLOT_OFFSET_SIZE)) : null;
+	}
+
+	/**
+	 * Looks up the chunk with the given checksum and returns the ID of the database version
+	 * in which the chunk was first written (the row reference), or <tt>null</tt> if the chunk
+	 * is not present in the index.
+	 */
+	public synchronized Long getDatabaseVersionId(ChunkChecksum chunkChecksum) {
+		long slot = findSlot(chunkChecksum.getBytes());
+		return (slot >= 0) ? getSlotBuffer(slot).getLong(getSlotPosition(slot) + SLOT_OFFSET_DATABASE_VERSION) : null;
+	}
+
+	/**
+	 * Adds a chunk to the index, unless it is already present. Like the chunk table
+	 * itself, the first database version that wrote a chunk is kept.
+	 *
+	 * @return Returns <tt>true</tt> if the chunk was added, <tt>false</tt> if it was already present
+	 */
+	public synchronized boolean put(ChunkChecksum chunkChecksum, int size, long databaseVersionId) {
+		byte[] key = chunkChecksum.getBytes();
+
+		if (key.length == 0 || key.length > MAX_KEY_LENGTH) {
+			throw new IllegalArgumentException("Chunk checksum must be between 1 and " + MAX_KEY_LENGTH + " bytes long, but was " + key.length);
+		}
+
+		if (findSlot(key) >= 0) {
+			return false;
+		}
+
+		if (count + 1 > capacity * MAX_LOAD_FACTOR) {
+			grow();
+		}
+
+		markDirty();
+		insert(key, size, databaseVersionId);
+
+		header.putLong(HEADER_OFFSET_COUNT, count);
+		return true;
+	}
+
+	/**
+	 * Flushes the index to disk (if it is file-backed) and marks it as clean, so that
+	 * it can be re-used when the database is next opened. This should be called whenever
+	 * the database transaction that wrote the new chunks is committed.
+	 */
+	public synchronized void sync() {
+		if (!clean && valid) {
+			forceBuffers();
+
+			clean = true;
+			header.putInt(HEADER_OFFSET_CLEAN, 1);
+
+			forceBuffer(header);
+		}
+	}
+
+	/**
+	 * Deletes the index file and removes this instance from the shared instances, so that
+	 * the next {@link #open(File)} starts with an empty, invalid index. This instance is
+	 * invalidated, but stays usable for callers that still hold it.
+	 */
+	public void delete() {
+		if (indexFile != null) {
+			synchronized (openIndexes) {
+				openIndexes.remove(indexFile.getAbsolutePath(), this);
+			}
+		}
+
+		synchronized (this) {
+			invalidate();
+
+			if (indexFile != null) {
+				indexFile.delete();
+				getTempFile().delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the index file on disk is (still) the file mapped by this instance,
+	 * i.e. whether it exists, is large enough and carries the token of this instance.
+	 */
+	private synchronized boolean isBackedByIndexFile() {
+		if (!indexFile.isFile() || indexFile.length() < regionOffset + capacity * SLOT_SIZE) {
+			return false;
+		}
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "r")) {
+			randomAccessFile.seek(HEADER_OFFSET_TOKEN);
+			return randomAccessFile.readLong() == token;
+		}
+		catch (IOException e) {
+			logger.log(Level.FINE, "Cannot read chunk index file " + indexFile, e);
+			return false;
+		}
+	}
+
+	private void open() {
+		if (indexFile != null) {
+			getTempFile().delete(); // Left over if the process died during a rewrite
+		}
+
+		token = createToken();
+
+		header = map(indexFile, 0, HEADER_SIZE);
+
+		if (indexFile != null && header.getInt(HEADER_OFFSET_MAGIC) == MAGIC && header.getInt(HEADER_OFFSET_VERSION) == VERSION) {
+			capacity = header.getLong(HEADER_OFFSET_CAPACITY);
+			count = header.getLong(HEADER_OFFSET_COUNT);
+			regionOffset = header.getLong(HEADER_OFFSET_REGION);
+
+			clean = header.getInt(HEADER_OFFSET_CLEAN) == 1;
+			valid = clean && capacity >= MIN_CAPACITY && Long.bitCount(capacity) == 1;
+
+			if (valid) {
+				logger.log(Level.INFO, "Loaded chunk index from " + indexFile + " (" + count + " chunks, " + capacity + " slots).");
+				mapRegion(indexFile, regionOffset, capacity, false);
+
+				if (regionOffset != HEADER_SIZE) {
+					logger.log(Level.INFO, "Compacting chunk index (written by an older version) ...");
+					rewrite(capacity, true);
+					sync();
+				}
+			}
+			else {
+				logger.log(Level.INFO, "Chunk index at " + indexFile + " was not synced properly. Needs to be rebuilt.");
+			}
+		}
+
+		if (!valid) {
+			clear(0);
+			invalidate();
+		}
+
+		header.putLong(HEADER_OFFSET_TOKEN, token);
+	}
+
+	private static long createToken() {
+		long newToken = 0;
+
+		while (newToken == 0) { // Files written by older versions have no token
+			newToken = tokenRandom.nextLong();
+		}
+
+		return newToken;
+	}
+
+	private void grow() {
+		logger.log(Level.FINE, "Growing chunk index from " + capacity + " to " + (capacity << 1) + " slots ...");
+		rewrite(capacity << 1, true);
+	}
+
+	/**
+	 * Replaces the live region by a new, empty region with the given capacity, optionally
+	 * re-inserting the entries of the old region. For file-backed indexes, the new region is
+	 * built in a temporary file, which then replaces the index file. The old buffers are unmapped.
+	 */
+	private void rewrite(long newCapacity, boolean rehash) {
+		ByteBuffer oldHeader = header;
+		ByteBuffer[] oldSegments = segments;
+		long oldCapacity = capacity;
+
+		File targetFile = (indexFile != null) ? getTempFile() : null;
+
+		if (targetFile != null) {
+			targetFile.delete();
+		}
+
+		clean = false;
+
+		header = map(targetFile, 0, HEADER_SIZE);
+		mapRegion(targetFile, HEADER_SIZE, newCapacity, true);
+
+		count = 0;
+
+		if (rehash) {
+			for (long oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+				ByteBuffer oldSegment = oldSegments[(int) (oldSlot >>> SEGMENT_SLOTS_BITS)];
+				int oldPosition = getSlotPosition(oldSlot);
+				int keyLength = oldSegment.get(oldPosition);
+
+				if (keyLength > 0) {
+					byte[] key = new byte[keyLength];
+
+					for (int i = 0; i < keyLength; i++) {
+						key[i] = oldSegment.get(oldPosition + SLOT_OFFSET_KEY + i);
+					}
+
+					insert(key, oldSegment.getInt(oldPosition + SLOT_OFFSET_SIZE), oldSegment.getLong(oldPosition + SLOT_OFFSET_DATABASE_VERSION));
+				}
+			}
+		}
+
+		writeHeader();
+
+		unmap(oldHeader);
+		unmapAll(oldSegments);
+
+		if (targetFile != null) {
+			// Buffers must be unmapped before the file can be replaced (required on Windows)
+			unmap(header);
+			unmapAll(segments);
+
+			replaceIndexFile(targetFile);
+
+			header = map(indexFile, 0, HEADER_SIZE);
+			mapRegion(indexFile, HEADER_SIZE, newCapacity, false);
+		}
+	}
+
+	private File getTempFile() {
+		return new File(indexFile.getAbsolutePath() + ".tmp");
+	}
+
+	private void replaceIndexFile(File newIndexFile) {
+		try {
+			try {
+				Files.move(newIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(newIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Cannot replace chunk index file " + indexFile, e);
+		}
+	}
+
+	private void insert(byte[] key, int size, long databaseVersionId) {
+		long mask = capacity - 1;
+		long slot = hash(key) & mask;
+
+		while (getSlotBuffer(slot).get(getSlotPosition(slot)) != 0) {
+			slot = (slot + 1) & mask;
+		}
+
+		ByteBuffer segment = getSlotBuffer(slot);
+		int position = getSlotPosition(slot);
+
+		for (int i = 0; i < key.length; i++) {
+			segment.put(position + SLOT_OFFSET_KEY + i, key[i]);
+		}
+
+		segment.putInt(position + SLOT_OFFSET_SIZE, size);
+		segment.putLong(position + SLOT_OFFSET_DATABASE_VERSION, databaseVersionId);
+		segment.put(position, (byte) key.length);
+
+		count++;
+	}
+
+	private long findSlot(byte[] key) {
+		long mask = capacity - 1;
+		long slot = hash(key) & mask;
+
+		while (true) {
+			ByteBuffer segment = getSlotBuffer(slot);
+			int position = getSlotPosition(slot);
+			int keyLength = segment.get(position);
+
+			if (keyLength == 0) {
+				return -1;
+			}
+			else if (keyLength == key.length && keyEquals(segment, position, key)) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean keyEquals(ByteBuffer segment, int position, byte[] key) {
+		for (int i = 0; i < key.length; i++) {
+			if (segment.get(position + SLOT_OFFSET_KEY + i) != key[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private ByteBuffer getSlotBuffer(long slot) {
+		return segments[(int) (slot >>> SEGMENT_SLOTS_BITS)];
+	}
+
+	private int getSlotPosition(long slot) {
+		return (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_SIZE;
+	}
+
+	private void markDirty() {
+		if (clean) {
+			clean = false;
+			header.putInt(HEADER_OFFSET_CLEAN, 0);
+		}
+	}
+
+	private void writeHeader() {
+		header.putInt(HEADER_OFFSET_MAGIC, MAGIC);
+		header.putInt(HEADER_OFFSET_VERSION, VERSION);
+		header.putInt(HEADER_OFFSET_CLEAN, clean ? 1 : 0);
+		header.putLong(HEADER_OFFSET_CAPACITY, capacity);
+		header.putLong(HEADER_OFFSET_COUNT, count);
+		header.putLong(HEADER_OFFSET_REGION, regionOffset);
+		header.putLong(HEADER_OFFSET_TOKEN, token);
+	}
+
+	private void mapRegion(File file, long newRegionOffset, long newCapacity, boolean zero) {
+		int segmentCount = (int) ((newCapacity + SEGMENT_SLOTS - 1) >>> SEGMENT_SLOTS_BITS);
+		int segmentSize = (int) Math.min(newCapacity, SEGMENT_SLOTS) * SLOT_SIZE;
+
+		ByteBuffer[] newSegments = new ByteBuffer[segmentCount];
+
+		for (int i = 0; i < segmentCount; i++) {
+			newSegments[i] = map(file, newRegionOffset + (long) i * segmentSize, segmentSize);
+
+			if (zero && file != null) {
+				zeroBuffer(newSegments[i]);
+			}
+		}
+
+		segments = newSegments;
+		capacity = newCapacity;
+		regionOffset = newRegionOffset;
+	}
+
+	private ByteBuffer map(File file, long position, int size) {
+		if (file == null) {
+			return ByteBuffer.allocateDirect(size);
+		}
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"); FileChannel fileChannel = randomAccessFile.getChannel()) {
+			return fileChannel.map(MapMode.READ_WRITE, position, size);
+		}
+		catch (IOException e) {
+			throw new RuntimeException("Cannot map chunk index file " + file, e);
+		}
+	}
+
+	private void unmapAll(ByteBuffer[] buffers) {
+		if (buffers != null) {
+			for (ByteBuffer buffer : buffers) {
+				unmap(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Releases the memory (and, for mapped buffers, the file mapping) of the given direct
+	 * buffer immediately instead of waiting for the garbage collector. The buffer must not
+	 * be used afterwards. If the JVM does not support this, the buffer is left to the GC.
+	 */
+	private static void unmap(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect()) {
+			return;
+		}
+
+		try {
+			try {
+				// Java 9+
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+
+				theUnsafeField.setAccessible(true);
+				invokeCleanerMethod.invoke(theUnsafeField.get(null), buffer);
+			}
+			catch (NoSuchMethodException e) {
+				// Java 7/8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+
+				Object cleaner = cleanerMethod.invoke(buffer);
+
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		}
+		catch (Exception e) {
+			logger.log(Level.FINE, "Cannot unmap chunk index buffer, leaving it to the garbage collector.", e);
+		}
+	}
+
+	private void zeroBuffer(ByteBuffer buffer) {
+		byte[] zeros = new byte[64 * 1024];
+		ByteBuffer duplicate = buffer.duplicate();
+
+		duplicate.clear();
+
+		while (duplicate.hasRemaining()) {
+			duplicate.put(zeros, 0, Math.min(zeros.length, duplicate.remaining()));
+		}
+	}
+
+	private void forceBuffers() {
+		for (ByteBuffer segment : segments) {
+			forceBuffer(segment);
+		}
+	}
+
+	private void forceBuffer(ByteBuffer buffer) {
+		if (buffer instanceof MappedByteBuffer) {
+			((MappedByteBuffer) buffer).force();
+		}
+	}
+
+	private static long hash(byte[] key) {
+		// FNV-1a, followed by the MurmurHash3 finalizer to spread short keys
+		long hash = 0xcbf29ce484222325L;
+
+		for (byte b : key) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+}
@@ -17,13 +17,17 @@
  */
 package org.syncany.database.dao;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.syncany.database.ChunkEntry;
 import org.syncany.database.ChunkEntry.ChunkChecksum;
@@ -34,14 +38,44 @@ import org.syncany.database.VectorClock;
  * on {@link ChunkEntry}s. It translates the relational data in the "chunk" table to
  * Java objects.
  * 
+ * <p>Single chunk lookups via {@link #getChunk(ChunkChecksum) getChunk()} are answered by
+ * an off-heap {@link ChunkIndex} instead of querying the database. If an index file is given,
+ * the index is persisted there and re-used across runs; it is updated incrementally whenever
+ * chunks are written, and rebuilt from the chunk table only when it is found to be outdated.
+ * Since the index is shared by all connections to the same database, chunks written in the
+ * current transaction are only kept in this DAO until the transaction is committed (see
+ * {@link #syncCache()}), and discarded if it is rolled back (see {@link #discardPendingChunks()}).
+ * 
+ * <p>In front of the index, a {@link ChunkBloomFilter} answers whether a chunk is definitely
+ * new via {@link #mightContainChunk(ChunkChecksum) mightContainChunk()}. It is persisted and
+ * maintained the same way as the index.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class ChunkSqlDao extends AbstractSqlDao {
-	private Map<ChunkChecksum, ChunkEntry> chunkCache;
+	protected static final Logger logger = Logger.getLogger(ChunkSqlDao.class.getSimpleName());
+
+	private ChunkIndex chunkIndex;
+	private boolean chunkIndexVerified;
+	private Map<ChunkChecksum, PendingChunk> pendingChunks;
+
+	private ChunkBloomFilter chunkFilter;
+	private boolean chunkFilterVerified;
 
 	public ChunkSqlDao(Connection connection) {
+		this(connection, null, null);
+	}
+
+	public ChunkSqlDao(Connection connection, File chunkIndexFile, File chunkFilterFile) {
 		super(connection);
-		this.chunkCache = null;
+
+		this.chunkIndex = (chunkIndexFile != null) ? ChunkIndex.open(chunkIndexFile) : ChunkIndex.createInMemory();
+		this.chunkIndexVerified = false;
+		this.pendingChunks = new LinkedHashMap<ChunkChecksum, PendingChunk>();
+
+		this.chunkFilter = (chunkFilterFile != null) ? ChunkBloomFilter.open(chunkFilterFile) : ChunkBloomFilter
+				.createInMemory(ChunkBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+		this.chunkFilterVerified = false;
 	}
 
 	/**
@@ -59,7 +93,7 @@ public class ChunkSqlDao extends AbstractSqlDao {
 			PreparedStatement preparedStatement = getStatement(connection, "chunk.insert.all.writeChunks.sql");
 
 			for (ChunkEntry chunk : chunks) {
-				preparedStatement.setString(1, chunk.getChecksum().toString());
+				preparedStatement.setBytes(1, chunk.getChecksum().getBytes());
 				preparedStatement.setLong(2, databaseVersionId);
 				preparedStatement.setInt(3, chunk.getSize());
 
@@ -68,6 +102,8 @@ public class ChunkSqlDao extends AbstractSqlDao {
 
 			preparedStatement.executeBatch();
 			preparedStatement.close();
+
+			updateChunkIndex(databaseVersionId, chunks);
 		}
 	}	
 
@@ -84,6 +120,9 @@ public class ChunkSqlDao extends AbstractSqlDao {
 		try (PreparedStatement preparedStatement = getStatement("chunk.delete.all.removeUnreferencesChunks.sql")) {
 			preparedStatement.execute();
 			preparedStatement.close();
+
+			chunkIndex.invalidate();
+			chunkFilter.invalidate();
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -91,35 +130,84 @@ public class ChunkSqlDao extends AbstractSqlDao {
 	}
 	
 	/**
-	 * Queries the database of a chunk with the given checksum. 
+	 * Checks whether a chunk with the given checksum might exist in the database. If this
+	 * method returns <tt>false</tt>, the chunk definitely does not exist, and {@link #getChunk(ChunkChecksum) getChunk()}
+	 * does not have to be called. If it returns <tt>true</tt>, the chunk exists with a high probability.
 	 * 
-	 * <p>Note: When first called, this method loads the <b>chunk cache</b> and keeps
-	 * this cache until it is cleared explicitly with {@link #clearCache()}. 
+	 * <p>Note: This method uses the <b>chunk Bloom filter</b>, which is rebuilt from the database
+	 * when first called, if it is outdated or missing.
 	 * 
-	 * <p>Also note that this method will return <tt>null</tt> if the chunk has been
-	 * added after the cache has been filled. 
+	 * @param chunkChecksum Chunk checksum of the chunk to be checked
+	 * @return Returns <tt>false</tt> if the chunk does definitely not exist, <tt>true</tt> otherwise
+	 */
+	public synchronized boolean mightContainChunk(ChunkChecksum chunkChecksum) {
+		loadChunkFilter();
+		return chunkFilter.mightContain(chunkChecksum);
+	}
+	
+	/**
+	 * Queries the database of a chunk with the given checksum. 
+	 * 
+	 * <p>Note: This method does not query the database directly, but uses the <b>chunk index</b>.
+	 * When first called, the index is verified against the chunk table and rebuilt if necessary.
+	 * Afterwards, it is kept up to date by {@link #writeChunks(Connection, long, Collection) writeChunks()},
+	 * and rebuilt when it has been invalidated, e.g. by {@link #clearCache()}. 
 	 * 
 	 * @param chunkChecksum Chunk checksum of the chunk to be selected
 	 * @return Returns the chunk entry, or <tt>null</tt> if the chunk does not exist.
 	 */	
 	public synchronized ChunkEntry getChunk(ChunkChecksum chunkChecksum) {
-		if (chunkCache == null) {
-			loadChunkCache();
+		loadChunkIndex();
+		ChunkEntry chunkEntry = chunkIndex.get(chunkChecksum);
+
+		if (chunkEntry == null) {
+			PendingChunk pendingChunk = pendingChunks.get(chunkChecksum);
+			chunkEntry = (pendingChunk != null) ? pendingChunk.chunk : null;
 		}
 
-		return chunkCache.get(chunkChecksum);
+		return chunkEntry;
 	}
 	
 	/**
-	 * Clears the chunk cache loaded by {@link #getChunk(ChunkChecksum) getChunk()}
-	 * and resets the cache. If {@link #getChunk(ChunkChecksum) getChunk()} is called
-	 * after the cache is cleared, it is re-populated.
+	 * Invalidates the chunk index used by {@link #getChunk(ChunkChecksum) getChunk()} and the
+	 * Bloom filter used by {@link #mightContainChunk(ChunkChecksum) mightContainChunk()}. If either
+	 * method is called after the invalidation, the index or filter is rebuilt from the database.
+	 * 
+	 * <p>This method must be called whenever chunks are removed or altered outside of this DAO.
+	 * Chunks written in the current transaction are forgotten as well; the rebuilt index reads
+	 * them from the database.
 	 */
 	public synchronized void clearCache() {
-		if (chunkCache != null) {
-			chunkCache.clear();
-			chunkCache = null;
+		pendingChunks.clear();
+		chunkIndex.invalidate();
+		chunkFilter.invalidate();
+	}
+	
+	/**
+	 * Adds the chunks written in the current transaction to the shared chunk index, flushes
+	 * the index to disk and marks it as usable for the next run. This method must be called
+	 * after the transaction that wrote chunks has been committed. 
+	 */
+	public synchronized void syncCache() {
+		if (chunkIndex.isValid()) {
+			for (PendingChunk pendingChunk : pendingChunks.values()) {
+				chunkIndex.put(pendingChunk.chunk.getChecksum(), pendingChunk.chunk.getSize(), pendingChunk.databaseVersionId);
+			}
 		}
+
+		pendingChunks.clear();
+
+		chunkIndex.sync();
+		chunkFilter.sync();
+	}
+
+	/**
+	 * Forgets the chunks written in the current transaction, without touching the shared
+	 * chunk index. This method must be called after the transaction has been rolled back.
+	 * The Bloom filter keeps these chunks, which is harmless (see {@link ChunkBloomFilter}).
+	 */
+	public synchronized void discardPendingChunks() {
+		pendingChunks.clear();
 	}
 
 	/**
@@ -158,14 +246,86 @@ public class ChunkSqlDao extends AbstractSqlDao {
 	}
 
 	protected ChunkEntry createChunkEntryFromRow(ResultSet resultSet) throws SQLException {
-		ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(resultSet.getString("checksum"));
+		ChunkChecksum chunkChecksum = new ChunkChecksum(resultSet.getBytes("checksum"));
 		return new ChunkEntry(chunkChecksum, resultSet.getInt("size"));
 	}
 	
-	protected void loadChunkCache() {
+	protected void loadChunkIndex() {
+		if (chunkIndex.isValid() && (chunkIndexVerified || chunkIndex.getCount() + pendingChunks.size() == getChunkCount())) {
+			chunkIndexVerified = true;
+			return;
+		}
+		
+		logger.log(Level.INFO, "Chunk index is outdated or missing. Rebuilding from database ...");
+		
+		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.loadChunkCache.sql")) {
+			chunkIndex.clear(getChunkCount());
+			
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					ChunkChecksum chunkChecksum = new ChunkChecksum(resultSet.getBytes("checksum"));
+
+					// Uncommitted chunks of this connection are published on commit
+					if (!pendingChunks.containsKey(chunkChecksum)) {
+						chunkIndex.put(chunkChecksum, resultSet.getInt("size"), resultSet.getLong("databaseversion_id"));
+					}
+				}
+			}
+			
+			chunkIndexVerified = true;
+			logger.log(Level.INFO, "Chunk index rebuilt with " + chunkIndex.getCount() + " chunks.");
+		}
+		catch (SQLException e) {
+			chunkIndex.invalidate();
+			throw new RuntimeException(e);
+		}
+	}
+	
+	protected void loadChunkFilter() {
+		if (chunkFilter.isValid() && (chunkFilterVerified || chunkFilter.getCount() >= getChunkCount())) {
+			chunkFilterVerified = true;
+			return;
+		}
+		
+		logger.log(Level.INFO, "Chunk Bloom filter is outdated or missing. Rebuilding from database ...");
+		
 		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.loadChunkCache.sql")) {
+			chunkFilter.clear(getChunkCount());
+			
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				chunkCache = createChunkEntries(resultSet);
+				while (resultSet.next()) {
+					chunkFilter.add(new ChunkChecksum(resultSet.getBytes("checksum")));
+				}
+			}
+			
+			chunkFilterVerified = true;
+			logger.log(Level.INFO, "Chunk Bloom filter rebuilt with " + chunkFilter.getCount() + " chunks.");
+		}
+		catch (SQLException e) {
+			chunkFilter.invalidate();
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private synchronized void updateChunkIndex(long databaseVersionId, Collection<ChunkEntry> chunks) {
+		for (ChunkEntry chunk : chunks) {
+			if (!pendingChunks.containsKey(chunk.getChecksum())) {
+				pendingChunks.put(chunk.getChecksum(), new PendingChunk(chunk, databaseVersionId));
+			}
+		}
+		
+		if (chunkFilter.isValid()) {
+			for (ChunkEntry chunk : chunks) {
+				chunkFilter.add(chunk.getChecksum());
+			}
+		}
+	}
+	
+	private long getChunkCount() {
+		try (PreparedStatement preparedStatement = getStatement("chunk.select.all.getChunkCount.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(1);
 			}
 		}
 		catch (SQLException e) {
@@ -180,9 +340,21 @@ public class ChunkSqlDao extends AbstractSqlDao {
 		try (PreparedStatement preparedStatement = getStatement("chunk.update.dirty.updateDirtyChunksNewDatabaseId.sql")) {
 			preparedStatement.setLong(1, newDatabaseVersionId);
 			preparedStatement.executeUpdate();
+
+			chunkIndex.invalidate();
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}		
 	}
+
+	private static class PendingChunk {
+		private final ChunkEntry chunk;
+		private final long databaseVersionId;
+
+		public PendingChunk(ChunkEntry chunk, long databaseVersionId) {
+			this.chunk = chunk;
+			this.databaseVersionId = databaseVersionId;
+		}
+	}
 }
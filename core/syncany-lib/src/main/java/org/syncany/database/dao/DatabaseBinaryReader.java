@@ -0,0 +1,374 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.VectorClock;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+
+/**
+ * This class is used by the {@link DatabaseXmlSerializer} to read a binary database
+ * file, as written by the {@link DatabaseBinaryWriter}. It is the binary counterpart
+ * to the {@link DatabaseXmlParseHandler}.
+ *
+ * <p>Like the XML parse handler, the class can read either an entire file into memory,
+ * or only the database version headers. Since all headers are stored in a leading section,
+ * reading only the headers stops after that section. When reading a vector clock range, the
+ * bodies of database versions outside of the range are skipped without being parsed, and
+ * reading stops after the last body in the range.
+ *
+ * @see DatabaseBinaryWriter
+ * @see DatabaseXmlSerializer
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class DatabaseBinaryReader {
+	private static final Logger logger = Logger.getLogger(DatabaseBinaryReader.class.getSimpleName());
+
+	private MemoryDatabase database;
+	private VectorClock versionFrom;
+	private VectorClock versionTo;
+	private DatabaseReadType readType;
+
+	private DataInputStream in;
+	private List<String> pathDictionary;
+	private String lastNewPath;
+
+	public DatabaseBinaryReader(MemoryDatabase database, VectorClock fromVersion, VectorClock toVersion, DatabaseReadType readType) {
+		this.database = database;
+		this.versionFrom = fromVersion;
+		this.versionTo = toVersion;
+		this.readType = readType;
+	}
+
+	/**
+	 * Returns whether the given header bytes (at least the length of the magic bytes)
+	 * identify a binary database file.
+	 */
+	public static boolean isBinaryDatabase(byte[] header) {
+		return header.length >= DatabaseBinaryWriter.BINARY_MAGIC.length
+				&& Arrays.equals(DatabaseBinaryWriter.BINARY_MAGIC, Arrays.copyOf(header, DatabaseBinaryWriter.BINARY_MAGIC.length));
+	}
+
+	public void read(InputStream inputStream) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(inputStream));
+
+		try {
+			readMagicAndVersion();
+
+			// Header section
+			List<DatabaseVersion> databaseVersions = new ArrayList<DatabaseVersion>();
+			List<Long> bodyLengths = new ArrayList<Long>();
+
+			long databaseVersionCount = readVarLong();
+
+			for (long i = 0; i < databaseVersionCount; i++) {
+				databaseVersions.add(readDatabaseVersionHeader());
+				bodyLengths.add(readVarLong());
+			}
+
+			// Bodies (only if needed)
+			for (int i = 0; i < databaseVersions.size(); i++) {
+				DatabaseVersion databaseVersion = databaseVersions.get(i);
+				boolean vectorClockInLoadRange = DatabaseXmlParseHandler.vectorClockInRange(databaseVersion.getVectorClock(), versionFrom, versionTo);
+
+				if (readType == DatabaseReadType.FULL) {
+					if (vectorClockInLoadRange) {
+						pathDictionary = new ArrayList<String>();
+						lastNewPath = "";
+
+						readChunks(databaseVersion);
+						readMultiChunks(databaseVersion);
+						readFileContents(databaseVersion);
+						readFileHistories(databaseVersion);
+					}
+					else if (hasVersionsInRange(databaseVersions, i + 1)) {
+						skipFully(bodyLengths.get(i));
+					}
+				}
+
+				if (vectorClockInLoadRange) {
+					database.addDatabaseVersion(databaseVersion);
+					logger.log(Level.INFO, "   + Added database version " + databaseVersion.getHeader());
+				}
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private boolean hasVersionsInRange(List<DatabaseVersion> databaseVersions, int fromIndex) {
+		for (int i = fromIndex; i < databaseVersions.size(); i++) {
+			if (DatabaseXmlParseHandler.vectorClockInRange(databaseVersions.get(i).getVectorClock(), versionFrom, versionTo)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void readMagicAndVersion() throws IOException {
+		byte[] magic = new byte[DatabaseBinaryWriter.BINARY_MAGIC.length];
+		in.readFully(magic);
+
+		if (!isBinaryDatabase(magic)) {
+			throw new IOException("Invalid binary database file: Magic bytes do not match.");
+		}
+
+		int formatVersion = in.readUnsignedByte();
+
+		if (formatVersion != DatabaseBinaryWriter.BINARY_FORMAT_VERSION) {
+			throw new IOException("Unsupported binary database format version " + formatVersion + ", expected "
+					+ DatabaseBinaryWriter.BINARY_FORMAT_VERSION);
+		}
+	}
+
+	private DatabaseVersion readDatabaseVersionHeader() throws IOException {
+		DatabaseVersion databaseVersion = new DatabaseVersion();
+
+		databaseVersion.setTimestamp(new Date(readSignedVarLong()));
+		databaseVersion.setClient(readString());
+
+		VectorClock vectorClock = new VectorClock();
+		long vectorClockSize = readVarLong();
+
+		for (long i = 0; i < vectorClockSize; i++) {
+			String clientName = readString();
+			long clientValue = readVarLong();
+
+			vectorClock.setClock(clientName, clientValue);
+		}
+
+		databaseVersion.setVectorClock(vectorClock);
+		return databaseVersion;
+	}
+
+	private void readChunks(DatabaseVersion databaseVersion) throws IOException {
+		long chunkCount = readVarLong();
+
+		for (long i = 0; i < chunkCount; i++) {
+			ChunkChecksum chunkChecksum = new ChunkChecksum(readBytes());
+			int chunkSize = (int) readVarLong();
+
+			databaseVersion.addChunk(new ChunkEntry(chunkChecksum, chunkSize));
+		}
+	}
+
+	private void readMultiChunks(DatabaseVersion databaseVersion) throws IOException {
+		long multiChunkCount = readVarLong();
+
+		for (long i = 0; i < multiChunkCount; i++) {
+			MultiChunkId multiChunkId = new MultiChunkId(readBytes());
+			long size = readVarLong();
+
+			MultiChunkEntry multiChunk = new MultiChunkEntry(multiChunkId, size);
+			long chunkRefCount = readVarLong();
+
+			for (long j = 0; j < chunkRefCount; j++) {
+				multiChunk.addChunk(new ChunkChecksum(readBytes()));
+			}
+
+			databaseVersion.addMultiChunk(multiChunk);
+		}
+	}
+
+	private void readFileContents(DatabaseVersion databaseVersion) throws IOException {
+		long fileContentCount = readVarLong();
+
+		for (long i = 0; i < fileContentCount; i++) {
+			FileContent fileContent = new FileContent();
+
+			fileContent.setChecksum(new FileChecksum(readBytes()));
+			fileContent.setSize(readVarLong());
+
+			long chunkRefCount = readVarLong();
+
+			for (long j = 0; j < chunkRefCount; j++) {
+				fileContent.addChunk(new ChunkChecksum(readBytes()));
+			}
+
+			databaseVersion.addFileContent(fileContent);
+		}
+	}
+
+	private void readFileHistories(DatabaseVersion databaseVersion) throws IOException {
+		long fileHistoryCount = readVarLong();
+
+		for (long i = 0; i < fileHistoryCount; i++) {
+			PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.fromBytes(readBytes()));
+			long fileVersionCount = readVarLong();
+
+			for (long j = 0; j < fileVersionCount; j++) {
+				fileHistory.addFileVersion(readFileVersion());
+			}
+
+			// File history might be empty if file versions are ignored!
+			if (fileHistory.getFileVersions().size() > 0) {
+				databaseVersion.addFileHistory(fileHistory);
+			}
+		}
+	}
+
+	private FileVersion readFileVersion() throws IOException {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setVersion(readVarLong());
+		fileVersion.setType(readEnum(FileType.values()));
+		fileVersion.setStatus(readEnum(FileStatus.values()));
+		fileVersion.setPath(readPath());
+		fileVersion.setSize(readVarLong());
+		fileVersion.setLastModified(new Date(readSignedVarLong()));
+
+		int flags = in.readUnsignedByte();
+
+		if ((flags & DatabaseBinaryWriter.FILE_VERSION_FLAG_UPDATED) != 0) {
+			fileVersion.setUpdated(new Date(readSignedVarLong()));
+		}
+
+		if ((flags & DatabaseBinaryWriter.FILE_VERSION_FLAG_CHECKSUM) != 0) {
+			fileVersion.setChecksum(new FileChecksum(readBytes()));
+		}
+
+		if ((flags & DatabaseBinaryWriter.FILE_VERSION_FLAG_LINK_TARGET) != 0) {
+			fileVersion.setLinkTarget(readString());
+		}
+
+		if ((flags & DatabaseBinaryWriter.FILE_VERSION_FLAG_DOS_ATTRIBUTES) != 0) {
+			fileVersion.setDosAttributes(readString());
+		}
+
+		if ((flags & DatabaseBinaryWriter.FILE_VERSION_FLAG_POSIX_PERMISSIONS) != 0) {
+			fileVersion.setPosixPermissions(readString());
+		}
+
+		return fileVersion;
+	}
+
+	private String readPath() throws IOException {
+		long pathReference = readVarLong();
+
+		if (pathReference > 0) {
+			if (pathReference > pathDictionary.size()) {
+				throw new IOException("Invalid binary database file: Path reference " + pathReference + " out of range.");
+			}
+
+			return pathDictionary.get((int) pathReference - 1);
+		}
+		else {
+			int sharedPrefixLength = (int) readVarLong();
+
+			if (sharedPrefixLength > lastNewPath.length()) {
+				throw new IOException("Invalid binary database file: Shared path prefix " + sharedPrefixLength + " out of range.");
+			}
+
+			String path = lastNewPath.substring(0, sharedPrefixLength) + readString();
+
+			pathDictionary.add(path);
+			lastNewPath = path;
+
+			return path;
+		}
+	}
+
+	private <T extends Enum<T>> T readEnum(T[] values) throws IOException {
+		int ordinal = in.readUnsignedByte();
+
+		if (ordinal >= values.length) {
+			throw new IOException("Invalid binary database file: Unknown enum value " + ordinal + " for " + values.getClass().getComponentType().getSimpleName());
+		}
+
+		return values[ordinal];
+	}
+
+	private String readString() throws IOException {
+		return new String(readBytes(), "UTF-8");
+	}
+
+	private byte[] readBytes() throws IOException {
+		long length = readVarLong();
+
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Invalid binary database file: Length " + length + " too large.");
+		}
+
+		byte[] bytes = new byte[(int) length];
+		in.readFully(bytes);
+
+		return bytes;
+	}
+
+	private long readSignedVarLong() throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1); // Zig-zag decoding
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Invalid binary database file: Variable-length integer too long.");
+	}
+
+	private void skipFully(long length) throws IOException {
+		while (length > 0) {
+			long skipped = in.skip(length);
+
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					throw new EOFException("Unexpected end of binary database file.");
+				}
+
+				skipped = 1;
+			}
+
+			length -= skipped;
+		}
+	}
+}
@@ -0,0 +1,352 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.syncany.chunk.Chunk;
+import org.syncany.chunk.MultiChunk;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.DatabaseVersionHeader;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.ObjectId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.util.StringUtil;
+
+/**
+ * This class writes the given {@link DatabaseVersion}s to an {@link OutputStream} (or file)
+ * in a compact binary format. It is the binary counterpart to the {@link DatabaseXmlWriter},
+ * and writes the same information: {@link DatabaseVersionHeader}, {@link PartialFileHistory},
+ * {@link FileVersion}, {@link FileContent}, {@link Chunk} and {@link MultiChunk}.
+ *
+ * <p>The format is structured as follows:
+ *
+ * <pre>
+ *   file      := magic ("SYDB") format-version (byte) header-count { header body-length } { body }
+ *   header    := time client vector-clock-size { vector-clock-name vector-clock-value }
+ *   body      := chunks multichunks file-contents file-histories
+ * </pre>
+ *
+ * <p>All database version headers are written in a leading section, followed by the bodies
+ * in the same order. Readers that only need the headers can hence stop reading after the
+ * header section. Readers that need the bodies of certain database versions can skip the others
+ * without parsing them. To write the header section first, the bodies are buffered (in memory,
+ * or in a temporary file if they are large) until all database versions have been written.
+ *
+ * <p>All integers are written as variable-length integers (7 bits per byte), signed values
+ * (e.g. timestamps) are zig-zag encoded. Identifiers and checksums are written as raw
+ * length-prefixed bytes, strings as length-prefixed UTF-8.
+ *
+ * <p>File paths are compressed using a per-database-version path dictionary: The first
+ * occurrence of a path is written as the number of characters it shares with the previously
+ * written new path, followed by the remaining suffix. Subsequent occurrences of the same path
+ * (e.g. in other versions of the same file history) are written as a reference to the dictionary.
+ *
+ * <p>Enum values (file type and status) are written as their ordinal; new enum constants
+ * must hence only be appended.
+ *
+ * @see DatabaseBinaryReader
+ * @see DatabaseXmlSerializer
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class DatabaseBinaryWriter {
+	private static final Logger logger = Logger.getLogger(DatabaseBinaryWriter.class.getSimpleName());
+
+	static final byte[] BINARY_MAGIC = new byte[] { 'S', 'Y', 'D', 'B' };
+	static final int BINARY_FORMAT_VERSION = 1;
+
+	private static final int BODIES_MEMORY_THRESHOLD = 8 * 1024 * 1024;
+
+	static final int FILE_VERSION_FLAG_UPDATED = 0x01;
+	static final int FILE_VERSION_FLAG_CHECKSUM = 0x02;
+	static final int FILE_VERSION_FLAG_LINK_TARGET = 0x04;
+	static final int FILE_VERSION_FLAG_DOS_ATTRIBUTES = 0x08;
+	static final int FILE_VERSION_FLAG_POSIX_PERMISSIONS = 0x10;
+
+	private Iterator<DatabaseVersion> databaseVersions;
+	private OutputStream out;
+
+	private Map<String, Integer> pathDictionary;
+	private String lastNewPath;
+
+	public DatabaseBinaryWriter(Iterator<DatabaseVersion> databaseVersions, OutputStream out) {
+		this.databaseVersions = databaseVersions;
+		this.out = new BufferedOutputStream(out);
+	}
+
+	public void write() throws IOException {
+		DeferredFileOutputStream bodiesOut = new DeferredFileOutputStream(BODIES_MEMORY_THRESHOLD, "syncany-database-", ".tmp", null);
+		CountingOutputStream countingBodiesOut = new CountingOutputStream(new BufferedOutputStream(bodiesOut));
+
+		try {
+			List<DatabaseVersionHeader> databaseVersionHeaders = new ArrayList<DatabaseVersionHeader>();
+			List<Long> bodyLengths = new ArrayList<Long>();
+
+			// Bodies: Chunks, multichunks, file contents, and file histories (buffered)
+
+			while (databaseVersions.hasNext()) {
+				DatabaseVersion databaseVersion = databaseVersions.next();
+				validateDatabaseVersionHeader(databaseVersion);
+
+				long bodyOffset = countingBodiesOut.getByteCount();
+
+				pathDictionary = new HashMap<String, Integer>();
+				lastNewPath = "";
+
+				writeChunks(countingBodiesOut, databaseVersion.getChunks());
+				writeMultiChunks(countingBodiesOut, databaseVersion.getMultiChunks());
+				writeFileContents(countingBodiesOut, databaseVersion.getFileContents());
+				writeFileHistories(countingBodiesOut, databaseVersion.getFileHistories());
+
+				databaseVersionHeaders.add(databaseVersion.getHeader());
+				bodyLengths.add(countingBodiesOut.getByteCount() - bodyOffset);
+			}
+
+			countingBodiesOut.close();
+
+			// Header section, followed by the bodies
+			out.write(BINARY_MAGIC);
+			out.write(BINARY_FORMAT_VERSION);
+
+			writeVarLong(out, databaseVersionHeaders.size());
+
+			for (int i = 0; i < databaseVersionHeaders.size(); i++) {
+				writeDatabaseVersionHeader(out, databaseVersionHeaders.get(i));
+				writeVarLong(out, bodyLengths.get(i));
+			}
+
+			if (bodiesOut.isInMemory()) {
+				out.write(bodiesOut.getData());
+			}
+			else {
+				FileUtils.copyFile(bodiesOut.getFile(), out);
+			}
+
+			out.flush();
+		}
+		finally {
+			IOUtils.closeQuietly(countingBodiesOut);
+			out.close();
+
+			if (!bodiesOut.isInMemory()) {
+				FileUtils.deleteQuietly(bodiesOut.getFile());
+			}
+		}
+	}
+
+	private void validateDatabaseVersionHeader(DatabaseVersion databaseVersion) throws IOException {
+		if (databaseVersion.getTimestamp() == null || databaseVersion.getClient() == null
+				|| databaseVersion.getVectorClock() == null || databaseVersion.getVectorClock().isEmpty()) {
+
+			logger.log(Level.SEVERE, "Cannot write database version. Header fields must be filled: " + databaseVersion.getHeader());
+			throw new IOException("Cannot write database version. Header fields must be filled: " + databaseVersion.getHeader());
+		}
+	}
+
+	private void writeDatabaseVersionHeader(OutputStream out, DatabaseVersionHeader databaseVersionHeader) throws IOException {
+		writeSignedVarLong(out, databaseVersionHeader.getDate().getTime());
+		writeString(out, databaseVersionHeader.getClient());
+
+		out.write(databaseVersionHeader.getVectorClock().toBytes()); // Same layout as the other length-prefixed fields
+	}
+
+	private void writeChunks(OutputStream out, Collection<ChunkEntry> chunks) throws IOException {
+		writeVarLong(out, chunks.size());
+
+		for (ChunkEntry chunk : chunks) {
+			writeObjectId(out, chunk.getChecksum());
+			writeVarLong(out, chunk.getSize());
+		}
+	}
+
+	private void writeMultiChunks(OutputStream out, Collection<MultiChunkEntry> multiChunks) throws IOException {
+		writeVarLong(out, multiChunks.size());
+
+		for (MultiChunkEntry multiChunk : multiChunks) {
+			writeObjectId(out, multiChunk.getId());
+			writeVarLong(out, multiChunk.getSize());
+			writeChunkRefs(out, multiChunk.getChunks());
+		}
+	}
+
+	private void writeFileContents(OutputStream out, Collection<FileContent> fileContents) throws IOException {
+		writeVarLong(out, fileContents.size());
+
+		for (FileContent fileContent : fileContents) {
+			writeObjectId(out, fileContent.getChecksum());
+			writeVarLong(out, fileContent.getSize());
+			writeChunkRefs(out, fileContent.getChunks());
+		}
+	}
+
+	private void writeChunkRefs(OutputStream out, Collection<ChunkChecksum> chunkChecksums) throws IOException {
+		writeVarLong(out, chunkChecksums.size());
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			writeObjectId(out, chunkChecksum);
+		}
+	}
+
+	private void writeFileHistories(OutputStream out, Collection<PartialFileHistory> fileHistories) throws IOException {
+		writeVarLong(out, fileHistories.size());
+
+		for (PartialFileHistory fileHistory : fileHistories) {
+			Collection<FileVersion> fileVersions = fileHistory.getFileVersions().values();
+
+			writeObjectId(out, fileHistory.getFileHistoryId());
+			writeVarLong(out, fileVersions.size());
+
+			for (FileVersion fileVersion : fileVersions) {
+				writeFileVersion(out, fileVersion);
+			}
+		}
+	}
+
+	private void writeFileVersion(OutputStream out, FileVersion fileVersion) throws IOException {
+		if (fileVersion.getVersion() == null || fileVersion.getType() == null || fileVersion.getPath() == null
+				|| fileVersion.getStatus() == null || fileVersion.getSize() == null || fileVersion.getLastModified() == null) {
+
+			throw new IOException("Unable to write file version, because one or many mandatory fields are null (version, type, path, name, status, size, last modified): " + fileVersion);
+		}
+
+		if (fileVersion.getType() == FileType.SYMLINK && fileVersion.getLinkTarget() == null) {
+			throw new IOException("Unable to write file version: All symlinks must have a target.");
+		}
+
+		int flags = 0;
+
+		flags |= (fileVersion.getUpdated() != null) ? FILE_VERSION_FLAG_UPDATED : 0;
+		flags |= (fileVersion.getChecksum() != null) ? FILE_VERSION_FLAG_CHECKSUM : 0;
+		flags |= (fileVersion.getLinkTarget() != null) ? FILE_VERSION_FLAG_LINK_TARGET : 0;
+		flags |= (fileVersion.getDosAttributes() != null) ? FILE_VERSION_FLAG_DOS_ATTRIBUTES : 0;
+		flags |= (fileVersion.getPosixPermissions() != null) ? FILE_VERSION_FLAG_POSIX_PERMISSIONS : 0;
+
+		writeVarLong(out, fileVersion.getVersion());
+		out.write(fileVersion.getType().ordinal());
+		out.write(fileVersion.getStatus().ordinal());
+		writePath(out, fileVersion.getPath());
+		writeVarLong(out, fileVersion.getSize());
+		writeSignedVarLong(out, fileVersion.getLastModified().getTime());
+		out.write(flags);
+
+		if (fileVersion.getUpdated() != null) {
+			writeSignedVarLong(out, fileVersion.getUpdated().getTime());
+		}
+
+		if (fileVersion.getChecksum() != null) {
+			writeObjectId(out, fileVersion.getChecksum());
+		}
+
+		if (fileVersion.getLinkTarget() != null) {
+			writeString(out, fileVersion.getLinkTarget());
+		}
+
+		if (fileVersion.getDosAttributes() != null) {
+			writeString(out, fileVersion.getDosAttributes());
+		}
+
+		if (fileVersion.getPosixPermissions() != null) {
+			writeString(out, fileVersion.getPosixPermissions());
+		}
+	}
+
+	/**
+	 * Writes a path either as a reference to the path dictionary (index + 1), or
+	 * as a new path (0), followed by the length of the prefix shared with the last
+	 * new path and the remaining suffix.
+	 */
+	private void writePath(OutputStream out, String path) throws IOException {
+		Integer pathIndex = pathDictionary.get(path);
+
+		if (pathIndex != null) {
+			writeVarLong(out, pathIndex + 1);
+		}
+		else {
+			int sharedPrefixLength = getSharedPrefixLength(lastNewPath, path);
+
+			writeVarLong(out, 0);
+			writeVarLong(out, sharedPrefixLength);
+			writeString(out, path.substring(sharedPrefixLength));
+
+			pathDictionary.put(path, pathDictionary.size());
+			lastNewPath = path;
+		}
+	}
+
+	private int getSharedPrefixLength(String path1, String path2) {
+		int maxLength = Math.min(path1.length(), path2.length());
+		int sharedPrefixLength = 0;
+
+		while (sharedPrefixLength < maxLength && path1.charAt(sharedPrefixLength) == path2.charAt(sharedPrefixLength)) {
+			sharedPrefixLength++;
+		}
+
+		// Do not split surrogate pairs; the suffix must be valid UTF-16
+		if (sharedPrefixLength > 0 && Character.isHighSurrogate(path2.charAt(sharedPrefixLength - 1))) {
+			sharedPrefixLength--;
+		}
+
+		return sharedPrefixLength;
+	}
+
+	private void writeObjectId(OutputStream out, ObjectId objectId) throws IOException {
+		byte[] objectIdBytes = objectId.getBytes();
+
+		writeVarLong(out, objectIdBytes.length);
+		out.write(objectIdBytes);
+	}
+
+	private void writeString(OutputStream out, String str) throws IOException {
+		byte[] strBytes = StringUtil.toBytesUTF8(str);
+
+		writeVarLong(out, strBytes.length);
+		out.write(strBytes);
+	}
+
+	private void writeSignedVarLong(OutputStream out, long value) throws IOException {
+		writeVarLong(out, (value << 1) ^ (value >> 63)); // Zig-zag encoding
+	}
+
+	private void writeVarLong(OutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.write((int) value);
+	}
+}
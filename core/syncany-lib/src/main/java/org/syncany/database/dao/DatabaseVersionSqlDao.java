@@ -25,7 +25,6 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -68,6 +67,8 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 	private FileHistorySqlDao fileHistoryDao;
 	private MultiChunkSqlDao multiChunkDao;
 
+	private boolean bulkLoad;
+
 	public DatabaseVersionSqlDao(Connection connection, ChunkSqlDao chunkDao, FileContentSqlDao fileContentDao, FileVersionSqlDao fileVersionDao,
 			FileHistorySqlDao fileHistoryDao,
 			MultiChunkSqlDao multiChunkDao) {
@@ -79,6 +80,7 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		this.fileVersionDao = fileVersionDao;
 		this.fileHistoryDao = fileHistoryDao;
 		this.multiChunkDao = multiChunkDao;
+		this.bulkLoad = false;
 	}
 
 	/**
@@ -95,6 +97,8 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 			preparedStatement.setString(2, vectorClock.toString());
 
 			preparedStatement.executeUpdate();
+
+			fileVersionDao.updateCurrentFileTree(connection, getFileHistoryIds(vectorClock));
 			connection.commit();
 		}
 		catch (SQLException e) {
@@ -102,13 +106,29 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 
+	private List<FileHistoryId> getFileHistoryIds(VectorClock vectorClock) throws SQLException {
+		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.all.getFileHistoryIdsByVectorClock.sql")) {
+			preparedStatement.setString(1, vectorClock.toString());
+
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				List<FileHistoryId> fileHistoryIds = new ArrayList<FileHistoryId>();
+
+				while (resultSet.next()) {
+					fileHistoryIds.add(FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id")));
+				}
+
+				return fileHistoryIds;
+			}
+		}
+	}
+
 	public long writeDatabaseVersion(DatabaseVersion databaseVersion) {
 		try {
 			// Insert & commit database version
 			long databaseVersionId = writeDatabaseVersion(connection, databaseVersion);
 			
-			// Commit & clear local caches
-			clearCaches();
+			// Note: The chunk index and the current file tree are updated incrementally,
+			//       so the caches do not have to be cleared here.
 
 			return databaseVersionId;
 		}
@@ -148,9 +168,23 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		fileContentDao.writeFileContents(connection, databaseVersionId, databaseVersion.getFileContents());
 		fileHistoryDao.writeFileHistories(connection, databaseVersionId, databaseVersion.getFileHistories());
 
+		if (!bulkLoad) {
+			updateCurrentFileTree(connection, databaseVersion);
+		}
+
 		return databaseVersionId;
 	}
 
+	private void updateCurrentFileTree(Connection connection, DatabaseVersion databaseVersion) throws SQLException {
+		List<FileHistoryId> fileHistoryIds = new ArrayList<FileHistoryId>();
+
+		for (PartialFileHistory fileHistory : databaseVersion.getFileHistories()) {
+			fileHistoryIds.add(fileHistory.getFileHistoryId());
+		}
+
+		fileVersionDao.updateCurrentFileTree(connection, fileHistoryIds);
+	}
+
 	private long writeDatabaseVersionHeaderInternal(Connection connection, DatabaseVersionHeader databaseVersionHeader) throws SQLException {
 		try (PreparedStatement preparedStatement = connection.prepareStatement(
 				DatabaseConnectionFactory.getStatement("databaseversion.insert.all.writeDatabaseVersion.sql"), Statement.RETURN_GENERATED_KEYS)) {
@@ -250,6 +284,33 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		chunkDao.clearCache();
 	}
 
+	/**
+	 * Enables or disables the bulk-load mode of this DAO. In bulk-load mode, the current file
+	 * tree (table <i>filetree_current</i>) is not updated when database versions are written,
+	 * and must be rebuilt when the bulk load ends.
+	 *
+	 * @see ApplicationSqlDao#beginBulkLoad()
+	 */
+	public void setBulkLoad(boolean bulkLoad) {
+		this.bulkLoad = bulkLoad;
+	}
+
+	public boolean isBulkLoad() {
+		return bulkLoad;
+	}
+
+	public long getDatabaseVersionCount() {
+		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.all.getDatabaseVersionCount.sql")) {
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public Long getMaxDirtyVectorClock(String machineName) {
 		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.dirty.getMaxDirtyVectorClock.sql")) {
 			preparedStatement.setMaxRows(1);
@@ -286,94 +347,80 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 
-	public Iterator<DatabaseVersion> getDirtyDatabaseVersions() {
-		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.dirty.getDirtyDatabaseVersions.sql")) {
+	public SqlResultIterator<DatabaseVersion> getDirtyDatabaseVersions() {
+		try {
+			PreparedStatement preparedStatement = getStatement("databaseversion.select.dirty.getDirtyDatabaseVersions.sql");
 			preparedStatement.setString(1, DatabaseVersionStatus.DIRTY.toString());
 
-			return new DatabaseVersionIterator(preparedStatement.executeQuery());
+			return new DatabaseVersionIterator(preparedStatement);
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	public Iterator<DatabaseVersion> getDatabaseVersionsTo(String machineName, long maxLocalClientVersion) {
-		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.master.getDatabaseVersionsTo.sql")) {
+	public SqlResultIterator<DatabaseVersion> getDatabaseVersionsTo(String machineName, long maxLocalClientVersion) {
+		try {
+			PreparedStatement preparedStatement = getStatement("databaseversion.select.master.getDatabaseVersionsTo.sql");
 			preparedStatement.setString(1, machineName);
 			preparedStatement.setLong(2, maxLocalClientVersion);
 
-			return new DatabaseVersionIterator(preparedStatement.executeQuery());
+			return new DatabaseVersionIterator(preparedStatement);
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
 	
-	public Iterator<DatabaseVersion> getLastDatabaseVersions(int maxDatabaseVersionCount, int startDatabaseVersionIndex, int maxFileHistoryCount) {
-		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.master.getLastDatabaseVersions.sql")) {
+	public SqlResultIterator<DatabaseVersion> getMasterDatabaseVersions() {
+		try {
+			PreparedStatement preparedStatement = getStatement("databaseversion.select.master.getMasterDatabaseVersions.sql");
+			return new DatabaseVersionIterator(preparedStatement);
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public SqlResultIterator<DatabaseVersion> getLastDatabaseVersions(int maxDatabaseVersionCount, int startDatabaseVersionIndex, int maxFileHistoryCount) {
+		try {
+			PreparedStatement preparedStatement = getStatement("databaseversion.select.master.getLastDatabaseVersions.sql");
+
 			maxDatabaseVersionCount = (maxDatabaseVersionCount > 0) ? maxDatabaseVersionCount : Integer.MAX_VALUE;
 			startDatabaseVersionIndex = (startDatabaseVersionIndex > 0) ? startDatabaseVersionIndex : 0;
 			
 			preparedStatement.setInt(1, maxDatabaseVersionCount);
 			preparedStatement.setInt(2, startDatabaseVersionIndex);
 			
-			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				return new DatabaseVersionIterator(preparedStatement.executeQuery(), true, maxFileHistoryCount);
-			}
+			return new DatabaseVersionIterator(preparedStatement, true, maxFileHistoryCount);
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-
-	private class DatabaseVersionIterator implements Iterator<DatabaseVersion> {
-		private ResultSet resultSet;
+	private class DatabaseVersionIterator extends SqlResultIterator<DatabaseVersion> {
 		private boolean excludeChunkData;
 		private int fileHistoryMaxCount;
 
-		private boolean hasNext;
-
-		public DatabaseVersionIterator(ResultSet resultSet) throws SQLException {
-			this(resultSet, false, -1);
+		public DatabaseVersionIterator(PreparedStatement preparedStatement) throws SQLException {
+			this(preparedStatement, false, -1);
 		}
 
-		public DatabaseVersionIterator(ResultSet resultSet, boolean excludeChunkData, int fileHistoryMaxCount) throws SQLException {
-			this.resultSet = resultSet;
+		public DatabaseVersionIterator(PreparedStatement preparedStatement, boolean excludeChunkData, int fileHistoryMaxCount) throws SQLException {
+			super(preparedStatement, 0);
+
 			this.excludeChunkData = excludeChunkData;
 			this.fileHistoryMaxCount = fileHistoryMaxCount;
-					
-			this.hasNext = resultSet.next();					
-		}
-
-		@Override
-		public boolean hasNext() {
-			return hasNext;
 		}
 
 		@Override
-		public DatabaseVersion next() {
-			if (hasNext) {
-				try {
-					DatabaseVersion databaseVersion = createDatabaseVersionFromRow(resultSet, excludeChunkData, fileHistoryMaxCount);
-					hasNext = resultSet.next();
+		protected DatabaseVersion createNext(ResultSet resultSet) throws SQLException {
+			DatabaseVersion databaseVersion = createDatabaseVersionFromRow(resultSet, excludeChunkData, fileHistoryMaxCount);
+			nextRow();
 
-					return databaseVersion;
-				}
-				catch (Exception e) {
-					throw new RuntimeException("Cannot load next SQL row.", e);
-				}
-			}
-			else {
-				return null;
-			}
+			return databaseVersion;
 		}
-
-		@Override
-		public void remove() {
-			throw new RuntimeException("Not implemented.");
-		}
-
 	}
 
 	protected DatabaseVersion createDatabaseVersionFromRow(ResultSet resultSet, boolean excludeChunkData, int fileHistoryMaxCount) throws SQLException {
@@ -435,7 +482,7 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 
 		databaseVersionHeader.setClient(resultSet.getString("client"));
 		databaseVersionHeader.setDate(new Date(resultSet.getTimestamp("localtime").getTime()));
-		databaseVersionHeader.setVectorClock(getVectorClockByDatabaseVersionId(resultSet.getInt("id")));
+		databaseVersionHeader.setVectorClock(VectorClock.parseVectorClock(resultSet.getString("vectorclock_serialized")));
 
 		return databaseVersionHeader;
 	}
@@ -445,33 +492,8 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 
 		try (PreparedStatement preparedStatement = getStatement("databaseversion.select.master.getLocalDatabaseBranch.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				DatabaseVersionHeader currentDatabaseVersionHeader = null;
-				int currentDatabaseVersionHeaderId = -1;
-
 				while (resultSet.next()) {
-					int databaseVersionHeaderId = resultSet.getInt("id");
-
-					// Row does NOT belong to the current database version
-					if (currentDatabaseVersionHeader == null || currentDatabaseVersionHeaderId != databaseVersionHeaderId) {
-						// Add to database branch
-						if (currentDatabaseVersionHeader != null) {
-							databaseBranch.add(currentDatabaseVersionHeader);
-						}
-
-						// Make a new database version header
-						currentDatabaseVersionHeader = new DatabaseVersionHeader();
-						currentDatabaseVersionHeader.setClient(resultSet.getString("client"));
-						currentDatabaseVersionHeader.setDate(new Date(resultSet.getTimestamp("localtime").getTime()));
-
-						currentDatabaseVersionHeaderId = databaseVersionHeaderId;
-					}
-
-					currentDatabaseVersionHeader.getVectorClock().setClock(resultSet.getString("vc_client"), resultSet.getLong("vc_logicaltime"));
-				}
-
-				// Add to database branch
-				if (currentDatabaseVersionHeader != null) {
-					databaseBranch.add(currentDatabaseVersionHeader);
+					databaseBranch.add(createDatabaseVersionHeaderFromRow(resultSet));
 				}
 
 				return databaseBranch;
@@ -482,24 +504,6 @@ public class DatabaseVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 
-	protected VectorClock getVectorClockByDatabaseVersionId(int databaseVersionId) throws SQLException {
-		PreparedStatement preparedStatement = getStatement("databaseversion.select.all.getVectorClockByDatabaseVersionId.sql");
-		preparedStatement.setInt(1, databaseVersionId);
-
-		ResultSet resultSet = preparedStatement.executeQuery();
-
-		VectorClock vectorClock = new VectorClock();
-
-		while (resultSet.next()) {
-			vectorClock.setClock(resultSet.getString("client"), resultSet.getLong("logicaltime"));
-		}
-
-		resultSet.close();
-		preparedStatement.close();
-
-		return vectorClock;
-	}
-
 	private void removeDirtyVectorClocks() throws SQLException {
 		PreparedStatement preparedStatement = getStatement("databaseversion.delete.dirty.removeDirtyVectorClocks.sql");
 		preparedStatement.executeUpdate();
@@ -17,11 +17,13 @@
  */
 package org.syncany.database.dao;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.Iterator;
@@ -49,8 +51,14 @@ import org.syncany.database.VectorClock;
  * <p>It uses a {@link DatabaseXmlWriter} to write XML files to disk and 
  * {@link DatabaseXmlParseHandler} to parse them while reading. 
  * 
+ * <p>Alternatively, if the {@link DatabaseFormat#BINARY} format is selected, files are
+ * written in a compact binary format by the {@link DatabaseBinaryWriter}. When loading
+ * a file, the format is detected automatically, i.e. both formats can always be read.
+ * 
  * @see DatabaseXmlParseHandler
  * @see DatabaseXmlWriter
+ * @see DatabaseBinaryReader
+ * @see DatabaseBinaryWriter
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class DatabaseXmlSerializer {
@@ -60,14 +68,24 @@ public class DatabaseXmlSerializer {
 		FULL, HEADER_ONLY
 	}
 
+	public enum DatabaseFormat {
+		XML, BINARY
+	}
+
 	private Transformer transformer;
+	private DatabaseFormat format;
 
 	public DatabaseXmlSerializer() {
 		this(null);
 	}
 
 	public DatabaseXmlSerializer(Transformer transformer) {
+		this(transformer, DatabaseFormat.XML);
+	}
+
+	public DatabaseXmlSerializer(Transformer transformer, DatabaseFormat format) {
 		this.transformer = transformer;
+		this.format = format;
 	}
 
 	public void save(List<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
@@ -75,23 +93,28 @@ public class DatabaseXmlSerializer {
 	}
 
 	public void save(Iterator<DatabaseVersion> databaseVersions, File destinationFile) throws IOException {
-		try {
-			PrintWriter out;
+		OutputStream os;
 
-			if (transformer == null) {
-				out = new PrintWriter(new OutputStreamWriter(
-						new FileOutputStream(destinationFile), "UTF-8"));
-			}
-			else {
-				out = new PrintWriter(new OutputStreamWriter(
-						transformer.createOutputStream(new FileOutputStream(destinationFile)), "UTF-8"));
-			}
+		if (transformer == null) {
+			os = new FileOutputStream(destinationFile);
+		}
+		else {
+			os = transformer.createOutputStream(new FileOutputStream(destinationFile));
+		}
 
-			// Initialize XML writer
-			new DatabaseXmlWriter(databaseVersions, out).write();
+		if (format == DatabaseFormat.BINARY) {
+			new DatabaseBinaryWriter(databaseVersions, os).write();
 		}
-		catch (XMLStreamException e) {
-			throw new IOException(e);
+		else {
+			try {
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(os, "UTF-8"));
+
+				// Initialize XML writer
+				new DatabaseXmlWriter(databaseVersions, out).write();
+			}
+			catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
 		}
 	}
 
@@ -108,16 +131,47 @@ public class DatabaseXmlSerializer {
 		}
 
 		try {
-			logger.log(Level.INFO, "- Loading database ({0}) from file {1} ...", new Object[] { readType, databaseFile });
+			is = new BufferedInputStream(is);
+
+			if (isBinaryDatabase(is)) {
+				logger.log(Level.INFO, "- Loading binary database ({0}) from file {1} ...", new Object[] { readType, databaseFile });
+				new DatabaseBinaryReader(db, fromVersion, toVersion, readType).read(is);
+			}
+			else {
+				logger.log(Level.INFO, "- Loading database ({0}) from file {1} ...", new Object[] { readType, databaseFile });
 
-			SAXParserFactory factory = SAXParserFactory.newInstance();
-			SAXParser saxParser = factory.newSAXParser();
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				SAXParser saxParser = factory.newSAXParser();
 
-			saxParser.parse(is, new DatabaseXmlParseHandler(db, fromVersion, toVersion, readType));
+				saxParser.parse(is, new DatabaseXmlParseHandler(db, fromVersion, toVersion, readType));
+			}
 		}
 		catch (Exception e) {
 			throw new IOException(e);
 		}
+		finally {
+			is.close();
+		}
 	}
 
+	private boolean isBinaryDatabase(InputStream is) throws IOException {
+		byte[] header = new byte[DatabaseBinaryWriter.BINARY_MAGIC.length];
+		int headerLength = 0;
+
+		is.mark(header.length);
+
+		while (headerLength < header.length) {
+			int read = is.read(header, headerLength, header.length - headerLength);
+
+			if (read < 0) {
+				break;
+			}
+
+			headerLength += read;
+		}
+
+		is.reset();
+
+		return headerLength == header.length && DatabaseBinaryReader.isBinaryDatabase(header);
+	}
 }
@@ -62,7 +62,7 @@ public class FileContentSqlDao extends AbstractSqlDao {
 		for (FileContent fileContent : fileContents) {
 			PreparedStatement preparedStatement = getStatement(connection, "filecontent.insert.all.writeFileContents.sql");
 
-			preparedStatement.setString(1, fileContent.getChecksum().toString());
+			preparedStatement.setBytes(1, fileContent.getChecksum().getBytes());
 			preparedStatement.setLong(2, databaseVersionId);
 			preparedStatement.setLong(3, fileContent.getSize());
 			
@@ -79,8 +79,8 @@ public class FileContentSqlDao extends AbstractSqlDao {
 		int order = 0;
 		
 		for (ChunkChecksum chunkChecksum : fileContent.getChunks()) {
-			preparedStatement.setString(1, fileContent.getChecksum().toString());
-			preparedStatement.setString(2, chunkChecksum.toString());
+			preparedStatement.setBytes(1, fileContent.getChecksum().getBytes());
+			preparedStatement.setBytes(2, chunkChecksum.getBytes());
 			preparedStatement.setInt(3, order);
 
 			preparedStatement.addBatch();
@@ -167,13 +167,13 @@ public class FileContentSqlDao extends AbstractSqlDao {
 
 	private FileContent getFileContentWithoutChunkChecksums(FileChecksum fileChecksum) {
 		try (PreparedStatement preparedStatement = getStatement("filecontent.select.all.getFileContentByChecksumWithoutChunkChecksums.sql")) {
-			preparedStatement.setString(1, fileChecksum.toString());
+			preparedStatement.setBytes(1, fileChecksum.getBytes());
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
 					FileContent fileContent = new FileContent();
 	
-					fileContent.setChecksum(FileChecksum.parseFileChecksum(resultSet.getString("checksum")));
+					fileContent.setChecksum(new FileChecksum(resultSet.getBytes("checksum")));
 					fileContent.setSize(resultSet.getLong("size"));
 	
 					return fileContent;
@@ -189,7 +189,7 @@ public class FileContentSqlDao extends AbstractSqlDao {
 
 	private FileContent getFileContentWithChunkChecksums(FileChecksum fileChecksum) {
 		try (PreparedStatement preparedStatement = getStatement("filecontent.select.all.getFileContentByChecksumWithChunkChecksums.sql")) {
-			preparedStatement.setString(1, fileChecksum.toString());
+			preparedStatement.setBytes(1, fileChecksum.getBytes());
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				FileContent fileContent = null;
@@ -198,12 +198,12 @@ public class FileContentSqlDao extends AbstractSqlDao {
 					if (fileContent == null) {
 						fileContent = new FileContent();
 						
-						fileContent.setChecksum(FileChecksum.parseFileChecksum(resultSet.getString("checksum")));
+						fileContent.setChecksum(new FileChecksum(resultSet.getBytes("checksum")));
 						fileContent.setSize(resultSet.getLong("size"));
 					}
 					
 					// Add chunk references
-					ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum"));
+					ChunkChecksum chunkChecksum = new ChunkChecksum(resultSet.getBytes("chunk_checksum"));
 					fileContent.addChunk(chunkChecksum);
 				}
 	
@@ -220,7 +220,7 @@ public class FileContentSqlDao extends AbstractSqlDao {
 		FileChecksum currentFileChecksum = null;
 		
 		while (resultSet.next()) {		
-			FileChecksum fileChecksum = FileChecksum.parseFileChecksum(resultSet.getString("checksum"));
+			FileChecksum fileChecksum = new FileChecksum(resultSet.getBytes("checksum"));
 			FileContent fileContent = null;
 			
 			if (currentFileChecksum != null && currentFileChecksum.equals(fileChecksum)) {
@@ -233,7 +233,7 @@ public class FileContentSqlDao extends AbstractSqlDao {
 				fileContent.setSize(resultSet.getLong("size"));
 			}
 			
-			ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum"));
+			ChunkChecksum chunkChecksum = new ChunkChecksum(resultSet.getBytes("chunk_checksum"));
 			fileContent.addChunk(chunkChecksum);
 
 			fileContents.put(fileChecksum, fileContent); 
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.syncany.database.DatabaseVersion.DatabaseVersionStatus;
+import org.syncany.database.FileContent.FileChecksum;
 import org.syncany.database.FileVersion;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
@@ -56,7 +57,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * Writes a list of {@link PartialFileHistory}s to the database table <i>filehistory</i> using <tt>INSERT</tt>s
 	 * and the given connection. In addition, this method also writes the corresponding {@link FileVersion}s of
 	 * each file history to the database using
-	 * {@link FileVersionSqlDao#writeFileVersions(Connection, FileHistoryId, long, Collection) FileVersionSqlDao#writeFileVersions}.
+	 * {@link FileVersionSqlDao#writeFileVersions(Connection, long, Collection) FileVersionSqlDao#writeFileVersions}.
 	 *
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
 	 *
@@ -66,22 +67,26 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * @throws SQLException If the SQL statement fails
 	 */
 	public void writeFileHistories(Connection connection, long databaseVersionId, Collection<PartialFileHistory> fileHistories) throws SQLException {
-		for (PartialFileHistory fileHistory : fileHistories) {
-			PreparedStatement preparedStatement = getStatement(connection, "filehistory.insert.all.writeFileHistories.sql");
-
-			preparedStatement.setString(1, fileHistory.getFileHistoryId().toString());
-			preparedStatement.setLong(2, databaseVersionId);
+		if (fileHistories.size() == 0) {
+			return;
+		}
 
-			int affectedRows = preparedStatement.executeUpdate();
+		try (PreparedStatement preparedStatement = getStatement(connection, "filehistory.insert.all.writeFileHistories.sql")) {
+			for (PartialFileHistory fileHistory : fileHistories) {
+				preparedStatement.setBytes(1, fileHistory.getFileHistoryId().getBytes());
+				preparedStatement.setLong(2, databaseVersionId);
 
-			if (affectedRows == 0) {
-				throw new SQLException("Cannot add database version header. Affected rows is zero.");
+				preparedStatement.addBatch();
 			}
 
-			preparedStatement.close();
-
-			fileVersionDao.writeFileVersions(connection, fileHistory.getFileHistoryId(), databaseVersionId, fileHistory.getFileVersions().values());
+			for (int affectedRows : preparedStatement.executeBatch()) {
+				if (affectedRows == 0) {
+					throw new SQLException("Cannot add file history. Affected rows is zero.");
+				}
+			}
 		}
+
+		fileVersionDao.writeFileVersions(connection, databaseVersionId, fileHistories);
 	}
 
 	public void removeDirtyFileHistories() throws SQLException {
@@ -132,7 +137,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
-					FileHistoryId fullFileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+					FileHistoryId fullFileHistoryId = FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"));
 
 					boolean nonUniqueResult = resultSet.next();
 
@@ -154,10 +159,10 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	}
 
 	public Map<FileHistoryId, PartialFileHistory> getFileHistories(List<FileHistoryId> fileHistoryIds) {
-		String[] fileHistoryIdsStr = createFileHistoryIdsArray(fileHistoryIds);
+		byte[][] fileHistoryIdsBytes = createFileHistoryIdsArray(fileHistoryIds);
 
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesByIds.sql")) {
-			preparedStatement.setArray(1, connection.createArrayOf("varchar", fileHistoryIdsStr));
+			preparedStatement.setArray(1, connection.createArrayOf("VARBINARY", fileHistoryIdsBytes));
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				return createFileHistoriesFromResult(resultSet);
@@ -174,13 +179,13 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 	 * 
 	 * @return An empty Collection is returned if none exist.
 	 */
-	public Collection<PartialFileHistory> getFileHistoriesByChecksumSizeAndModifiedDate(String filecontentChecksum, long size, Date modifiedDate) {
+	public Collection<PartialFileHistory> getFileHistoriesByChecksumSizeAndModifiedDate(FileChecksum filecontentChecksum, long size, Date modifiedDate) {
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesByChecksumSizeAndModifiedDate.sql")) {
 			// This first query retrieves the last version for each FileHistory matching the three requested properties.
 			// However, it does not guarantee that this version is indeed the last version in that particular
 			// FileHistory, so we need another query to verify that.
 
-			preparedStatement.setString(1, filecontentChecksum);
+			preparedStatement.setBytes(1, filecontentChecksum.getBytes());
 			preparedStatement.setLong(2, size);
 			preparedStatement.setTimestamp(3, new Timestamp(modifiedDate.getTime()));
 
@@ -188,7 +193,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 				Collection<PartialFileHistory> fileHistories = new ArrayList<>();
 				
 				while (resultSet.next()) {
-					String fileHistoryId = resultSet.getString("filehistory_id");
+					FileHistoryId fileHistoryId = FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"));
 					PartialFileHistory fileHistory = getLastVersionByFileHistoryId(fileHistoryId);
 					
 					boolean resultIsLatestVersion = fileHistory.getLastVersion().getVersion() == resultSet.getLong("version");
@@ -226,7 +231,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 				// Fetch the latest versions of all files that once existed with the given
 				// path and find the most recent by comparing vector clocks
 
-				String latestFileHistoryId = null;
+				byte[] latestFileHistoryId = null;
 				Long latestFileVersion = null;
 				VectorClock latestVectorClock = null;
 
@@ -237,7 +242,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 
 					if (vectorClockIsGreater) {
 						latestVectorClock = resultSetVectorClock;
-						latestFileHistoryId = resultSet.getString("filehistory_id");
+						latestFileHistoryId = resultSet.getBytes("filehistory_id");
 						latestFileVersion = resultSet.getLong("version");
 					}
 				}
@@ -248,7 +253,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 				}
 
 				// Get the last FileVersion of the FileHistory in the database with the largest vectorclock.
-				PartialFileHistory fileHistory = getLastVersionByFileHistoryId(latestFileHistoryId);
+				PartialFileHistory fileHistory = getLastVersionByFileHistoryId(FileHistoryId.fromBytes(latestFileHistoryId));
 				
 				// The above query does not guarantee the resulting version is the last in its
 				// history. We need to check this before returning the file.
@@ -268,15 +273,15 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 		}
 	}
 
-	private PartialFileHistory getLastVersionByFileHistoryId(String fileHistoryId) {
+	private PartialFileHistory getLastVersionByFileHistoryId(FileHistoryId fileHistoryId) {
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getLastVersionByFileHistoryId.sql")) {
-			preparedStatement.setString(1, fileHistoryId);
-			preparedStatement.setString(2, fileHistoryId);
+			preparedStatement.setBytes(1, fileHistoryId.getBytes());
+			preparedStatement.setBytes(2, fileHistoryId.getBytes());
 
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
 					FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
-					FileHistoryId fileHistoryIdData = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+					FileHistoryId fileHistoryIdData = FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"));
 
 					PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryIdData);
 					fileHistory.addFileVersion(lastFileVersion);
@@ -293,21 +298,46 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 		}
 	}
 
-	private String[] createFileHistoryIdsArray(List<FileHistoryId> fileHistoryIds) {
-		return Lists.transform(fileHistoryIds, new Function<FileHistoryId, String>() {
+	private byte[][] createFileHistoryIdsArray(List<FileHistoryId> fileHistoryIds) {
+		return Lists.transform(fileHistoryIds, new Function<FileHistoryId, byte[]>() {
 			@Override
-			public String apply(FileHistoryId fileHistoryId) {
-				return fileHistoryId.toString();
+			public byte[] apply(FileHistoryId fileHistoryId) {
+				return fileHistoryId.getBytes();
 			}
-		}).toArray(new String[0]);
+		}).toArray(new byte[0][]);
 	}
 
+	/**
+	 * Returns all file histories and all of their file versions in <tt>MASTER</tt> database versions.
+	 * Since this loads the entire database into memory, {@link #getFileHistoriesWithFileVersionsIterator(int)}
+	 * should be used instead wherever possible.
+	 */
 	public Map<FileHistoryId, PartialFileHistory> getFileHistoriesWithFileVersions() {
-		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesWithFileVersions.sql")) {
-			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				return createFileHistoriesFromResult(resultSet);
+		Map<FileHistoryId, PartialFileHistory> fileHistories = new HashMap<FileHistoryId, PartialFileHistory>();
+
+		try (SqlResultIterator<PartialFileHistory> fileHistoryIterator = getFileHistoriesWithFileVersionsIterator(SqlResultIterator.DEFAULT_FETCH_SIZE)) {
+			while (fileHistoryIterator.hasNext()) {
+				PartialFileHistory fileHistory = fileHistoryIterator.next();
+				fileHistories.put(fileHistory.getFileHistoryId(), fileHistory);
 			}
 		}
+
+		return fileHistories;
+	}
+
+	/**
+	 * Returns a cursor over all file histories (including all of their file versions) in
+	 * <tt>MASTER</tt> database versions. Only one file history at a time is held in memory.
+	 *
+	 * <p>The returned iterator must be closed if it is not read to the end.
+	 *
+	 * @param fetchSize Number of rows to fetch from the database at once
+	 */
+	public SqlResultIterator<PartialFileHistory> getFileHistoriesWithFileVersionsIterator(int fetchSize) {
+		try {
+			PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesWithFileVersions.sql");
+			return fileVersionDao.createFileHistoryIterator(preparedStatement, fetchSize);
+		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
@@ -319,7 +349,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 
 		while (resultSet.next()) {
 			FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
-			FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+			FileHistoryId fileHistoryId = FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"));
 
 			// Old history (= same filehistory identifier)
 			if (fileHistory != null && fileHistory.getFileHistoryId().equals(fileHistoryId)) { // Same history!
@@ -353,7 +383,7 @@ public class FileHistorySqlDao extends AbstractSqlDao {
 		try (PreparedStatement preparedStatement = getStatement("filehistory.select.master.getFileHistoriesWithLastVersion.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				while (resultSet.next()) {
-					FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+					FileHistoryId fileHistoryId = FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"));
 					FileVersion lastFileVersion = fileVersionDao.createFileVersionFromRow(resultSet);
 
 					PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
@@ -63,48 +63,96 @@ public class FileVersionSqlDao extends AbstractSqlDao {
            .put(TimeUnit.YEARS, "YYY")
            .build();	
 	
+	private static final int MAX_BATCH_SIZE = 10000;
+
 	public FileVersionSqlDao(Connection connection) {
 		super(connection);
 	}
 
 	/**
-	 * Writes a list of {@link FileVersion} to the database table <i>fileversion</i> using <tt>INSERT</tt>s
-	 * and the given connection.
+	 * Writes the {@link FileVersion}s of the given list of {@link PartialFileHistory}s to the database
+	 * table <i>fileversion</i> using batched <tt>INSERT</tt>s and the given connection.
 	 *
 	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
 	 *
 	 * @param connection The connection used to execute the statements
-	 * @param fileHistoryId References the {@link PartialFileHistory} to which the list of file versions belongs
-	 * @param databaseVersionId References the {@link PartialFileHistory} to which the list of file versions belongs
-	 * @param fileVersions List of {@link FileVersion}s to be written to the database
+	 * @param databaseVersionId References the database version to which the file versions belong
+	 * @param fileHistories List of {@link PartialFileHistory}s whose file versions are to be written to the database
 	 * @throws SQLException If the SQL statement fails
 	 */
-	public void writeFileVersions(Connection connection, FileHistoryId fileHistoryId, long databaseVersionId, Collection<FileVersion> fileVersions)
-			throws SQLException {
-		PreparedStatement preparedStatement = getStatement(connection, "fileversion.insert.writeFileVersions.sql");
-
-		for (FileVersion fileVersion : fileVersions) {
-			String fileContentChecksumStr = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().toString() : null;
-
-			preparedStatement.setString(1, fileHistoryId.toString());
-			preparedStatement.setInt(2, Integer.parseInt("" + fileVersion.getVersion()));
-			preparedStatement.setLong(3, databaseVersionId);
-			preparedStatement.setString(4, fileVersion.getPath());
-			preparedStatement.setString(5, fileVersion.getType().toString());
-			preparedStatement.setString(6, fileVersion.getStatus().toString());
-			preparedStatement.setLong(7, fileVersion.getSize());
-			preparedStatement.setTimestamp(8, new Timestamp(fileVersion.getLastModified().getTime()));
-			preparedStatement.setString(9, fileVersion.getLinkTarget());
-			preparedStatement.setString(10, fileContentChecksumStr);
-			preparedStatement.setTimestamp(11, new Timestamp(fileVersion.getUpdated().getTime()));
-			preparedStatement.setString(12, fileVersion.getPosixPermissions());
-			preparedStatement.setString(13, fileVersion.getDosAttributes());
-
-			preparedStatement.addBatch();
-		}
-
-		preparedStatement.executeBatch();
-		preparedStatement.close();
+	public void writeFileVersions(Connection connection, long databaseVersionId, Collection<PartialFileHistory> fileHistories) throws SQLException {
+		try (PreparedStatement preparedStatement = getStatement(connection, "fileversion.insert.writeFileVersions.sql")) {
+			int batchSize = 0;
+
+			for (PartialFileHistory fileHistory : fileHistories) {
+				for (FileVersion fileVersion : fileHistory.getFileVersions().values()) {
+					byte[] fileContentChecksumBytes = (fileVersion.getChecksum() != null) ? fileVersion.getChecksum().getBytes() : null;
+
+					preparedStatement.setBytes(1, fileHistory.getFileHistoryId().getBytes());
+					preparedStatement.setInt(2, Integer.parseInt("" + fileVersion.getVersion()));
+					preparedStatement.setLong(3, databaseVersionId);
+					preparedStatement.setString(4, fileVersion.getPath());
+					preparedStatement.setString(5, fileVersion.getType().toString());
+					preparedStatement.setString(6, fileVersion.getStatus().toString());
+					preparedStatement.setLong(7, fileVersion.getSize());
+					preparedStatement.setTimestamp(8, new Timestamp(fileVersion.getLastModified().getTime()));
+					preparedStatement.setString(9, fileVersion.getLinkTarget());
+					preparedStatement.setBytes(10, fileContentChecksumBytes);
+					preparedStatement.setTimestamp(11, new Timestamp(fileVersion.getUpdated().getTime()));
+					preparedStatement.setString(12, fileVersion.getPosixPermissions());
+					preparedStatement.setString(13, fileVersion.getDosAttributes());
+
+					preparedStatement.addBatch();
+
+					if (++batchSize == MAX_BATCH_SIZE) {
+						preparedStatement.executeBatch();
+						batchSize = 0;
+					}
+				}
+			}
+
+			if (batchSize > 0) {
+				preparedStatement.executeBatch();
+			}
+		}
+	}
+
+	/**
+	 * Updates the materialized current file tree (table <i>filetree_current</i>) for the given
+	 * file histories, i.e. replaces their entries with the last version of each file history in
+	 * a <tt>MASTER</tt> database version (unless that version is <tt>DELETED</tt>).
+	 *
+	 * <p>The table mirrors the <i>fileversion_master_last</i> view, but avoids grouping over all
+	 * file versions whenever the current file tree is queried. It must be updated whenever file
+	 * versions are added or removed, or database versions change their status.
+	 *
+	 * <p><b>Note:</b> This method executes, but <b>does not commit</b> the queries.
+	 *
+	 * @param connection The connection used to execute the statements
+	 * @param fileHistoryIds Identifiers of the file histories to update
+	 * @throws SQLException If the SQL statement fails
+	 */
+	public void updateCurrentFileTree(Connection connection, Collection<FileHistoryId> fileHistoryIds) throws SQLException {
+		if (fileHistoryIds.size() > 0) {
+			try (PreparedStatement preparedStatement = getStatement(connection, "filetree.delete.all.removeFileTreeEntries.sql")) {
+				for (FileHistoryId fileHistoryId : fileHistoryIds) {
+					preparedStatement.setBytes(1, fileHistoryId.getBytes());
+					preparedStatement.addBatch();
+				}
+
+				preparedStatement.executeBatch();
+			}
+
+			try (PreparedStatement preparedStatement = getStatement(connection, "filetree.insert.master.writeFileTreeEntries.sql")) {
+				for (FileHistoryId fileHistoryId : fileHistoryIds) {
+					preparedStatement.setBytes(1, fileHistoryId.getBytes());
+					preparedStatement.setBytes(2, fileHistoryId.getBytes());
+					preparedStatement.addBatch();
+				}
+
+				preparedStatement.executeBatch();
+			}
+		}
 	}
 
 	/**
@@ -134,7 +182,7 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 					FileHistoryId purgeFileHistoryId = purgeFileVersionEntry.getKey();
 					FileVersion purgeFileVersion = purgeFileVersionEntry.getValue();
 
-					preparedStatement.setString(1, purgeFileHistoryId.toString());
+					preparedStatement.setBytes(1, purgeFileHistoryId.getBytes());
 					preparedStatement.setLong(2, purgeFileVersion.getVersion());
 
 					preparedStatement.addBatch();
@@ -142,6 +190,8 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 
 				preparedStatement.executeBatch();
 			}
+
+			updateCurrentFileTree(connection, purgeFileVersions.keySet());
 		}
 	}
 
@@ -150,7 +200,7 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			try (PreparedStatement preparedStatement = getStatement(connection, "fileversion.delete.all.removeSpecificFileVersionsByIds.sql")) {
 				for (FileHistoryId purgeFileHistoryId : purgeFileVersions.keySet()) {
 					for (FileVersion purgeFileVersion : purgeFileVersions.get(purgeFileHistoryId)) {
-						preparedStatement.setString(1, purgeFileHistoryId.toString());
+						preparedStatement.setBytes(1, purgeFileHistoryId.getBytes());
 						preparedStatement.setLong(2, purgeFileVersion.getVersion());
 
 						preparedStatement.addBatch();
@@ -159,6 +209,8 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 
 				preparedStatement.executeBatch();
 			}
+
+			updateCurrentFileTree(connection, purgeFileVersions.keySet());
 		}
 	}
 
@@ -170,19 +222,34 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 	 * <p>Keys in the returned map correspond to the file version's relative file path,
 	 * and values to the actual {@link FileVersion} object.
 	 *
+	 * @see #getCurrentFileTreeIterator(int)
 	 * @return Returns the current file tree as a map of relative paths to {@link FileVersion} objects
 	 */
 	public Map<String, FileVersion> getCurrentFileTree() {
-		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getCurrentFileTree.sql")) {
-			Map<String, FileVersion> fileTree = new TreeMap<>();
-			List<FileVersion> fileList = getFileTree(preparedStatement);
-			
-			for (FileVersion fileVersion : fileList) {
+		Map<String, FileVersion> fileTree = new TreeMap<>();
+
+		try (SqlResultIterator<FileVersion> fileVersions = getCurrentFileTreeIterator(SqlResultIterator.DEFAULT_FETCH_SIZE)) {
+			while (fileVersions.hasNext()) {
+				FileVersion fileVersion = fileVersions.next();
 				fileTree.put(fileVersion.getPath(), fileVersion);
 			}
-			
-			return fileTree;
-			
+		}
+
+		return fileTree;
+	}
+
+	/**
+	 * Queries the database for the currently active {@link FileVersion}s and returns a cursor
+	 * over them, so that the current file tree can be processed without holding it in memory.
+	 *
+	 * <p>The returned iterator must be closed if it is not read to the end.
+	 *
+	 * @param fetchSize Number of rows to fetch from the database at once
+	 * @return Returns a cursor over the file versions of the current file tree (in no particular order)
+	 */
+	public SqlResultIterator<FileVersion> getCurrentFileTreeIterator(int fetchSize) {
+		try {
+			return new FileVersionIterator(getStatement("fileversion.select.master.getCurrentFileTree.sql"), fetchSize);
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -191,7 +258,7 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 
 	public List<FileVersion> getFileHistory(FileHistoryId fileHistoryId) {
 		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFileHistoryById.sql")) {
-			preparedStatement.setString(1, fileHistoryId.toString());
+			preparedStatement.setBytes(1, fileHistoryId.getBytes());
 
 			List<FileVersion> fileTree = new ArrayList<FileVersion>();
 
@@ -215,6 +282,28 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 	public List<FileVersion> getFileList(String pathExpression, Date date, boolean fileHistoryId, boolean recursive, boolean deleted,
 			Set<FileType> fileTypes) {
 		
+		List<FileVersion> fileList = new ArrayList<>();
+
+		try (SqlResultIterator<FileVersion> fileVersions = getFileListIterator(pathExpression, date, fileHistoryId, recursive, deleted, fileTypes,
+				SqlResultIterator.DEFAULT_FETCH_SIZE)) {
+
+			while (fileVersions.hasNext()) {
+				fileList.add(fileVersions.next());
+			}
+		}
+
+		return fileList;
+	}
+
+	/**
+	 * Queries the database for the file versions matching the given filter criteria (see 'ls' command)
+	 * and returns a cursor over them. The returned iterator must be closed if it is not read to the end.
+	 *
+	 * @see #getFileList(String, Date, boolean, boolean, boolean, Set)
+	 */
+	public SqlResultIterator<FileVersion> getFileListIterator(String pathExpression, Date date, boolean fileHistoryId, boolean recursive,
+			boolean deleted, Set<FileType> fileTypes, int fetchSize) {
+		
 		// Determine sensible query parameters
 		// Basic idea: If null/empty given, match them all!
 
@@ -244,7 +333,9 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 					+ StringUtil.join(fileTypesStr, ", "));
 		}
 
-		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFilteredFileTree.sql")) {
+		try {
+			PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFilteredFileTree.sql");
+
 			preparedStatement.setString(1, fileStatusNotEqualTo);
 			preparedStatement.setString(2, pathExpression);
 			preparedStatement.setString(3, fileHistoryPrefix);
@@ -253,7 +344,7 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			preparedStatement.setArray(6, connection.createArrayOf("varchar", fileTypesStr));
 			preparedStatement.setTimestamp(7, new Timestamp(date.getTime()));
 
-			return getFileTree(preparedStatement);
+			return new FileVersionIterator(preparedStatement, fetchSize);
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -307,9 +398,36 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 	}
 
 	public Map<FileHistoryId, List<FileVersion>> getFileHistoriesToPurgeBefore(long timestamp) {
-		try (PreparedStatement preparedStatement = getStatement("fileversion.select.all.getPurgeVersionsBeforeTime.sql")) {
+		Map<FileHistoryId, List<FileVersion>> fileHistoryPurgeFileVersions = new HashMap<FileHistoryId, List<FileVersion>>();
+
+		try (SqlResultIterator<PartialFileHistory> fileHistories = getFileHistoriesToPurgeBeforeIterator(timestamp,
+				SqlResultIterator.DEFAULT_FETCH_SIZE)) {
+
+			while (fileHistories.hasNext()) {
+				PartialFileHistory fileHistory = fileHistories.next();
+				fileHistoryPurgeFileVersions.put(fileHistory.getFileHistoryId(), new ArrayList<FileVersion>(fileHistory.getFileVersions().values()));
+			}
+		}
+
+		return fileHistoryPurgeFileVersions;
+	}
+
+	/**
+	 * Queries the database for all file versions that were updated before the given timestamp,
+	 * except the last version of each file history, and returns a cursor over them. Each element
+	 * is a {@link PartialFileHistory} that contains only the versions to be purged.
+	 *
+	 * <p>The returned iterator must be closed if it is not read to the end.
+	 *
+	 * @param timestamp Purge all versions updated before this time (in milliseconds)
+	 * @param fetchSize Number of rows to fetch from the database at once
+	 */
+	public SqlResultIterator<PartialFileHistory> getFileHistoriesToPurgeBeforeIterator(long timestamp, int fetchSize) {
+		try {
+			PreparedStatement preparedStatement = getStatement("fileversion.select.all.getPurgeVersionsBeforeTime.sql");
 			preparedStatement.setTimestamp(1, new Timestamp(timestamp));
-			return getAllVersionsInQuery(preparedStatement);
+
+			return createFileHistoryIterator(preparedStatement, fetchSize);
 		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -338,7 +456,7 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 
 	public FileVersion getFileVersion(FileHistoryId fileHistoryId, long version) {
 		try (PreparedStatement preparedStatement = getStatement("fileversion.select.master.getFileVersionByHistoryAndVersion.sql")) {
-			preparedStatement.setString(1, fileHistoryId.toString());
+			preparedStatement.setBytes(1, fileHistoryId.getBytes());
 			preparedStatement.setLong(2, version);
 
 			return executeAndCreateFileVersion(preparedStatement);
@@ -353,7 +471,7 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			Map<FileHistoryId, FileVersion> mostRecentPurgeFileVersions = new HashMap<FileHistoryId, FileVersion>();
 
 			while (resultSet.next()) {
-				FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+				FileHistoryId fileHistoryId = FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"));
 				FileVersion fileVersion = createFileVersionFromRow(resultSet);
 
 				mostRecentPurgeFileVersions.put(fileHistoryId, fileVersion);
@@ -368,7 +486,7 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			Map<FileHistoryId, List<FileVersion>> fileHistoryPurgeFileVersions = new HashMap<FileHistoryId, List<FileVersion>>();
 
 			while (resultSet.next()) {
-				FileHistoryId fileHistoryId = FileHistoryId.parseFileId(resultSet.getString("filehistory_id"));
+				FileHistoryId fileHistoryId = FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"));
 				FileVersion fileVersion = createFileVersionFromRow(resultSet);
 
 				List<FileVersion> purgeFileVersions = fileHistoryPurgeFileVersions.get(fileHistoryId);
@@ -385,19 +503,39 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 		}
 	}
 
-	private List<FileVersion> getFileTree(PreparedStatement preparedStatement) {
-		List<FileVersion> fileTree = new ArrayList<>();
+	/**
+	 * Creates a cursor that groups the file version rows of the given statement by file history,
+	 * i.e. each element is a {@link PartialFileHistory} with all of its selected versions. The
+	 * rows must be ordered by the file history identifier.
+	 */
+	SqlResultIterator<PartialFileHistory> createFileHistoryIterator(PreparedStatement preparedStatement, int fetchSize) throws SQLException {
+		return new SqlResultIterator<PartialFileHistory>(preparedStatement, fetchSize) {
+			@Override
+			protected PartialFileHistory createNext(ResultSet resultSet) throws SQLException {
+				FileHistoryId fileHistoryId = FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"));
+				PartialFileHistory fileHistory = new PartialFileHistory(fileHistoryId);
+
+				do {
+					fileHistory.addFileVersion(createFileVersionFromRow(resultSet));
+				}
+				while (nextRow() && fileHistoryId.equals(FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id"))));
 
-		try (ResultSet resultSet = preparedStatement.executeQuery()) {
-			while (resultSet.next()) {
-				FileVersion fileVersion = createFileVersionFromRow(resultSet);
-				fileTree.add(fileVersion);
+				return fileHistory;
 			}
+		};
+	}
 
-			return fileTree;
+	private class FileVersionIterator extends SqlResultIterator<FileVersion> {
+		public FileVersionIterator(PreparedStatement preparedStatement, int fetchSize) throws SQLException {
+			super(preparedStatement, fetchSize);
 		}
-		catch (SQLException e) {
-			throw new RuntimeException(e);
+
+		@Override
+		protected FileVersion createNext(ResultSet resultSet) throws SQLException {
+			FileVersion fileVersion = createFileVersionFromRow(resultSet);
+			nextRow();
+
+			return fileVersion;
 		}
 	}
 
@@ -419,7 +557,7 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 	public FileVersion createFileVersionFromRow(ResultSet resultSet) throws SQLException {
 		FileVersion fileVersion = new FileVersion();
 
-		fileVersion.setFileHistoryId(FileHistoryId.parseFileId(resultSet.getString("filehistory_id")));
+		fileVersion.setFileHistoryId(FileHistoryId.fromBytes(resultSet.getBytes("filehistory_id")));
 		fileVersion.setVersion(resultSet.getLong("version"));
 		fileVersion.setPath(resultSet.getString("path"));
 		fileVersion.setType(FileType.valueOf(resultSet.getString("type")));
@@ -431,13 +569,16 @@ public class FileVersionSqlDao extends AbstractSqlDao {
 			fileVersion.setLinkTarget(resultSet.getString("linktarget"));
 		}
 
-		if (resultSet.getString("filecontent_checksum") != null) {
-			FileChecksum fileChecksum = FileChecksum.parseFileChecksum(resultSet.getString("filecontent_checksum"));
-			fileVersion.setChecksum(fileChecksum);
+		byte[] fileChecksumBytes = resultSet.getBytes("filecontent_checksum");
+
+		if (fileChecksumBytes != null) {
+			fileVersion.setChecksum(new FileChecksum(fileChecksumBytes));
 		}
 
-		if (resultSet.getString("updated") != null) {
-			fileVersion.setUpdated(new Date(resultSet.getTimestamp("updated").getTime()));
+		Timestamp updated = resultSet.getTimestamp("updated");
+
+		if (updated != null) {
+			fileVersion.setUpdated(new Date(updated.getTime()));
 		}
 
 		if (resultSet.getString("posixperms") != null) {
@@ -54,7 +54,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		for (MultiChunkEntry multiChunk : multiChunks) {
 			PreparedStatement preparedStatement = getStatement(connection, "multichunk.insert.all.writeMultiChunks.sql");
 
-			preparedStatement.setString(1, multiChunk.getId().toString());
+			preparedStatement.setBytes(1, multiChunk.getId().getBytes());
 			preparedStatement.setLong(2, databaseVersionId);
 			preparedStatement.setLong(3, multiChunk.getSize());
 			
@@ -69,8 +69,8 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		PreparedStatement preparedStatement = getStatement("multichunk.insert.all.writeMultiChunkRefs.sql");
 		
 		for (ChunkChecksum chunkChecksum : multiChunk.getChunks()) {
-			preparedStatement.setString(1, multiChunk.getId().toString());
-			preparedStatement.setString(2, chunkChecksum.toString());
+			preparedStatement.setBytes(1, multiChunk.getId().getBytes());
+			preparedStatement.setBytes(2, chunkChecksum.getBytes());
 			
 			preparedStatement.addBatch();			
 		}
@@ -86,11 +86,11 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 			Collection<MultiChunkEntry> muddyMultiChunks = muddyMultiChunksPerDatabaseVersion.get(muddyDatabaseVersionHeader);
 			
 			for (MultiChunkEntry muddyMultiChunk : muddyMultiChunks) {
-				String multiChunkIdStr = muddyMultiChunk.getId().toString();
+				byte[] multiChunkIdBytes = muddyMultiChunk.getId().getBytes();
 				String clientName = muddyDatabaseVersionHeader.getClient();
 				Long clientVersion = muddyDatabaseVersionHeader.getVectorClock().getClock(clientName);
 				
-				preparedStatement.setString(1, multiChunkIdStr);
+				preparedStatement.setBytes(1, multiChunkIdBytes);
 				preparedStatement.setString(2, clientName);
 				preparedStatement.setLong(3, clientVersion);
 				
@@ -139,11 +139,11 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		}
 		else {
 			try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunkIdsForFileChecksum.sql")) {
-				preparedStatement.setString(1, fileChecksum.toString());
+				preparedStatement.setBytes(1, fileChecksum.getBytes());
 	
 				try (ResultSet resultSet = preparedStatement.executeQuery()) {
 					while (resultSet.next()) {
-						multiChunkIds.add(MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id")));
+						multiChunkIds.add(new MultiChunkId(resultSet.getBytes("multichunk_id")));
 					}
 		
 					return multiChunkIds;
@@ -189,11 +189,11 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 	 */
 	public MultiChunkId getMultiChunkId(ChunkChecksum chunkChecksum) {
 		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunkIdForChunk.sql")) {
-			preparedStatement.setString(1, chunkChecksum.toString());
+			preparedStatement.setBytes(1, chunkChecksum.getBytes());
 					
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
-					return MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id"));
+					return new MultiChunkId(resultSet.getBytes("multichunk_id"));
 				}
 			}
 
@@ -208,23 +208,23 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 	 * Note: This method selects also {@link DatabaseVersionStatus#DIRTY DIRTY}.
 	 */
 	public Map<ChunkChecksum,MultiChunkId> getMultiChunkIdsByChecksums(List<ChunkChecksum> chunkChecksums) {
-		// Gather a unique array of checksum strings (required for query!)
+		// Gather a unique array of checksums (required for query!)
 		Set<ChunkChecksum> chunkChecksumSet = new HashSet<ChunkChecksum>(chunkChecksums);
-		String[] checksums = new String[chunkChecksumSet.size()];
+		byte[][] checksums = new byte[chunkChecksumSet.size()][];
 		int i = 0;
 		for (ChunkChecksum checksum : chunkChecksumSet) {
-			checksums[i] = checksum.toString();
+			checksums[i] = checksum.getBytes();
 			i++;
 		}
 		
 		// Execute query
 		Map<ChunkChecksum, MultiChunkId> result = new HashMap<ChunkChecksum, MultiChunkId>();
 		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunkIdForChunks.sql")) {
-			preparedStatement.setArray(1, connection.createArrayOf("varchar", checksums));	
+			preparedStatement.setArray(1, connection.createArrayOf("VARBINARY", checksums));	
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				while (resultSet.next()) {
-					result.put(ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum")),
-							MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id")));
+					result.put(new ChunkChecksum(resultSet.getBytes("chunk_checksum")),
+							new MultiChunkId(resultSet.getBytes("multichunk_id")));
 					
 				}
 			}
@@ -242,7 +242,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		try (PreparedStatement preparedStatement = getStatement("multichunk.select.dirty.getDirtyMultiChunkIds.sql")) {
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				while (resultSet.next()) {
-					dirtyMultiChunkIds.add(MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id")));
+					dirtyMultiChunkIds.add(new MultiChunkId(resultSet.getBytes("multichunk_id")));
 				}
 				
 				return dirtyMultiChunkIds;
@@ -265,11 +265,38 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 	}
 
 	public Map<MultiChunkId, MultiChunkEntry> getMultiChunks() {
-		try (PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunks.sql")) {
-			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				return createMultiChunkEntriesWithoutChunks(resultSet);
+		Map<MultiChunkId, MultiChunkEntry> multiChunks = new HashMap<MultiChunkId, MultiChunkEntry>();
+
+		try (SqlResultIterator<MultiChunkEntry> multiChunkIterator = getMultiChunksIterator(SqlResultIterator.DEFAULT_FETCH_SIZE)) {
+			while (multiChunkIterator.hasNext()) {
+				MultiChunkEntry multiChunk = multiChunkIterator.next();
+				multiChunks.put(multiChunk.getId(), multiChunk);
 			}
 		}
+
+		return multiChunks;
+	}
+
+	/**
+	 * Returns a cursor over all multichunks (without their chunk references). The
+	 * returned iterator must be closed if it is not read to the end.
+	 *
+	 * @param fetchSize Number of rows to fetch from the database at once
+	 */
+	public SqlResultIterator<MultiChunkEntry> getMultiChunksIterator(int fetchSize) {
+		try {
+			PreparedStatement preparedStatement = getStatement("multichunk.select.all.getMultiChunks.sql");
+
+			return new SqlResultIterator<MultiChunkEntry>(preparedStatement, fetchSize) {
+				@Override
+				protected MultiChunkEntry createNext(ResultSet resultSet) throws SQLException {
+					MultiChunkEntry multiChunk = new MultiChunkEntry(new MultiChunkId(resultSet.getBytes("id")), resultSet.getLong("size"));
+					nextRow();
+
+					return multiChunk;
+				}
+			};
+		}
 		catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
@@ -290,7 +317,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		Map<MultiChunkId, MultiChunkEntry> unusedMultiChunkIds = new HashMap<MultiChunkId, MultiChunkEntry>();		
 		
 		while (resultSet.next()) {
-			MultiChunkId multiChunkId = MultiChunkId.parseMultiChunkId(resultSet.getString("id"));
+			MultiChunkId multiChunkId = new MultiChunkId(resultSet.getBytes("id"));
 			long multiChunkSize = resultSet.getLong("size");
 						
 			unusedMultiChunkIds.put(multiChunkId, new MultiChunkEntry(multiChunkId, multiChunkSize));
@@ -304,7 +331,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 		MultiChunkId currentMultiChunkId = null;
 		
 		while (resultSet.next()) {			
-			MultiChunkId multiChunkId = MultiChunkId.parseMultiChunkId(resultSet.getString("multichunk_id"));
+			MultiChunkId multiChunkId = new MultiChunkId(resultSet.getBytes("multichunk_id"));
 			long multiChunkSize = resultSet.getLong("size");
 			
 			MultiChunkEntry multiChunkEntry = null;
@@ -316,7 +343,7 @@ public class MultiChunkSqlDao extends AbstractSqlDao {
 				multiChunkEntry = new MultiChunkEntry(multiChunkId, multiChunkSize);
 			}
 			
-			multiChunkEntry.addChunk(ChunkChecksum.parseChunkChecksum(resultSet.getString("chunk_checksum")));
+			multiChunkEntry.addChunk(new ChunkChecksum(resultSet.getBytes("chunk_checksum")));
 			multiChunkEntries.put(multiChunkId, multiChunkEntry); 
 			
 			currentMultiChunkId = multiChunkId;
@@ -0,0 +1,149 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cursor over the result of a SQL query that creates the returned objects one by one
+ * while iterating, instead of loading the whole result into a list or map first. This
+ * allows processing very large results (e.g. the file tree or the file histories of a
+ * big repository) in bounded memory.
+ *
+ * <p>The iterator owns the given statement and its result set. Both are closed as soon
+ * as the last element has been read, or when {@link #close()} is called. Iterators that
+ * are not read to the end must be closed explicitly, ideally using a <tt>try</tt>-with-resources
+ * block.
+ *
+ * <p>Implementations create one object per call of {@link #createNext(ResultSet)}, and may
+ * read one or many rows to do so (e.g. all file versions of one file history). For every
+ * row they read, they must call {@link #nextRow()}.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public abstract class SqlResultIterator<T> implements Iterator<T>, AutoCloseable {
+	private static final Logger logger = Logger.getLogger(SqlResultIterator.class.getSimpleName());
+
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+	private PreparedStatement preparedStatement;
+	private ResultSet resultSet;
+	private boolean hasNext;
+
+	/**
+	 * Executes the given statement and positions the cursor on the first row. The fetch size
+	 * is passed to the JDBC driver as a hint of how many rows to fetch at once.
+	 *
+	 * @param preparedStatement Statement with all parameters set; it is closed by this iterator
+	 * @param fetchSize Number of rows to fetch at once, or zero to let the driver decide
+	 */
+	public SqlResultIterator(PreparedStatement preparedStatement, int fetchSize) throws SQLException {
+		this.preparedStatement = preparedStatement;
+
+		try {
+			preparedStatement.setFetchSize(fetchSize);
+
+			this.resultSet = preparedStatement.executeQuery();
+			this.hasNext = resultSet.next();
+		}
+		finally {
+			if (!hasNext) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Creates the next object from the current row (and possibly the following rows).
+	 * Implementations must call {@link #nextRow()} for every row they read, i.e. at least once.
+	 */
+	protected abstract T createNext(ResultSet resultSet) throws SQLException;
+
+	/**
+	 * Moves the cursor to the next row.
+	 *
+	 * @return Returns <tt>true</tt> if there is another row, <tt>false</tt> otherwise
+	 */
+	protected boolean nextRow() throws SQLException {
+		hasNext = resultSet.next();
+		return hasNext;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext) {
+			throw new NoSuchElementException();
+		}
+
+		try {
+			T next = createNext(resultSet);
+
+			if (!hasNext) {
+				close();
+			}
+
+			return next;
+		}
+		catch (SQLException e) {
+			close();
+			throw new RuntimeException("Cannot load next SQL row.", e);
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new RuntimeException("Not implemented.");
+	}
+
+	/**
+	 * Closes the result set and the statement. Calling this method more than once
+	 * has no effect.
+	 */
+	@Override
+	public void close() {
+		hasNext = false;
+
+		try {
+			if (resultSet != null) {
+				resultSet.close();
+			}
+
+			if (preparedStatement != null) {
+				preparedStatement.close();
+			}
+		}
+		catch (SQLException e) {
+			logger.log(Level.WARNING, "Cannot close SQL result iterator.", e);
+		}
+		finally {
+			resultSet = null;
+			preparedStatement = null;
+		}
+	}
+}
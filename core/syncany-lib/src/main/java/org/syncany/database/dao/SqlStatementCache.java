@@ -0,0 +1,444 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.database.DatabaseConnectionFactory;
+
+/**
+ * Bounded, per-connection cache of {@link PreparedStatement}s, keyed by the SQL
+ * resource identifier (e.g. <tt>chunk.select.all.getChunk.sql</tt>).
+ *
+ * <p>HSQLDB compiles a statement each time it is prepared. Since the DAOs prepare
+ * (and close) a statement for every call, frequently called queries are compiled
+ * over and over again. This cache hands out wrapped statements instead: Closing a
+ * wrapped statement does not close the underlying statement, but returns it to the
+ * cache, so that the next call with the same resource identifier can reuse it.
+ *
+ * <p>A statement whose last {@link ResultSet} is still open when it is closed is
+ * closed for real and not cached, because the result set is still being used
+ * (e.g. by an iterator). Statements that are currently in use are never handed out
+ * twice; concurrent or nested calls prepare a separate statement instead.
+ *
+ * <p>The cache keeps track of how many statements were actually prepared, how many
+ * were reused, and how long preparing took. From that, the time saved by reusing
+ * statements can be estimated.
+ *
+ * <p>If {@link SqlStatementStats} are attached to the cache and enabled, every execution
+ * of a statement is recorded with its execution time (and, for updates, the number of
+ * affected rows), keyed by the resource identifier. While statistics are enabled, the
+ * {@link ResultSet}s returned by the statements are wrapped to count the rows read from
+ * them. The rows are recorded when the result set or its statement is closed.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SqlStatementCache {
+	private static final Logger logger = Logger.getLogger(SqlStatementCache.class.getSimpleName());
+
+	public static final int DEFAULT_MAX_SIZE = 64;
+	private static final ConcurrentMap<Connection, SqlStatementCache> instances = new ConcurrentHashMap<Connection, SqlStatementCache>();
+
+	private final Connection connection;
+	private final int maxSize;
+	private final Map<String, PreparedStatement> idleStatements;
+
+	private volatile SqlStatementStats statementStats;
+
+	private long prepareCount;
+	private long reuseCount;
+	private long prepareTimeNanos;
+
+	/**
+	 * Creates a new statement cache for the given connection. Use {@link #getInstance(Connection)}
+	 * to get the shared cache of a connection instead.
+	 */
+	public SqlStatementCache(Connection connection, int maxSize) {
+		this.connection = connection;
+		this.maxSize = maxSize;
+		this.idleStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+
+		this.prepareCount = 0;
+		this.reuseCount = 0;
+		this.prepareTimeNanos = 0;
+	}
+
+	/**
+	 * Returns the statement cache for the given connection, and creates a new one
+	 * if none exists yet. Caches of connections that were closed without calling
+	 * {@link #removeInstance(Connection)} are discarded.
+	 */
+	public static SqlStatementCache getInstance(Connection connection) {
+		SqlStatementCache statementCache = instances.get(connection);
+
+		if (statementCache == null) {
+			removeClosedInstances();
+
+			SqlStatementCache newStatementCache = new SqlStatementCache(connection, DEFAULT_MAX_SIZE);
+			statementCache = instances.putIfAbsent(connection, newStatementCache);
+
+			if (statementCache == null) {
+				statementCache = newStatementCache;
+			}
+		}
+
+		return statementCache;
+	}
+
+	/**
+	 * Discards the statement cache of the given connection (if any) and closes all of
+	 * its idle statements. This must be called when a connection is closed, because the
+	 * cache (and its statements) would otherwise keep the connection from being
+	 * garbage collected.
+	 */
+	public static void removeInstance(Connection connection) {
+		SqlStatementCache statementCache = instances.remove(connection);
+
+		if (statementCache != null) {
+			logger.log(Level.FINE, "Discarding statement cache of connection: " + statementCache);
+			statementCache.clear();
+		}
+	}
+
+	private static void removeClosedInstances() {
+		Iterator<Map.Entry<Connection, SqlStatementCache>> instanceIterator = instances.entrySet().iterator();
+
+		while (instanceIterator.hasNext()) {
+			Map.Entry<Connection, SqlStatementCache> instance = instanceIterator.next();
+
+			try {
+				if (instance.getKey().isClosed()) {
+					logger.log(Level.FINE, "Discarding statement cache of closed connection: " + instance.getValue());
+					instanceIterator.remove();
+				}
+			}
+			catch (SQLException e) {
+				instanceIterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns a prepared statement for the given SQL resource identifier, either from the
+	 * cache or by preparing a new one. The returned statement must be closed after use,
+	 * which returns it to the cache.
+	 */
+	public PreparedStatement getStatement(String resourceId) throws SQLException {
+		PreparedStatement statement = null;
+
+		synchronized (this) {
+			statement = idleStatements.remove(resourceId);
+		}
+
+		if (statement != null && !statement.isClosed()) {
+			synchronized (this) {
+				reuseCount++;
+			}
+		}
+		else {
+			long prepareStartTime = System.nanoTime();
+			statement = connection.prepareStatement(DatabaseConnectionFactory.getStatement(resourceId));
+
+			synchronized (this) {
+				prepareCount++;
+				prepareTimeNanos += System.nanoTime() - prepareStartTime;
+			}
+		}
+
+		return (PreparedStatement) Proxy.newProxyInstance(SqlStatementCache.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+				new CachedStatementHandler(resourceId, statement));
+	}
+
+	/**
+	 * Closes all idle statements and empties the cache. Statements that are
+	 * currently in use are returned to the cache when they are closed.
+	 */
+	public synchronized void clear() {
+		for (PreparedStatement statement : idleStatements.values()) {
+			closeQuietly(statement);
+		}
+
+		idleStatements.clear();
+	}
+
+	/**
+	 * Attaches statement statistics to this cache. From then on, all executions of
+	 * statements taken from this cache are recorded, as long as the statistics are
+	 * {@link SqlStatementStats#isEnabled() enabled}.
+	 */
+	public void setStatementStats(SqlStatementStats statementStats) {
+		this.statementStats = statementStats;
+	}
+
+	public SqlStatementStats getStatementStats() {
+		return statementStats;
+	}
+
+	/**
+	 * Records an execution of the given SQL resource that did not use a statement from
+	 * this cache, e.g. a script. If no statistics are attached or they are disabled, this
+	 * method does nothing.
+	 */
+	public void recordExecution(String resourceId, long executionTimeNanos) {
+		SqlStatementStats currentStatementStats = getEnabledStatementStats();
+
+		if (currentStatementStats != null) {
+			currentStatementStats.getStat(resourceId).recordExecution(executionTimeNanos);
+		}
+	}
+
+	private SqlStatementStats getEnabledStatementStats() {
+		SqlStatementStats currentStatementStats = statementStats;
+		return (currentStatementStats != null && currentStatementStats.isEnabled()) ? currentStatementStats : null;
+	}
+
+	public synchronized int getSize() {
+		return idleStatements.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of statements that were actually prepared, i.e. not taken from the cache.
+	 */
+	public synchronized long getPrepareCount() {
+		return prepareCount;
+	}
+
+	/**
+	 * Returns the number of statements that were taken from the cache instead of being prepared.
+	 */
+	public synchronized long getReuseCount() {
+		return reuseCount;
+	}
+
+	/**
+	 * Returns the total time spent preparing statements (in milliseconds).
+	 */
+	public synchronized long getPrepareTime() {
+		return prepareTimeNanos / 1000000;
+	}
+
+	/**
+	 * Returns the estimated time saved by reusing statements (in milliseconds), based on
+	 * the average time it took to prepare a statement.
+	 */
+	public synchronized long getSavedTime() {
+		return (prepareCount > 0) ? reuseCount * prepareTimeNanos / prepareCount / 1000000 : 0;
+	}
+
+	private void release(String resourceId, PreparedStatement statement, ResultSet lastResultSet) throws SQLException {
+		if (statement.isClosed()) {
+			return;
+		}
+
+		if (lastResultSet != null && !lastResultSet.isClosed()) {
+			statement.close();
+			return;
+		}
+
+		statement.clearParameters();
+		statement.clearBatch();
+		statement.setMaxRows(0);
+		statement.setFetchSize(0);
+
+		synchronized (this) {
+			PreparedStatement previousStatement = idleStatements.put(resourceId, statement);
+
+			if (previousStatement != null) {
+				closeQuietly(previousStatement);
+			}
+
+			if (idleStatements.size() > maxSize) {
+				Iterator<PreparedStatement> eldestStatementIterator = idleStatements.values().iterator();
+
+				closeQuietly(eldestStatementIterator.next());
+				eldestStatementIterator.remove();
+			}
+		}
+	}
+
+	private void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		}
+		catch (SQLException e) {
+			logger.log(Level.FINE, "Cannot close cached statement.", e);
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SqlStatementCache[size=" + idleStatements.size() + "/" + maxSize + ", prepared=" + prepareCount + ", reused=" + reuseCount
+				+ ", prepareTime=" + getPrepareTime() + "ms, savedTime=" + getSavedTime() + "ms]";
+	}
+
+	private class CachedStatementHandler implements InvocationHandler {
+		private final String resourceId;
+		private final PreparedStatement statement;
+
+		private ResultSet lastResultSet;
+		private RowCountingResultSetHandler lastRowCountingHandler;
+		private boolean released;
+
+		public CachedStatementHandler(String resourceId, PreparedStatement statement) {
+			this.resourceId = resourceId;
+			this.statement = statement;
+			this.lastResultSet = null;
+			this.lastRowCountingHandler = null;
+			this.released = false;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String methodName = method.getName();
+
+			if ("close".equals(methodName) && method.getParameterTypes().length == 0) {
+				if (!released) {
+					released = true;
+
+					if (lastRowCountingHandler != null) {
+						lastRowCountingHandler.recordRows();
+					}
+
+					release(resourceId, statement, lastResultSet);
+				}
+
+				return null;
+			}
+			else if ("isClosed".equals(methodName)) {
+				return released || statement.isClosed();
+			}
+			else if (released && method.getDeclaringClass() != Object.class) {
+				throw new SQLException("Statement is closed.");
+			}
+
+			SqlStatementStats currentStatementStats = getEnabledStatementStats();
+			boolean recordExecution = currentStatementStats != null && methodName.startsWith("execute");
+
+			try {
+				long executionStartTime = (recordExecution) ? System.nanoTime() : 0;
+				Object result = method.invoke(statement, args);
+
+				if (recordExecution) {
+					recordExecution(currentStatementStats.getStat(resourceId), System.nanoTime() - executionStartTime, result);
+				}
+
+				if (result instanceof ResultSet) {
+					lastResultSet = (ResultSet) result;
+
+					if (recordExecution) {
+						return wrapResultSet(currentStatementStats.getStat(resourceId), lastResultSet);
+					}
+				}
+
+				return result;
+			}
+			catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		private ResultSet wrapResultSet(SqlStatementStat statementStat, ResultSet resultSet) {
+			if (lastRowCountingHandler != null) {
+				lastRowCountingHandler.recordRows();
+			}
+
+			lastRowCountingHandler = new RowCountingResultSetHandler(statementStat, resultSet);
+
+			return (ResultSet) Proxy.newProxyInstance(SqlStatementCache.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+					lastRowCountingHandler);
+		}
+
+		private void recordExecution(SqlStatementStat statementStat, long executionTimeNanos, Object result) {
+			statementStat.recordExecution(executionTimeNanos);
+
+			if (result instanceof Integer) {
+				statementStat.recordRows((Integer) result);
+			}
+			else if (result instanceof int[]) {
+				for (int updateCount : (int[]) result) {
+					statementStat.recordRows(Math.max(0, updateCount));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the rows read from a result set, i.e. the calls of {@link ResultSet#next()}
+	 * that returned <tt>true</tt>. The count is recorded once, when the result set or
+	 * its statement is closed (whichever comes first).
+	 */
+	private static class RowCountingResultSetHandler implements InvocationHandler {
+		private final SqlStatementStat statementStat;
+		private final ResultSet resultSet;
+
+		private long rowCount;
+		private boolean recorded;
+
+		public RowCountingResultSetHandler(SqlStatementStat statementStat, ResultSet resultSet) {
+			this.statementStat = statementStat;
+			this.resultSet = resultSet;
+			this.rowCount = 0;
+			this.recorded = false;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if ("close".equals(method.getName()) && method.getParameterTypes().length == 0) {
+				recordRows();
+			}
+
+			try {
+				Object result = method.invoke(resultSet, args);
+
+				if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+					rowCount++;
+				}
+
+				return result;
+			}
+			catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		public void recordRows() {
+			if (!recorded) {
+				recorded = true;
+				statementStat.recordRows(rowCount);
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.util.Arrays;
+
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementArray;
+
+/**
+ * Execution statistics of a single SQL resource (e.g. <tt>chunk.select.all.getChunk.sql</tt>),
+ * as recorded by the {@link SqlStatementStats} of a database.
+ *
+ * <p>For each resource, the number of executions, the number of rows returned (queries) or
+ * affected (updates), the total and maximum execution time, and a latency histogram are kept.
+ * Execution times only include executing the statement, not iterating over its result set.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SqlStatementStat {
+	/**
+	 * Upper bounds (exclusive, in microseconds) of the latency histogram buckets. The last
+	 * bucket of the histogram counts all executions that took longer than the last bound.
+	 */
+	public static final long[] LATENCY_HISTOGRAM_BOUNDS = new long[] { 100, 1000, 10000, 100000, 1000000 };
+
+	@Element(name = "resource", required = true)
+	private String resourceId;
+
+	@Element(required = true)
+	private long executionCount;
+
+	@Element(required = true)
+	private long rowCount;
+
+	@Element(required = true)
+	private long totalTime;
+
+	@Element(required = true)
+	private long maxTime;
+
+	@ElementArray(entry = "count", required = true)
+	private long[] latencyHistogram;
+
+	public SqlStatementStat() {
+		// Required for serialization
+	}
+
+	public SqlStatementStat(String resourceId) {
+		this.resourceId = resourceId;
+		this.executionCount = 0;
+		this.rowCount = 0;
+		this.totalTime = 0;
+		this.maxTime = 0;
+		this.latencyHistogram = new long[LATENCY_HISTOGRAM_BOUNDS.length + 1];
+	}
+
+	/**
+	 * Records one execution of the statement that took the given time (in nanoseconds).
+	 */
+	public synchronized void recordExecution(long executionTimeNanos) {
+		long executionTime = executionTimeNanos / 1000;
+
+		executionCount++;
+		totalTime += executionTime;
+		maxTime = Math.max(maxTime, executionTime);
+
+		int bucket = 0;
+
+		while (bucket < LATENCY_HISTOGRAM_BOUNDS.length && executionTime >= LATENCY_HISTOGRAM_BOUNDS[bucket]) {
+			bucket++;
+		}
+
+		latencyHistogram[bucket]++;
+	}
+
+	/**
+	 * Records rows returned or affected by an execution of the statement. For queries,
+	 * this is called while the result set is being iterated.
+	 */
+	public synchronized void recordRows(long rows) {
+		rowCount += rows;
+	}
+
+	public String getResourceId() {
+		return resourceId;
+	}
+
+	public synchronized long getExecutionCount() {
+		return executionCount;
+	}
+
+	public synchronized long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the total execution time of all executions (in microseconds).
+	 */
+	public synchronized long getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * Returns the average execution time (in microseconds).
+	 */
+	public synchronized long getAverageTime() {
+		return (executionCount > 0) ? totalTime / executionCount : 0;
+	}
+
+	/**
+	 * Returns the longest execution time (in microseconds).
+	 */
+	public synchronized long getMaxTime() {
+		return maxTime;
+	}
+
+	/**
+	 * Returns the number of executions per latency bucket. The bucket bounds are
+	 * defined by {@link #LATENCY_HISTOGRAM_BOUNDS}.
+	 */
+	public synchronized long[] getLatencyHistogram() {
+		return Arrays.copyOf(latencyHistogram, latencyHistogram.length);
+	}
+
+	/**
+	 * Returns a copy of this statistic, e.g. to pass it on while statements continue
+	 * to be recorded.
+	 */
+	public synchronized SqlStatementStat copy() {
+		SqlStatementStat statementStat = new SqlStatementStat(resourceId);
+
+		statementStat.executionCount = executionCount;
+		statementStat.rowCount = rowCount;
+		statementStat.totalTime = totalTime;
+		statementStat.maxTime = maxTime;
+		statementStat.latencyHistogram = getLatencyHistogram();
+
+		return statementStat;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SqlStatementStat[resource=" + resourceId + ", executions=" + executionCount + ", rows=" + rowCount + ", totalTime=" + totalTime
+				+ "us, maxTime=" + maxTime + "us, histogram=" + Arrays.toString(latencyHistogram) + "]";
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.database.dao;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Execution statistics of all SQL resources run against one local database, shared
+ * by all connections to that database. Statistics are recorded by the {@link SqlStatementCache}
+ * of each connection (for statements) and by the DAOs (for scripts), see {@link SqlStatementStat}.
+ *
+ * <p>The statistics help to find the statements that dominate slow operations, e.g.
+ * a slow 'down' or 'status'. They can be queried using the 'debug sqlstats' command,
+ * or via the daemon API.
+ *
+ * <p>Recording is disabled by default, so that regular operations do not pay for
+ * timing every statement. It is enabled by the 'debug sqlstats' command, and by the
+ * first daemon request for the statistics of a folder.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class SqlStatementStats {
+	private static final ConcurrentMap<File, SqlStatementStats> instances = new ConcurrentHashMap<File, SqlStatementStats>();
+
+	private final ConcurrentMap<String, SqlStatementStat> statementStats;
+	private volatile boolean enabled;
+
+	public SqlStatementStats() {
+		this.statementStats = new ConcurrentHashMap<String, SqlStatementStat>();
+		this.enabled = false;
+	}
+
+	/**
+	 * Returns the shared statistics for the given database file, and creates
+	 * new (empty) statistics if none exist yet.
+	 */
+	public static SqlStatementStats getInstance(File databaseFile) {
+		File absoluteDatabaseFile = databaseFile.getAbsoluteFile();
+		SqlStatementStats statementStats = instances.get(absoluteDatabaseFile);
+
+		if (statementStats == null) {
+			SqlStatementStats newStatementStats = new SqlStatementStats();
+			statementStats = instances.putIfAbsent(absoluteDatabaseFile, newStatementStats);
+
+			if (statementStats == null) {
+				statementStats = newStatementStats;
+			}
+		}
+
+		return statementStats;
+	}
+
+	/**
+	 * Enables or disables recording. While disabled, the {@link SqlStatementCache}s of the
+	 * database's connections do not record any executions.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the (live) statistic for the given SQL resource identifier, and creates
+	 * a new one if the resource has not been recorded before.
+	 */
+	public SqlStatementStat getStat(String resourceId) {
+		SqlStatementStat statementStat = statementStats.get(resourceId);
+
+		if (statementStat == null) {
+			SqlStatementStat newStatementStat = new SqlStatementStat(resourceId);
+			statementStat = statementStats.putIfAbsent(resourceId, newStatementStat);
+
+			if (statementStat == null) {
+				statementStat = newStatementStat;
+			}
+		}
+
+		return statementStat;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of all recorded SQL resources, ordered by
+	 * their total execution time (longest first).
+	 */
+	public List<SqlStatementStat> getStats() {
+		List<SqlStatementStat> statementStatsCopy = new ArrayList<SqlStatementStat>();
+
+		for (SqlStatementStat statementStat : statementStats.values()) {
+			statementStatsCopy.add(statementStat.copy());
+		}
+
+		Collections.sort(statementStatsCopy, new Comparator<SqlStatementStat>() {
+			@Override
+			public int compare(SqlStatementStat statementStat1, SqlStatementStat statementStat2) {
+				return Long.compare(statementStat2.getTotalTime(), statementStat1.getTotalTime());
+			}
+		});
+
+		return statementStatsCopy;
+	}
+
+	/**
+	 * Discards all recorded statistics.
+	 */
+	public void reset() {
+		statementStats.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "SqlStatementStats[enabled=" + enabled + ", resources=" + statementStats.size() + "]";
+	}
+}
@@ -78,13 +78,7 @@ public abstract class AbstractTransferOperation extends Operation {
 					.withFeature(Retriable.class)
 					.asDefault();
 
-			TransactionAwareFeatureTransferManager regularFileTransferManager = TransferManagerFactory
-					.build(config)
-					.withFeature(ReadAfterWriteConsistent.class)
-					.withFeature(Retriable.class)
-					.withFeature(PathAware.class)
-					.withFeature(TransactionAware.class)
-					.as(TransactionAware.class);
+			TransactionAwareFeatureTransferManager regularFileTransferManager = createTransferManager();
 
 			this.actionHandler = new ActionFileHandler(actionFileTransferManager, operationName, config.getMachineName());
 			this.transferManager = regularFileTransferManager;
@@ -95,6 +89,21 @@ public abstract class AbstractTransferOperation extends Operation {
 		}
 	}
 
+	/**
+	 * Creates a new transfer manager for regular (non-action) files, with the same features
+	 * as the operation's {@link #transferManager}. Transfer managers are not thread-safe, so
+	 * operations that transfer files in parallel must use one transfer manager per thread.
+	 */
+	protected TransactionAwareFeatureTransferManager createTransferManager() throws StorageException {
+		return TransferManagerFactory
+				.build(config)
+				.withFeature(ReadAfterWriteConsistent.class)
+				.withFeature(Retriable.class)
+				.withFeature(PathAware.class)
+				.withFeature(TransactionAware.class)
+				.as(TransactionAware.class);
+	}
+
 	protected void startOperation() throws Exception {
 		actionHandler.start();
 	}
@@ -23,7 +23,21 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,17 +48,36 @@ import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferManagerFactory;
+import org.syncany.plugins.transfer.TransferPluginUtil;
+import org.syncany.plugins.transfer.features.PathAware;
+import org.syncany.plugins.transfer.features.ReadAfterWriteConsistent;
+import org.syncany.plugins.transfer.features.Retriable;
+import org.syncany.plugins.transfer.features.TransactionAware;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.util.ExecutorUtil;
 
 /**
  * The downloader uses a {@link TransferManager} to download a given set of multichunks,
  * decrypt them and store them in the local cache folder. 
  * 
+ * <p>Multichunks are downloaded in parallel by up to {@link TransferPluginUtil#getMaxParallelTransfers(Config)}
+ * threads, each using its own transfer manager. Downloaded multichunks are decrypted in a separate
+ * thread pool, so that the (CPU-bound) decryption does not keep the download threads from
+ * downloading the next multichunk. Downloads wait if all decryption threads are busy, so that
+ * encrypted multichunks do not pile up in the local cache. If any download or decryption fails,
+ * all other transfers are stopped.
+ * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class Downloader {
 	private static final Logger logger = Logger.getLogger(Downloader.class.getSimpleName());
 
+	/**
+	 * Maximum number of multichunks decrypted in parallel.
+	 */
+	private static final int MAX_PARALLEL_DECRYPTS = Runtime.getRuntime().availableProcessors();
+
 	private Config config;
 	private TransferManager transferManager;
 	private LocalEventBus eventBus;
@@ -58,60 +91,223 @@ public class Downloader {
 	/** 
 	 * Downloads the given multichunks from the remote storage and decrypts them
 	 * to the local cache folder. 
+	 * 
+	 * <p>Multichunks are scheduled in the iteration order of the given set, so callers can
+	 * prioritize multichunks by passing an ordered set (e.g. a {@link java.util.LinkedHashSet}).
 	 */
 	public void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds) throws StorageException, IOException {
+		downloadAndDecryptMultiChunks(unknownMultiChunkIds, null);
+	}
+
+	/**
+	 * Downloads and decrypts the given multichunks like {@link #downloadAndDecryptMultiChunks(Set)},
+	 * and notifies the given listener (if not <tt>null</tt>) as soon as a multichunk has been
+	 * decrypted. Multichunks that already exist in the local cache are not reported.
+	 */
+	public void downloadAndDecryptMultiChunks(Set<MultiChunkId> unknownMultiChunkIds, DownloaderListener listener) throws StorageException,
+			IOException {
+
 		logger.log(Level.INFO, "Downloading and extracting multichunks ...");
 
-		int multiChunkNumber = 0;
+		List<MultiChunkId> multiChunkIdsToDownload = new ArrayList<MultiChunkId>();
 
 		for (MultiChunkId multiChunkId : unknownMultiChunkIds) {
-			File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
 			File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
-			MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
-
-			multiChunkNumber++;
 
 			if (localDecryptedMultiChunkFile.exists()) {
 				logger.log(Level.INFO, "  + Decrypted multichunk exists locally " + multiChunkId + ". No need to download it!");
 			}
 			else {
-				eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", multiChunkNumber,
-						unknownMultiChunkIds.size()));
+				multiChunkIdsToDownload.add(multiChunkId);
+			}
+		}
 
-				logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
-				transferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+		if (multiChunkIdsToDownload.size() > 0) {
+			downloadAndDecryptMultiChunks(multiChunkIdsToDownload, listener);
+		}
 
-				try {
-					logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
-					InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
-					OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
+		transferManager.disconnect();
+	}
 
-					IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+	private void downloadAndDecryptMultiChunks(List<MultiChunkId> multiChunkIds, final DownloaderListener listener) throws StorageException, IOException {
+		int downloadThreadCount = Math.min(TransferPluginUtil.getMaxParallelTransfers(config), multiChunkIds.size());
+		int decryptThreadCount = Math.min(MAX_PARALLEL_DECRYPTS, multiChunkIds.size());
 
-					decryptedMultiChunkOutputStream.close();
-					multiChunkInputStream.close();
+		logger.log(Level.INFO, "  + Downloading " + multiChunkIds.size() + " multichunk(s) with " + downloadThreadCount + " thread(s), decrypting with "
+				+ decryptThreadCount + " thread(s) ...");
 
+		final BlockingQueue<TransferManager> idleTransferManagers = new ArrayBlockingQueue<TransferManager>(downloadThreadCount);
+		final List<TransferManager> additionalTransferManagers = new ArrayList<TransferManager>();
+		final DownloadProgress downloadProgress = new DownloadProgress(multiChunkIds.size());
+
+		ExecutorService downloadExecutor = ExecutorUtil.createExecutor(downloadThreadCount, "DownMultiChunk");
+		final ExecutorService decryptExecutor = ExecutorUtil.createExecutor(decryptThreadCount, "DecryptMultiChunk");
+
+		try {
+			idleTransferManagers.add(transferManager);
+
+			for (int i = 1; i < downloadThreadCount; i++) {
+				TransferManager additionalTransferManager = createTransferManager();
+
+				additionalTransferManagers.add(additionalTransferManager);
+				idleTransferManagers.add(additionalTransferManager);
+			}
+
+			// Download (in priority order), then hand over to decryption; downloads and decryptions
+			// report to the same completion queue, so that a failure in either is noticed right away
+			BlockingQueue<Future<Void>> completionQueue = new LinkedBlockingQueue<Future<Void>>();
+
+			CompletionService<Void> downloadCompletionService = new ExecutorCompletionService<Void>(downloadExecutor, completionQueue);
+			final CompletionService<Void> decryptCompletionService = new ExecutorCompletionService<Void>(decryptExecutor, completionQueue);
+
+			// Downloaded, but not yet decrypted multichunks wait in the local cache. To keep their
+			// number bounded if decrypting is slower than downloading, downloads wait for a free slot.
+			final Semaphore decryptSlots = new Semaphore(decryptThreadCount);
+
+			for (final MultiChunkId multiChunkId : multiChunkIds) {
+				downloadCompletionService.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						TransferManager downloadTransferManager = idleTransferManagers.take();
+
+						try {
+							downloadMultiChunk(downloadTransferManager, multiChunkId, downloadProgress);
+						}
+						finally {
+							idleTransferManagers.add(downloadTransferManager);
+						}
+
+						decryptSlots.acquire();
+
+						try {
+							decryptCompletionService.submit(new Callable<Void>() {
+								@Override
+								public Void call() throws Exception {
+									try {
+										decryptMultiChunk(multiChunkId);
+									}
+									finally {
+										decryptSlots.release();
+									}
+
+									if (listener != null) {
+										listener.onMultiChunkDecrypted(multiChunkId);
+									}
+
+									return null;
+								}
+							});
+						}
+						catch (RejectedExecutionException e) {
+							decryptSlots.release();
+							throw e;
+						}
+
+						return null;
+					}
+				});
+			}
+
+			// Every multichunk is downloaded and decrypted, i.e. completes two tasks
+			ExecutorUtil.waitForCompleted(completionQueue, 2 * multiChunkIds.size());
+		}
+		finally {
+			downloadExecutor.shutdownNow();
+			decryptExecutor.shutdownNow();
+
+			for (TransferManager additionalTransferManager : additionalTransferManagers) {
+				try {
+					additionalTransferManager.disconnect();
 				}
-				catch (IOException e) {
-					// Security: Deleting the multichunk if the decryption/extraction failed is important!
-					//           If it is not deleted, the partially decrypted multichunk will reside in the
-					//           local cache and the next 'down' will try to use it. If this is the only
-					//           multichunk that has been tampered with, other changes might be applied to the 
-					//           file system! See https://github.com/syncany/syncany/issues/59#issuecomment-55154793
-
-					logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of multichunk failed, deleting " + multiChunkId + " ...");
-					localDecryptedMultiChunkFile.delete();
-
-					throw new IOException("Decryption/extraction of multichunk " + multiChunkId
-							+ " failed. The multichunk might have been tampered with!", e);
-				}
-				finally {
-					logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
-					localEncryptedMultiChunkFile.delete();
+				catch (StorageException e) {
+					logger.log(Level.FINE, "Could not disconnect additional transfer manager", e);
 				}
 			}
 		}
+	}
 
-		transferManager.disconnect();
+	private void downloadMultiChunk(TransferManager downloadTransferManager, MultiChunkId multiChunkId, DownloadProgress downloadProgress)
+			throws StorageException {
+
+		File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+		MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkId);
+
+		logger.log(Level.INFO, "  + Downloading multichunk " + multiChunkId + " ...");
+		downloadTransferManager.download(remoteMultiChunkFile, localEncryptedMultiChunkFile);
+
+		long multiChunkSize = localEncryptedMultiChunkFile.length();
+		int downloadedMultiChunkCount = downloadProgress.downloadedMultiChunkCount.incrementAndGet();
+		long downloadedSize = downloadProgress.downloadedSize.addAndGet(multiChunkSize);
+
+		eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "multichunk", downloadedMultiChunkCount,
+				downloadProgress.totalMultiChunkCount, multiChunkSize, downloadedSize));
+	}
+
+	private void decryptMultiChunk(MultiChunkId multiChunkId) throws IOException {
+		File localEncryptedMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+		File localDecryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+
+		try {
+			logger.log(Level.INFO, "  + Decrypting multichunk " + multiChunkId + " ...");
+			InputStream multiChunkInputStream = config.getTransformer().createInputStream(new FileInputStream(localEncryptedMultiChunkFile));
+			OutputStream decryptedMultiChunkOutputStream = new FileOutputStream(localDecryptedMultiChunkFile);
+
+			IOUtils.copy(multiChunkInputStream, decryptedMultiChunkOutputStream);
+
+			decryptedMultiChunkOutputStream.close();
+			multiChunkInputStream.close();
+		}
+		catch (IOException e) {
+			// Security: Deleting the multichunk if the decryption/extraction failed is important!
+			//           If it is not deleted, the partially decrypted multichunk will reside in the
+			//           local cache and the next 'down' will try to use it. If this is the only
+			//           multichunk that has been tampered with, other changes might be applied to the 
+			//           file system! See https://github.com/syncany/syncany/issues/59#issuecomment-55154793
+
+			logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of multichunk failed, deleting " + multiChunkId + " ...");
+			localDecryptedMultiChunkFile.delete();
+
+			throw new IOException("Decryption/extraction of multichunk " + multiChunkId
+					+ " failed. The multichunk might have been tampered with!", e);
+		}
+		finally {
+			logger.log(Level.FINE, "  + Locally deleting multichunk " + multiChunkId + " ...");
+			localEncryptedMultiChunkFile.delete();
+		}
+	}
+
+	/**
+	 * Creates a transfer manager for additional download threads, with the same
+	 * features as the transfer managers of the transfer operations.
+	 */
+	private TransferManager createTransferManager() throws StorageException {
+		return TransferManagerFactory
+				.build(config)
+				.withFeature(ReadAfterWriteConsistent.class)
+				.withFeature(Retriable.class)
+				.withFeature(PathAware.class)
+				.withFeature(TransactionAware.class)
+				.as(TransactionAware.class);
+	}
+
+	/**
+	 * Listener to be notified about multichunks that are ready to be used,
+	 * i.e. that have been downloaded and decrypted to the local cache.
+	 * Listener methods are called from the decryption threads.
+	 */
+	public static interface DownloaderListener {
+		public void onMultiChunkDecrypted(MultiChunkId multiChunkId);
+	}
+
+	private static class DownloadProgress {
+		private final int totalMultiChunkCount;
+		private final AtomicInteger downloadedMultiChunkCount;
+		private final AtomicLong downloadedSize;
+
+		public DownloadProgress(int totalMultiChunkCount) {
+			this.totalMultiChunkCount = totalMultiChunkCount;
+			this.downloadedMultiChunkCount = new AtomicInteger(0);
+			this.downloadedSize = new AtomicLong(0);
+		}
 	}
 }
@@ -21,9 +21,9 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -44,6 +44,7 @@ import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.SqlDatabase;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.FileVersionSqlDao;
+import org.syncany.database.dao.SqlResultIterator;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.cleanup.CleanupOperationOptions.TimeUnit;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
@@ -63,6 +64,7 @@ import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.SnapshotRemoteFile;
 
 /**
  * The purpose of the cleanup operation is to keep the local database and the
@@ -121,6 +123,17 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 	@Override
 	public CleanupOperationResult execute() throws Exception {
+		try {
+			return executeCleanup();
+		}
+		finally {
+			// Close database connection; all changes are committed (or rolled back) at this point,
+			// and open read transactions would otherwise block schema changes (see CompactOperation)
+			localDatabase.close();
+		}
+	}
+
+	private CleanupOperationResult executeCleanup() throws Exception {
 		logger.log(Level.INFO, "");
 		logger.log(Level.INFO, "Running 'Cleanup' at client " + config.getMachineName() + " ...");
 		logger.log(Level.INFO, "--------------------------------------------");
@@ -306,11 +319,19 @@ public class CleanupOperation extends AbstractTransferOperation {
 		long deleteBeforeTimestamp = System.currentTimeMillis() - options.getMinKeepDeletedSeconds() * 1000;
 		
 		Map<FileHistoryId, FileVersion> deletedFileVersionsBeforeTimestamp = localDatabase.getDeletedFileVersionsBefore(deleteBeforeTimestamp);
-		Map<FileHistoryId, List<FileVersion>> selectedPurgeFileVersions = localDatabase.getFileHistoriesToPurgeBefore(deleteBeforeTimestamp);
 		
 		Map<FileHistoryId, FileVersion> purgeBeforeFileVersions = new HashMap<FileHistoryId, FileVersion>();
 		purgeBeforeFileVersions.putAll(deletedFileVersionsBeforeTimestamp);
-		putAllFileVersionsInMap(selectedPurgeFileVersions, purgeFileVersions);
+
+		// Add selected versions history by history, instead of loading them into a separate map first
+		try (SqlResultIterator<PartialFileHistory> selectedPurgeFileHistories = localDatabase.getFileHistoriesToPurgeBeforeIterator(
+				deleteBeforeTimestamp, SqlResultIterator.DEFAULT_FETCH_SIZE)) {
+
+			while (selectedPurgeFileHistories.hasNext()) {
+				PartialFileHistory selectedPurgeFileHistory = selectedPurgeFileHistories.next();
+				putFileVersionsInMap(selectedPurgeFileHistory.getFileHistoryId(), selectedPurgeFileHistory.getFileVersions().values(), purgeFileVersions);
+			}
+		}
 		
 		return purgeBeforeFileVersions;
 	}
@@ -350,15 +371,20 @@ public class CleanupOperation extends AbstractTransferOperation {
 			Map<FileHistoryId, List<FileVersion>> fileHistoryPurgeFileVersions) {
 		
 		for (FileHistoryId fileHistoryId : newFileVersions.keySet()) {
-			List<FileVersion> purgeFileVersions = fileHistoryPurgeFileVersions.get(fileHistoryId);
-			List<FileVersion> newPurgeFileVersions = newFileVersions.get(fileHistoryId);
-			
-			if (purgeFileVersions != null) {
-				purgeFileVersions.addAll(newPurgeFileVersions);
-			}
-			else {
-				fileHistoryPurgeFileVersions.put(fileHistoryId, newPurgeFileVersions);
-			}
+			putFileVersionsInMap(fileHistoryId, newFileVersions.get(fileHistoryId), fileHistoryPurgeFileVersions);
+		}
+	}
+
+	private void putFileVersionsInMap(FileHistoryId fileHistoryId, Collection<FileVersion> newPurgeFileVersions,
+			Map<FileHistoryId, List<FileVersion>> fileHistoryPurgeFileVersions) {
+		
+		List<FileVersion> purgeFileVersions = fileHistoryPurgeFileVersions.get(fileHistoryId);
+		
+		if (purgeFileVersions != null) {
+			purgeFileVersions.addAll(newPurgeFileVersions);
+		}
+		else {
+			fileHistoryPurgeFileVersions.put(fileHistoryId, new ArrayList<FileVersion>(newPurgeFileVersions));
 		}
 	}
 
@@ -377,8 +403,9 @@ public class CleanupOperation extends AbstractTransferOperation {
 	}
 
 	private boolean hasDirtyDatabaseVersions() {
-		Iterator<DatabaseVersion> dirtyDatabaseVersions = localDatabase.getDirtyDatabaseVersions();
-		return dirtyDatabaseVersions.hasNext(); // TODO [low] Is this a resource creeper?
+		try (SqlResultIterator<DatabaseVersion> dirtyDatabaseVersions = localDatabase.getDirtyDatabaseVersions()) {
+			return dirtyDatabaseVersions.hasNext();
+		}
 	}
 
 	private boolean hasRemoteChanges() throws Exception {
@@ -461,6 +488,11 @@ public class CleanupOperation extends AbstractTransferOperation {
 
 		// Update stats
 		result.setMergedDatabaseFilesCount(allToDeleteDatabaseFiles.size());
+
+		// Publish snapshot for new clients
+		if (options.isCreateSnapshot()) {
+			writeSnapshot();
+		}
 	}
 
 	/**
@@ -508,10 +540,11 @@ public class CleanupOperation extends AbstractTransferOperation {
 		logger.log(Level.INFO, "   + Writing new merge file (all files up to {0}) to {1} ...", new Object[] { lastClientVersion,
 				newLocalMergeDatabaseFile });
 
-		Iterator<DatabaseVersion> lastNDatabaseVersions = localDatabase.getDatabaseVersionsTo(clientName, lastClientVersion);
+		try (SqlResultIterator<DatabaseVersion> lastNDatabaseVersions = localDatabase.getDatabaseVersionsTo(clientName, lastClientVersion)) {
+			DatabaseXmlSerializer databaseDAO = new DatabaseXmlSerializer(config.getTransformer(), config.getDatabaseFormat());
+			databaseDAO.save(lastNDatabaseVersions, newLocalMergeDatabaseFile);
+		}
 
-		DatabaseXmlSerializer databaseDAO = new DatabaseXmlSerializer(config.getTransformer());
-		databaseDAO.save(lastNDatabaseVersions, newLocalMergeDatabaseFile);
 		allMergedDatabaseFiles.put(newLocalMergeDatabaseFile, newRemoteMergeDatabaseFile);
 	}
 
@@ -553,6 +586,51 @@ public class CleanupOperation extends AbstractTransferOperation {
 		logger.log(Level.INFO, "Cleanup: SUCCESS COMMITTING TX.");
 	}
 
+	/**
+	 * This method writes a {@link SnapshotRemoteFile} containing all database versions of the local
+	 * database (which, after merging, is identical to the remote state), and replaces any existing
+	 * snapshot files. New clients can then download a single file instead of the merged database
+	 * files of every client.
+	 *
+	 * <p>The snapshot is uploaded in its own transaction, after the merge transaction has been committed.
+	 * Since it only speeds up the initial download, a failure is logged, but does not fail the cleanup.
+	 */
+	private void writeSnapshot() throws SQLException {
+		Long cleanupNumber = localDatabase.getCleanupNumber();
+
+		if (cleanupNumber == null) {
+			logger.log(Level.INFO, "- No cleanup number set locally. Not writing snapshot.");
+			return;
+		}
+
+		try {
+			SnapshotRemoteFile newSnapshotRemoteFile = new SnapshotRemoteFile(cleanupNumber);
+			File newLocalSnapshotFile = config.getCache().getDatabaseFile(newSnapshotRemoteFile.getName());
+
+			logger.log(Level.INFO, "- Writing snapshot {0} to {1} ...", new Object[] { newSnapshotRemoteFile, newLocalSnapshotFile });
+
+			try (SqlResultIterator<DatabaseVersion> masterDatabaseVersions = localDatabase.getMasterDatabaseVersions()) {
+				DatabaseXmlSerializer databaseDAO = new DatabaseXmlSerializer(config.getTransformer(), config.getDatabaseFormat());
+				databaseDAO.save(masterDatabaseVersions, newLocalSnapshotFile);
+			}
+
+			RemoteTransaction snapshotTransaction = new RemoteTransaction(config, transferManager);
+
+			for (SnapshotRemoteFile oldSnapshotRemoteFile : transferManager.list(SnapshotRemoteFile.class).values()) {
+				logger.log(Level.INFO, "   + Deleting old snapshot " + oldSnapshotRemoteFile + " ...");
+				snapshotTransaction.delete(oldSnapshotRemoteFile);
+			}
+
+			snapshotTransaction.upload(newLocalSnapshotFile, newSnapshotRemoteFile);
+			snapshotTransaction.commit();
+
+			result.setSnapshotCreated(true);
+		}
+		catch (StorageException | IOException e) {
+			logger.log(Level.WARNING, "- Writing snapshot failed. New clients will download all database files instead.", e);
+		}
+	}
+
 	/**
 	 * This method obtains a Map with Lists of {@link DatabaseRemoteFile}s as values, by listing them in the remote repo and
 	 * collecting the files per client.
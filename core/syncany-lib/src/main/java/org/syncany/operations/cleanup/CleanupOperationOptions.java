@@ -47,6 +47,9 @@ public class CleanupOperationOptions implements OperationOptions {
 	@Element(required = false)
 	private int maxDatabaseFiles = 15;
 
+	@Element(required = false)
+	private boolean createSnapshot = true;
+
 	@Element(required = false)
 	private long minSecondsBetweenCleanups = 3 * 60 * 60; // 3 hours
 
@@ -89,6 +92,14 @@ public class CleanupOperationOptions implements OperationOptions {
 		this.removeUnreferencedTemporaryFiles = removeUnreferencedTemporaryFiles;
 	}
 
+	public boolean isCreateSnapshot() {
+		return createSnapshot;
+	}
+
+	public void setCreateSnapshot(boolean createSnapshot) {
+		this.createSnapshot = createSnapshot;
+	}
+
 	public void setMaxDatabaseFiles(int maxDatabaseFiles) {
 		this.maxDatabaseFiles = maxDatabaseFiles;
 	}
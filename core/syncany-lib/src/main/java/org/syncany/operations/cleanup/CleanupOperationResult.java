@@ -40,6 +40,9 @@ public class CleanupOperationResult implements OperationResult {
 	@Element(name = "removedMultiChunksSize", required = false)
 	private long removedMultiChunksSize;
 
+	@Element(name = "snapshotCreated", required = false)
+	private boolean snapshotCreated;
+
 	public CleanupOperationResult() {
 		this(CleanupResultCode.OK_NOTHING_DONE);
 	}
@@ -50,6 +53,7 @@ public class CleanupOperationResult implements OperationResult {
 		this.removedOldVersionsCount = 0;
 		this.removedMultiChunksCount = 0;
 		this.removedMultiChunksSize = 0L;
+		this.snapshotCreated = false;
 	}
 
 	public void setResultCode(CleanupResultCode resultCode) {
@@ -91,4 +95,12 @@ public class CleanupOperationResult implements OperationResult {
 	public void setRemovedMultiChunksSize(long removedMultiChunksSize) {
 		this.removedMultiChunksSize = removedMultiChunksSize;
 	}
-}
\ No newline at end of file
+
+	public boolean isSnapshotCreated() {
+		return snapshotCreated;
+	}
+
+	public void setSnapshotCreated(boolean snapshotCreated) {
+		this.snapshotCreated = snapshotCreated;
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.compact;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.database.SqlDatabase;
+import org.syncany.operations.Operation;
+import org.syncany.operations.compact.CompactOperationResult.CompactResultCode;
+import org.syncany.util.FileUtil;
+
+/**
+ * The compact operation is a local maintenance operation that reclaims the dead space
+ * in the local database's data file, and creates missing non-primary indices.
+ *
+ * <p>When rows are deleted (e.g. when the {@link org.syncany.operations.cleanup.CleanupOperation CleanupOperation}
+ * purges old file versions), HSQLDB does not shrink its data file. Over time, the file
+ * consists mostly of dead space, and starting up and scanning cached tables gets slower.
+ *
+ * <p>The operation only compacts the database if the ratio of dead space to the data file
+ * size exceeds {@link CompactOperationOptions#getMinDeadSpaceRatio()}, or if the last
+ * compaction was longer ago than {@link CompactOperationOptions#getMaxSecondsBetweenCompactions()}
+ * (unless it is forced). Because compacting waits for all other transactions to end, it is
+ * not done while other connections have open transactions.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class CompactOperation extends Operation {
+	private static final Logger logger = Logger.getLogger(CompactOperation.class.getSimpleName());
+
+	private CompactOperationOptions options;
+	private CompactOperationResult result;
+	private SqlDatabase localDatabase;
+
+	public CompactOperation(Config config) {
+		this(config, new CompactOperationOptions());
+	}
+
+	public CompactOperation(Config config, CompactOperationOptions options) {
+		super(config);
+
+		this.options = options;
+		this.result = new CompactOperationResult();
+		this.localDatabase = new SqlDatabase(config);
+	}
+
+	@Override
+	public CompactOperationResult execute() throws Exception {
+		logger.log(Level.INFO, "");
+		logger.log(Level.INFO, "Running 'Compact' at client " + config.getMachineName() + " ...");
+		logger.log(Level.INFO, "--------------------------------------------");
+
+		try {
+			result.setDataFileSizeBefore(localDatabase.getDataFileSize());
+			result.setDeadSpaceBefore(localDatabase.getDataFileDeadSpace());
+
+			if (!options.isForce() && !isCompactNeeded()) {
+				result.setResultCode(CompactResultCode.OK_NOTHING_DONE);
+				return result;
+			}
+
+			if (localDatabase.hasOtherActiveTransactions()) {
+				logger.log(Level.INFO, "Other connections have open transactions. Not compacting database.");
+
+				result.setResultCode(CompactResultCode.NOK_DATABASE_BUSY);
+				return result;
+			}
+
+			long compactStartTime = System.currentTimeMillis();
+
+			localDatabase.compact();
+			localDatabase.writeCompactTime(System.currentTimeMillis() / 1000);
+			localDatabase.commit();
+
+			result.setDataFileSizeAfter(localDatabase.getDataFileSize());
+			result.setDuration(System.currentTimeMillis() - compactStartTime);
+			result.setResultCode(CompactResultCode.OK);
+
+			logger.log(Level.INFO, "Compacted database in {0} ms; data file size {1} -> {2}, reclaimed {3}.",
+					new Object[] { result.getDuration(), FileUtil.formatFileSize(result.getDataFileSizeBefore()),
+							FileUtil.formatFileSize(result.getDataFileSizeAfter()), FileUtil.formatFileSize(result.getReclaimedSize()) });
+
+			return result;
+		}
+		finally {
+			localDatabase.commit();
+			localDatabase.close();
+		}
+	}
+
+	private boolean isCompactNeeded() throws Exception {
+		double deadSpaceRatio = (result.getDataFileSizeBefore() > 0) ? (double) result.getDeadSpaceBefore() / result.getDataFileSizeBefore() : 0;
+
+		if (deadSpaceRatio >= options.getMinDeadSpaceRatio()) {
+			logger.log(Level.INFO, String.format("Dead space ratio is %.2f (>= %.2f). Compacting database.", deadSpaceRatio,
+					options.getMinDeadSpaceRatio()));
+			return true;
+		}
+
+		Long lastCompactTime = localDatabase.getCompactTime();
+		long currentTime = System.currentTimeMillis() / 1000;
+
+		if (lastCompactTime == null) {
+			// Start the schedule with the first check, not with the first compaction
+			localDatabase.writeCompactTime(currentTime);
+			localDatabase.commit();
+		}
+		else if (currentTime - lastCompactTime >= options.getMaxSecondsBetweenCompactions()) {
+			logger.log(Level.INFO, "Last compaction was " + (currentTime - lastCompactTime) + " seconds ago. Compacting database.");
+			return true;
+		}
+
+		logger.log(Level.INFO, String.format("Dead space ratio is %.2f (< %.2f). No compaction needed.", deadSpaceRatio,
+				options.getMinDeadSpaceRatio()));
+
+		return false;
+	}
+}
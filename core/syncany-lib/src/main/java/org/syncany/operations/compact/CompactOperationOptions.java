@@ -0,0 +1,56 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.compact;
+
+import org.simpleframework.xml.Element;
+import org.syncany.operations.OperationOptions;
+
+public class CompactOperationOptions implements OperationOptions {
+	@Element(required = false)
+	private boolean force = false;
+
+	@Element(required = false)
+	private double minDeadSpaceRatio = 0.3;
+
+	@Element(required = false)
+	private long maxSecondsBetweenCompactions = 30 * 24 * 60 * 60; // 30 days
+
+	public boolean isForce() {
+		return force;
+	}
+
+	public void setForce(boolean force) {
+		this.force = force;
+	}
+
+	public double getMinDeadSpaceRatio() {
+		return minDeadSpaceRatio;
+	}
+
+	public void setMinDeadSpaceRatio(double minDeadSpaceRatio) {
+		this.minDeadSpaceRatio = minDeadSpaceRatio;
+	}
+
+	public long getMaxSecondsBetweenCompactions() {
+		return maxSecondsBetweenCompactions;
+	}
+
+	public void setMaxSecondsBetweenCompactions(long maxSecondsBetweenCompactions) {
+		this.maxSecondsBetweenCompactions = maxSecondsBetweenCompactions;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.compact;
+
+import org.simpleframework.xml.Element;
+import org.syncany.operations.OperationResult;
+
+public class CompactOperationResult implements OperationResult {
+	public enum CompactResultCode {
+		OK, OK_NOTHING_DONE, NOK_DATABASE_BUSY
+	}
+
+	@Element(name = "resultCode", required = true)
+	private CompactResultCode resultCode;
+
+	@Element(name = "dataFileSizeBefore", required = false)
+	private long dataFileSizeBefore;
+
+	@Element(name = "dataFileSizeAfter", required = false)
+	private long dataFileSizeAfter;
+
+	@Element(name = "deadSpaceBefore", required = false)
+	private long deadSpaceBefore;
+
+	@Element(name = "duration", required = false)
+	private long duration;
+
+	public CompactOperationResult() {
+		this(CompactResultCode.OK_NOTHING_DONE);
+	}
+
+	public CompactOperationResult(CompactResultCode resultCode) {
+		this.resultCode = resultCode;
+		this.dataFileSizeBefore = 0L;
+		this.dataFileSizeAfter = 0L;
+		this.deadSpaceBefore = 0L;
+		this.duration = 0L;
+	}
+
+	public CompactResultCode getResultCode() {
+		return resultCode;
+	}
+
+	public void setResultCode(CompactResultCode resultCode) {
+		this.resultCode = resultCode;
+	}
+
+	public long getDataFileSizeBefore() {
+		return dataFileSizeBefore;
+	}
+
+	public void setDataFileSizeBefore(long dataFileSizeBefore) {
+		this.dataFileSizeBefore = dataFileSizeBefore;
+	}
+
+	public long getDataFileSizeAfter() {
+		return dataFileSizeAfter;
+	}
+
+	public void setDataFileSizeAfter(long dataFileSizeAfter) {
+		this.dataFileSizeAfter = dataFileSizeAfter;
+	}
+
+	public long getDeadSpaceBefore() {
+		return deadSpaceBefore;
+	}
+
+	public void setDeadSpaceBefore(long deadSpaceBefore) {
+		this.deadSpaceBefore = deadSpaceBefore;
+	}
+
+	/**
+	 * Returns the number of bytes by which the data file has shrunk.
+	 */
+	public long getReclaimedSize() {
+		return Math.max(0, dataFileSizeBefore - dataFileSizeAfter);
+	}
+
+	/**
+	 * Returns the time it took to compact the database (in milliseconds).
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+}
@@ -29,6 +29,12 @@ public class DownDownloadFileSyncExternalEvent extends SyncExternalEvent {
 	@Element
 	private int maxFileCount;
 	
+	@Element(required = false)
+	private long currentFileSize;
+	
+	@Element(required = false)
+	private long downloadedSize;
+	
 	public DownDownloadFileSyncExternalEvent() {
 		// Nothing
 	}
@@ -40,6 +46,15 @@ public class DownDownloadFileSyncExternalEvent extends SyncExternalEvent {
 		this.currentFileIndex = currentFileIndex;
 		this.maxFileCount = maxFileCount;
 	}
+	
+	public DownDownloadFileSyncExternalEvent(String root, String fileDescription, int currentFileIndex, int maxFileCount, long currentFileSize,
+			long downloadedSize) {
+		
+		this(root, fileDescription, currentFileIndex, maxFileCount);
+		
+		this.currentFileSize = currentFileSize;
+		this.downloadedSize = downloadedSize;
+	}
 
 	public String getFileDescription() {
 		return fileDescription;
@@ -52,4 +67,12 @@ public class DownDownloadFileSyncExternalEvent extends SyncExternalEvent {
 	public int getMaxFileCount() {
 		return maxFileCount;
 	}
+
+	public long getCurrentFileSize() {
+		return currentFileSize;
+	}
+
+	public long getDownloadedSize() {
+		return downloadedSize;
+	}
 }
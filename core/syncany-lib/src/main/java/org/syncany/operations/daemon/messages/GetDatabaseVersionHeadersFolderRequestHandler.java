@@ -22,23 +22,35 @@ import java.util.List;
 import org.syncany.config.Config;
 import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
 
 public class GetDatabaseVersionHeadersFolderRequestHandler extends FolderRequestHandler {
-	private SqlDatabase localDatabase;
-
 	public GetDatabaseVersionHeadersFolderRequestHandler(Config config) {
 		super(config);
-		this.localDatabase = new SqlDatabase(config);
 	}
 
 	@Override
 	public Response handleRequest(FolderRequest request) {
 		GetDatabaseVersionHeadersFolderRequest concreteRequest = (GetDatabaseVersionHeadersFolderRequest) request;
 		
-		List<DatabaseVersionHeader> databaseVersionHeaders = localDatabase.getNonEmptyDatabaseVersionHeaders(); 
+		List<DatabaseVersionHeader> databaseVersionHeaders;
+
+		SqlDatabasePool databasePool = SqlDatabasePool.open(config);
+		SqlDatabase localDatabase = null;
+
+		try {
+			localDatabase = databasePool.borrow();
+
+			databaseVersionHeaders = localDatabase.getNonEmptyDatabaseVersionHeaders();
+		}
+		finally {
+			databasePool.release(localDatabase);
+			databasePool.close();
+		}
+
 		return new GetDatabaseVersionHeadersFolderResponse(concreteRequest.getId(), concreteRequest.getRoot(), databaseVersionHeaders);		
 	}
 
@@ -31,6 +31,7 @@ import org.syncany.database.ChunkEntry.ChunkChecksum;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
 import org.syncany.operations.Assembler;
 import org.syncany.operations.Downloader;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
@@ -40,21 +41,24 @@ import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.util.StringUtil;
 
 public class GetFileFolderRequestHandler extends FolderRequestHandler {
-	private SqlDatabase localDatabase;
 	private LocalEventBus eventBus;
 	
 	public GetFileFolderRequestHandler(Config config) {
 		super(config);		
 		
-		this.localDatabase = new SqlDatabase(config);
 		this.eventBus = LocalEventBus.getInstance();
 	}
 
 	@Override
 	public Response handleRequest(FolderRequest request) {
 		GetFileFolderRequest concreteRequest = (GetFileFolderRequest) request;
-		
+
+		SqlDatabasePool databasePool = SqlDatabasePool.open(config);
+		SqlDatabase localDatabase = null;
+
 		try {
+			localDatabase = databasePool.borrow();
+
 			FileHistoryId fileHistoryId = FileHistoryId.parseFileId(concreteRequest.getFileHistoryId());
 			long version = concreteRequest.getVersion();
 
@@ -81,5 +85,9 @@ public class GetFileFolderRequestHandler extends FolderRequestHandler {
 			logger.log(Level.WARNING, "Cannot reassemble file.", e);
 			return new BadRequestResponse(concreteRequest.getId(), "Cannot reassemble file.");
 		}
+		finally {
+			databasePool.release(localDatabase);
+			databasePool.close();
+		}
 	}
 }
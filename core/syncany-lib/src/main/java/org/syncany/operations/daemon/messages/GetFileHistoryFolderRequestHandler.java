@@ -23,6 +23,7 @@ import org.syncany.config.Config;
 import org.syncany.database.FileVersion;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
@@ -30,11 +31,8 @@ import org.syncany.operations.daemon.messages.api.Response;
 @Deprecated
 // TODO [medium] The file history id should be selectable via 'LsRequest'
 public class GetFileHistoryFolderRequestHandler extends FolderRequestHandler {
-	private SqlDatabase localDatabase;
-
 	public GetFileHistoryFolderRequestHandler(Config config) {
 		super(config);
-		this.localDatabase = new SqlDatabase(config);
 	}
 
 	@Override
@@ -42,8 +40,21 @@ public class GetFileHistoryFolderRequestHandler extends FolderRequestHandler {
 		GetFileHistoryFolderRequest concreteRequest = (GetFileHistoryFolderRequest) request;
 		
 		FileHistoryId fileHistoryId = FileHistoryId.parseFileId(concreteRequest.getFileHistoryId());
-		List<FileVersion> fileHistory = localDatabase.getFileHistory(fileHistoryId);
-		
+		List<FileVersion> fileHistory;
+
+		SqlDatabasePool databasePool = SqlDatabasePool.open(config);
+		SqlDatabase localDatabase = null;
+
+		try {
+			localDatabase = databasePool.borrow();
+
+			fileHistory = localDatabase.getFileHistory(fileHistoryId);
+		}
+		finally {
+			databasePool.release(localDatabase);
+			databasePool.close();
+		}
+
 		return new GetFileHistoryFolderResponse(concreteRequest.getId(), concreteRequest.getRoot(), fileHistory);			
 	}
 }
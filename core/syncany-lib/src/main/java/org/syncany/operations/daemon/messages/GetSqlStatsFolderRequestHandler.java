@@ -0,0 +1,50 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.daemon.messages;
+
+import java.util.List;
+
+import org.syncany.config.Config;
+import org.syncany.database.dao.SqlStatementStat;
+import org.syncany.database.dao.SqlStatementStats;
+import org.syncany.operations.daemon.messages.api.FolderRequest;
+import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
+import org.syncany.operations.daemon.messages.api.Response;
+
+public class GetSqlStatsFolderRequestHandler extends FolderRequestHandler {
+	public GetSqlStatsFolderRequestHandler(Config config) {
+		super(config);
+	}
+
+	@Override
+	public Response handleRequest(FolderRequest request) {
+		GetSqlStatsFolderRequest concreteRequest = (GetSqlStatsFolderRequest) request;
+
+		// Recording is disabled by default; the first request enables it for the rest of the daemon's lifetime
+		SqlStatementStats statementStats = SqlStatementStats.getInstance(config.getDatabaseFile());
+		statementStats.setEnabled(true);
+
+		List<SqlStatementStat> statementStatList = statementStats.getStats();
+
+		if (concreteRequest.isReset()) {
+			statementStats.reset();
+		}
+
+		return new GetSqlStatsFolderResponse(concreteRequest.getId(), concreteRequest.getRoot(), statementStatList);
+	}
+}
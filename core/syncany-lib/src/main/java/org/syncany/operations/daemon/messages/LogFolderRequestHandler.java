@@ -20,6 +20,8 @@ package org.syncany.operations.daemon.messages;
 import java.util.logging.Level;
 
 import org.syncany.config.Config;
+import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
@@ -35,8 +37,13 @@ public class LogFolderRequestHandler extends FolderRequestHandler {
 	public Response handleRequest(FolderRequest request) {
 		LogFolderRequest concreteRequest = (LogFolderRequest) request;
 
+		SqlDatabasePool databasePool = SqlDatabasePool.open(config);
+		SqlDatabase localDatabase = null;
+
 		try {
-			LogOperation operation = new LogOperation(config, concreteRequest.getOptions());
+			localDatabase = databasePool.borrow();
+
+			LogOperation operation = new LogOperation(config, concreteRequest.getOptions(), localDatabase);
 			LogOperationResult operationResult = operation.execute();
 			LogFolderResponse response = new LogFolderResponse(operationResult, request.getId(), request.getRoot());
 		
@@ -45,6 +52,10 @@ public class LogFolderRequestHandler extends FolderRequestHandler {
 		catch (Exception e) {
 			logger.log(Level.WARNING, "Cannot obtain status.", e);
 			return new BadRequestResponse(request.getId(), "Cannot execute operation: " + e.getMessage());
-		}		
+		}
+		finally {
+			databasePool.release(localDatabase);
+			databasePool.close();
+		}
 	}
 }
@@ -20,6 +20,8 @@ package org.syncany.operations.daemon.messages;
 import java.util.logging.Level;
 
 import org.syncany.config.Config;
+import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
 import org.syncany.operations.daemon.messages.api.FolderRequest;
 import org.syncany.operations.daemon.messages.api.FolderRequestHandler;
 import org.syncany.operations.daemon.messages.api.Response;
@@ -35,8 +37,13 @@ public class LsFolderRequestHandler extends FolderRequestHandler {
 	public Response handleRequest(FolderRequest request) {
 		LsFolderRequest concreteRequest = (LsFolderRequest) request;
 
+		SqlDatabasePool databasePool = SqlDatabasePool.open(config);
+		SqlDatabase localDatabase = null;
+
 		try {
-			LsOperation operation = new LsOperation(config, concreteRequest.getOptions());
+			localDatabase = databasePool.borrow();
+
+			LsOperation operation = new LsOperation(config, concreteRequest.getOptions(), localDatabase);
 			LsOperationResult operationResult = operation.execute();
 			LsFolderResponse response = new LsFolderResponse(operationResult, request.getId());
 		
@@ -45,6 +52,10 @@ public class LsFolderRequestHandler extends FolderRequestHandler {
 		catch (Exception e) {
 			logger.log(Level.WARNING, "Cannot obtain status.", e);
 			return new BadRequestResponse(request.getId(), "Cannot execute operation: " + e.getMessage());
-		}		
+		}
+		finally {
+			databasePool.release(localDatabase);
+			databasePool.close();
+		}
 	}
 }
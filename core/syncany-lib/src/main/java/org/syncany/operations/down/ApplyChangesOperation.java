@@ -18,7 +18,8 @@
 package org.syncany.operations.down;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +34,7 @@ import org.syncany.database.MemoryDatabase;
 import org.syncany.database.MultiChunkEntry.MultiChunkId;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
 import org.syncany.operations.Downloader;
 import org.syncany.operations.Operation;
 import org.syncany.operations.OperationResult;
@@ -47,11 +49,11 @@ import org.syncany.plugins.transfer.TransferManager;
  * <ul>
  *  <li>Determine whether the local branch needs to be updated (new database versions); if so, determine
  *      local {@link FileSystemAction}s</li>
- *  <li>Determine, download and decrypt required multi chunks from remote storage from file actions
- *      (implemented in {@link #determineMultiChunksToDownload(FileVersion, MemoryDatabase, MemoryDatabase) determineMultiChunksToDownload()},
- *      and {@link #downloadAndDecryptMultiChunks(Set) downloadAndDecryptMultiChunks()})</li>
- *  <li>Apply file system actions locally, creating conflict files where necessary if local file does
- *      not match the expected file (implemented in {@link #applyFileSystemActions(List) applyFileSystemActions()} </li>
+ *  <li>Determine the required multi chunks of the file actions
+ *      (implemented in {@link #determineMultiChunksToDownload(FileVersion, MemoryDatabase) determineMultiChunksToDownload()})</li>
+ *  <li>Download and decrypt the multi chunks from remote storage, and apply the file system actions locally
+ *      while the download is running, creating conflict files where necessary if local file does not match
+ *      the expected file (implemented in {@link FileSystemActionPipeline})</li>
  * </ul>
  * 
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
@@ -95,30 +97,53 @@ public class ApplyChangesOperation extends Operation {
 			actions = actionReconciliator.determineFileSystemActions(winnersDatabase);
 		}
 
-		Set<MultiChunkId> unknownMultiChunks = determineRequiredMultiChunks(actions, winnersDatabase);
+		Map<FileSystemAction, Collection<MultiChunkId>> actionMultiChunks = determineActionMultiChunks(actions, winnersDatabase);
+		Set<MultiChunkId> unknownMultiChunks = determineRequiredMultiChunks(actionMultiChunks);
 		
-		downloader.downloadAndDecryptMultiChunks(unknownMultiChunks);
-		result.getDownloadedMultiChunks().addAll(unknownMultiChunks);
+		// File creating actions borrow read-only databases from the pool: Keep it open for all
+		// actions, and close its connections afterwards (unless 'watch' still uses the pool)
+		SqlDatabasePool databasePool = SqlDatabasePool.open(config);
+
+		try {
+			applyFileSystemActions(actions, actionMultiChunks, unknownMultiChunks);
+		}
+		finally {
+			databasePool.close();
+		}
 
-		applyFileSystemActions(actions);
+		result.getDownloadedMultiChunks().addAll(unknownMultiChunks);
 		
 		return null;
 	}
 	
 	/**
-	 * Finds the multichunks that need to be downloaded to apply the given file system actions.
-	 * The method looks at all {@link FileCreatingFileSystemAction}s and returns their multichunks. 
+	 * Finds the multichunks that are needed by each {@link FileCreatingFileSystemAction}
+	 * of the given file system actions. Other actions do not need any multichunks.
 	 */
-	private Set<MultiChunkId> determineRequiredMultiChunks(List<FileSystemAction> actions, MemoryDatabase winnersDatabase) {
-		Set<MultiChunkId> multiChunksToDownload = new HashSet<MultiChunkId>();
+	private Map<FileSystemAction, Collection<MultiChunkId>> determineActionMultiChunks(List<FileSystemAction> actions, MemoryDatabase winnersDatabase) {
+		Map<FileSystemAction, Collection<MultiChunkId>> actionMultiChunks = new LinkedHashMap<FileSystemAction, Collection<MultiChunkId>>();
 
 		for (FileSystemAction action : actions) {
 			if (action instanceof FileCreatingFileSystemAction) { // TODO [low] This adds ALL multichunks even though some might be available locally
-				multiChunksToDownload.addAll(determineMultiChunksToDownload(action.getFile2(), winnersDatabase));
+				actionMultiChunks.put(action, determineMultiChunksToDownload(action.getFile2(), winnersDatabase));
 			}
 		}
 
-		return multiChunksToDownload;
+		return actionMultiChunks;
+	}
+
+	/**
+	 * Returns the multichunks that need to be downloaded to apply the given file system actions,
+	 * in the order in which they should be downloaded (see {@link MultiChunkPrioritizer}).
+	 */
+	private Set<MultiChunkId> determineRequiredMultiChunks(Map<FileSystemAction, Collection<MultiChunkId>> actionMultiChunks) {
+		Map<FileVersion, Collection<MultiChunkId>> fileVersionMultiChunks = new LinkedHashMap<FileVersion, Collection<MultiChunkId>>();
+
+		for (Map.Entry<FileSystemAction, Collection<MultiChunkId>> actionMultiChunksEntry : actionMultiChunks.entrySet()) {
+			fileVersionMultiChunks.put(actionMultiChunksEntry.getKey().getFile2(), actionMultiChunksEntry.getValue());
+		}
+
+		return new MultiChunkPrioritizer().prioritize(fileVersionMultiChunks);
 	}
 	
 	/**
@@ -126,7 +151,7 @@ public class ApplyChangesOperation extends Operation {
 	 * database and given winners database. Returns a set of multichunk identifiers.
 	 */
 	private Collection<MultiChunkId> determineMultiChunksToDownload(FileVersion fileVersion, MemoryDatabase winnersDatabase) {
-		Set<MultiChunkId> multiChunksToDownload = new HashSet<MultiChunkId>();
+		Set<MultiChunkId> multiChunksToDownload = new LinkedHashSet<MultiChunkId>();
 
 		// First: Check if we know this file locally!
 		List<MultiChunkId> multiChunkIds = localDatabase.getMultiChunkIds(fileVersion.getChecksum());
@@ -169,29 +194,22 @@ public class ApplyChangesOperation extends Operation {
 	}
 	
 	/**
-	 * Applies the given file system actions in a sensible order. To do that, 
-	 * the given actions are first sorted using the {@link FileSystemActionComparator} and
-	 * then executed individually using {@link FileSystemAction#execute()}.
+	 * Applies the given file system actions in a sensible order, while the required multichunks
+	 * are downloaded. To do that, the given actions are first sorted using the {@link FileSystemActionComparator}
+	 * and then executed by the {@link FileSystemActionPipeline} as soon as their multichunks are available.
 	 */
-	private void applyFileSystemActions(List<FileSystemAction> actions) throws Exception {
+	private void applyFileSystemActions(List<FileSystemAction> actions, Map<FileSystemAction, Collection<MultiChunkId>> actionMultiChunks,
+			Set<MultiChunkId> multiChunksToDownload) throws Exception {
+		
 		// Sort
 		FileSystemActionComparator actionComparator = new FileSystemActionComparator();
 		actionComparator.sort(actions);
 
-		logger.log(Level.FINER, "- Applying file system actions (sorted!) ...");
-
-		// Apply
-		for (FileSystemAction action : actions) {
-			if (logger.isLoggable(Level.FINER)) {
-				logger.log(Level.FINER, "   +  {0}", action);
-			}
-
-			// Execute the file system action
-			
-			// Note that exceptions are not caught here, to prevent 
-			// apply-failed-delete-on-up situations.
-			
-			action.execute(); 
-		}
+		// Download and apply
+		
+		// Note that exceptions are not caught here, to prevent 
+		// apply-failed-delete-on-up situations.
+		
+		new FileSystemActionPipeline(config, downloader, actions, actionMultiChunks, multiChunksToDownload).execute();
 	}
 }
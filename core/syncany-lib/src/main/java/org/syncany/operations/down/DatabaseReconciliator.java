@@ -20,9 +20,12 @@ package org.syncany.operations.down;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +33,7 @@ import org.syncany.database.DatabaseVersion;
 import org.syncany.database.DatabaseVersionHeader;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.VectorClock;
+import org.syncany.database.VectorClock.VectorClockComparison;
 
 /**
  * The database reconciliator implements various parts of the sync down algorithm (see also:
@@ -47,7 +51,8 @@ import org.syncany.database.VectorClock;
  * <p><b>Algorithm:</b>
  * <ol>
  *  <li>Input: Local branch, unknown remote branches</li>
- *  <li>Sort the databaseversions by vectorclocks, tiebreaking with timestamps.</li>
+ *  <li>Find the common ancestor branch, i.e. the versions that are smaller than all others.</li>
+ *  <li>Sort the remaining databaseversions by vectorclocks, tiebreaking with timestamps.</li>
  *  <li>Walk through the sorted list and construct the winning branch.
  * </ol>
  * 
@@ -190,14 +195,18 @@ public class DatabaseReconciliator {
 	 * @return Returns the name and the branch of the winning machine 
 	 */
 	private Entry<String, DatabaseBranch> findWinnersNameAndBranch(DatabaseBranches allBranches) {
-		List<DatabaseVersionHeader> databaseVersionHeaders = sortBranches(allBranches);
-		
-		if (databaseVersionHeaders.size() == 0) {
+		// Skip the common ancestor branch, if there is one
+		List<DatabaseVersionHeader> commonAncestorBranch = findCommonAncestorBranch(allBranches);
+		List<DatabaseVersionHeader> databaseVersionHeaders = sortBranches(allBranches, commonAncestorBranch);
+
+		if (commonAncestorBranch.size() == 0 && databaseVersionHeaders.size() == 0) {
 			return null;
 		}
-		
+
 		// Determine winning branch
 		DatabaseBranch winnersBranch = new DatabaseBranch();
+		winnersBranch.addAll(commonAncestorBranch);
+
 		DatabaseVersionHeaderComparator databaseVersionHeaderComparator = new DatabaseVersionHeaderComparator(false);
 
 		for (DatabaseVersionHeader potentialWinner : databaseVersionHeaders) {
@@ -228,15 +237,113 @@ public class DatabaseReconciliator {
 		return null;
 	}
 
-	private List<DatabaseVersionHeader> sortBranches(DatabaseBranches allBranches) {
-		List<DatabaseVersionHeader> databaseVersionHeaders = new ArrayList<DatabaseVersionHeader>();
-		
+	/**
+	 * Finds the longest common ancestor branch of all branches, i.e. the longest prefix of a branch
+	 * whose database versions are all smaller than every other database version (by vector clock).
+	 * This prefix is always part of the winner's branch, in exactly this order: when all database
+	 * versions are sorted, it comes first, and each of its versions is greater than the previous one.
+	 * It therefore does not need to be sorted or compared with the other database versions.
+	 *
+	 * <p>In a typical 'down', the local branch is long, and only a few database versions are new. Since
+	 * "all new versions are greater than version i" holds for all versions up to the common ancestor
+	 * and for none after, the common ancestor is found with a binary search over the longest branch. This
+	 * requires only <i>O(new versions * log(branch length))</i> vector clock comparisons.
+	 *
+	 * @param allBranches All branches of all machines (including local)
+	 * @return Returns the common ancestor branch (may be empty, but never <tt>null</tt>)
+	 */
+	private List<DatabaseVersionHeader> findCommonAncestorBranch(DatabaseBranches allBranches) {
+		List<DatabaseVersionHeader> longestBranch = Collections.emptyList();
+
+		for (String client : allBranches.getClients()) {
+			List<DatabaseVersionHeader> clientBranch = allBranches.getBranch(client).getAll();
+
+			if (clientBranch.size() > longestBranch.size()) {
+				longestBranch = clientBranch;
+			}
+		}
+
+		// Only a strictly increasing prefix can be a common ancestor (e.g. merged databases may add duplicates)
+		int increasingLength = findIncreasingPrefixLength(longestBranch);
+		List<DatabaseVersionHeader> increasingBranch = longestBranch.subList(0, increasingLength);
+
+		// Find all versions not part of this prefix
+		Set<DatabaseVersionHeader> increasingBranchHeaders = new HashSet<DatabaseVersionHeader>(increasingBranch);
+		Set<DatabaseVersionHeader> otherHeaders = new HashSet<DatabaseVersionHeader>();
+
+		for (String client : allBranches.getClients()) {
+			for (DatabaseVersionHeader databaseVersionHeader : allBranches.getBranch(client).getAll()) {
+				if (!increasingBranchHeaders.contains(databaseVersionHeader)) {
+					otherHeaders.add(databaseVersionHeader);
+				}
+			}
+		}
+
+		// Binary search for the last version that is smaller than all other versions
+		int low = 0;
+		int high = increasingLength - 1;
+
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+
+			if (allHeadersGreater(otherHeaders, increasingBranch.get(middle))) {
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+
+		logger.log(Level.INFO, "Common ancestor branch has " + low + " database version(s), " + otherHeaders.size()
+				+ " other database version(s) need to be compared.");
+
+		return increasingBranch.subList(0, low);
+	}
+
+	private int findIncreasingPrefixLength(List<DatabaseVersionHeader> branch) {
+		for (int i = 1; i < branch.size(); i++) {
+			VectorClockComparison comparison = VectorClock.compare(branch.get(i).getVectorClock(), branch.get(i - 1).getVectorClock());
+
+			if (comparison != VectorClockComparison.GREATER) {
+				return i;
+			}
+		}
+
+		return branch.size();
+	}
+
+	private boolean allHeadersGreater(Set<DatabaseVersionHeader> databaseVersionHeaders, DatabaseVersionHeader smallerHeader) {
+		for (DatabaseVersionHeader databaseVersionHeader : databaseVersionHeaders) {
+			VectorClockComparison comparison = VectorClock.compare(databaseVersionHeader.getVectorClock(), smallerHeader.getVectorClock());
+
+			if (comparison != VectorClockComparison.GREATER) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sorts all database versions of all branches (excluding the common ancestor branch) by vector
+	 * clock, tiebreaking with timestamps and machine names. Database versions that are part of
+	 * multiple branches are only added once.
+	 */
+	private List<DatabaseVersionHeader> sortBranches(DatabaseBranches allBranches, List<DatabaseVersionHeader> commonAncestorBranch) {
+		Set<DatabaseVersionHeader> commonAncestorHeaders = new HashSet<DatabaseVersionHeader>(commonAncestorBranch);
+		Set<DatabaseVersionHeader> databaseVersionHeaders = new LinkedHashSet<DatabaseVersionHeader>();
+
 		for (String client : allBranches.getClients()) {
-			databaseVersionHeaders.addAll(allBranches.getBranch(client).getAll());
+			for (DatabaseVersionHeader databaseVersionHeader : allBranches.getBranch(client).getAll()) {
+				if (!commonAncestorHeaders.contains(databaseVersionHeader)) {
+					databaseVersionHeaders.add(databaseVersionHeader);
+				}
+			}
 		}
-		
-		Collections.sort(databaseVersionHeaders, new DatabaseVersionHeaderComparator(true));
 
-		return databaseVersionHeaders;
+		List<DatabaseVersionHeader> sortedDatabaseVersionHeaders = new ArrayList<DatabaseVersionHeader>(databaseVersionHeaders);
+		Collections.sort(sortedDatabaseVersionHeaders, new DatabaseVersionHeaderComparator(true));
+
+		return sortedDatabaseVersionHeaders;
 	}
 }
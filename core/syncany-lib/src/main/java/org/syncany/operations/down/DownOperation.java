@@ -18,9 +18,14 @@
 package org.syncany.operations.down;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -29,9 +34,19 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.syncany.chunk.NoTransformer;
+import org.syncany.chunk.Transformer;
 import org.syncany.config.Config;
 import org.syncany.database.DatabaseVersion;
 import org.syncany.database.DatabaseVersionHeader;
@@ -57,6 +72,9 @@ import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransferManager;
 import org.syncany.plugins.transfer.files.CleanupRemoteFile;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.plugins.transfer.files.RemoteFile;
+import org.syncany.plugins.transfer.files.SnapshotRemoteFile;
+import org.syncany.util.ExecutorUtil;
 
 import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
@@ -90,6 +108,17 @@ import com.google.common.collect.Sets.SetView;
 public class DownOperation extends AbstractTransferOperation {
 	private static final Logger logger = Logger.getLogger(DownOperation.class.getSimpleName());
 
+	/**
+	 * Maximum number of database files downloaded in parallel. Every download thread
+	 * uses its own transfer manager (and thereby its own connection).
+	 */
+	private static final int MAX_PARALLEL_DATABASE_DOWNLOADS = 4;
+
+	/**
+	 * Maximum number of database files (or ranges within them) parsed in parallel.
+	 */
+	private static final int MAX_PARALLEL_DATABASE_READS = Runtime.getRuntime().availableProcessors();
+
 	public static final String ACTION_ID = "down";
 
 	private DownOperationOptions options;
@@ -111,14 +140,14 @@ public class DownOperation extends AbstractTransferOperation {
 
 		this.localDatabase = new SqlDatabase(config);
 		this.databaseReconciliator = new DatabaseReconciliator();
-		this.databaseSerializer = new DatabaseXmlSerializer(config.getTransformer());
+		this.databaseSerializer = new DatabaseXmlSerializer(); // Database files are decrypted after download
 	}
 
 	/**
 	 * Executes the down operation, roughly following these steps:
 	 *
 	 * <ul>
-	 *  <li>Download the remote databases to the local cache folder
+	 *  <li>Download and decrypt the remote databases to the local cache folder
 	 *  <li>Read version headers (vector clocks)
 	 *  <li>Determine winner branch
 	 *  <li>Prune local stuff (if local conflicts exist)
@@ -149,12 +178,27 @@ public class DownOperation extends AbstractTransferOperation {
 		DatabaseBranch localBranch = localDatabase.getLocalDatabaseBranch();
 		List<DatabaseRemoteFile> newRemoteDatabases = result.getLsRemoteResult().getUnknownRemoteDatabases();
 
-		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = downloadUnknownRemoteDatabases(newRemoteDatabases);
+		Map<String, CleanupRemoteFile> remoteCleanupFiles = getRemoteCleanupFiles();
+		boolean cleanupOccurred = cleanupOccurred(remoteCleanupFiles);
+
+		// If the entire local database has to be built (new client, or after cleanup), a snapshot replaces the merged database files
+		SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> snapshotDatabaseHeaders = new TreeMap<DatabaseRemoteFile, List<DatabaseVersion>>();
+		File snapshotFile = null;
+
+		if (localBranch.size() == 0 || cleanupOccurred) {
+			snapshotFile = downloadSnapshot(remoteCleanupFiles, newRemoteDatabases, snapshotDatabaseHeaders);
+		}
+
+		List<DatabaseRemoteFile> downloadRemoteDatabases = new ArrayList<DatabaseRemoteFile>(newRemoteDatabases);
+		downloadRemoteDatabases.removeAll(snapshotDatabaseHeaders.keySet());
+
+		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = downloadUnknownRemoteDatabases(downloadRemoteDatabases);
 		SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = readUnknownDatabaseVersionHeaders(unknownRemoteDatabasesInCache);
 		Map<DatabaseVersionHeader, File> databaseVersionLocations = findDatabaseVersionLocations(remoteDatabaseHeaders, unknownRemoteDatabasesInCache);
 
-		Map<String, CleanupRemoteFile> remoteCleanupFiles = getRemoteCleanupFiles();
-		boolean cleanupOccurred = cleanupOccurred(remoteCleanupFiles);
+		if (snapshotFile != null) {
+			addSnapshotDatabaseVersionLocations(snapshotFile, snapshotDatabaseHeaders, remoteDatabaseHeaders, databaseVersionLocations);
+		}
 
 		List<PartialFileHistory> preDeleteFileHistoriesWithLastVersion = null;
 
@@ -197,9 +241,27 @@ public class DownOperation extends AbstractTransferOperation {
 			localDatabase.commit();
 		}
 		catch (Exception e) {
+			if (localDatabase.isBulkLoad()) {
+				logger.log(Level.WARNING, "  + Sync down failed; aborting bulk load ...", e);
+				localDatabase.abortBulkLoad();
+			}
+
 			localDatabase.rollback();
 			throw e;
 		}
+		finally {
+			// The snapshot is only needed while applying the winner's branch; unlike the
+			// regular database files, it is never looked up in the cache again
+			if (snapshotFile != null) {
+				FileUtils.deleteQuietly(snapshotFile);
+			}
+		}
+
+		// Ending the bulk load re-creates the indices, which commits implicitly; it must
+		// hence happen after the commit above, so that a failing 'down' is rolled back as a whole
+		if (localDatabase.isBulkLoad()) {
+			localDatabase.endBulkLoad();
+		}
 
 		finishOperation();
 		fireEndEvent();
@@ -261,7 +323,6 @@ public class DownOperation extends AbstractTransferOperation {
 		}
 
 
-
 		return true;
 	}
 
@@ -273,38 +334,279 @@ public class DownOperation extends AbstractTransferOperation {
 	}
 
 	/**
-	 * Downloads the previously identified new/unknown remote databases to the local cache
-	 * and returns a map with the local cache files mapped to the given remote database
-	 * files. The method additionally fires events for every database it downloads.
+	 * Downloads the previously identified new/unknown remote databases to the local cache,
+	 * decrypts them and returns a map with the decrypted local cache files mapped to the given
+	 * remote database files. The method additionally fires events for every database it downloads.
+	 *
+	 * <p>Database files are decrypted only once, so that reading the headers and later reading
+	 * the winner's and the muddy database versions does not decrypt the same files again.
+	 *
+	 * <p>Up to {@link #MAX_PARALLEL_DATABASE_DOWNLOADS} files are downloaded and decrypted in
+	 * parallel, each thread using its own transfer manager.
 	 */
-	private SortedMap<File, DatabaseRemoteFile> downloadUnknownRemoteDatabases(List<DatabaseRemoteFile> unknownRemoteDatabases)
-			throws StorageException {
+	private SortedMap<File, DatabaseRemoteFile> downloadUnknownRemoteDatabases(final List<DatabaseRemoteFile> unknownRemoteDatabases)
+			throws StorageException, IOException {
 
 		logger.log(Level.INFO, "Downloading unknown databases.");
 
-		SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = new TreeMap<File, DatabaseRemoteFile>();
-		int downloadFileIndex = 0;
+		int downloadThreadCount = Math.min(MAX_PARALLEL_DATABASE_DOWNLOADS, unknownRemoteDatabases.size());
 
-		for (DatabaseRemoteFile remoteFile : unknownRemoteDatabases) {
-			File unknownRemoteDatabaseFileInCache = config.getCache().getDatabaseFile(remoteFile.getName());
-			DatabaseRemoteFile unknownDatabaseRemoteFile = new DatabaseRemoteFile(remoteFile.getName());
+		final BlockingQueue<TransferManager> idleTransferManagers = new ArrayBlockingQueue<TransferManager>(Math.max(1, downloadThreadCount));
+		final List<TransferManager> additionalTransferManagers = new ArrayList<TransferManager>();
+		final AtomicInteger downloadFileIndex = new AtomicInteger(0);
 
-			logger.log(Level.INFO, "- Downloading {0} to local cache at {1}", new Object[] { remoteFile.getName(), unknownRemoteDatabaseFileInCache });
-			eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "database", ++downloadFileIndex,
-					unknownRemoteDatabases.size()));
+		idleTransferManagers.add(transferManager);
 
-			transferManager.download(unknownDatabaseRemoteFile, unknownRemoteDatabaseFileInCache);
+		for (int i = 1; i < downloadThreadCount; i++) {
+			TransferManager additionalTransferManager = createTransferManager();
 
-			unknownRemoteDatabasesInCache.put(unknownRemoteDatabaseFileInCache, unknownDatabaseRemoteFile);
-			result.getDownloadedUnknownDatabases().add(remoteFile.getName());
+			additionalTransferManagers.add(additionalTransferManager);
+			idleTransferManagers.add(additionalTransferManager);
 		}
 
-		return unknownRemoteDatabasesInCache;
+		ExecutorService downloadExecutor = ExecutorUtil.createExecutor(downloadThreadCount, "DownDatabase");
+
+		try {
+			List<Future<File>> downloadFutures = new ArrayList<Future<File>>();
+
+			for (final DatabaseRemoteFile remoteFile : unknownRemoteDatabases) {
+				downloadFutures.add(downloadExecutor.submit(new Callable<File>() {
+					@Override
+					public File call() throws Exception {
+						TransferManager downloadTransferManager = idleTransferManagers.take();
+
+						try {
+							return downloadUnknownRemoteDatabase(downloadTransferManager, remoteFile, downloadFileIndex.incrementAndGet(),
+									unknownRemoteDatabases.size());
+						}
+						finally {
+							idleTransferManagers.add(downloadTransferManager);
+						}
+					}
+				}));
+			}
+
+			List<File> decryptedRemoteDatabaseFilesInCache = ExecutorUtil.waitForAll(downloadFutures);
+			SortedMap<File, DatabaseRemoteFile> unknownRemoteDatabasesInCache = new TreeMap<File, DatabaseRemoteFile>();
+
+			for (int i = 0; i < unknownRemoteDatabases.size(); i++) {
+				String remoteFileName = unknownRemoteDatabases.get(i).getName();
+
+				unknownRemoteDatabasesInCache.put(decryptedRemoteDatabaseFilesInCache.get(i), new DatabaseRemoteFile(remoteFileName));
+				result.getDownloadedUnknownDatabases().add(remoteFileName);
+			}
+
+			return unknownRemoteDatabasesInCache;
+		}
+		finally {
+			downloadExecutor.shutdownNow();
+
+			for (TransferManager additionalTransferManager : additionalTransferManagers) {
+				try {
+					additionalTransferManager.disconnect();
+				}
+				catch (StorageException e) {
+					logger.log(Level.FINE, "Could not disconnect the transfer manager", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Downloads and decrypts a single unknown remote database to the local cache, using the given
+	 * transfer manager. This method is called by multiple threads in parallel, each with its own
+	 * transfer manager.
+	 */
+	private File downloadUnknownRemoteDatabase(TransferManager downloadTransferManager, DatabaseRemoteFile remoteFile, int downloadFileIndex,
+			int downloadFileCount) throws StorageException, IOException {
+
+		File unknownRemoteDatabaseFileInCache = config.getCache().getDatabaseFile(remoteFile.getName());
+		File decryptedRemoteDatabaseFileInCache = config.getCache().getDecryptedDatabaseFile(remoteFile.getName());
+		DatabaseRemoteFile unknownDatabaseRemoteFile = new DatabaseRemoteFile(remoteFile.getName());
+
+		logger.log(Level.INFO, "- Downloading {0} to local cache at {1}", new Object[] { remoteFile.getName(), unknownRemoteDatabaseFileInCache });
+		eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "database", downloadFileIndex,
+				downloadFileCount));
+
+		downloadTransferManager.download(unknownDatabaseRemoteFile, unknownRemoteDatabaseFileInCache);
+		decryptRemoteDatabase(remoteFile, unknownRemoteDatabaseFileInCache, decryptedRemoteDatabaseFileInCache);
+
+		return decryptedRemoteDatabaseFileInCache;
+	}
+
+	/**
+	 * Downloads and decrypts the remote snapshot, if there is a valid one, and reads its database version headers.
+	 * A {@link SnapshotRemoteFile} is valid if no cleanup has occurred since it was written, i.e. if its cleanup
+	 * number matches the last remote cleanup number.
+	 *
+	 * <p>Since the cleanup merges all database files into one file per client, and the snapshot contains the
+	 * same database versions, the snapshot replaces the oldest remote database file of every client that has
+	 * database versions in it. Database files that were uploaded after the cleanup are not affected.
+	 *
+	 * <p>Snapshots are an optimization only: If listing, downloading or reading the snapshot fails (e.g. because
+	 * the storage backend does not support listing snapshots), this method returns <tt>null</tt> and all database
+	 * files are downloaded instead.
+	 *
+	 * @param remoteCleanupFiles list of remote cleanup files, used to determine the last cleanup number
+	 * @param newRemoteDatabases all unknown remote database files
+	 * @param snapshotDatabaseHeaders will be filled with the database versions (headers only) of the snapshot,
+	 *        keyed by the database file they replace
+	 * @return the decrypted snapshot file in the local cache, or <tt>null</tt> if no valid snapshot exists
+	 */
+	private File downloadSnapshot(Map<String, CleanupRemoteFile> remoteCleanupFiles, List<DatabaseRemoteFile> newRemoteDatabases,
+			SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> snapshotDatabaseHeaders) {
+
+		try {
+			return downloadAndReadSnapshot(remoteCleanupFiles, newRemoteDatabases, snapshotDatabaseHeaders);
+		}
+		catch (Exception e) {
+			logger.log(Level.WARNING, "Cannot download or read snapshot. Downloading all databases instead.", e);
+
+			snapshotDatabaseHeaders.clear();
+			return null;
+		}
+	}
+
+	private File downloadAndReadSnapshot(Map<String, CleanupRemoteFile> remoteCleanupFiles, List<DatabaseRemoteFile> newRemoteDatabases,
+			SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> snapshotDatabaseHeaders) throws StorageException, IOException {
+
+		long lastRemoteCleanupNumber = getLastRemoteCleanupNumber(remoteCleanupFiles);
+		SnapshotRemoteFile snapshotRemoteFile = null;
+
+		for (SnapshotRemoteFile remoteSnapshot : transferManager.list(SnapshotRemoteFile.class).values()) {
+			if (remoteSnapshot.getCleanupNumber() == lastRemoteCleanupNumber) {
+				snapshotRemoteFile = remoteSnapshot;
+			}
+		}
+
+		if (snapshotRemoteFile == null) {
+			logger.log(Level.INFO, "No valid snapshot for cleanup number " + lastRemoteCleanupNumber + " found. Downloading all databases.");
+			return null;
+		}
+
+		// Download and read headers
+		File encryptedSnapshotFile = config.getCache().getDatabaseFile(snapshotRemoteFile.getName());
+		File snapshotFile = config.getCache().getDecryptedDatabaseFile(snapshotRemoteFile.getName());
+
+		logger.log(Level.INFO, "Downloading snapshot {0} to local cache at {1}", new Object[] { snapshotRemoteFile.getName(), encryptedSnapshotFile });
+		eventBus.post(new DownDownloadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), "snapshot", 1, 1));
+
+		MemoryDatabase snapshotDatabase = new MemoryDatabase();
+
+		try {
+			transferManager.download(snapshotRemoteFile, encryptedSnapshotFile);
+			decryptRemoteDatabase(snapshotRemoteFile, encryptedSnapshotFile, snapshotFile);
+
+			databaseSerializer.load(snapshotDatabase, snapshotFile, null, null, DatabaseReadType.HEADER_ONLY);
+		}
+		catch (StorageException | IOException | RuntimeException e) {
+			FileUtils.deleteQuietly(encryptedSnapshotFile);
+			FileUtils.deleteQuietly(snapshotFile);
+
+			throw e;
+		}
+
+		// Find the replaced (oldest) database file of each client
+		Map<String, DatabaseRemoteFile> oldestRemoteDatabases = new HashMap<String, DatabaseRemoteFile>();
+
+		for (DatabaseRemoteFile remoteDatabase : newRemoteDatabases) {
+			DatabaseRemoteFile oldestRemoteDatabase = oldestRemoteDatabases.get(remoteDatabase.getClientName());
+
+			if (oldestRemoteDatabase == null || remoteDatabase.getClientVersion() < oldestRemoteDatabase.getClientVersion()) {
+				oldestRemoteDatabases.put(remoteDatabase.getClientName(), remoteDatabase);
+			}
+		}
+
+		for (DatabaseVersion snapshotDatabaseVersion : snapshotDatabase.getDatabaseVersions()) {
+			String clientName = snapshotDatabaseVersion.getHeader().getClient();
+			DatabaseRemoteFile replacedRemoteDatabase = oldestRemoteDatabases.get(clientName);
+
+			if (replacedRemoteDatabase == null) {
+				logger.log(Level.WARNING, "Snapshot " + snapshotRemoteFile + " contains versions of client " + clientName
+						+ ", but there is no unknown database file for that client. Ignoring snapshot.");
+
+				snapshotDatabaseHeaders.clear();
+				FileUtils.deleteQuietly(snapshotFile);
+
+				return null;
+			}
+
+			if (!snapshotDatabaseHeaders.containsKey(replacedRemoteDatabase)) {
+				snapshotDatabaseHeaders.put(replacedRemoteDatabase, new ArrayList<DatabaseVersion>());
+			}
+
+			snapshotDatabaseHeaders.get(replacedRemoteDatabase).add(snapshotDatabaseVersion);
+		}
+
+		logger.log(Level.INFO, "Using snapshot " + snapshotRemoteFile + " instead of database files " + snapshotDatabaseHeaders.keySet());
+		result.getDownloadedUnknownDatabases().add(snapshotRemoteFile.getName());
+
+		return snapshotFile;
+	}
+
+	/**
+	 * Adds the database versions (headers only) of the snapshot to the headers read from the regular database
+	 * files, and points their locations to the snapshot file. Afterwards, the snapshot's database versions are
+	 * treated exactly like the database versions of the database files they replace.
+	 */
+	private void addSnapshotDatabaseVersionLocations(File snapshotFile, SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> snapshotDatabaseHeaders,
+			SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders, Map<DatabaseVersionHeader, File> databaseVersionLocations) {
+
+		for (Map.Entry<DatabaseRemoteFile, List<DatabaseVersion>> snapshotDatabaseHeadersEntry : snapshotDatabaseHeaders.entrySet()) {
+			remoteDatabaseHeaders.put(snapshotDatabaseHeadersEntry.getKey(), snapshotDatabaseHeadersEntry.getValue());
+
+			for (DatabaseVersion databaseVersion : snapshotDatabaseHeadersEntry.getValue()) {
+				databaseVersionLocations.put(databaseVersion.getHeader(), snapshotFile);
+			}
+		}
+	}
+
+	/**
+	 * Decrypts (and/or decompresses) a downloaded database file using the configured transformer,
+	 * and deletes the encrypted file afterwards. If the repository does not use any transformers,
+	 * the downloaded file is simply renamed.
+	 */
+	private void decryptRemoteDatabase(RemoteFile remoteFile, File encryptedDatabaseFile, File decryptedDatabaseFile) throws IOException {
+		Transformer transformer = config.getTransformer();
+
+		if (transformer instanceof NoTransformer) {
+			FileUtils.deleteQuietly(decryptedDatabaseFile);
+			FileUtils.moveFile(encryptedDatabaseFile, decryptedDatabaseFile);
+
+			return;
+		}
+
+		try {
+			logger.log(Level.INFO, "  + Decrypting database " + remoteFile.getName() + " ...");
+
+			InputStream databaseInputStream = transformer.createInputStream(new FileInputStream(encryptedDatabaseFile));
+			OutputStream decryptedDatabaseOutputStream = new FileOutputStream(decryptedDatabaseFile);
+
+			try {
+				IOUtils.copy(databaseInputStream, decryptedDatabaseOutputStream);
+			}
+			finally {
+				decryptedDatabaseOutputStream.close();
+				databaseInputStream.close();
+			}
+		}
+		catch (IOException e) {
+			// Security: Like for multichunks, a partially decrypted database file must not remain in the cache
+			logger.log(Level.FINE, "    -> FAILED: Decryption/extraction of database failed, deleting " + remoteFile.getName() + " ...");
+			decryptedDatabaseFile.delete();
+
+			throw new IOException("Decryption/extraction of database " + remoteFile.getName()
+					+ " failed. The database might have been tampered with!", e);
+		}
+		finally {
+			encryptedDatabaseFile.delete();
+		}
 	}
 
 	/**
 	 * Read the given database files into individual per-user {@link DatabaseBranch}es. This method only
 	 * reads the headers from the local database files, and not the entire databases into memory.
+	 * The files are read in parallel, and the results are merged in {@link DatabaseRemoteFile} order.
 	 *
 	 * <p>The returned database branches contain only the per-client {@link DatabaseVersionHeader}s, and not
 	 * the entire stitched branches, i.e. A's database branch will only contain database version headers from A.
@@ -314,21 +616,34 @@ public class DownOperation extends AbstractTransferOperation {
 			StorageException {
 		logger.log(Level.INFO, "Loading database headers, creating branches ...");
 
-		// Read database files
-		SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = new TreeMap<DatabaseRemoteFile, List<DatabaseVersion>>();
+		// Read database files (in parallel)
+		List<DatabaseRemoteFile> remoteDatabaseFiles = new ArrayList<DatabaseRemoteFile>();
+		List<Future<MemoryDatabase>> remoteDatabaseFutures = new ArrayList<Future<MemoryDatabase>>();
 
-		for (Map.Entry<File, DatabaseRemoteFile> remoteDatabaseFileEntry : remoteDatabases.entrySet()) {
-			MemoryDatabase remoteDatabase = new MemoryDatabase(); // Database cannot be reused, since these might be different clients
+		ExecutorService readExecutor = ExecutorUtil.createExecutor(Math.min(MAX_PARALLEL_DATABASE_READS, remoteDatabases.size()), "DownReadHeaders");
 
-			File remoteDatabaseFileInCache = remoteDatabaseFileEntry.getKey();
-			DatabaseRemoteFile remoteDatabaseFile = remoteDatabaseFileEntry.getValue();
+		try {
+			for (Map.Entry<File, DatabaseRemoteFile> remoteDatabaseFileEntry : remoteDatabases.entrySet()) {
+				File remoteDatabaseFileInCache = remoteDatabaseFileEntry.getKey();
 
-			databaseSerializer.load(remoteDatabase, remoteDatabaseFileInCache, null, null, DatabaseReadType.HEADER_ONLY); // only load headers!
+				remoteDatabaseFiles.add(remoteDatabaseFileEntry.getValue());
+				remoteDatabaseFutures.add(readExecutor.submit(createLoadDatabaseTask(remoteDatabaseFileInCache, null, null,
+						DatabaseReadType.HEADER_ONLY))); // only load headers!
+			}
 
-			remoteDatabaseHeaders.put(remoteDatabaseFile, remoteDatabase.getDatabaseVersions());
-		}
+			// Merge in database remote file order
+			List<MemoryDatabase> remoteDatabaseFragments = ExecutorUtil.waitForAll(remoteDatabaseFutures);
+			SortedMap<DatabaseRemoteFile, List<DatabaseVersion>> remoteDatabaseHeaders = new TreeMap<DatabaseRemoteFile, List<DatabaseVersion>>();
 
-		return remoteDatabaseHeaders;
+			for (int i = 0; i < remoteDatabaseFiles.size(); i++) {
+				remoteDatabaseHeaders.put(remoteDatabaseFiles.get(i), remoteDatabaseFragments.get(i).getDatabaseVersions());
+			}
+
+			return remoteDatabaseHeaders;
+		}
+		finally {
+			readExecutor.shutdownNow();
+		}
 	}
 
 	/**
@@ -518,6 +833,7 @@ public class DownOperation extends AbstractTransferOperation {
 		MemoryDatabase winnerBranchDatabase = new MemoryDatabase();
 
 		List<DatabaseVersionHeader> winnersApplyBranchList = winnersApplyBranch.getAll();
+		List<Callable<MemoryDatabase>> winnerDatabaseFragmentTasks = new ArrayList<Callable<MemoryDatabase>>();
 
 		String rangeClientName = null;
 		VectorClock rangeVersionFrom = null;
@@ -556,11 +872,31 @@ public class DownOperation extends AbstractTransferOperation {
 			boolean rangeEnds = lastDatabaseVersionHeader || !nextDatabaseVersionInSameFile;
 
 			if (rangeEnds) {
-				databaseSerializer.load(winnerBranchDatabase, databaseVersionFile, rangeVersionFrom, rangeVersionTo, DatabaseReadType.FULL);
+				winnerDatabaseFragmentTasks.add(createLoadDatabaseTask(databaseVersionFile, rangeVersionFrom, rangeVersionTo, DatabaseReadType.FULL));
 				rangeClientName = null;
 			}
 		}
 
+		// Load ranges in parallel, and merge them in branch order
+		ExecutorService readExecutor = ExecutorUtil.createExecutor(Math.min(MAX_PARALLEL_DATABASE_READS, winnerDatabaseFragmentTasks.size()), "DownReadWinners");
+
+		try {
+			List<Future<MemoryDatabase>> winnerDatabaseFragmentFutures = new ArrayList<Future<MemoryDatabase>>();
+
+			for (Callable<MemoryDatabase> winnerDatabaseFragmentTask : winnerDatabaseFragmentTasks) {
+				winnerDatabaseFragmentFutures.add(readExecutor.submit(winnerDatabaseFragmentTask));
+			}
+
+			for (MemoryDatabase winnerDatabaseFragment : ExecutorUtil.waitForAll(winnerDatabaseFragmentFutures)) {
+				for (DatabaseVersion databaseVersion : winnerDatabaseFragment.getDatabaseVersions()) {
+					winnerBranchDatabase.addDatabaseVersion(databaseVersion);
+				}
+			}
+		}
+		finally {
+			readExecutor.shutdownNow();
+		}
+
 		if (logger.isLoggable(Level.FINE)) {
 			logger.log(Level.FINE, "Winner Database Branch:");
 
@@ -586,6 +922,11 @@ public class DownOperation extends AbstractTransferOperation {
 		// Note: This must happen AFTER the file system stuff, because we compare the winners database with the local database!
 		logger.log(Level.INFO, "- Adding database versions to SQL database ...");
 
+		// Use bulk-load mode for empty databases (initial 'down' or after cleanup), because
+		// deferring indices and constraints is much faster for a large number of file versions.
+		// The bulk load is ended (or aborted) in execute(), after the final commit.
+		localDatabase.beginBulkLoad();
+
 		for (DatabaseVersionHeader currentDatabaseVersionHeader : winnersApplyBranch.getAll()) {
 			persistDatabaseVersion(winnersDatabase, currentDatabaseVersionHeader);
 		}
@@ -667,6 +1008,25 @@ public class DownOperation extends AbstractTransferOperation {
 		localDatabase.removeNonMuddyMultiChunks();
 	}
 
+	/**
+	 * Creates a task that loads the given range of database versions from a (decrypted) database file
+	 * into a new {@link MemoryDatabase} fragment. Fragments are independent of each other, so they can
+	 * be loaded in parallel and merged afterwards.
+	 */
+	private Callable<MemoryDatabase> createLoadDatabaseTask(final File databaseFile, final VectorClock fromVersion, final VectorClock toVersion,
+			final DatabaseReadType readType) {
+
+		return new Callable<MemoryDatabase>() {
+			@Override
+			public MemoryDatabase call() throws Exception {
+				MemoryDatabase databaseFragment = new MemoryDatabase(); // Database cannot be reused, since these might be different clients
+				databaseSerializer.load(databaseFragment, databaseFile, fromVersion, toVersion, readType);
+
+				return databaseFragment;
+			}
+		};
+	}
+
 	/**
 	 * This methods takes a Map from {@link DatabaseRemoteFile}s to Lists of {@link DatabaseVersion}s and produces more or less
 	 * the reverse Map, which can be used to find the cached copy of a remote databasefile, given a {@link DatabaseVersionHeader}.
@@ -0,0 +1,320 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.database.FileVersion;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.Downloader;
+import org.syncany.operations.Downloader.DownloaderListener;
+import org.syncany.operations.down.actions.FileCreatingFileSystemAction;
+import org.syncany.operations.down.actions.FileSystemAction;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.util.ExecutorUtil;
+
+/**
+ * The file system action pipeline applies a list of {@link FileSystemAction}s while the
+ * multichunks they need are still being downloaded. Each {@link FileCreatingFileSystemAction}
+ * is executed as soon as all of its multichunks have been downloaded and decrypted, instead
+ * of waiting for the whole download to finish.
+ * 
+ * <p>The actions must be sorted by the {@link FileSystemActionComparator}. They are executed
+ * in this order, except that actions waiting for multichunks are deferred: Later actions may
+ * overtake a deferred action only if they do not touch the same path or a parent/child path
+ * of it (actions on disjoint paths can be executed in any order). Otherwise, the deferred
+ * actions are executed first, waiting for their multichunks if necessary. This preserves the
+ * ordering constraints of deletes, renames and folders.
+ * 
+ * <p>Multichunks downloaded by the pipeline are deleted from the local cache as soon as no
+ * pending action needs them anymore, so the cache does not have to hold the whole download
+ * at once. Multichunks that were in the cache before are left untouched.
+ * 
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class FileSystemActionPipeline implements DownloaderListener {
+	private static final Logger logger = Logger.getLogger(FileSystemActionPipeline.class.getSimpleName());
+
+	/**
+	 * Interval in which the pipeline checks whether the download has failed
+	 * while it waits for multichunks.
+	 */
+	private static final int DOWNLOAD_CHECK_INTERVAL_MILLIS = 500;
+
+	private Config config;
+	private Downloader downloader;
+	private List<FileSystemAction> actions;
+	private Map<FileSystemAction, Collection<MultiChunkId>> actionMultiChunks;
+	private Set<MultiChunkId> multiChunksToDownload;
+
+	private BlockingQueue<MultiChunkId> decryptedMultiChunks;
+	private Set<MultiChunkId> availableMultiChunks;
+	private Set<MultiChunkId> cachedMultiChunks;
+	private Map<MultiChunkId, Integer> pendingMultiChunkUses;
+	private List<FileSystemAction> deferredActions;
+
+	private Future<Void> downloadFuture;
+
+	/**
+	 * @param config the config of the client
+	 * @param downloader the downloader used to download and decrypt the multichunks
+	 * @param actions actions to apply, sorted by the {@link FileSystemActionComparator}
+	 * @param actionMultiChunks multichunks required by each {@link FileCreatingFileSystemAction}
+	 * @param multiChunksToDownload all required multichunks, in the order in which they should be downloaded
+	 */
+	public FileSystemActionPipeline(Config config, Downloader downloader, List<FileSystemAction> actions,
+			Map<FileSystemAction, Collection<MultiChunkId>> actionMultiChunks, Set<MultiChunkId> multiChunksToDownload) {
+
+		this.config = config;
+		this.downloader = downloader;
+		this.actions = actions;
+		this.actionMultiChunks = actionMultiChunks;
+		this.multiChunksToDownload = multiChunksToDownload;
+
+		this.decryptedMultiChunks = new LinkedBlockingQueue<MultiChunkId>();
+		this.availableMultiChunks = new HashSet<MultiChunkId>();
+		this.cachedMultiChunks = new HashSet<MultiChunkId>();
+		this.pendingMultiChunkUses = new HashMap<MultiChunkId, Integer>();
+		this.deferredActions = new ArrayList<FileSystemAction>();
+	}
+
+	/**
+	 * Downloads the multichunks in the background and applies the actions as described above.
+	 * Exceptions of the actions are not caught, to prevent apply-failed-delete-on-up situations.
+	 * If the download fails, the actions waiting for multichunks are not executed and the
+	 * download's exception is rethrown.
+	 */
+	public void execute() throws Exception {
+		determineAvailableAndPendingMultiChunks();
+
+		ExecutorService downloadExecutor = ExecutorUtil.createExecutor(1, "ApplyDownload");
+
+		try {
+			downloadFuture = downloadExecutor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					downloader.downloadAndDecryptMultiChunks(multiChunksToDownload, FileSystemActionPipeline.this);
+					return null;
+				}
+			});
+
+			logger.log(Level.FINER, "- Applying file system actions (sorted!) ...");
+
+			for (FileSystemAction action : actions) {
+				collectDecryptedMultiChunks();
+				executeReadyDeferredActions();
+
+				if (conflictsWithDeferredActions(action)) {
+					logger.log(Level.FINE, "   +  Action depends on deferred actions, executing them first: {0}", action);
+					executeDeferredActions();
+				}
+
+				if (isReady(action)) {
+					executeAction(action);
+				}
+				else {
+					logger.log(Level.FINE, "   +  Deferring action until its multichunks are available: {0}", action);
+					deferredActions.add(action);
+				}
+			}
+
+			executeDeferredActions();
+			waitForDownload();
+		}
+		finally {
+			downloadExecutor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void onMultiChunkDecrypted(MultiChunkId multiChunkId) {
+		decryptedMultiChunks.add(multiChunkId);
+	}
+
+	private void determineAvailableAndPendingMultiChunks() {
+		for (MultiChunkId multiChunkId : multiChunksToDownload) {
+			if (config.getCache().getDecryptedMultiChunkFile(multiChunkId).exists()) {
+				availableMultiChunks.add(multiChunkId);
+				cachedMultiChunks.add(multiChunkId);
+			}
+		}
+
+		for (Collection<MultiChunkId> multiChunkIds : actionMultiChunks.values()) {
+			for (MultiChunkId multiChunkId : multiChunkIds) {
+				Integer pendingUses = pendingMultiChunkUses.get(multiChunkId);
+				pendingMultiChunkUses.put(multiChunkId, (pendingUses != null) ? pendingUses + 1 : 1);
+			}
+		}
+	}
+
+	private void collectDecryptedMultiChunks() {
+		decryptedMultiChunks.drainTo(availableMultiChunks);
+	}
+
+	private boolean isReady(FileSystemAction action) {
+		Collection<MultiChunkId> multiChunkIds = actionMultiChunks.get(action);
+		return multiChunkIds == null || availableMultiChunks.containsAll(multiChunkIds);
+	}
+
+	private void executeAction(FileSystemAction action) throws Exception {
+		if (logger.isLoggable(Level.FINER)) {
+			logger.log(Level.FINER, "   +  {0}", action);
+		}
+
+		action.execute();
+		releaseMultiChunks(action);
+	}
+
+	private void executeReadyDeferredActions() throws Exception {
+		Iterator<FileSystemAction> deferredActionIterator = deferredActions.iterator();
+
+		while (deferredActionIterator.hasNext()) {
+			FileSystemAction deferredAction = deferredActionIterator.next();
+
+			if (isReady(deferredAction)) {
+				deferredActionIterator.remove();
+				executeAction(deferredAction);
+			}
+		}
+	}
+
+	/**
+	 * Executes all deferred actions, waiting for their multichunks if necessary. Deferred
+	 * actions never touch each other's paths, so they are executed in the order in which
+	 * their multichunks become available.
+	 */
+	private void executeDeferredActions() throws Exception {
+		executeReadyDeferredActions();
+
+		while (!deferredActions.isEmpty()) {
+			waitForNextMultiChunk();
+			executeReadyDeferredActions();
+		}
+	}
+
+	private void waitForNextMultiChunk() throws Exception {
+		MultiChunkId multiChunkId = decryptedMultiChunks.poll(DOWNLOAD_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+		while (multiChunkId == null) {
+			if (downloadFuture.isDone()) {
+				waitForDownload(); // Throws if the download failed
+				multiChunkId = decryptedMultiChunks.poll();
+
+				if (multiChunkId == null) {
+					throw new IOException("Download finished, but multichunks for " + deferredActions.size() + " action(s) are missing.");
+				}
+			}
+			else {
+				multiChunkId = decryptedMultiChunks.poll(DOWNLOAD_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		availableMultiChunks.add(multiChunkId);
+		collectDecryptedMultiChunks();
+	}
+
+	private void waitForDownload() throws StorageException, IOException {
+		ExecutorUtil.waitFor(downloadFuture);
+	}
+
+	/**
+	 * Deletes the decrypted multichunks of the given (executed) action from the
+	 * cache, unless other pending actions need them or they were cached before.
+	 */
+	private void releaseMultiChunks(FileSystemAction action) {
+		Collection<MultiChunkId> multiChunkIds = actionMultiChunks.get(action);
+
+		if (multiChunkIds == null) {
+			return;
+		}
+
+		for (MultiChunkId multiChunkId : multiChunkIds) {
+			int pendingUses = pendingMultiChunkUses.get(multiChunkId) - 1;
+
+			if (pendingUses > 0) {
+				pendingMultiChunkUses.put(multiChunkId, pendingUses);
+			}
+			else {
+				pendingMultiChunkUses.remove(multiChunkId);
+
+				if (!cachedMultiChunks.contains(multiChunkId)) {
+					File decryptedMultiChunkFile = config.getCache().getDecryptedMultiChunkFile(multiChunkId);
+
+					logger.log(Level.FINE, "   +  Releasing multichunk {0}, no pending action needs it anymore.", multiChunkId);
+					decryptedMultiChunkFile.delete();
+				}
+			}
+		}
+	}
+
+	private boolean conflictsWithDeferredActions(FileSystemAction action) {
+		for (FileSystemAction deferredAction : deferredActions) {
+			for (String path : getPaths(action)) {
+				for (String deferredPath : getPaths(deferredAction)) {
+					if (pathsOverlap(path, deferredPath)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private List<String> getPaths(FileSystemAction action) {
+		List<String> paths = new ArrayList<String>(2);
+
+		for (FileVersion fileVersion : new FileVersion[] { action.getFile1(), action.getFile2() }) {
+			if (fileVersion != null) {
+				paths.add(fileVersion.getPath());
+			}
+		}
+
+		return paths;
+	}
+
+	/**
+	 * Returns true if the paths are equal or one is a parent of the other. The
+	 * comparison ignores case, to be safe on case-insensitive file systems.
+	 */
+	private boolean pathsOverlap(String path1, String path2) {
+		String lowerCasePath1 = path1.toLowerCase();
+		String lowerCasePath2 = path2.toLowerCase();
+
+		return lowerCasePath1.equals(lowerCasePath2) || lowerCasePath1.startsWith(lowerCasePath2 + "/")
+				|| lowerCasePath2.startsWith(lowerCasePath1 + "/");
+	}
+}
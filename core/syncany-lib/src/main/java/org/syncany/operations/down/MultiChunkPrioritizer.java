@@ -0,0 +1,77 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.down;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.syncany.database.FileVersion;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+
+/**
+ * Determines the order in which the multichunks required by the {@link ApplyChangesOperation}
+ * are downloaded: The multichunks of files that need the fewest multichunks come first (and
+ * of those, the multichunks of the smallest files), so that as many files as possible can be
+ * completed (and applied) early, while the remaining multichunks are still being downloaded.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class MultiChunkPrioritizer {
+	/**
+	 * Returns the multichunks of the given file versions in download order. Every multichunk
+	 * is only contained once, at the position of the first file that needs it. File versions
+	 * with the same number of multichunks and the same size keep their original order.
+	 *
+	 * @param fileVersionMultiChunks multichunks needed to create each file version
+	 * @return the multichunks in the order in which they should be downloaded
+	 */
+	public Set<MultiChunkId> prioritize(final Map<FileVersion, Collection<MultiChunkId>> fileVersionMultiChunks) {
+		List<FileVersion> fileVersions = new ArrayList<FileVersion>(fileVersionMultiChunks.keySet());
+
+		Collections.sort(fileVersions, new Comparator<FileVersion>() {
+			@Override
+			public int compare(FileVersion fileVersion1, FileVersion fileVersion2) {
+				int multiChunkCountComparison = Integer.compare(fileVersionMultiChunks.get(fileVersion1).size(),
+						fileVersionMultiChunks.get(fileVersion2).size());
+
+				if (multiChunkCountComparison != 0) {
+					return multiChunkCountComparison;
+				}
+
+				long size1 = (fileVersion1.getSize() != null) ? fileVersion1.getSize() : 0;
+				long size2 = (fileVersion2.getSize() != null) ? fileVersion2.getSize() : 0;
+
+				return Long.compare(size1, size2);
+			}
+		});
+
+		Set<MultiChunkId> multiChunks = new LinkedHashSet<MultiChunkId>();
+
+		for (FileVersion fileVersion : fileVersions) {
+			multiChunks.addAll(fileVersionMultiChunks.get(fileVersion));
+		}
+
+		return multiChunks;
+	}
+}
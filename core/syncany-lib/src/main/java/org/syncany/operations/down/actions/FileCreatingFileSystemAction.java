@@ -25,6 +25,7 @@ import org.syncany.database.FileVersion;
 import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
 import org.syncany.operations.Assembler;
 import org.syncany.util.NormalizedPath;
 
@@ -76,11 +77,21 @@ public abstract class FileCreatingFileSystemAction extends FileSystemAction {
 	}
 	
 	protected File assembleFileToCache(FileVersion reconstructedFileVersion) throws Exception {
-		SqlDatabase localDatabase = new SqlDatabase(config);
-		Assembler assembler = new Assembler(config, localDatabase, winningDatabase);
+		SqlDatabasePool databasePool = SqlDatabasePool.open(config);
+		SqlDatabase localDatabase = null;
+		File reconstructedFileInCache;
+
+		try {
+			localDatabase = databasePool.borrow();
+
+			Assembler assembler = new Assembler(config, localDatabase, winningDatabase);
+			reconstructedFileInCache = assembler.assembleToCache(reconstructedFileVersion);
+		}
+		finally {
+			databasePool.release(localDatabase);
+			databasePool.close();
+		}
 
-		File reconstructedFileInCache = assembler.assembleToCache(reconstructedFileVersion);
-		 
 		setFileAttributes(reconstructedFileVersion, reconstructedFileInCache);
 		setLastModified(reconstructedFileVersion, reconstructedFileInCache);
 		
@@ -18,7 +18,6 @@
 package org.syncany.operations.log;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,6 +26,7 @@ import org.syncany.database.DatabaseVersion;
 import org.syncany.database.FileVersion;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.SqlDatabase;
+import org.syncany.database.dao.SqlResultIterator;
 import org.syncany.operations.ChangeSet;
 import org.syncany.operations.Operation;
 
@@ -37,10 +37,14 @@ public class LogOperation extends Operation {
 	private SqlDatabase localDatabase;
 
 	public LogOperation(Config config, LogOperationOptions options) {
+		this(config, options, new SqlDatabase(config, true));
+	}
+
+	public LogOperation(Config config, LogOperationOptions options, SqlDatabase localDatabase) {
 		super(config);
 
 		this.options = options;
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = localDatabase;
 	}
 
 	@Override
@@ -50,16 +54,18 @@ public class LogOperation extends Operation {
 		logger.log(Level.INFO, "--------------------------------------------");
 
 		ArrayList<LightweightDatabaseVersion> databaseVersions = new ArrayList<>();
-		Iterator<DatabaseVersion> databaseVersionsIterator = localDatabase.getLastDatabaseVersions(options.getMaxDatabaseVersionCount(),
-				options.getStartDatabaseVersionIndex(), options.getMaxFileHistoryCount());
-				
-		while (databaseVersionsIterator.hasNext()) {
-			DatabaseVersion databaseVersion = databaseVersionsIterator.next();
-			LightweightDatabaseVersion lightweightDatabaseVersion = createLightweightDatabaseVersion(databaseVersion);			
-			
-			databaseVersions.add(lightweightDatabaseVersion);
+
+		try (SqlResultIterator<DatabaseVersion> databaseVersionsIterator = localDatabase.getLastDatabaseVersions(
+				options.getMaxDatabaseVersionCount(), options.getStartDatabaseVersionIndex(), options.getMaxFileHistoryCount())) {
+
+			while (databaseVersionsIterator.hasNext()) {
+				DatabaseVersion databaseVersion = databaseVersionsIterator.next();
+				LightweightDatabaseVersion lightweightDatabaseVersion = createLightweightDatabaseVersion(databaseVersion);
+
+				databaseVersions.add(lightweightDatabaseVersion);
+			}
 		}
-		
+
 		return new LogOperationResult(databaseVersions);
 	}
 
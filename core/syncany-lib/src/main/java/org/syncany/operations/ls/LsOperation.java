@@ -18,6 +18,7 @@
 package org.syncany.operations.ls;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,21 +31,25 @@ import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
 import org.syncany.database.SqlDatabase;
+import org.syncany.database.dao.SqlResultIterator;
 import org.syncany.operations.Operation;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Collections2;
-
 public class LsOperation extends Operation {
 	private static final Logger logger = Logger.getLogger(LsOperation.class.getSimpleName());
+	private static final int FETCH_HISTORIES_BATCH_SIZE = 1000;
+
 	private LsOperationOptions options;
 	private SqlDatabase localDatabase;
 
 	public LsOperation(Config config, LsOperationOptions options) {
+		this(config, options, new SqlDatabase(config, true));
+	}
+
+	public LsOperation(Config config, LsOperationOptions options, SqlDatabase localDatabase) {
 		super(config);
 
 		this.options = options;
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = localDatabase;
 	}
 
 	@Override
@@ -56,26 +61,39 @@ public class LsOperation extends Operation {
 		String pathExpression = parsePathExpression(options.getPathExpression(), options.isFileHistoryId());
 		Set<FileType> fileTypes = options.getFileTypes();
 
-		List<FileVersion> fileList = localDatabase.getFileList(pathExpression, options.getDate(), options.isFileHistoryId(), options.isRecursive(), options.isDeleted(), fileTypes);
-		Map<FileHistoryId, PartialFileHistory> fileHistories = null;
+		List<FileVersion> fileList = new ArrayList<>();
+		Map<FileHistoryId, PartialFileHistory> fileHistories = (options.isFetchHistories()) ? new HashMap<FileHistoryId, PartialFileHistory>() : null;
+		List<FileHistoryId> fetchFileHistoryIds = new ArrayList<>();
+
+		try (SqlResultIterator<FileVersion> fileVersions = localDatabase.getFileListIterator(pathExpression, options.getDate(),
+				options.isFileHistoryId(), options.isRecursive(), options.isDeleted(), fileTypes, SqlResultIterator.DEFAULT_FETCH_SIZE)) {
+
+			while (fileVersions.hasNext()) {
+				FileVersion fileVersion = fileVersions.next();
+				fileList.add(fileVersion);
+
+				if (options.isFetchHistories()) {
+					fetchFileHistoryIds.add(fileVersion.getFileHistoryId());
+
+					if (fetchFileHistoryIds.size() >= FETCH_HISTORIES_BATCH_SIZE) {
+						fetchFileHistories(fetchFileHistoryIds, fileHistories);
+					}
+				}
+			}
+		}
 
 		if (options.isFetchHistories()) {
-			fileHistories = fetchFileHistories(fileList);
+			fetchFileHistories(fetchFileHistoryIds, fileHistories);
 		}
 
 		return new LsOperationResult(fileList, fileHistories);
 	}
 
-	private Map<FileHistoryId, PartialFileHistory> fetchFileHistories(List<FileVersion> fileTree) {
-		// Get file history IDs
-		List<FileHistoryId> fileHistoryIds = new ArrayList<>(Collections2.transform(fileTree, new Function<FileVersion, FileHistoryId>() {
-			@Override
-			public FileHistoryId apply(FileVersion fileVersion) {
-				return fileVersion.getFileHistoryId();
-			}
-		}));
-
-		return localDatabase.getFileHistories(fileHistoryIds);
+	private void fetchFileHistories(List<FileHistoryId> fileHistoryIds, Map<FileHistoryId, PartialFileHistory> fileHistories) {
+		if (fileHistoryIds.size() > 0) {
+			fileHistories.putAll(localDatabase.getFileHistories(fileHistoryIds));
+			fileHistoryIds.clear();
+		}
 	}
 
 	private String parsePathExpression(String pathExpression, boolean isFileHistoryId) {
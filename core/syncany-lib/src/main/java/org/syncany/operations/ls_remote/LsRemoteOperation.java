@@ -60,7 +60,7 @@ public class LsRemoteOperation extends Operation {
 		super(config);
 
 		this.loadedTransferManager = transferManager;
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = new SqlDatabase(config, true);
 		this.eventBus = LocalEventBus.getInstance();
 	}
 
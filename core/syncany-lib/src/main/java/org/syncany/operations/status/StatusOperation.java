@@ -67,7 +67,7 @@ public class StatusOperation extends Operation {
 		super(config);		
 		
 		this.fileVersionComparator = new FileVersionComparator(config.getLocalDir(), config.getChunker().getChecksumAlgorithm());
-		this.localDatabase = new SqlDatabase(config);
+		this.localDatabase = new SqlDatabase(config, true);
 		this.options = options;		
 		
 		this.eventBus = LocalEventBus.getInstance();
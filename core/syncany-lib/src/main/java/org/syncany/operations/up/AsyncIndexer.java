@@ -30,13 +30,15 @@ public class AsyncIndexer implements Runnable {
 	/** 
 	 * @param config specifying all necessary options
 	 * @param deduper the Deduper, already configured.
+	 * @param multiChunkUploader uploads closed multichunks while indexing, may be null.
 	 * @param files List of Files to be indexed.
 	 * @param queue a threadsafe Queue to communicate DatabaseVersions.
 	 */
-	public AsyncIndexer(Config config, Deduper deduper, List<File> files, List<File> deletedFiles, Queue<DatabaseVersion> queue) {
+	public AsyncIndexer(Config config, Deduper deduper, AsyncMultiChunkUploader multiChunkUploader, List<File> files, List<File> deletedFiles,
+			Queue<DatabaseVersion> queue) {
 		this.files = files;
 		this.databaseVersionQueue = queue;
-		this.indexer = new Indexer(config, deduper);
+		this.indexer = new Indexer(config, deduper, multiChunkUploader);
 		this.deletedFiles = deletedFiles;
 	}
 
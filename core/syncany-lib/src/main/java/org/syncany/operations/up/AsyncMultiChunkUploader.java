@@ -0,0 +1,209 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.operations.up;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.syncany.config.Config;
+import org.syncany.config.LocalEventBus;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.daemon.messages.UpUploadFileSyncExternalEvent;
+import org.syncany.plugins.transfer.RemoteTransaction;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
+import org.syncany.util.ExecutorUtil;
+
+/**
+ * The async multichunk uploader uploads multichunks to a temporary remote location
+ * while the {@link AsyncIndexer} is still indexing, so that indexing and uploading
+ * overlap. The indexer hands over each multichunk as soon as it is closed
+ * (see {@link #upload(MultiChunkId)}).
+ *
+ * <p>Once the database version containing a multichunk is committed, the
+ * {@link UpOperation} claims the uploaded temporary file using {@link #waitForUpload(MultiChunkId)}
+ * and adds it to the {@link RemoteTransaction} as already uploaded. The transaction then
+ * only has to move it to its final location. If the upload failed, the multichunk is
+ * uploaded by the transaction as usual.
+ *
+ * <p>Temporary files that are never claimed (because the indexer discarded the database
+ * version they belong to) are deleted in {@link #shutdown()}. Unclaimed files left behind
+ * by an interrupted upload are not referenced by any transaction and are eventually
+ * removed by the cleanup.
+ *
+ * <p><b>Important:</b> Until a temporary file is claimed and its transaction file is
+ * uploaded, it is not referenced by any remote transaction. The only thing that keeps
+ * another client's {@link org.syncany.operations.cleanup.CleanupOperation CleanupOperation}
+ * from deleting it as an unreferenced temporary file (see
+ * {@link org.syncany.plugins.transfer.features.TransactionAwareFeatureTransferManager#removeUnreferencedTemporaryFiles()
+ * removeUnreferencedTemporaryFiles()}) is the 'up' action file, because the cleanup does not
+ * run while other clients' action files exist. The uploader must hence only be created after
+ * the {@link UpOperation} has uploaded its action file, and must be shut down before the
+ * action file is removed. If a cleanup nonetheless removes a claimed file (e.g. because it
+ * started just before the action file was uploaded), moving it fails and the transaction is
+ * not committed, since multichunks are moved before the database file.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class AsyncMultiChunkUploader {
+	private static final Logger logger = Logger.getLogger(AsyncMultiChunkUploader.class.getSimpleName());
+
+	private final Config config;
+	private final List<TransferManager> transferManagers;
+	private final BlockingQueue<TransferManager> idleTransferManagers;
+	private final ExecutorService uploadExecutor;
+	private final Map<MultiChunkId, Future<TempRemoteFile>> uploads;
+	private final LocalEventBus eventBus;
+
+	private boolean shutdown;
+
+	/**
+	 * @param config the config of the client
+	 * @param transferManagers one transfer manager per upload thread, must not be shared with other threads
+	 */
+	public AsyncMultiChunkUploader(Config config, List<TransferManager> transferManagers) {
+		this.config = config;
+		this.transferManagers = transferManagers;
+		this.idleTransferManagers = new ArrayBlockingQueue<TransferManager>(transferManagers.size(), false, transferManagers);
+		this.uploadExecutor = ExecutorUtil.createExecutor(transferManagers.size(), "UpMultiChunk");
+		this.uploads = new ConcurrentHashMap<MultiChunkId, Future<TempRemoteFile>>();
+		this.eventBus = LocalEventBus.getInstance();
+		this.shutdown = false;
+	}
+
+	/**
+	 * Schedules the upload of the given (closed) multichunk from the local cache to a
+	 * temporary remote location. Multichunks handed over after {@link #shutdown()} are
+	 * ignored; they are uploaded by the transaction as usual.
+	 */
+	public synchronized void upload(final MultiChunkId multiChunkId) {
+		if (shutdown) {
+			logger.log(Level.FINE, "- Not uploading multichunk {0} early, uploader already shut down.", multiChunkId);
+			return;
+		}
+
+		uploads.put(multiChunkId, uploadExecutor.submit(new Callable<TempRemoteFile>() {
+			@Override
+			public TempRemoteFile call() throws Exception {
+				return uploadMultiChunk(multiChunkId);
+			}
+		}));
+	}
+
+	/**
+	 * Waits for the upload of the given multichunk and claims the uploaded temporary
+	 * remote file. Claimed files are not deleted in {@link #shutdown()}.
+	 *
+	 * @return The temporary remote file, or <tt>null</tt> if the multichunk has not been uploaded (successfully)
+	 */
+	public TempRemoteFile waitForUpload(MultiChunkId multiChunkId) throws InterruptedException {
+		Future<TempRemoteFile> upload = uploads.remove(multiChunkId);
+
+		if (upload == null) {
+			return null;
+		}
+
+		try {
+			return upload.get();
+		}
+		catch (ExecutionException e) {
+			logger.log(Level.WARNING, "- Early upload of multichunk " + multiChunkId + " failed; uploading it within transaction.", e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Stops accepting new multichunks, waits for running uploads and deletes all temporary
+	 * remote files that have not been claimed. Afterwards, the transfer managers are disconnected.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+		}
+
+		uploadExecutor.shutdown();
+
+		try {
+			for (Map.Entry<MultiChunkId, Future<TempRemoteFile>> unclaimedUpload : uploads.entrySet()) {
+				deleteUnclaimedUpload(unclaimedUpload.getKey(), unclaimedUpload.getValue());
+			}
+		}
+		catch (InterruptedException e) {
+			logger.log(Level.WARNING, "Interrupted while deleting unclaimed multichunks; cleanup will remove them.", e);
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			uploads.clear();
+
+			for (TransferManager transferManager : transferManagers) {
+				try {
+					transferManager.disconnect();
+				}
+				catch (StorageException e) {
+					logger.log(Level.FINE, "Could not disconnect transfer manager", e);
+				}
+			}
+		}
+	}
+
+	private TempRemoteFile uploadMultiChunk(MultiChunkId multiChunkId) throws StorageException, InterruptedException {
+		File localMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkId);
+		TempRemoteFile tempRemoteFile = new TempRemoteFile(new MultichunkRemoteFile(multiChunkId));
+
+		TransferManager transferManager = idleTransferManagers.take();
+
+		try {
+			eventBus.post(new UpUploadFileSyncExternalEvent(config.getLocalDir().getAbsolutePath(), tempRemoteFile.getName()));
+
+			logger.log(Level.INFO, "- Uploading multichunk {0} early to temp. file {1} ...", new Object[] { multiChunkId, tempRemoteFile });
+			transferManager.upload(localMultiChunkFile, tempRemoteFile);
+
+			return tempRemoteFile;
+		}
+		finally {
+			idleTransferManagers.add(transferManager);
+		}
+	}
+
+	private void deleteUnclaimedUpload(MultiChunkId multiChunkId, Future<TempRemoteFile> upload) throws InterruptedException {
+		try {
+			TempRemoteFile tempRemoteFile = upload.get();
+
+			logger.log(Level.INFO, "- Deleting unclaimed early upload of multichunk {0}: {1} ...", new Object[] { multiChunkId, tempRemoteFile });
+			transferManagers.get(0).delete(tempRemoteFile);
+		}
+		catch (ExecutionException e) {
+			logger.log(Level.FINE, "- Early upload of unclaimed multichunk " + multiChunkId + " failed, nothing to delete.", e.getCause());
+		}
+		catch (StorageException e) {
+			logger.log(Level.INFO, "- Cannot delete unclaimed early upload of multichunk " + multiChunkId + "; cleanup will remove it.", e);
+		}
+	}
+}
@@ -84,14 +84,26 @@ public class Indexer {
 
 	private Config config;
 	private Deduper deduper;
+	private AsyncMultiChunkUploader multiChunkUploader;
 	private SqlDatabase localDatabase;
 
 	private LocalEventBus eventBus;
 
 
 	public Indexer(Config config, Deduper deduper) {
+		this(config, deduper, null);
+	}
+
+	/**
+	 * Creates an indexer that hands over each multichunk to the given uploader as
+	 * soon as it is closed, so that multichunks are uploaded while indexing.
+	 *
+	 * @param multiChunkUploader Uploader for closed multichunks, or <tt>null</tt> to not upload while indexing
+	 */
+	public Indexer(Config config, Deduper deduper, AsyncMultiChunkUploader multiChunkUploader) {
 		this.config = config;
 		this.deduper = deduper;
+		this.multiChunkUploader = multiChunkUploader;
 		this.localDatabase = new SqlDatabase(config, true);
 
 		this.eventBus = LocalEventBus.getInstance();
@@ -525,7 +537,7 @@ public class Indexer {
 			if (lastFileHistory == null) {
 				if (fileProperties.getChecksum() != null) {
 					Collection<PartialFileHistory> fileHistoriesWithSameChecksum = localDatabase
-							.getFileHistoriesWithLastVersionByChecksumSizeAndModifiedDate(fileProperties.getChecksum().toString(),
+							.getFileHistoriesWithLastVersionByChecksumSizeAndModifiedDate(fileProperties.getChecksum(),
 									fileProperties.getSize(), new Date(fileProperties.getLastModified()));
 
 					if (fileHistoriesWithSameChecksum != null && fileHistoriesWithSameChecksum.size() > 0) {
@@ -622,6 +634,10 @@ public class Indexer {
 
 			newDatabaseVersion.addMultiChunk(multiChunkEntry);
 			multiChunkEntry = null;
+
+			if (multiChunkUploader != null) {
+				multiChunkUploader.upload(multiChunk.getId());
+			}
 		}
 
 		@Override
@@ -656,11 +672,14 @@ public class Indexer {
 		/**
 		 * Checks if chunk already exists in all database versions
 		 * Afterwards checks if chunk exists in new introduced database version. 
+		 * 
+		 * <p>The chunk Bloom filter is consulted first, so that new chunks (the common
+		 * case during an initial import) do not need a chunk index lookup.
 		 */
 		@Override
 		public boolean onChunk(Chunk chunk) {
 			ChunkChecksum chunkChecksum = new ChunkChecksum(chunk.getChecksum());
-			chunkEntry = localDatabase.getChunk(chunkChecksum);
+			chunkEntry = (localDatabase.mightContainChunk(chunkChecksum)) ? localDatabase.getChunk(chunkChecksum) : null;
 
 			if (chunkEntry == null) {
 				chunkEntry = newDatabaseVersion.getChunk(chunkChecksum);
@@ -49,6 +49,7 @@ import org.syncany.database.SqlDatabase;
 import org.syncany.database.VectorClock;
 import org.syncany.database.dao.DatabaseXmlSerializer;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.database.dao.SqlResultIterator;
 import org.syncany.operations.AbstractTransferOperation;
 import org.syncany.operations.ChangeSet;
 import org.syncany.operations.cleanup.CleanupOperation;
@@ -63,8 +64,10 @@ import org.syncany.operations.up.UpOperationResult.UpResultCode;
 import org.syncany.plugins.transfer.RemoteTransaction;
 import org.syncany.plugins.transfer.StorageException;
 import org.syncany.plugins.transfer.TransferManager;
+import org.syncany.plugins.transfer.TransferPluginUtil;
 import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
 import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
 import org.syncany.plugins.transfer.to.ActionTO;
 import org.syncany.plugins.transfer.to.ActionTO.ActionStatus;
@@ -83,7 +86,8 @@ import org.syncany.plugins.transfer.to.TransactionTO;
  *   <li>Determine if there are unknown remote databases using the {@link LsRemoteOperation}, and skip the rest if there are</li>
  *   <li>If there are changes, use the {@link Deduper} and {@link Indexer} to create a new {@link DatabaseVersion}
  *       (including new chunks, multichunks, file contents and file versions).</li>
- *   <li>Upload new multichunks (if any) using a {@link TransferManager}</li>
+ *   <li>Upload new multichunks (if any) using a {@link TransferManager}; if the plugin allows parallel transfers,
+ *       the {@link AsyncMultiChunkUploader} uploads them to a temporary location while indexing is still running</li>
  *   <li>Save new {@link DatabaseVersion} to a new (delta) {@link MemoryDatabase} and upload it</li>
  *   <li>Add delta database to local database and store it locally</li>
  * </ol>
@@ -106,6 +110,7 @@ public class UpOperation extends AbstractTransferOperation {
 	private UpOperationResult result;
 
 	private SqlDatabase localDatabase;
+	private AsyncMultiChunkUploader multiChunkUploader;
 
 	public UpOperation(Config config) {
 		this(config, new UpOperationOptions());
@@ -180,27 +185,40 @@ public class UpOperation extends AbstractTransferOperation {
 			Deduper deduper = new Deduper(config.getChunker(), config.getMultiChunker(), config.getTransformer(), options.getTransactionSizeLimit(),
 					options.getTransactionFileLimit());
 			
-			AsyncIndexer asyncIndexer = new AsyncIndexer(config, deduper, locallyUpdatedFiles, locallyDeletedFiles, databaseVersionQueue);
+			// Early uploads are only protected from other clients' cleanup by the action file (see AsyncMultiChunkUploader)
+			multiChunkUploader = createMultiChunkUploader();
+
+			AsyncIndexer asyncIndexer = new AsyncIndexer(config, deduper, multiChunkUploader, locallyUpdatedFiles, locallyDeletedFiles,
+					databaseVersionQueue);
 			new Thread(asyncIndexer).start();
 		}
 
-		// If we are not resuming from a remote transaction, we need to clean transactions.
-		if (transactionRemoteFileToResume == null) {
-			try {
-				transferManager.cleanTransactions();
-			}
-			catch (BlockingTransfersException e) {
-				stopBecauseOfBlockingTransactions();
-				return result;
+		int numberOfPerformedTransactions = 0;
+
+		try {
+			// If we are not resuming from a remote transaction, we need to clean transactions.
+			if (transactionRemoteFileToResume == null) {
+				try {
+					transferManager.cleanTransactions();
+				}
+				catch (BlockingTransfersException e) {
+					stopBecauseOfBlockingTransactions();
+					return result;
+				}
 			}
-		}
 
-		int numberOfPerformedTransactions = 0;
-		if (resuming) {
-			numberOfPerformedTransactions = executeTransactions(databaseVersionQueue, remoteTransactionsToResume.iterator(), transactionRemoteFileToResume);
+			if (resuming) {
+				numberOfPerformedTransactions = executeTransactions(databaseVersionQueue, remoteTransactionsToResume.iterator(),
+						transactionRemoteFileToResume);
+			}
+			else {
+				numberOfPerformedTransactions = executeTransactions(databaseVersionQueue);
+			}
 		}
-		else {
-			numberOfPerformedTransactions = executeTransactions(databaseVersionQueue);
+		finally {
+			if (multiChunkUploader != null) {
+				multiChunkUploader.shutdown();
+			}
 		}
 		
 		// Check if anything has happened.
@@ -541,12 +559,13 @@ public class UpOperation extends AbstractTransferOperation {
 	}
 
 	/**
-	 * Serializes a {@link MemoryDatabase} to a file, using the configured transformer.
+	 * Serializes a {@link MemoryDatabase} to a file, using the configured transformer
+	 * and database format.
 	 */
 	protected void saveDeltaDatabase(MemoryDatabase db, File localDatabaseFile) throws IOException {
 		logger.log(Level.INFO, "- Saving database to " + localDatabaseFile + " ...");
 
-		DatabaseXmlSerializer dao = new DatabaseXmlSerializer(config.getTransformer());
+		DatabaseXmlSerializer dao = new DatabaseXmlSerializer(config.getTransformer(), config.getDatabaseFormat());
 		dao.save(db.getDatabaseVersions(), localDatabaseFile);
 	}
 
@@ -558,29 +577,29 @@ public class UpOperation extends AbstractTransferOperation {
 	 * @param newDatabaseVersion {@link DatabaseVersion} to which dirty data should be added.
 	 */
 	private void addDirtyData(DatabaseVersion newDatabaseVersion) {
-		Iterator<DatabaseVersion> dirtyDatabaseVersions = localDatabase.getDirtyDatabaseVersions();
-
-		if (!dirtyDatabaseVersions.hasNext()) {
-			logger.log(Level.INFO, "No DIRTY data found in database (no dirty databases); Nothing to do here.");
-		}
-		else {
-			logger.log(Level.INFO, "Adding DIRTY data to new database version: ");
+		try (SqlResultIterator<DatabaseVersion> dirtyDatabaseVersions = localDatabase.getDirtyDatabaseVersions()) {
+			if (!dirtyDatabaseVersions.hasNext()) {
+				logger.log(Level.INFO, "No DIRTY data found in database (no dirty databases); Nothing to do here.");
+			}
+			else {
+				logger.log(Level.INFO, "Adding DIRTY data to new database version: ");
 
-			while (dirtyDatabaseVersions.hasNext()) {
-				DatabaseVersion dirtyDatabaseVersion = dirtyDatabaseVersions.next();
+				while (dirtyDatabaseVersions.hasNext()) {
+					DatabaseVersion dirtyDatabaseVersion = dirtyDatabaseVersions.next();
 
-				logger.log(Level.INFO, "- Adding chunks/multichunks/filecontents from database version " + dirtyDatabaseVersion.getHeader());
+					logger.log(Level.INFO, "- Adding chunks/multichunks/filecontents from database version " + dirtyDatabaseVersion.getHeader());
 
-				for (ChunkEntry chunkEntry : dirtyDatabaseVersion.getChunks()) {
-					newDatabaseVersion.addChunk(chunkEntry);
-				}
+					for (ChunkEntry chunkEntry : dirtyDatabaseVersion.getChunks()) {
+						newDatabaseVersion.addChunk(chunkEntry);
+					}
 
-				for (MultiChunkEntry multiChunkEntry : dirtyDatabaseVersion.getMultiChunks()) {
-					newDatabaseVersion.addMultiChunk(multiChunkEntry);
-				}
+					for (MultiChunkEntry multiChunkEntry : dirtyDatabaseVersion.getMultiChunks()) {
+						newDatabaseVersion.addMultiChunk(multiChunkEntry);
+					}
 
-				for (FileContent fileContent : dirtyDatabaseVersion.getFileContents()) {
-					newDatabaseVersion.addFileContent(fileContent);
+					for (FileContent fileContent : dirtyDatabaseVersion.getFileContents()) {
+						newDatabaseVersion.addFileContent(fileContent);
+					}
 				}
 			}
 		}
@@ -662,15 +681,49 @@ public class UpOperation extends AbstractTransferOperation {
 			else {
 				File localMultiChunkFile = config.getCache().getEncryptedMultiChunkFile(multiChunkEntry.getId());
 				MultichunkRemoteFile remoteMultiChunkFile = new MultichunkRemoteFile(multiChunkEntry.getId());
+				TempRemoteFile uploadedTempRemoteFile = (multiChunkUploader != null) ? multiChunkUploader.waitForUpload(multiChunkEntry.getId()) : null;
+
+				if (uploadedTempRemoteFile != null) {
+					logger.log(Level.INFO, "- Multichunk {0} already uploaded to {1}, adding to transaction ...", new Object[] {
+							multiChunkEntry.getId(), uploadedTempRemoteFile });
 
-				logger.log(Level.INFO, "- Uploading multichunk {0} from {1} to {2} ...", new Object[] { multiChunkEntry.getId(), localMultiChunkFile,
-						remoteMultiChunkFile });
+					remoteTransaction.upload(localMultiChunkFile, remoteMultiChunkFile, uploadedTempRemoteFile);
+				}
+				else {
+					logger.log(Level.INFO, "- Uploading multichunk {0} from {1} to {2} ...", new Object[] { multiChunkEntry.getId(),
+							localMultiChunkFile, remoteMultiChunkFile });
 
-				remoteTransaction.upload(localMultiChunkFile, remoteMultiChunkFile);
+					remoteTransaction.upload(localMultiChunkFile, remoteMultiChunkFile);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Creates an uploader that uploads multichunks while they are still being indexed,
+	 * using one additional transfer manager per upload thread. Since uploads and the
+	 * commit of previous transactions overlap, this is only done if the plugin allows
+	 * parallel transfers.
+	 *
+	 * @return The uploader, or <tt>null</tt> if multichunks are only uploaded when a transaction is committed
+	 */
+	private AsyncMultiChunkUploader createMultiChunkUploader() throws StorageException {
+		int uploadThreadCount = TransferPluginUtil.getMaxParallelTransfers(config);
+
+		if (uploadThreadCount <= 1) {
+			logger.log(Level.INFO, "Plugin does not allow parallel transfers; uploading multichunks when committing transactions.");
+			return null;
+		}
+
+		List<TransferManager> uploadTransferManagers = new ArrayList<TransferManager>();
+
+		for (int i = 0; i < uploadThreadCount; i++) {
+			uploadTransferManagers.add(createTransferManager());
+		}
+
+		return new AsyncMultiChunkUploader(config, uploadTransferManagers);
+	}
+
 	private void addLocalDatabaseToTransaction(RemoteTransaction remoteTransaction, File localDatabaseFile, DatabaseRemoteFile remoteDatabaseFile)
 			throws InterruptedException,
 			StorageException {
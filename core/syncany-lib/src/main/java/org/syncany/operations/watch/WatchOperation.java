@@ -32,10 +32,12 @@ import java.util.logging.Logger;
 import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
 import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
 import org.syncany.operations.Operation;
 import org.syncany.operations.cleanup.CleanupOperation;
 import org.syncany.operations.cleanup.CleanupOperationResult;
 import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
+import org.syncany.operations.compact.CompactOperation;
 import org.syncany.operations.daemon.messages.WatchEndSyncExternalEvent;
 import org.syncany.operations.daemon.messages.WatchStartSyncExternalEvent;
 import org.syncany.operations.down.DownOperation;
@@ -119,6 +121,10 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 	public WatchOperationResult execute() {
 		watchThread = Thread.currentThread();
 
+		// Keep the read-only database pool open while watching, so that the daemon's request
+		// handlers and the file system actions of each 'down' reuse its connections
+		SqlDatabasePool databasePool = SqlDatabasePool.open(config);
+
 		if (options.announcementsEnabled()) {
 			startNotificationListener();
 		}
@@ -179,6 +185,7 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 			stopRecursiveWatcher();
 		}
 
+		databasePool.close();
 		localDatabase.shutdown();
 
 		return new WatchOperationResult();
@@ -231,7 +238,8 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 
 	/**
 	 * Runs one iteration of the main synchronization loop, containing a {@link DownOperation},
-	 * an {@link UpOperation} and (if required), a {@link CleanupOperation}.
+	 * an {@link UpOperation}, (if required) a {@link CleanupOperation}, and (if idle and required)
+	 * a {@link CompactOperation}.
 	 */
 	private void runSync() throws Exception {
 		if (!syncRunning.get()) {
@@ -264,6 +272,11 @@ public class WatchOperation extends Operation implements NotificationListenerLis
 					notifyChanges = true;
 				}
 
+				// Run compact (if idle, i.e. nothing was synced)
+				if (downResult.getResultCode() == DownResultCode.OK_NO_REMOTE_CHANGES && upOperationResult.getResultCode() == UpResultCode.OK_NO_CHANGES) {
+					new CompactOperation(config, options.getCompactOptions()).execute();
+				}
+
 				// Fire change event if up and/or cleanup
 				if (notifyChanges) {
 					notifyChanges();
@@ -21,6 +21,7 @@ import org.simpleframework.xml.Element;
 import org.simpleframework.xml.Root;
 import org.syncany.operations.OperationOptions;
 import org.syncany.operations.cleanup.CleanupOperationOptions;
+import org.syncany.operations.compact.CompactOperationOptions;
 import org.syncany.operations.down.DownOperationOptions;
 import org.syncany.operations.up.UpOperationOptions;
 
@@ -64,6 +65,9 @@ public class WatchOperationOptions implements OperationOptions {
 	
 	@Element(name = "clean", required = false) 
 	private CleanupOperationOptions cleanupOptions = new CleanupOperationOptions();
+
+	@Element(name = "compact", required = false)
+	private CompactOperationOptions compactOptions = new CompactOperationOptions();
 	
 	public int getInterval() {
 		return interval;
@@ -137,6 +141,14 @@ public class WatchOperationOptions implements OperationOptions {
 		this.cleanupOptions = cleanupOptions;
 	}
 
+	public CompactOperationOptions getCompactOptions() {
+		return compactOptions;
+	}
+
+	public void setCompactOptions(CompactOperationOptions compactOptions) {
+		this.compactOptions = compactOptions;
+	}
+
 	public DownOperationOptions getDownOptions() {
 		return downOptions;
 	}
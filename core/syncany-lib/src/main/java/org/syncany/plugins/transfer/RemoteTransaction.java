@@ -18,6 +18,15 @@
 package org.syncany.plugins.transfer;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,6 +35,10 @@ import org.syncany.config.Config;
 import org.syncany.config.LocalEventBus;
 import org.syncany.operations.daemon.messages.UpUploadFileInTransactionSyncExternalEvent;
 import org.syncany.operations.daemon.messages.UpUploadFileSyncExternalEvent;
+import org.syncany.plugins.transfer.features.PathAware;
+import org.syncany.plugins.transfer.features.ReadAfterWriteConsistent;
+import org.syncany.plugins.transfer.features.Retriable;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
 import org.syncany.plugins.transfer.files.RemoteFile;
 import org.syncany.plugins.transfer.files.TempRemoteFile;
 import org.syncany.plugins.transfer.files.TransactionRemoteFile;
@@ -33,6 +46,7 @@ import org.syncany.plugins.transfer.to.ActionTO;
 import org.syncany.plugins.transfer.to.ActionTO.ActionStatus;
 import org.syncany.plugins.transfer.to.ActionTO.ActionType;
 import org.syncany.plugins.transfer.to.TransactionTO;
+import org.syncany.util.ExecutorUtil;
 
 /**
  * This class represents a transaction in a remote system. It will keep track of
@@ -85,6 +99,26 @@ public class RemoteTransaction {
 		transactionTO.addAction(action);
 	}
 
+	/**
+	 * Adds a file to this transaction that has already been uploaded to the given
+	 * temporary remote location, e.g. while the local files were still being indexed.
+	 * The action is marked as started, so {@link #commit()} only moves the file to
+	 * its final location.
+	 */
+	public void upload(File localFile, RemoteFile remoteFile, TempRemoteFile uploadedTempRemoteFile) throws StorageException {
+		logger.log(Level.INFO, "- Adding file to TX for UPLOAD (already uploaded): " + localFile + " -> Temp. remote file: " + uploadedTempRemoteFile
+				+ ", final location: " + remoteFile);
+
+		ActionTO action = new ActionTO();
+		action.setType(ActionType.UPLOAD);
+		action.setLocalTempLocation(localFile);
+		action.setRemoteLocation(remoteFile);
+		action.setRemoteTempLocation(uploadedTempRemoteFile);
+		action.setStatus(ActionStatus.STARTED);
+
+		transactionTO.addAction(action);
+	}
+
 	/**
 	 * Adds the deletion of a file to this transaction. Generates a temporary file
 	 * to store it while the transaction is being finalized.
@@ -199,43 +233,59 @@ public class RemoteTransaction {
 	 * already been done. In this case, we do not repeat it.
 	 * 
 	 * This is the expensive part of the committing process, when we are talking about I/O. Hence this is also
-	 * the most likely part to be interrupted on weak connections.
+	 * the most likely part to be interrupted on weak connections. Files are therefore transferred in
+	 * parallel, see {@link #runActions(List, String, ActionRunner) runActions()}.
 	 */
 	private void uploadAndMoveToTempLocation() throws StorageException {
-		TransactionStats stats = gatherTransactionStats();
-		int uploadFileIndex = 0;
+		final TransactionStats stats = gatherTransactionStats();
+		final AtomicInteger uploadFileIndex = new AtomicInteger(0);
+
+		List<ActionTO> unstartedActions = new ArrayList<ActionTO>();
 
 		for (ActionTO action : transactionTO.getActions()) {
 			if (action.getStatus().equals(ActionStatus.UNSTARTED)) {
 				// If we are resuming, this has not been started yet.
-				RemoteFile tempRemoteFile = action.getTempRemoteFile();
+				unstartedActions.add(action);
+			}
+		}
+
+		runActions(unstartedActions, "TxUpload", new ActionRunner() {
+			@Override
+			public void run(TransferManager actionTransferManager, ActionTO action) throws StorageException {
+				uploadOrMoveToTempLocation(actionTransferManager, action, uploadFileIndex, stats);
+			}
+		});
+	}
 
-				if (action.getType().equals(ActionType.UPLOAD)) {
-					// The action is an UPLOAD, upload file to temporary remote location
-					File localFile = action.getLocalTempLocation();
-					long localFileSize = localFile.length();
+	private void uploadOrMoveToTempLocation(TransferManager actionTransferManager, ActionTO action, AtomicInteger uploadFileIndex,
+			TransactionStats stats) throws StorageException {
 
-					eventBus.post(new UpUploadFileInTransactionSyncExternalEvent(config.getLocalDir().getAbsolutePath(), ++uploadFileIndex,
-							stats.totalUploadFileCount, localFileSize, stats.totalUploadSize));
+		RemoteFile tempRemoteFile = action.getTempRemoteFile();
 
-					logger.log(Level.INFO, "- Uploading {0} to temp. file {1} ...", new Object[] { localFile, tempRemoteFile });
-					transferManager.upload(localFile, tempRemoteFile);
-					action.setStatus(ActionStatus.STARTED);
-				}
-				else if (action.getType().equals(ActionType.DELETE)) {
-					// The action is a DELETE, move file to temporary remote location.
-					RemoteFile remoteFile = action.getRemoteFile();
+		if (action.getType().equals(ActionType.UPLOAD)) {
+			// The action is an UPLOAD, upload file to temporary remote location
+			File localFile = action.getLocalTempLocation();
+			long localFileSize = localFile.length();
 
-					try {
-						logger.log(Level.INFO, "- Moving {0} to temp. file {1} ...", new Object[] { remoteFile, tempRemoteFile });
-						transferManager.move(remoteFile, tempRemoteFile);
-					}
-					catch (StorageMoveException e) {
-						logger.log(Level.INFO, "  -> FAILED (don't care!), because the remoteFile does not exist: " + remoteFile);
-					}
-					action.setStatus(ActionStatus.STARTED);
-				}
+			eventBus.post(new UpUploadFileInTransactionSyncExternalEvent(config.getLocalDir().getAbsolutePath(), uploadFileIndex.incrementAndGet(),
+					stats.totalUploadFileCount, localFileSize, stats.totalUploadSize));
+
+			logger.log(Level.INFO, "- Uploading {0} to temp. file {1} ...", new Object[] { localFile, tempRemoteFile });
+			actionTransferManager.upload(localFile, tempRemoteFile);
+			action.setStatus(ActionStatus.STARTED);
+		}
+		else if (action.getType().equals(ActionType.DELETE)) {
+			// The action is a DELETE, move file to temporary remote location.
+			RemoteFile remoteFile = action.getRemoteFile();
+
+			try {
+				logger.log(Level.INFO, "- Moving {0} to temp. file {1} ...", new Object[] { remoteFile, tempRemoteFile });
+				actionTransferManager.move(remoteFile, tempRemoteFile);
 			}
+			catch (StorageMoveException e) {
+				logger.log(Level.INFO, "  -> FAILED (don't care!), because the remoteFile does not exist: " + remoteFile);
+			}
+			action.setStatus(ActionStatus.STARTED);
 		}
 	}
 
@@ -261,19 +311,139 @@ public class RemoteTransaction {
 
 	/**
 	 * This method constitutes the second step in the committing process. All files have been uploaded, and they are
-	 * now moved to their final location.
+	 * now moved to their final location. Like the uploads, the moves are performed in parallel.
+	 *
+	 * <p>Multichunks are moved before all other files (in particular the database files), so that
+	 * no database file becomes visible before all multichunks it references are in place -- just like
+	 * in a sequential commit, in which the database files are always the last actions.
 	 */
 	private void moveToFinalLocation() throws StorageException {
+		List<ActionTO> multiChunkUploadActions = new ArrayList<ActionTO>();
+		List<ActionTO> otherUploadActions = new ArrayList<ActionTO>();
+
 		for (ActionTO action : transactionTO.getActions()) {
-			if (action.getType().equals(ActionType.UPLOAD)) {
+			boolean alreadyMoved = action.getStatus().equals(ActionStatus.DONE); // e.g. in an interrupted (and resumed) commit
+
+			if (action.getType().equals(ActionType.UPLOAD) && !alreadyMoved) {
+				if (action.getRemoteFile() instanceof MultichunkRemoteFile) {
+					multiChunkUploadActions.add(action);
+				}
+				else {
+					otherUploadActions.add(action);
+				}
+			}
+		}
+
+		ActionRunner moveActionRunner = new ActionRunner() {
+			@Override
+			public void run(TransferManager actionTransferManager, ActionTO action) throws StorageException {
 				RemoteFile tempRemoteFile = action.getTempRemoteFile();
 				RemoteFile finalRemoteFile = action.getRemoteFile();
 
 				logger.log(Level.INFO, "- Moving temp. file {0} to final location {1} ...", new Object[] { tempRemoteFile, finalRemoteFile });
-				transferManager.move(tempRemoteFile, finalRemoteFile);
+				actionTransferManager.move(tempRemoteFile, finalRemoteFile);
 				action.setStatus(ActionStatus.DONE);
 			}
+		};
+
+		runActions(multiChunkUploadActions, "TxMove", moveActionRunner);
+		runActions(otherUploadActions, "TxMove", moveActionRunner);
+	}
+
+	/**
+	 * Runs the given actions using up to {@link TransferPlugin#getMaxParallelTransfers()} threads,
+	 * each with its own transfer manager. If only one thread is allowed (or needed), the actions are
+	 * run sequentially in the calling thread, using the transaction's transfer manager.
+	 *
+	 * <p>Each action updates its own {@link ActionStatus} when it is finished, so the status
+	 * stays accurate if the transaction is interrupted and written to disk for resuming. For
+	 * that reason, if an action fails, no further actions are started, but running ones
+	 * are allowed to finish before the first exception is rethrown.
+	 */
+	private void runActions(List<ActionTO> actions, String threadNamePrefix, final ActionRunner actionRunner) throws StorageException {
+		int threadCount = Math.min(TransferPluginUtil.getMaxParallelTransfers(config), actions.size());
+
+		if (threadCount <= 1) {
+			for (ActionTO action : actions) {
+				actionRunner.run(transferManager, action);
+			}
+
+			return;
 		}
+
+		logger.log(Level.INFO, "- Running {0} action(s) with {1} threads ...", new Object[] { actions.size(), threadCount });
+
+		final BlockingQueue<TransferManager> idleTransferManagers = new ArrayBlockingQueue<TransferManager>(threadCount);
+		final AtomicBoolean actionFailed = new AtomicBoolean(false);
+
+		List<TransferManager> additionalTransferManagers = new ArrayList<TransferManager>();
+		ExecutorService executor = ExecutorUtil.createExecutor(threadCount, threadNamePrefix);
+
+		try {
+			idleTransferManagers.add(transferManager);
+
+			for (int i = 1; i < threadCount; i++) {
+				TransferManager additionalTransferManager = createTransferManager();
+
+				additionalTransferManagers.add(additionalTransferManager);
+				idleTransferManagers.add(additionalTransferManager);
+			}
+
+			List<Future<Void>> actionFutures = new ArrayList<Future<Void>>();
+
+			for (final ActionTO action : actions) {
+				actionFutures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						if (actionFailed.get()) {
+							return null; // Do not start new actions after a failure
+						}
+
+						TransferManager actionTransferManager = idleTransferManagers.take();
+
+						try {
+							actionRunner.run(actionTransferManager, action);
+							return null;
+						}
+						catch (StorageException | RuntimeException e) {
+							actionFailed.set(true);
+							throw e;
+						}
+						finally {
+							idleTransferManagers.add(actionTransferManager);
+						}
+					}
+				}));
+			}
+
+			ExecutorUtil.waitForAllDone(actionFutures);
+		}
+		finally {
+			executor.shutdownNow();
+
+			for (TransferManager additionalTransferManager : additionalTransferManagers) {
+				try {
+					additionalTransferManager.disconnect();
+				}
+				catch (StorageException e) {
+					logger.log(Level.FINE, "Could not disconnect additional transfer manager", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a transfer manager for additional worker threads. Transfer managers are not
+	 * thread-safe, so each thread uses its own. Workers only upload and move files
+	 * that are part of this transaction, so they need no transaction awareness.
+	 */
+	private TransferManager createTransferManager() throws StorageException {
+		return TransferManagerFactory
+				.build(config)
+				.withFeature(ReadAfterWriteConsistent.class)
+				.withFeature(Retriable.class)
+				.withFeature(PathAware.class)
+				.asDefault();
 	}
 
 	/**
@@ -327,6 +497,10 @@ public class RemoteTransaction {
 		}
 	}
 
+	private interface ActionRunner {
+		public void run(TransferManager actionTransferManager, ActionTO action) throws StorageException;
+	}
+
 	private static class TransactionStats {
 		private long totalUploadSize;
 		private int totalUploadFileCount;
@@ -48,10 +48,28 @@ import org.syncany.util.ReflectionUtil;
  * @author Christian Roth <christian.roth@port17.de>
  */
 public abstract class TransferPlugin extends Plugin {
+	/**
+	 * Default number of files a {@link RemoteTransaction} transfers in parallel,
+	 * see {@link #getMaxParallelTransfers()}.
+	 */
+	public static final int DEFAULT_MAX_PARALLEL_TRANSFERS = 4;
+
 	public TransferPlugin(String pluginId) {
 		super(pluginId);
 	}
 
+	/**
+	 * Returns the maximum number of files that may be transferred to/from the remote
+	 * storage at the same time, each using its own {@link TransferManager}. Plugins
+	 * whose backend does not cope well with concurrent connections can override this
+	 * method and return a lower value; returning <tt>1</tt> disables parallel transfers.
+	 *
+	 * @return Maximum number of parallel transfers, defaults to {@link #DEFAULT_MAX_PARALLEL_TRANSFERS}
+	 */
+	public int getMaxParallelTransfers() {
+		return DEFAULT_MAX_PARALLEL_TRANSFERS;
+	}
+
 	/**
 	 * Creates an empty plugin-specific {@link org.syncany.plugins.transfer.TransferSettings} instance.
 	 *
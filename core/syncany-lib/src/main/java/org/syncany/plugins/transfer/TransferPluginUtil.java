@@ -21,6 +21,7 @@ import java.text.MessageFormat;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.syncany.config.Config;
 import org.syncany.plugins.Plugin;
 import com.google.common.base.CaseFormat;
 
@@ -110,6 +111,16 @@ public abstract class TransferPluginUtil {
 		}
 	}
 
+	/**
+	 * Determines the maximum number of parallel transfers for the {@link TransferPlugin}
+	 * of the given config, see {@link TransferPlugin#getMaxParallelTransfers()}. If no
+	 * plugin is set, {@link TransferPlugin#DEFAULT_MAX_PARALLEL_TRANSFERS} is returned.
+	 */
+	public static int getMaxParallelTransfers(Config config) {
+		TransferPlugin transferPlugin = config.getTransferPlugin();
+		return (transferPlugin != null) ? transferPlugin.getMaxParallelTransfers() : TransferPlugin.DEFAULT_MAX_PARALLEL_TRANSFERS;
+	}
+
 	private static String getPluginPackageName(Class<?> clazz) {
 		Matcher matcher = PLUGIN_PACKAGE_NAME_PATTERN.matcher(clazz.getPackage().getName());
 
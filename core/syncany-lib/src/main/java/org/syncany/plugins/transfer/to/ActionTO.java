@@ -48,8 +48,9 @@ public class ActionTO {
 	@Element(name = "type", required = true)
 	private ActionType type;
 
+	// Written by the transfer threads of a RemoteTransaction, read when the transaction is serialized
 	@Element(name = "status", required = false)
-	private ActionStatus status = ActionStatus.UNSTARTED;
+	private volatile ActionStatus status = ActionStatus.UNSTARTED;
 
 	@Element(name = "remoteLocation", required = true)
 	private String remoteLocation;
@@ -0,0 +1,173 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.syncany.plugins.transfer.StorageException;
+
+/**
+ * Helper class to run transfer and database tasks in parallel, e.g. to download
+ * multichunks or to read remote databases. It creates the thread pools and waits for
+ * the submitted tasks, rethrowing their failures as {@link StorageException}s or
+ * {@link IOException}s.
+ *
+ * @author Philipp C. Heckel <philipp.heckel@gmail.com>
+ */
+public class ExecutorUtil {
+	/**
+	 * Creates a fixed thread pool with (at least one) daemon threads, named
+	 * <tt>&lt;prefix&gt;-1</tt>, <tt>&lt;prefix&gt;-2</tt>, and so on. Daemon threads
+	 * do not keep the application alive if the pool is not shut down properly.
+	 */
+	public static ExecutorService createExecutor(int threadCount, final String threadNamePrefix) {
+		return Executors.newFixedThreadPool(Math.max(1, threadCount), new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Waits for all given futures and returns their results in the same order. If any
+	 * of the tasks failed, the remaining tasks are cancelled and the exception is rethrown.
+	 */
+	public static <T> List<T> waitForAll(List<Future<T>> futures) throws StorageException, IOException {
+		List<T> results = new ArrayList<T>(futures.size());
+
+		try {
+			for (Future<T> future : futures) {
+				results.add(waitFor(future));
+			}
+
+			return results;
+		}
+		finally {
+			cancelAll(futures);
+		}
+	}
+
+	/**
+	 * Waits for the given number of tasks in the order in which they complete, using the
+	 * completion queue of one or many {@link java.util.concurrent.ExecutorCompletionService ExecutorCompletionService}s.
+	 * Unlike {@link #waitForAll(List)}, this method fails as soon as any task fails, even
+	 * if tasks that were submitted earlier are still running. The caller is responsible for
+	 * cancelling the remaining tasks, e.g. by shutting down the executors.
+	 */
+	public static <T> void waitForCompleted(BlockingQueue<Future<T>> completionQueue, int taskCount) throws StorageException, IOException {
+		for (int i = 0; i < taskCount; i++) {
+			try {
+				waitFor(completionQueue.take());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for parallel tasks", e);
+			}
+		}
+	}
+
+	/**
+	 * Waits for all given futures, even if one of them failed, and rethrows the first
+	 * failure afterwards. Unlike {@link #waitForAll(List)}, no task is cancelled, so
+	 * that all tasks have either completed or failed when this method returns.
+	 */
+	public static <T> void waitForAllDone(List<Future<T>> futures) throws StorageException {
+		Throwable firstFailure = null;
+
+		for (Future<T> future : futures) {
+			try {
+				future.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new StorageException("Interrupted while waiting for parallel tasks", e);
+			}
+			catch (ExecutionException e) {
+				if (firstFailure == null) {
+					firstFailure = e.getCause();
+				}
+			}
+		}
+
+		if (firstFailure instanceof StorageException) {
+			throw (StorageException) firstFailure;
+		}
+		else if (firstFailure instanceof RuntimeException) {
+			throw (RuntimeException) firstFailure;
+		}
+		else if (firstFailure != null) {
+			throw new StorageException(firstFailure);
+		}
+	}
+
+	/**
+	 * Cancels all given futures (and interrupts their tasks, if they are running).
+	 * Futures that are already done are not affected.
+	 */
+	public static <T> void cancelAll(List<Future<T>> futures) {
+		for (Future<T> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Waits for the given future and returns its result. If the task failed, its exception
+	 * is rethrown (wrapped in an {@link IOException} if it is a checked exception other than
+	 * a {@link StorageException} or {@link IOException}).
+	 */
+	public static <T> T waitFor(Future<T> future) throws StorageException, IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for parallel tasks", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof StorageException) {
+				throw (StorageException) cause;
+			}
+			else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			else {
+				throw new IOException(cause);
+			}
+		}
+	}
+}
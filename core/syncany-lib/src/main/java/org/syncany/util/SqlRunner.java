@@ -33,19 +33,33 @@ import java.util.regex.Pattern;
  * Helper class to execute SQL scripts on a given connection. The script honors SQL comments and
  * separately executes commands one after another.
  *
+ * <p>Besides comments, the script may contain the following directives:
+ * <ul>
+ *  <li><tt>--!DELIMITER=&lt;delimiter&gt;</tt>: Changes the statement delimiter (default is <tt>;</tt>)</li>
+ *  <li><tt>--!IGNORE_EXISTING=true|false</tt>: If enabled, statements that fail because the object they
+ *      create already exists are skipped. Since HSQLDB 2.3 does not support <tt>CREATE INDEX .. IF NOT EXISTS</tt>,
+ *      this makes scripts that create indices idempotent.</li>
+ *  <li><tt>--!INCLUDE=&lt;resource&gt;</tt>: Runs the script at the given (absolute) class path resource,
+ *      e.g. to share statements between scripts.</li>
+ * </ul>
+ *
  * @author Philipp C. Heckel <philipp.heckel@gmail.com>
  */
 public class SqlRunner {
 	private static final Logger logger = Logger.getLogger(SqlRunner.class.getSimpleName());
 
 	private static final String DEFAULT_DELIMITER = ";";
+	private static final String SQL_STATE_OBJECT_EXISTS = "42504";
 	private static final Pattern NEW_DELIMITER_PATTERN = Pattern.compile("(?:--|\\/\\/|\\#)?!DELIMITER=(.+)");
+	private static final Pattern IGNORE_EXISTING_PATTERN = Pattern.compile("(?:--|\\/\\/|\\#)?!IGNORE_EXISTING=(true|false)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern INCLUDE_PATTERN = Pattern.compile("(?:--|\\/\\/|\\#)?!INCLUDE=(.+)");
 	private static final Pattern COMMENT_PATTERN = Pattern.compile("^(?:--|\\/\\/|\\#).+");
 
 	public static void runScript(Connection connection, InputStream scriptInputStream) throws SQLException, IOException {
 		try (BufferedReader scriptReader = new BufferedReader(new InputStreamReader(scriptInputStream))) {
 			StringBuffer command = null;
 			String delimiter = DEFAULT_DELIMITER;
+			boolean ignoreExisting = false;
 			String line = null;
 
 			while ((line = scriptReader.readLine()) != null) {
@@ -56,6 +70,8 @@ public class SqlRunner {
 				String trimmedLine = line.trim();
 
 				Matcher delimiterMatcher = NEW_DELIMITER_PATTERN.matcher(trimmedLine);
+				Matcher ignoreExistingMatcher = IGNORE_EXISTING_PATTERN.matcher(trimmedLine);
+				Matcher includeMatcher = INCLUDE_PATTERN.matcher(trimmedLine);
 				Matcher commentMatcher = COMMENT_PATTERN.matcher(trimmedLine);
 
 				// a) Delimiter change
@@ -64,12 +80,23 @@ public class SqlRunner {
 					logger.log(Level.INFO, "SQL (new delimiter): " + delimiter);
 				}
 
-				// b) Comment
+				// b) Skip statements for existing objects
+				else if (ignoreExistingMatcher.find()) {
+					ignoreExisting = Boolean.parseBoolean(ignoreExistingMatcher.group(1));
+					logger.log(Level.INFO, "SQL (ignore existing): " + ignoreExisting);
+				}
+
+				// c) Include other script
+				else if (includeMatcher.find()) {
+					runIncludedScript(connection, includeMatcher.group(1).trim());
+				}
+
+				// d) Comment
 				else if (commentMatcher.find()) {
 					logger.log(Level.INFO, "SQL (comment): " + trimmedLine);
 				}
 
-				// c) Statement
+				// e) Statement
 				else {
 					command.append(trimmedLine);
 					command.append(' ');
@@ -78,10 +105,16 @@ public class SqlRunner {
 					if (trimmedLine.endsWith(delimiter)) {
 						logger.log(Level.INFO, "SQL: " + command);
 
-						Statement statement = connection.createStatement();
+						try (Statement statement = connection.createStatement()) {
+							statement.execute(command.toString());
+						}
+						catch (SQLException e) {
+							if (!ignoreExisting || !SQL_STATE_OBJECT_EXISTS.equals(e.getSQLState())) {
+								throw e;
+							}
 
-						statement.execute(command.toString());
-						statement.close();
+							logger.log(Level.INFO, "SQL: Object already exists, skipping statement.");
+						}
 
 						command = null;
 					}
@@ -89,4 +122,15 @@ public class SqlRunner {
 			}
 		}
 	}
+
+	private static void runIncludedScript(Connection connection, String includedScriptResource) throws SQLException, IOException {
+		logger.log(Level.INFO, "SQL (include): " + includedScriptResource);
+		InputStream includedScriptInputStream = SqlRunner.class.getResourceAsStream(includedScriptResource);
+
+		if (includedScriptInputStream == null) {
+			throw new IOException("Cannot find included SQL script " + includedScriptResource);
+		}
+
+		runScript(connection, includedScriptInputStream);
+	}
 }
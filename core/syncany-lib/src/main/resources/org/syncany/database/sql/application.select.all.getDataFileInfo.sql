@@ -0,0 +1,2 @@
+select file_lost_bytes, file_free_pos
+from information_schema.system_cacheinfo
@@ -0,0 +1,3 @@
+select count(*) as transaction_count
+from information_schema.system_sessions
+where transaction=true and session_id<>session_id()
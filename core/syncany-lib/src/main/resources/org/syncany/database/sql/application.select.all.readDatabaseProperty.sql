@@ -0,0 +1,3 @@
+select property_value
+from information_schema.system_properties
+where property_name=?
@@ -0,0 +1,3 @@
+-- Count all chunks, used to verify the persisted chunk index
+
+select count(*) from chunk
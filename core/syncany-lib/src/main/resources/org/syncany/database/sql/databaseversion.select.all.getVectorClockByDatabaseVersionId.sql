@@ -1,3 +0,0 @@
-select *
-from databaseversion_vectorclock
-where databaseversion_id=?
@@ -1,5 +1,4 @@
-select dbv.id, dbv.localtime, dbv.client, vc.client as vc_client, vc.logicaltime as vc_logicaltime 
+select dbv.id, dbv.localtime, dbv.client, dbv.vectorclock_serialized
 from databaseversion dbv 
-join databaseversion_vectorclock vc on vc.databaseversion_id=dbv.id 
 where dbv.status='MASTER'
-order by dbv.id asc, vc.client
+order by dbv.id asc
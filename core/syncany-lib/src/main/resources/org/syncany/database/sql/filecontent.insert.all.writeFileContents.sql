@@ -6,6 +6,6 @@
 -- + http://stackoverflow.com/a/2655567/1440785
 
 merge into filecontent as filecontent_target
-using (values(?)) as filecontent_ref(checksum)
+using (values(cast(? as varbinary(20)))) as filecontent_ref(checksum)
 on (filecontent_target.checksum = filecontent_ref.checksum)
 when not matched then insert (checksum, databaseversion_id, size) values (filecontent_ref.checksum, ?, ?)
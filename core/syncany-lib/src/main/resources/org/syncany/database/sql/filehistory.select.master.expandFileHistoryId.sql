@@ -1,3 +1,6 @@
+-- The file history ID is stored as binary, so the prefix
+-- is matched against its (lower case) hex representation
+
 select distinct filehistory_id
 from fileversion_master
-where filehistory_id like ?
+where rawtohex(filehistory_id) like ?
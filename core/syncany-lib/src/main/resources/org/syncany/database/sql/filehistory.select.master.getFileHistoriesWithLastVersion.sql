@@ -1,4 +1,3 @@
 select *
-from fileversion_master_last
+from filetree_current
 order by filehistory_id asc, version asc
-
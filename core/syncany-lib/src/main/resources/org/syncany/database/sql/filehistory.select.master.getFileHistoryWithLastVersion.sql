@@ -1,3 +1,3 @@
 select *
-from fileversion_master_last
+from filetree_current
 where path=?
@@ -0,0 +1,2 @@
+delete from filetree_current
+where filehistory_id=?
@@ -0,0 +1,10 @@
+insert into filetree_current
+select fv.*
+from fileversion_master fv
+where fv.filehistory_id=?
+  and fv.status<>'DELETED'
+  and fv.version=(
+    select max(fvmax.version)
+    from fileversion_master fvmax
+    where fvmax.filehistory_id=?
+  )
@@ -9,3 +9,4 @@ where (filehistory_id, version) not in (
 	group by filehistory_id
 )
 and updated < ?
+order by filehistory_id, version
@@ -0,0 +1,13 @@
+-- Disable redo log and foreign key checks
+
+SET FILES LOG FALSE;
+SET DATABASE REFERENTIAL INTEGRITY FALSE;
+
+-- Drop non-primary indices (re-created by script.bulkload.end.sql)
+
+DROP INDEX idx_databaseversion_status IF EXISTS;
+DROP INDEX idx_fileversion_path IF EXISTS;
+DROP INDEX idx_fileversion_status IF EXISTS;
+DROP INDEX idx_fileversion_filecontent_checksum IF EXISTS;
+DROP INDEX idx_filetree_current_path IF EXISTS;
+DROP INDEX idx_filetree_current_filehistory_id IF EXISTS;
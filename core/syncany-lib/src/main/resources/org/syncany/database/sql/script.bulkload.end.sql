@@ -0,0 +1,14 @@
+-- Non-primary indices (dropped by script.bulkload.begin.sql)
+
+--!INCLUDE=/org/syncany/database/sql/script.create.indices.sql
+
+-- Current file tree (not maintained during bulk load)
+
+DELETE FROM filetree_current;
+INSERT INTO filetree_current SELECT * FROM fileversion_master_last;
+
+-- Enable foreign key checks, persist and enable redo log
+
+SET DATABASE REFERENTIAL INTEGRITY TRUE;
+CHECKPOINT;
+SET FILES LOG TRUE;
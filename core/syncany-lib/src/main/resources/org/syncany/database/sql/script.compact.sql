@@ -0,0 +1,4 @@
+-- Create missing non-primary indices; all indices are rebuilt compactly by the
+-- CHECKPOINT DEFRAG that follows (dropping and re-creating them is not crash-safe)
+
+--!INCLUDE=/org/syncany/database/sql/script.create.indices.sql
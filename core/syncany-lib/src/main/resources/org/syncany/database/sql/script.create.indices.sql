@@ -0,0 +1,12 @@
+-- Non-primary indices (included by all scripts that create or re-create indices)
+-- Existing indices are skipped, since HSQLDB 2.3 does not support CREATE INDEX .. IF NOT EXISTS
+
+--!IGNORE_EXISTING=true
+CREATE INDEX idx_databaseversion_status ON databaseversion (status);
+CREATE INDEX idx_databaseversion_vectorclock_serialized ON databaseversion (vectorclock_serialized);
+CREATE INDEX idx_fileversion_path ON fileversion (path);
+CREATE INDEX idx_fileversion_status ON fileversion (status);
+CREATE INDEX idx_fileversion_filecontent_checksum ON fileversion (filecontent_checksum);
+CREATE INDEX idx_filetree_current_path ON filetree_current (path);
+CREATE INDEX idx_filetree_current_filehistory_id ON filetree_current (filehistory_id);
+--!IGNORE_EXISTING=false
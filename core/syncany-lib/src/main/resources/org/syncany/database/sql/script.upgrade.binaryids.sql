@@ -0,0 +1,95 @@
+-- Upgrades the checksum and identifier columns from hex-encoded varchar(40) to varbinary(20).
+-- Before this script runs, all foreign key constraints are dropped by the DatabaseConnectionFactory,
+-- because their auto-generated names are not known. The script drops the views, converts the
+-- columns (HSQLDB converts hex strings to binary implicitly), and re-creates the foreign keys and views.
+-- Every step can be re-run on a partially upgraded database: Views are only dropped if they exist, 
+-- and converting an already converted column does not change it. If the upgrade is interrupted,
+-- the DatabaseConnectionFactory runs this script again when the database is next opened.
+
+-- Drop views
+
+DROP VIEW fileversion_full IF EXISTS;
+DROP VIEW filehistory_full IF EXISTS;
+DROP VIEW fileversion_master_last IF EXISTS;
+DROP VIEW fileversion_master_maxversion IF EXISTS;
+DROP VIEW fileversion_master IF EXISTS;
+DROP VIEW databaseversion_master IF EXISTS;
+
+-- Convert columns
+
+ALTER TABLE chunk ALTER COLUMN checksum SET DATA TYPE varbinary(20);
+ALTER TABLE filecontent ALTER COLUMN checksum SET DATA TYPE varbinary(20);
+ALTER TABLE filecontent_chunk ALTER COLUMN filecontent_checksum SET DATA TYPE varbinary(20);
+ALTER TABLE filecontent_chunk ALTER COLUMN chunk_checksum SET DATA TYPE varbinary(20);
+ALTER TABLE filehistory ALTER COLUMN id SET DATA TYPE varbinary(20);
+ALTER TABLE fileversion ALTER COLUMN filehistory_id SET DATA TYPE varbinary(20);
+ALTER TABLE fileversion ALTER COLUMN filecontent_checksum SET DATA TYPE varbinary(20);
+ALTER TABLE multichunk ALTER COLUMN id SET DATA TYPE varbinary(20);
+ALTER TABLE multichunk_chunk ALTER COLUMN multichunk_id SET DATA TYPE varbinary(20);
+ALTER TABLE multichunk_chunk ALTER COLUMN chunk_checksum SET DATA TYPE varbinary(20);
+ALTER TABLE multichunk_muddy ALTER COLUMN id SET DATA TYPE varbinary(20);
+
+-- Re-create foreign keys
+
+ALTER TABLE chunk ADD FOREIGN KEY (databaseversion_id) REFERENCES databaseversion (id) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE databaseversion_vectorclock ADD FOREIGN KEY (databaseversion_id) REFERENCES databaseversion (id) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE filecontent ADD FOREIGN KEY (databaseversion_id) REFERENCES databaseversion (id) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE filecontent_chunk ADD FOREIGN KEY (filecontent_checksum) REFERENCES filecontent (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE filecontent_chunk ADD FOREIGN KEY (chunk_checksum) REFERENCES chunk (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE filehistory ADD FOREIGN KEY (databaseversion_id) REFERENCES databaseversion (id) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE fileversion ADD FOREIGN KEY (filehistory_id, databaseversion_id) REFERENCES filehistory (id, databaseversion_id) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE fileversion ADD FOREIGN KEY (filecontent_checksum) REFERENCES filecontent (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE multichunk ADD FOREIGN KEY (databaseversion_id) REFERENCES databaseversion (id) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE multichunk_chunk ADD FOREIGN KEY (multichunk_id) REFERENCES multichunk (id) ON DELETE NO ACTION ON UPDATE NO ACTION;
+ALTER TABLE multichunk_chunk ADD FOREIGN KEY (chunk_checksum) REFERENCES chunk (checksum) ON DELETE NO ACTION ON UPDATE NO ACTION;
+
+-- Views
+
+CREATE VIEW databaseversion_master AS
+  SELECT dbv.*, vc.logicaltime as client_version
+  FROM databaseversion dbv
+  JOIN databaseversion_vectorclock vc on dbv.id=vc.databaseversion_id and dbv.client=vc.client
+  WHERE dbv.status='MASTER';
+
+CREATE VIEW fileversion_master AS
+  SELECT fv0.* 
+  FROM fileversion fv0
+  JOIN databaseversion dbv 
+    ON fv0.databaseversion_id=dbv.id 
+       AND dbv.status='MASTER';   
+       
+CREATE VIEW fileversion_master_maxversion AS
+  SELECT DISTINCT filehistory_id, MAX(version) version
+  FROM fileversion_master
+  GROUP BY filehistory_id;     
+  
+CREATE VIEW fileversion_master_last AS
+  SELECT fv.* 
+  FROM fileversion_master_maxversion fvmax
+  JOIN fileversion_master fv 
+    ON fvmax.filehistory_id=fv.filehistory_id 
+       AND fvmax.version=fv.version 
+  WHERE fv.status<>'DELETED';    
+  
+  
+-- Full Views   
+
+create view filehistory_full as
+	select 
+		dbv.status as databaseversion_status, 
+		dbv.localtime as databaseversion_localtime, 
+		dbv.client as databaseversion_client, 	
+		dbv.vectorclock_serialized as databaseversion_vectorclock_serialized, 	
+		fh.*
+	from databaseversion dbv
+	join filehistory fh on dbv.id=fh.databaseversion_id;
+	
+create view fileversion_full as
+	select 		
+		fhf.databaseversion_status, 
+		fhf.databaseversion_localtime, 
+		fhf.databaseversion_client, 	
+		fhf.databaseversion_vectorclock_serialized, 	
+		fv.*
+	from filehistory_full fhf
+	join fileversion fv on fhf.id=fv.filehistory_id and fhf.databaseversion_id=fv.databaseversion_id;
@@ -0,0 +1,25 @@
+-- Tables
+
+CREATE CACHED TABLE IF NOT EXISTS  filetree_current (
+  filehistory_id varbinary(20) NOT NULL,
+  version int NOT NULL,
+  databaseversion_id int NOT NULL,
+  path varchar(1024) NOT NULL,
+  type varchar(45) NOT NULL,
+  status varchar(45) NOT NULL,
+  size bigint NOT NULL,
+  lastmodified datetime NOT NULL,
+  linktarget varchar(1024),
+  filecontent_checksum varbinary(20) DEFAULT NULL,
+  updated datetime NOT NULL,
+  posixperms varchar(45) DEFAULT NULL,
+  dosattrs varchar(45) DEFAULT NULL
+);
+
+-- Non-primary indices
+
+--!INCLUDE=/org/syncany/database/sql/script.create.indices.sql
+
+-- Initial content
+
+INSERT INTO filetree_current SELECT * FROM fileversion_master_last;
@@ -20,12 +20,18 @@ package org.syncany.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.syncany.tests.integration.scenarios.longrunning.LongRunningBulkLoadScenarioTest;
+import org.syncany.tests.integration.scenarios.longrunning.LongRunningDatabaseFormatScenarioTest;
+import org.syncany.tests.integration.scenarios.longrunning.LongRunningGzipScenarioTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningLargeFileScenarioTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningLotsOfSmallFilesScenarioTest;
 import org.syncany.tests.integration.scenarios.longrunning.LongRunningNewAndDeleteScenarioTest;
 
 @RunWith(Suite.class)
 @SuiteClasses({
+		LongRunningBulkLoadScenarioTest.class,
+		LongRunningDatabaseFormatScenarioTest.class,
+		LongRunningGzipScenarioTest.class,
 		LongRunningLargeFileScenarioTest.class,
 		LongRunningLotsOfSmallFilesScenarioTest.class,
 		LongRunningNewAndDeleteScenarioTest.class
@@ -0,0 +1,185 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseConnectionFactory;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.SqlDatabase;
+import org.syncany.database.dao.ChunkSqlDao;
+import org.syncany.database.dao.MultiChunkSqlDao;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestSqlUtil;
+import org.syncany.util.FileUtil;
+
+public class DatabaseConnectionFactoryTest {
+	@Test
+	public void testUpgradeHexIdColumnsToBinary() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection oldDatabaseConnection = createHexIdDatabase(testConfig);
+
+		assertEquals("CHARACTER VARYING", TestSqlUtil.runSqlSelect("select data_type from information_schema.columns "
+				+ "where table_schema='PUBLIC' and table_name='CHUNK' and column_name='CHECKSUM'", oldDatabaseConnection));
+
+		oldDatabaseConnection.close();
+
+		// Run
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Test
+		assertUpgradedDatabase(databaseConnection);
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testResumeInterruptedHexIdColumnsUpgrade() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection oldDatabaseConnection = createHexIdDatabase(testConfig);
+
+		// Simulate an upgrade that was interrupted after some steps: Marker written, all
+		// foreign keys and some views dropped, some columns (incl. the one checked first) converted
+		oldDatabaseConnection.setAutoCommit(true);
+
+		runSql(oldDatabaseConnection, "insert into general_settings (key, value) values ('schema.upgrade.binaryids', 'started')");
+
+		for (String dropForeignKeyStatement : TestSqlUtil.runSqlSelect("select 'alter table ' || table_name || ' drop constraint ' || constraint_name "
+				+ "from information_schema.table_constraints where constraint_schema='PUBLIC' and constraint_type='FOREIGN KEY'",
+				oldDatabaseConnection).split("\n")) {
+
+			runSql(oldDatabaseConnection, dropForeignKeyStatement);
+		}
+
+		runSql(oldDatabaseConnection, "drop view fileversion_full");
+		runSql(oldDatabaseConnection, "drop view filehistory_full");
+		runSql(oldDatabaseConnection, "alter table chunk alter column checksum set data type varbinary(20)");
+		runSql(oldDatabaseConnection, "alter table filecontent alter column checksum set data type varbinary(20)");
+
+		oldDatabaseConnection.close();
+
+		// Run
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Test
+		assertUpgradedDatabase(databaseConnection);
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testEndInterruptedBulkLoad() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		// Simulate a bulk load that was never ended, e.g. because the process was killed
+		assertTrue(database.beginBulkLoad());
+		assertEquals("FALSE", TestSqlUtil.runSqlSelect("select property_value from information_schema.system_properties "
+				+ "where property_name='hsqldb.log_data'", database.getConnection()).toUpperCase());
+
+		database.close();
+
+		// Run
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Test
+		assertEquals("done", TestSqlUtil.runSqlSelect("select value from general_settings where key='bulkLoad'", databaseConnection));
+		assertEquals("TRUE", TestSqlUtil.runSqlSelect("select property_value from information_schema.system_properties "
+				+ "where property_name='hsqldb.log_data'", databaseConnection).toUpperCase());
+		assertEquals("7", TestSqlUtil.runSqlSelect("select count(*) from information_schema.system_indexinfo "
+				+ "where table_schem='PUBLIC' and index_name like 'IDX_%' and ordinal_position=1", databaseConnection));
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	private Connection createHexIdDatabase(Config testConfig) throws Exception {
+		Class.forName(DatabaseConnectionFactory.DATABASE_DRIVER);
+		String connectionString = DatabaseConnectionFactory.DATABASE_CONNECTION_FILE_STRING.replaceAll("%DATABASEFILE%",
+				FileUtil.getDatabasePath(testConfig.getDatabaseFile().toString()));
+
+		Connection oldDatabaseConnection = DriverManager.getConnection(connectionString);
+		oldDatabaseConnection.setAutoCommit(false);
+
+		TestSqlUtil.runSqlFromResource(oldDatabaseConnection, "test.create.hexids.sql");
+		TestSqlUtil.runSqlFromResource(oldDatabaseConnection, "test.insert.set3.sql");
+
+		return oldDatabaseConnection;
+	}
+
+	private void runSql(Connection connection, String sql) throws Exception {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private void assertUpgradedDatabase(Connection databaseConnection) throws Exception {
+		assertEquals("VARBINARY", TestSqlUtil.runSqlSelect("select data_type from information_schema.columns "
+				+ "where table_schema='PUBLIC' and table_name='CHUNK' and column_name='CHECKSUM'", databaseConnection));
+
+		assertEquals("0", TestSqlUtil.runSqlSelect("select count(*) from information_schema.columns "
+				+ "where table_schema='PUBLIC' and data_type='CHARACTER VARYING' and character_maximum_length=40", databaseConnection));
+
+		assertEquals("11", TestSqlUtil.runSqlSelect("select count(*) from information_schema.table_constraints "
+				+ "where constraint_schema='PUBLIC' and constraint_type='FOREIGN KEY'", databaseConnection));
+
+		assertEquals("6", TestSqlUtil.runSqlSelect("select count(*) from information_schema.views where table_schema='PUBLIC'", databaseConnection));
+
+		assertEquals("done", TestSqlUtil.runSqlSelect("select value from general_settings where key='schema.upgrade.binaryids'", databaseConnection));
+
+		assertEquals("1", TestSqlUtil.runSqlSelect("select count(*) from information_schema.tables "
+				+ "where table_schema='PUBLIC' and table_name='FILETREE_CURRENT'", databaseConnection));
+
+		assertEquals(TestSqlUtil.runSqlSelect("select count(*) from fileversion_master_last", databaseConnection),
+				TestSqlUtil.runSqlSelect("select count(*) from filetree_current", databaseConnection));
+
+		ChunkEntry chunk = new ChunkSqlDao(databaseConnection).getChunk(ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457"));
+
+		assertNotNull(chunk);
+		assertEquals(8387, chunk.getSize());
+
+		MultiChunkSqlDao multiChunkDao = new MultiChunkSqlDao(databaseConnection);
+		List<MultiChunkId> multiChunkIds = multiChunkDao.getMultiChunkIds(FileChecksum.parseFileChecksum("615fba8c2281d5bee891eb092a252d235c237457"));
+		Map<ChunkChecksum, MultiChunkId> multiChunkIdsByChecksums = multiChunkDao.getMultiChunkIdsByChecksums(Arrays.asList(chunk.getChecksum()));
+
+		assertEquals(1, multiChunkIds.size());
+		assertEquals(1, multiChunkIdsByChecksums.size());
+	}
+}
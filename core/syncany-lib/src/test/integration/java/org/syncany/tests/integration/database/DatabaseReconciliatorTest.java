@@ -544,6 +544,60 @@ public class DatabaseReconciliatorTest {
 		testFromMachinePerspective(localMachineName, currentLocalVersion, allBranches, expectedTestResult);
 	}
 
+	@Test
+	public void testLongHistoryWithConflictInTheMiddle() throws Exception {
+		/* Scenario: Long common history (A1..A10000), B branches off after A5000 and is older
+		 *           than A5001 --> B wins; the common ancestor branch (A1..A5000) is not sorted
+		 */
+
+		/// Input data ///
+		String localMachineName = "C";
+		DatabaseVersionHeader currentLocalVersion = TestDatabaseUtil.createFromString("A/(A10000)/T=20000");
+		DatabaseBranches allBranches = new DatabaseBranches();
+
+		allBranches.put("A", TestDatabaseUtil.createBranch(createLinearHistory("A", 10001)));
+		allBranches.put("B", TestDatabaseUtil.createBranch(new String[] {
+				"B/(A5000,B1)/T=10001"
+		}));
+		allBranches.put("C", TestDatabaseUtil.createBranch(createLinearHistory("A", 10000)));
+
+		/// Expected results ///
+		TestResult expectedTestResult = new TestResult();
+
+		expectedTestResult.winnersLastDatabaseVersionHeader = TestDatabaseUtil.createMapWithMachineKey(new String[] {
+				"B", "B/(A5000,B1)/T=10001"
+		}).firstEntry();
+
+		/// Perform test ///
+		testFromMachinePerspective(localMachineName, currentLocalVersion, allBranches, expectedTestResult);
+	}
+
+	@Test
+	public void testLongHistoryWithNewVersionAtTheEnd() throws Exception {
+		/* Scenario: Long common history (A1..A10000), A adds one version --> A wins
+		 */
+
+		/// Input data ///
+		String localMachineName = "C";
+		DatabaseVersionHeader currentLocalVersion = TestDatabaseUtil.createFromString("A/(A10000)/T=20000");
+		DatabaseBranches allBranches = new DatabaseBranches();
+
+		allBranches.put("A", TestDatabaseUtil.createBranch(new String[] {
+				"A/(A10001)/T=20002"
+		}));
+		allBranches.put("C", TestDatabaseUtil.createBranch(createLinearHistory("A", 10000)));
+
+		/// Expected results ///
+		TestResult expectedTestResult = new TestResult();
+
+		expectedTestResult.winnersLastDatabaseVersionHeader = TestDatabaseUtil.createMapWithMachineKey(new String[] {
+				"A", "A/(A10001)/T=20002"
+		}).firstEntry();
+
+		/// Perform test ///
+		testFromMachinePerspective(localMachineName, currentLocalVersion, allBranches, expectedTestResult);
+	}
+
 	@Test
 	public void testStitchBranchesIssue226CompleteBranchesWithDatabaseVersionHeaders() throws Exception {
 		Logging.init();
@@ -736,6 +790,16 @@ public class DatabaseReconciliatorTest {
 				actualTestResult.winnersLastDatabaseVersionHeader);
 	}
 
+	private String[] createLinearHistory(String machineName, int length) {
+		String[] databaseVersionHeaders = new String[length];
+
+		for (int i = 0; i < length; i++) {
+			databaseVersionHeaders[i] = machineName + "/(" + machineName + (i + 1) + ")/T=" + (2 * (i + 1));
+		}
+
+		return databaseVersionHeaders;
+	}
+
 	private void printBranches(DatabaseBranches branches) {
 		for (String machineName : branches.getClients()) {
 			System.out.println(machineName + ":");
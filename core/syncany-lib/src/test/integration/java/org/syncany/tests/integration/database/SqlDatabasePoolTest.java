@@ -0,0 +1,166 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.SqlDatabase;
+import org.syncany.database.SqlDatabasePool;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class SqlDatabasePoolTest {
+	@Test
+	public void testBorrowAndRelease() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabasePool databasePool = SqlDatabasePool.open(testConfig);
+
+		// Run & test: a. Released databases are reused
+		SqlDatabase database1 = databasePool.borrow();
+		SqlDatabase database2 = databasePool.borrow();
+
+		assertFalse(database1 == database2);
+		assertTrue(database1.getConnection().isReadOnly());
+		assertTrue(database1.getConnection().getAutoCommit());
+
+		databasePool.release(database1);
+		databasePool.release(database2);
+
+		assertEquals(2, databasePool.getIdleCount());
+
+		SqlDatabase database3 = databasePool.borrow();
+		assertTrue(database3 == database1 || database3 == database2);
+		databasePool.release(database3);
+
+		// Run & test: b. Pool is shared, and only closed by its last user
+		SqlDatabasePool sharedDatabasePool = SqlDatabasePool.open(testConfig);
+		assertTrue(databasePool == sharedDatabasePool);
+
+		sharedDatabasePool.close();
+
+		assertFalse(databasePool.isClosed());
+		assertEquals(2, databasePool.getIdleCount());
+		assertFalse(database1.getConnection().isClosed());
+
+		// Run & test: c. Closed pool closes databases and is replaced
+		databasePool.close();
+
+		assertTrue(databasePool.isClosed());
+		assertEquals(0, databasePool.getIdleCount());
+		assertTrue(database1.getConnection().isClosed());
+		assertTrue(database2.getConnection().isClosed());
+
+		SqlDatabasePool newDatabasePool = SqlDatabasePool.open(testConfig);
+		assertFalse(databasePool == newDatabasePool);
+
+		// Tear down
+		newDatabasePool.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testDownClosesPool() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientA.createNewFile("file1.jpg");
+		clientA.createNewFile("file2.jpg");
+		clientA.upWithForceChecksum();
+
+		// Run
+		clientB.down();
+
+		// Test: The file system actions used the pool, but 'down' closed it afterwards
+		SqlDatabasePool databasePool = SqlDatabasePool.open(clientB.getConfig());
+		assertEquals(0, databasePool.getIdleCount());
+
+		// Tear down
+		databasePool.close();
+
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testReadersDoNotBlockWriter() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase writeDatabase = new SqlDatabase(testConfig);
+		SqlDatabasePool databasePool = SqlDatabasePool.open(testConfig);
+
+		// Run & test: a. Uncommitted changes are not visible to readers, and do not block them
+		writeDatabase.writeKnownRemoteDatabases(Arrays.asList(new DatabaseRemoteFile("A", 1)));
+		SqlDatabase readDatabase = databasePool.borrow();
+
+		assertEquals(0, readDatabase.getKnownDatabases().size());
+		assertEquals(1, writeDatabase.getKnownDatabases().size());
+
+		// Run & test: b. Readers do not hold a transaction, so checkpoints do not wait for them
+		writeDatabase.commit();
+
+		assertEquals(1, readDatabase.getKnownDatabases().size());
+		assertEquals("0", TestSqlUtil.runSqlSelect("select count(*) from information_schema.system_sessions where transaction=true",
+				writeDatabase.getConnection()));
+
+		try (Statement statement = writeDatabase.getConnection().createStatement()) {
+			statement.setQueryTimeout(10);
+			statement.execute("CHECKPOINT");
+		}
+
+		// Tear down
+		databasePool.release(readDatabase);
+		databasePool.close();
+
+		writeDatabase.shutdown();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testBulkLoadNotUsedWithOpenTransactions() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase writeDatabase = new SqlDatabase(testConfig);
+		SqlDatabase otherWriteDatabase = new SqlDatabase(testConfig);
+
+		// Run & test
+		otherWriteDatabase.getKnownDatabases(); // Opens transaction
+		assertFalse(writeDatabase.beginBulkLoad());
+
+		otherWriteDatabase.commit();
+		assertTrue(writeDatabase.beginBulkLoad());
+		writeDatabase.endBulkLoad();
+
+		// Tear down
+		writeDatabase.shutdown();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.dao.MultiChunkSqlDao;
+import org.syncany.database.dao.SqlStatementCache;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class SqlStatementCacheTest {
+	@Test
+	public void testStatementsReused() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+
+		SqlStatementCache statementCache = SqlStatementCache.getInstance(databaseConnection);
+		MultiChunkSqlDao multiChunkDao = new MultiChunkSqlDao(databaseConnection);
+
+		long prepareCountBefore = statementCache.getPrepareCount();
+		long reuseCountBefore = statementCache.getReuseCount();
+
+		// Run
+		for (int i = 0; i < 100; i++) {
+			assertNotNull(multiChunkDao.getMultiChunkId(ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457")));
+		}
+
+		// Test
+		assertEquals(1, statementCache.getPrepareCount() - prepareCountBefore);
+		assertEquals(99, statementCache.getReuseCount() - reuseCountBefore);
+		assertTrue(statementCache == SqlStatementCache.getInstance(databaseConnection));
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testStatementsInUseOrWithOpenResultSetNotShared() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+
+		SqlStatementCache statementCache = SqlStatementCache.getInstance(databaseConnection);
+		statementCache.clear();
+
+		// Run & test: a. Nested use of the same statement prepares a second statement
+		long prepareCountBefore = statementCache.getPrepareCount();
+
+		try (PreparedStatement outerStatement = statementCache.getStatement("chunk.select.all.getChunkCount.sql")) {
+			try (PreparedStatement innerStatement = statementCache.getStatement("chunk.select.all.getChunkCount.sql")) {
+				assertEquals(2, statementCache.getPrepareCount() - prepareCountBefore);
+			}
+		}
+
+		assertEquals(1, statementCache.getSize());
+
+		// Run & test: b. Statement with open result set is closed, not cached
+		PreparedStatement statement = statementCache.getStatement("chunk.select.all.getChunkCount.sql");
+		ResultSet openResultSet = statement.executeQuery();
+
+		statement.close();
+
+		assertTrue(statement.isClosed());
+		assertTrue(openResultSet.next());
+		assertEquals(0, statementCache.getSize());
+
+		// Run & test: c. Closed connection discards cache
+		databaseConnection.close();
+
+		Connection otherDatabaseConnection = testConfig.createDatabaseConnection();
+		assertFalse(statementCache == SqlStatementCache.getInstance(otherDatabaseConnection));
+		assertFalse(statementCache == SqlStatementCache.getInstance(databaseConnection));
+
+		// Tear down
+		otherDatabaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testCacheBounded() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		SqlStatementCache statementCache = new SqlStatementCache(databaseConnection, 2);
+		String[] resourceIds = new String[] { "chunk.select.all.getChunkCount.sql", "chunk.select.all.loadChunkCache.sql",
+				"multichunk.select.all.getUnusedMultiChunks.sql" };
+
+		// Run
+		for (int i = 0; i < 10; i++) {
+			statementCache.getStatement(resourceIds[i % resourceIds.length]).close();
+		}
+
+		// Test
+		assertEquals(2, statementCache.getSize());
+		assertEquals(10, statementCache.getPrepareCount());
+		assertEquals(0, statementCache.getReuseCount());
+
+		statementCache.getStatement(resourceIds[0]).close();
+		assertEquals(1, statementCache.getReuseCount());
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testStatementSettingsResetOnRelease() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		SqlStatementCache statementCache = new SqlStatementCache(databaseConnection, 2);
+
+		// Run
+		PreparedStatement statement = statementCache.getStatement("chunk.select.all.loadChunkCache.sql");
+
+		statement.setMaxRows(10);
+		statement.setFetchSize(100);
+		statement.close();
+
+		PreparedStatement reusedStatement = statementCache.getStatement("chunk.select.all.loadChunkCache.sql");
+
+		// Test
+		assertEquals(1, statementCache.getReuseCount());
+		assertEquals(0, reusedStatement.getMaxRows());
+		assertEquals(0, reusedStatement.getFetchSize());
+
+		// Tear down
+		reusedStatement.close();
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testRemoveInstanceClosesStatements() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		SqlStatementCache statementCache = SqlStatementCache.getInstance(databaseConnection);
+		statementCache.getStatement("chunk.select.all.getChunkCount.sql").close();
+
+		assertEquals(1, statementCache.getSize());
+
+		// Run
+		SqlStatementCache.removeInstance(databaseConnection);
+
+		// Test
+		assertEquals(0, statementCache.getSize());
+		assertFalse(statementCache == SqlStatementCache.getInstance(databaseConnection));
+
+		// Tear down
+		SqlStatementCache.removeInstance(databaseConnection);
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.List;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.dao.ApplicationSqlDao;
+import org.syncany.database.dao.MultiChunkSqlDao;
+import org.syncany.database.dao.SqlStatementStat;
+import org.syncany.database.dao.SqlStatementStats;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class SqlStatementStatsTest {
+	@Test
+	public void testExecutionsAndRowsRecorded() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+
+		SqlStatementStats statementStats = SqlStatementStats.getInstance(testConfig.getDatabaseFile());
+		statementStats.reset();
+		statementStats.setEnabled(true);
+
+		MultiChunkSqlDao multiChunkDao = new MultiChunkSqlDao(databaseConnection);
+		long multiChunkCount = Long.parseLong(TestSqlUtil.runSqlSelect("select count(*) from multichunk", databaseConnection));
+
+		// Run
+		for (int i = 0; i < 10; i++) {
+			assertNotNull(multiChunkDao.getMultiChunkId(ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457")));
+		}
+
+		assertEquals(multiChunkCount, multiChunkDao.getMultiChunks().size());
+
+		// Test
+		assertTrue(statementStats == SqlStatementStats.getInstance(testConfig.getDatabaseFile()));
+
+		SqlStatementStat multiChunkIdStat = findStat(statementStats.getStats(), "multichunk.select.all.getMultiChunkIdForChunk.sql");
+		assertEquals(10, multiChunkIdStat.getExecutionCount());
+		assertEquals(10, multiChunkIdStat.getRowCount()); // Plain result set, one row per execution
+		assertEquals(10, sum(multiChunkIdStat.getLatencyHistogram()));
+		assertTrue(multiChunkIdStat.getMaxTime() <= multiChunkIdStat.getTotalTime());
+
+		SqlStatementStat multiChunksStat = findStat(statementStats.getStats(), "multichunk.select.all.getMultiChunks.sql");
+		assertEquals(1, multiChunksStat.getExecutionCount());
+		assertEquals(multiChunkCount, multiChunksStat.getRowCount()); // Iterator, counted once
+
+		// Tear down
+		statementStats.setEnabled(false);
+
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testScriptsRecordedAndReset() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		SqlStatementStats statementStats = SqlStatementStats.getInstance(testConfig.getDatabaseFile());
+		statementStats.reset();
+		statementStats.setEnabled(true);
+
+		// Run & test: a. Scripts are recorded as one execution
+		new ApplicationSqlDao(databaseConnection).deleteAll();
+
+		SqlStatementStat deleteAllStat = findStat(statementStats.getStats(), "script.delete.all.sql");
+		assertEquals(1, deleteAllStat.getExecutionCount());
+
+		// Run & test: b. Reset discards all statistics
+		statementStats.reset();
+		assertEquals(0, statementStats.getStats().size());
+
+		// Tear down
+		statementStats.setEnabled(false);
+
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testNothingRecordedWhenDisabled() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+
+		SqlStatementStats statementStats = SqlStatementStats.getInstance(testConfig.getDatabaseFile());
+		statementStats.reset();
+
+		// Run
+		MultiChunkSqlDao multiChunkDao = new MultiChunkSqlDao(databaseConnection);
+
+		multiChunkDao.getMultiChunkId(ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457"));
+		multiChunkDao.getMultiChunks();
+		new ApplicationSqlDao(databaseConnection).deleteAll();
+
+		// Test
+		assertFalse(statementStats.isEnabled());
+		assertEquals(0, statementStats.getStats().size());
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	private SqlStatementStat findStat(List<SqlStatementStat> statementStatList, String resourceId) {
+		for (SqlStatementStat statementStat : statementStatList) {
+			if (statementStat.getResourceId().equals(resourceId)) {
+				return statementStat;
+			}
+		}
+
+		throw new AssertionError("No statistics for resource " + resourceId);
+	}
+
+	private long sum(long[] values) {
+		long sum = 0;
+
+		for (long value : values) {
+			sum += value;
+		}
+
+		return sum;
+	}
+}
@@ -0,0 +1,286 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.database.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.syncany.tests.util.TestAssertUtil.assertDatabaseVersionEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.config.Logging;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileStatus;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestAssertUtil;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+public class BinaryDatabaseDaoTest {
+	private File tempDir;
+
+	static {
+		Logging.init();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+	}
+
+	@After
+	public void tearDown() {
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testWriteAndReadAllFields() throws IOException {
+		// Prepare
+		MemoryDatabase newDatabase = new MemoryDatabase();
+		DatabaseVersion newDatabaseVersion = TestDatabaseUtil.createDatabaseVersion();
+
+		// Chunks, multichunks and file contents
+		ChunkEntry chunkA1 = new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 12);
+		ChunkEntry chunkA2 = new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 512 * 1024);
+
+		MultiChunkEntry multiChunkA = new MultiChunkEntry(new MultiChunkId(TestFileUtil.createRandomArray(20)), 4 * 1024 * 1024);
+		multiChunkA.addChunk(chunkA1.getChecksum());
+		multiChunkA.addChunk(chunkA2.getChecksum());
+
+		FileContent contentA = new FileContent();
+		contentA.setChecksum(new FileChecksum(TestFileUtil.createRandomArray(20)));
+		contentA.setSize(chunkA1.getSize() + chunkA2.getSize());
+		contentA.addChunk(chunkA1.getChecksum());
+		contentA.addChunk(chunkA2.getChecksum());
+
+		newDatabaseVersion.addChunk(chunkA1);
+		newDatabaseVersion.addChunk(chunkA2);
+		newDatabaseVersion.addMultiChunk(multiChunkA);
+		newDatabaseVersion.addFileContent(contentA);
+
+		// File history with all optional fields, unicode paths and repeated paths
+		PartialFileHistory fileHistoryA = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+
+		FileVersion versionA1 = createFileVersion(1L, FileType.FILE, FileStatus.NEW, "Pictures/2013/New York \uD83D\uDDFD.jpg");
+		versionA1.setChecksum(contentA.getChecksum());
+		versionA1.setSize(contentA.getSize());
+		versionA1.setUpdated(new Date(System.currentTimeMillis() - 1000));
+		versionA1.setPosixPermissions("rw-r--r--");
+		versionA1.setDosAttributes("--a-");
+
+		FileVersion versionA2 = createFileVersion(2L, FileType.FILE, FileStatus.CHANGED, "Pictures/2013/New York \uD83D\uDDFD.jpg");
+		versionA2.setChecksum(contentA.getChecksum());
+		versionA2.setSize(contentA.getSize());
+		versionA2.setLastModified(new Date(-12345L)); // Before 1970
+
+		FileVersion versionA3 = createFileVersion(3L, FileType.FILE, FileStatus.RENAMED, "Pictures/2013/New York \uD83D\uDDFC.jpg");
+		versionA3.setChecksum(contentA.getChecksum());
+		versionA3.setSize(contentA.getSize());
+
+		fileHistoryA.addFileVersion(versionA1);
+		fileHistoryA.addFileVersion(versionA2);
+		fileHistoryA.addFileVersion(versionA3);
+
+		PartialFileHistory fileHistoryB = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+
+		FileVersion versionB1 = createFileVersion(1L, FileType.SYMLINK, FileStatus.NEW, "Pictures/link-to-2013");
+		versionB1.setLinkTarget("/home/user/Pictures/2013");
+
+		FileVersion versionB2 = createFileVersion(2L, FileType.SYMLINK, FileStatus.DELETED, "Pictures/link-to-2013");
+		versionB2.setLinkTarget("/home/user/Pictures/2013");
+
+		fileHistoryB.addFileVersion(versionB1);
+		fileHistoryB.addFileVersion(versionB2);
+
+		newDatabaseVersion.addFileHistory(fileHistoryA);
+		newDatabaseVersion.addFileHistory(fileHistoryB);
+
+		newDatabase.addDatabaseVersion(newDatabaseVersion);
+
+		// Write database to disk, read it again, and compare them
+		MemoryDatabase loadedDatabase = writeReadAndCompareDatabase(newDatabase);
+
+		assertEquals(multiChunkA, loadedDatabase.getMultiChunk(multiChunkA.getId()));
+		assertEquals(contentA, loadedDatabase.getContent(contentA.getChecksum()));
+
+		assertArrayEquals(fileHistoryA.getFileVersions().values().toArray(),
+				loadedDatabase.getFileHistory(fileHistoryA.getFileHistoryId()).getFileVersions().values().toArray());
+
+		assertArrayEquals(fileHistoryB.getFileVersions().values().toArray(),
+				loadedDatabase.getFileHistory(fileHistoryB.getFileHistoryId()).getFileVersions().values().toArray());
+	}
+
+	@Test
+	public void testWriteAndReadPartialAndHeaderOnly() throws IOException {
+		// Prepare
+		MemoryDatabase writtenDatabase = new MemoryDatabase();
+		List<DatabaseVersion> writtenDatabaseVersions = createDatabaseVersions(10);
+
+		for (DatabaseVersion databaseVersion : writtenDatabaseVersions) {
+			writtenDatabase.addDatabaseVersion(databaseVersion);
+		}
+
+		File writtenDatabaseFile = new File(tempDir, "db-binary");
+		TestDatabaseUtil.writeDatabaseFileToDisk(writtenDatabase, writtenDatabaseFile, null, DatabaseFormat.BINARY);
+
+		// Run & test: a. Partial (versions 3 to 5)
+		MemoryDatabase partialDatabase = new MemoryDatabase();
+
+		new DatabaseXmlSerializer().load(partialDatabase, writtenDatabaseFile, writtenDatabaseVersions.get(2).getVectorClock(),
+				writtenDatabaseVersions.get(4).getVectorClock(), DatabaseReadType.FULL);
+
+		assertEquals(3, partialDatabase.getDatabaseVersions().size());
+
+		for (int i = 2; i <= 4; i++) {
+			DatabaseVersion writtenDatabaseVersion = writtenDatabaseVersions.get(i);
+			DatabaseVersion readDatabaseVersion = partialDatabase.getDatabaseVersion(writtenDatabaseVersion.getVectorClock());
+
+			assertNotNull(readDatabaseVersion);
+			assertDatabaseVersionEquals(writtenDatabaseVersion, readDatabaseVersion);
+		}
+
+		// Run & test: b. Headers only
+		MemoryDatabase headerDatabase = new MemoryDatabase();
+		new DatabaseXmlSerializer().load(headerDatabase, writtenDatabaseFile, null, null, DatabaseReadType.HEADER_ONLY);
+
+		assertEquals(10, headerDatabase.getDatabaseVersions().size());
+
+		for (int i = 0; i < 10; i++) {
+			DatabaseVersion readDatabaseVersion = headerDatabase.getDatabaseVersions().get(i);
+
+			assertEquals(writtenDatabaseVersions.get(i).getHeader(), readDatabaseVersion.getHeader());
+			assertEquals(0, readDatabaseVersion.getChunks().size());
+			assertEquals(0, readDatabaseVersion.getFileHistories().size());
+		}
+	}
+
+	@Test
+	public void testFormatDetectionWithTransformer() throws IOException {
+		// Prepare
+		MemoryDatabase writtenDatabase = new MemoryDatabase();
+
+		for (DatabaseVersion databaseVersion : createDatabaseVersions(5)) {
+			writtenDatabase.addDatabaseVersion(databaseVersion);
+		}
+
+		File xmlDatabaseFile = new File(tempDir, "db-xml");
+		File binaryDatabaseFile = new File(tempDir, "db-binary");
+
+		// Run
+		TestDatabaseUtil.writeDatabaseFileToDisk(writtenDatabase, xmlDatabaseFile, new GzipTransformer(), DatabaseFormat.XML);
+		TestDatabaseUtil.writeDatabaseFileToDisk(writtenDatabase, binaryDatabaseFile, new GzipTransformer(), DatabaseFormat.BINARY);
+
+		// Test: Both formats are readable by the same serializer
+		TestAssertUtil.assertDatabaseEquals(writtenDatabase, TestDatabaseUtil.readDatabaseFileFromDisk(xmlDatabaseFile, new GzipTransformer()));
+		TestAssertUtil.assertDatabaseEquals(writtenDatabase, TestDatabaseUtil.readDatabaseFileFromDisk(binaryDatabaseFile, new GzipTransformer()));
+	}
+
+	@Test
+	public void testBinaryFileHasMagicBytes() throws IOException {
+		// Prepare
+		MemoryDatabase writtenDatabase = new MemoryDatabase();
+		writtenDatabase.addDatabaseVersion(createDatabaseVersions(1).get(0));
+
+		File binaryDatabaseFile = new File(tempDir, "db-binary");
+
+		// Run
+		TestDatabaseUtil.writeDatabaseFileToDisk(writtenDatabase, binaryDatabaseFile, null, DatabaseFormat.BINARY);
+
+		// Test
+		try (FileInputStream binaryDatabaseInputStream = new FileInputStream(binaryDatabaseFile)) {
+			byte[] header = new byte[5];
+			IOUtils.readFully(binaryDatabaseInputStream, header);
+
+			assertArrayEquals(new byte[] { 'S', 'Y', 'D', 'B', 1 }, header);
+		}
+	}
+
+	private List<DatabaseVersion> createDatabaseVersions(int count) {
+		List<DatabaseVersion> databaseVersions = new ArrayList<DatabaseVersion>();
+
+		for (int i = 0; i < count; i++) {
+			DatabaseVersion basedOnDatabaseVersion = (i > 0) ? databaseVersions.get(i - 1) : null;
+			DatabaseVersion newDatabaseVersion = TestDatabaseUtil.createDatabaseVersion(basedOnDatabaseVersion);
+
+			newDatabaseVersion.addChunk(new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 32 * 1024));
+			newDatabaseVersion.addChunk(new ChunkEntry(new ChunkChecksum(TestFileUtil.createRandomArray(20)), 32 * 1024));
+
+			for (int j = 0; j < 10; j++) {
+				FileVersion fileVersion = TestDatabaseUtil.createFileVersion("folder" + i + "/subfolder/file" + j + ".txt");
+				fileVersion.setSize(1024L);
+
+				PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.secureRandomFileId());
+				fileHistory.addFileVersion(fileVersion);
+
+				newDatabaseVersion.addFileHistory(fileHistory);
+			}
+
+			databaseVersions.add(newDatabaseVersion);
+		}
+
+		return databaseVersions;
+	}
+
+	private FileVersion createFileVersion(long version, FileType type, FileStatus status, String path) {
+		FileVersion fileVersion = new FileVersion();
+
+		fileVersion.setVersion(version);
+		fileVersion.setType(type);
+		fileVersion.setStatus(status);
+		fileVersion.setPath(path);
+		fileVersion.setSize(0L);
+		fileVersion.setLastModified(new Date());
+
+		return fileVersion;
+	}
+
+	private MemoryDatabase writeReadAndCompareDatabase(MemoryDatabase writtenDatabase) throws IOException {
+		File writtenDatabaseFile = new File(tempDir, "db-binary");
+
+		TestDatabaseUtil.writeDatabaseFileToDisk(writtenDatabase, writtenDatabaseFile, null, DatabaseFormat.BINARY);
+		MemoryDatabase readDatabase = TestDatabaseUtil.readDatabaseFileFromDisk(writtenDatabaseFile, null);
+
+		TestAssertUtil.assertDatabaseEquals(writtenDatabase, readDatabase);
+
+		return readDatabase;
+	}
+}
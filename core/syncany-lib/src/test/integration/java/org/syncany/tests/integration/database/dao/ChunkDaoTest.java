@@ -18,10 +18,13 @@
 package org.syncany.tests.integration.database.dao;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.junit.Test;
@@ -65,6 +68,77 @@ public class ChunkDaoTest {
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}
 	
+	@Test
+	public void testUncommittedChunksNotVisibleToOtherConnections() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection1 = testConfig.createDatabaseConnection();
+		Connection databaseConnection2 = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection1, "test.insert.set3.sql");
+
+		// Both DAOs share the same chunk index
+		ChunkSqlDao chunkDao1 = new ChunkSqlDao(databaseConnection1, testConfig.getChunkIndexFile(), testConfig.getChunkFilterFile());
+		ChunkSqlDao chunkDao2 = new ChunkSqlDao(databaseConnection2, testConfig.getChunkIndexFile(), testConfig.getChunkFilterFile());
+
+		ChunkChecksum existingChecksum = ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457");
+		ChunkChecksum newChecksum = ChunkChecksum.parseChunkChecksum("beefbeefbeefbeefbeefbeefbeefbeefbeefbeef");
+
+		assertNotNull(chunkDao1.getChunk(existingChecksum));
+		assertNotNull(chunkDao2.getChunk(existingChecksum));
+
+		// Run & test: Uncommitted chunk only visible to the writing connection
+		chunkDao1.writeChunks(databaseConnection1, 0, Arrays.asList(new ChunkEntry(newChecksum, 1234)));
+
+		assertNotNull(chunkDao1.getChunk(newChecksum));
+		assertNull(chunkDao2.getChunk(newChecksum));
+
+		// Run & test: Rolled back chunk not visible at all
+		databaseConnection1.rollback();
+		chunkDao1.discardPendingChunks();
+
+		assertNull(chunkDao1.getChunk(newChecksum));
+		assertNull(chunkDao2.getChunk(newChecksum));
+
+		// Run & test: Committed chunk visible to both connections
+		chunkDao1.writeChunks(databaseConnection1, 0, Arrays.asList(new ChunkEntry(newChecksum, 1234)));
+		databaseConnection1.commit();
+		chunkDao1.syncCache();
+
+		assertEquals(1234, chunkDao1.getChunk(newChecksum).getSize());
+		assertEquals(1234, chunkDao2.getChunk(newChecksum).getSize());
+
+		// Tear down
+		databaseConnection1.close();
+		databaseConnection2.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testMightContainChunk() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		// Run
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set3.sql");
+		
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection);
+		
+		boolean chunk1MightExist = chunkDao.mightContainChunk(ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457"));
+		boolean chunk2MightExist = chunkDao.mightContainChunk(ChunkChecksum.parseChunkChecksum("ab85720d3f31bd08ca1cd25dcd8a490e5f00783b"));
+		boolean chunkNonExistentMightExist = chunkDao.mightContainChunk(ChunkChecksum.parseChunkChecksum("beefbeefbeefbeefbeefbeefbeefbeefbeefbeef"));
+		
+		// Test
+		assertTrue(chunk1MightExist);
+		assertTrue(chunk2MightExist);
+		assertFalse(chunkNonExistentMightExist); // False positive very unlikely with few chunks
+		
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+	
 	@Test
 	public void testGetChunksForDatabaseVersion() throws Exception {
 		// Setup
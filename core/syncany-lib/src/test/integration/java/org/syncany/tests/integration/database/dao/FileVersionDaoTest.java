@@ -20,21 +20,34 @@ package org.syncany.tests.integration.database.dao;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 import java.sql.Connection;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.junit.Test;
 import org.syncany.config.Config;
 import org.syncany.database.FileVersion;
+import org.syncany.database.PartialFileHistory;
 import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.dao.ChunkSqlDao;
+import org.syncany.database.dao.DatabaseVersionSqlDao;
+import org.syncany.database.dao.FileContentSqlDao;
+import org.syncany.database.dao.FileHistorySqlDao;
 import org.syncany.database.dao.FileVersionSqlDao;
+import org.syncany.database.dao.MultiChunkSqlDao;
+import org.syncany.database.dao.SqlResultIterator;
+import org.syncany.database.dao.SqlStatementCache;
 import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestDatabaseUtil;
 import org.syncany.tests.util.TestSqlUtil;
 
 /**
  * Tests the {@link FileVersionSqlDao}
  * <p>
- * Note: {@link FileVersionSqlDao#writeFileVersions(Connection, FileHistoryId, long, java.util.Collection) is
+ * Note: {@link FileVersionSqlDao#writeFileVersions(Connection, long, java.util.Collection) is
  * tested in combination with the rest of the database write functioins. 
  */
 public class FileVersionDaoTest {	
@@ -61,4 +74,132 @@ public class FileVersionDaoTest {
 		databaseConnection.close();
 		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
 	}	
+	
+	@Test
+	public void testFileVersionGetCurrentFileTreeIterator() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set2.sql");
+
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		Map<String, FileVersion> currentFileTree = fileVersionDao.getCurrentFileTree();
+
+		// Run & test: a. Read to the end
+		int fileVersionCount = 0;
+
+		try (SqlResultIterator<FileVersion> fileVersions = fileVersionDao.getCurrentFileTreeIterator(7)) {
+			while (fileVersions.hasNext()) {
+				FileVersion fileVersion = fileVersions.next();
+
+				assertEquals(currentFileTree.get(fileVersion.getPath()).getFileHistoryId(), fileVersion.getFileHistoryId());
+				fileVersionCount++;
+			}
+		}
+
+		assertEquals(50, fileVersionCount);
+
+		// Run & test: b. Close early, statement must be returned to the cache
+		SqlStatementCache statementCache = SqlStatementCache.getInstance(databaseConnection);
+		long prepareCountBefore = statementCache.getPrepareCount();
+
+		try (SqlResultIterator<FileVersion> fileVersions = fileVersionDao.getCurrentFileTreeIterator(7)) {
+			assertNotNull(fileVersions.next());
+		}
+
+		try (SqlResultIterator<FileVersion> fileVersions = fileVersionDao.getCurrentFileTreeIterator(7)) {
+			assertTrue(fileVersions.hasNext());
+		}
+
+		assertEquals(prepareCountBefore, statementCache.getPrepareCount());
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testFileHistoriesWithFileVersionsIterator() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set1.sql");
+
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		FileHistorySqlDao fileHistoryDao = new FileHistorySqlDao(databaseConnection, fileVersionDao);
+
+		// Run
+		Map<FileHistoryId, PartialFileHistory> iteratedFileHistories = new HashMap<FileHistoryId, PartialFileHistory>();
+
+		try (SqlResultIterator<PartialFileHistory> fileHistories = fileHistoryDao.getFileHistoriesWithFileVersionsIterator(2)) {
+			while (fileHistories.hasNext()) {
+				PartialFileHistory fileHistory = fileHistories.next();
+				assertNull(iteratedFileHistories.put(fileHistory.getFileHistoryId(), fileHistory));
+			}
+		}
+
+		// Test
+		Map<FileHistoryId, PartialFileHistory> expectedFileHistories = fileHistoryDao.getFileHistoriesWithFileVersions();
+
+		assertTrue(expectedFileHistories.size() > 0);
+		assertEquals(expectedFileHistories.keySet(), iteratedFileHistories.keySet());
+
+		for (PartialFileHistory expectedFileHistory : expectedFileHistories.values()) {
+			PartialFileHistory iteratedFileHistory = iteratedFileHistories.get(expectedFileHistory.getFileHistoryId());
+			assertEquals(expectedFileHistory.getFileVersions().keySet(), iteratedFileHistory.getFileVersions().keySet());
+		}
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testFileVersionCurrentFileTreeUpdatedIncrementally() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		Connection databaseConnection = testConfig.createDatabaseConnection();
+
+		TestSqlUtil.runSqlFromResource(databaseConnection, "test.insert.set2.sql");
+
+		ChunkSqlDao chunkDao = new ChunkSqlDao(databaseConnection);
+		MultiChunkSqlDao multiChunkDao = new MultiChunkSqlDao(databaseConnection);
+		FileVersionSqlDao fileVersionDao = new FileVersionSqlDao(databaseConnection);
+		FileHistorySqlDao fileHistoryDao = new FileHistorySqlDao(databaseConnection, fileVersionDao);
+		FileContentSqlDao fileContentDao = new FileContentSqlDao(databaseConnection);
+		DatabaseVersionSqlDao databaseVersionDao = new DatabaseVersionSqlDao(databaseConnection, chunkDao, fileContentDao, fileVersionDao, fileHistoryDao, multiChunkDao);
+
+		// Run & test: a. Mark database version with "file50" dirty
+		databaseVersionDao.markDatabaseVersionDirty(TestDatabaseUtil.createVectorClock("A50"));
+
+		assertEquals(49, fileVersionDao.getCurrentFileTree().size());
+		assertNull(fileVersionDao.getCurrentFileTree().get("file50"));
+		assertCurrentFileTreeMatchesView(databaseConnection);
+
+		// Run & test: b. Purge all versions of "file1"
+		Map<FileHistoryId, FileVersion> purgeFileVersions = new HashMap<FileHistoryId, FileVersion>();
+		purgeFileVersions.put(FileHistoryId.parseFileId("851c441915478a539a5bab2b263ffa4cc48e282f"), fileVersionDao.getCurrentFileTree().get("file1"));
+
+		fileVersionDao.removeFileVersions(purgeFileVersions);
+
+		assertEquals(48, fileVersionDao.getCurrentFileTree().size());
+		assertNull(fileVersionDao.getCurrentFileTree().get("file1"));
+		assertCurrentFileTreeMatchesView(databaseConnection);
+
+		// Tear down
+		databaseConnection.close();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	private void assertCurrentFileTreeMatchesView(Connection databaseConnection) throws Exception {
+		String currentFileTreeTable = TestSqlUtil.runSqlSelect("select filehistory_id, version, path from filetree_current "
+				+ "order by filehistory_id, version", databaseConnection);
+		
+		String currentFileTreeView = TestSqlUtil.runSqlSelect("select filehistory_id, version, path from fileversion_master_last "
+				+ "order by filehistory_id, version", databaseConnection);
+
+		assertEquals(currentFileTreeView, currentFileTreeTable);
+	}
 }
@@ -0,0 +1,165 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileVersion;
+import org.syncany.database.FileVersion.FileType;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.SqlDatabase;
+import org.syncany.operations.compact.CompactOperation;
+import org.syncany.operations.compact.CompactOperationOptions;
+import org.syncany.operations.compact.CompactOperationResult;
+import org.syncany.operations.compact.CompactOperationResult.CompactResultCode;
+import org.syncany.plugins.transfer.files.DatabaseRemoteFile;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestDatabaseUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+public class CompactOperationTest {
+	@Test
+	public void testCompactAfterDelete() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		writeSyntheticFileHistories(database, 5000);
+
+		database.deleteAll();
+		database.writeKnownRemoteDatabases(Arrays.asList(new DatabaseRemoteFile("A", 1))); // HSQLDB does not defrag empty databases
+		database.commit();
+
+		// Run & test: a. Dead space ratio exceeds threshold
+		CompactOperationResult compactResult = new CompactOperation(testConfig).execute();
+
+		assertEquals(CompactResultCode.OK, compactResult.getResultCode());
+		assertTrue(compactResult.getDeadSpaceBefore() > 0);
+		assertTrue(compactResult.getReclaimedSize() > 0);
+		assertTrue(compactResult.getDataFileSizeAfter() < compactResult.getDataFileSizeBefore());
+		assertEquals(0, database.getDataFileDeadSpace());
+
+		assertEquals("7", TestSqlUtil.runSqlSelect("select count(*) from information_schema.system_indexinfo "
+				+ "where table_schem='PUBLIC' and index_name like 'IDX_%' and ordinal_position=1", database.getConnection()));
+
+		// Run & test: b. Nothing to do
+		compactResult = new CompactOperation(testConfig).execute();
+		assertEquals(CompactResultCode.OK_NOTHING_DONE, compactResult.getResultCode());
+
+		// Tear down
+		database.shutdown();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testCompactCreatesMissingIndices() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		CompactOperationOptions options = new CompactOperationOptions();
+		options.setForce(true);
+
+		database.getConnection().createStatement().execute("drop index idx_fileversion_path");
+		database.commit();
+
+		// Run
+		assertEquals(CompactResultCode.OK, new CompactOperation(testConfig, options).execute().getResultCode());
+
+		// Test
+		assertEquals("7", TestSqlUtil.runSqlSelect("select count(*) from information_schema.system_indexinfo "
+				+ "where table_schem='PUBLIC' and index_name like 'IDX_%' and ordinal_position=1", database.getConnection()));
+
+		// Tear down
+		database.shutdown();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testCompactNotWithOpenTransactions() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		CompactOperationOptions options = new CompactOperationOptions();
+		options.setForce(true);
+
+		// Run & test
+		database.getKnownDatabases(); // Opens transaction
+		assertEquals(CompactResultCode.NOK_DATABASE_BUSY, new CompactOperation(testConfig, options).execute().getResultCode());
+
+		database.commit();
+		assertEquals(CompactResultCode.OK, new CompactOperation(testConfig, options).execute().getResultCode());
+
+		// Tear down
+		database.shutdown();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	@Test
+	public void testCompactBySchedule() throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		CompactOperationOptions options = new CompactOperationOptions();
+		options.setMinDeadSpaceRatio(1.1); // Never reached
+		options.setMaxSecondsBetweenCompactions(60);
+
+		// Run & test: First check only starts the schedule
+		assertEquals(CompactResultCode.OK_NOTHING_DONE, new CompactOperation(testConfig, options).execute().getResultCode());
+		assertEquals(CompactResultCode.OK_NOTHING_DONE, new CompactOperation(testConfig, options).execute().getResultCode());
+
+		database.writeCompactTime(System.currentTimeMillis() / 1000 - 61);
+		database.commit();
+
+		assertEquals(CompactResultCode.OK, new CompactOperation(testConfig, options).execute().getResultCode());
+		assertEquals(CompactResultCode.OK_NOTHING_DONE, new CompactOperation(testConfig, options).execute().getResultCode());
+
+		// Tear down
+		database.shutdown();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+	}
+
+	private void writeSyntheticFileHistories(SqlDatabase database, int fileCount) throws Exception {
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion();
+
+		for (int i = 0; i < fileCount; i++) {
+			FileVersion fileVersion = TestDatabaseUtil.createFileVersion("folder/some-rather-long-file-name-" + i);
+			fileVersion.setType(FileType.FOLDER);
+			fileVersion.setChecksum(null);
+			fileVersion.setSize(0L);
+
+			PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.fromBytes(ByteBuffer.allocate(20).putInt(i).array()));
+			fileHistory.addFileVersion(fileVersion);
+
+			databaseVersion.addFileHistory(fileHistory);
+		}
+
+		database.writeDatabaseVersion(databaseVersion);
+		database.commit();
+	}
+}
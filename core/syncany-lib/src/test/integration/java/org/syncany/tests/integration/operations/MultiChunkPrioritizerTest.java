@@ -0,0 +1,86 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.operations;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.syncany.database.FileVersion;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.down.MultiChunkPrioritizer;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+public class MultiChunkPrioritizerTest {
+	@Test
+	public void testFewestMultiChunksThenSmallestFirst() throws Exception {
+		// Setup
+		Map<FileVersion, Collection<MultiChunkId>> fileVersionMultiChunks = new LinkedHashMap<FileVersion, Collection<MultiChunkId>>();
+
+		fileVersionMultiChunks.put(createFileVersion("three-multichunks", 1000), createMultiChunkIds("a1", "a2", "a3"));
+		fileVersionMultiChunks.put(createFileVersion("two-multichunks-large", 500), createMultiChunkIds("b1", "b2"));
+		fileVersionMultiChunks.put(createFileVersion("one-multichunk-large", 400), createMultiChunkIds("c1"));
+		fileVersionMultiChunks.put(createFileVersion("two-multichunks-small", 5), createMultiChunkIds("c1", "a1"));
+		fileVersionMultiChunks.put(createFileVersion("one-multichunk-small", 10), createMultiChunkIds("d1"));
+
+		// Run
+		Collection<MultiChunkId> multiChunkIds = new MultiChunkPrioritizer().prioritize(fileVersionMultiChunks);
+
+		// Test: Files with one multichunk first (smallest first), then two (c1 already included), then three
+		assertEquals(createMultiChunkIds("d1", "c1", "a1", "b1", "b2", "a2", "a3"), new ArrayList<MultiChunkId>(multiChunkIds));
+	}
+
+	@Test
+	public void testSameCountAndSizeKeepsOrder() throws Exception {
+		// Setup
+		Map<FileVersion, Collection<MultiChunkId>> fileVersionMultiChunks = new LinkedHashMap<FileVersion, Collection<MultiChunkId>>();
+
+		fileVersionMultiChunks.put(createFileVersion("file1", 100), createMultiChunkIds("e1"));
+		fileVersionMultiChunks.put(createFileVersion("file2", 100), createMultiChunkIds("f1"));
+		fileVersionMultiChunks.put(createFileVersion("file3", 100), createMultiChunkIds("e1"));
+		fileVersionMultiChunks.put(createFileVersion("empty-file", 0), new ArrayList<MultiChunkId>());
+
+		// Run
+		Collection<MultiChunkId> multiChunkIds = new MultiChunkPrioritizer().prioritize(fileVersionMultiChunks);
+
+		// Test
+		assertEquals(createMultiChunkIds("e1", "f1"), new ArrayList<MultiChunkId>(multiChunkIds));
+	}
+
+	private FileVersion createFileVersion(String path, long size) {
+		FileVersion fileVersion = TestDatabaseUtil.createFileVersion(path);
+		fileVersion.setSize(size);
+
+		return fileVersion;
+	}
+
+	private List<MultiChunkId> createMultiChunkIds(String... multiChunkIdStrings) {
+		List<MultiChunkId> multiChunkIds = new ArrayList<MultiChunkId>();
+
+		for (String multiChunkIdString : multiChunkIdStrings) {
+			multiChunkIds.add(MultiChunkId.parseMultiChunkId(multiChunkIdString + "00"));
+		}
+
+		return multiChunkIds;
+	}
+}
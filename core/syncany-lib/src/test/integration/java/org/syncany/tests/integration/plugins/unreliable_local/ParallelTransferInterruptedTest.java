@@ -0,0 +1,191 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.plugins.unreliable_local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.syncany.plugins.transfer.StorageException;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferPlugin;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.util.TestAssertUtil;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+/**
+ * Tests failing and resumed transfers with more than one transfer thread. Since the
+ * order of parallel operations is not deterministic, the failing operation patterns
+ * fail all matching operations after a certain count, instead of single operations.
+ */
+public class ParallelTransferInterruptedTest {
+	private static final Logger logger = Logger.getLogger(ParallelTransferInterruptedTest.class.getSimpleName());
+
+	@Before
+	public void setUp() {
+		UnreliableLocalTransferPlugin.setMaxParallelTransfers(4);
+	}
+
+	@After
+	public void tearDown() {
+		UnreliableLocalTransferPlugin.setMaxParallelTransfers(1);
+	}
+
+	@Test
+	public void testParallelUploadFailsAtMultiChunkUpload() throws Exception {
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(
+				Arrays.asList(new String[] {
+						// All multichunk uploads after the second fail (incl. retries)
+						"rel=([3-9]|[1-9][0-9]+) .+upload.+multichunk"
+				}));
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		for (int i = 1; i <= 3; i++) {
+			clientA.createNewFile("A-original-" + i, 5 * 1024 * 1024); // << larger than one multichunk
+		}
+
+		// Run & test: a. First 'up' fails, nothing is committed
+		assertTrue(upFails(clientA));
+
+		assertEquals(0, new File(testConnection.getPath() + "/databases/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/multichunks/").listFiles().length);
+		assertEquals(1, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+
+		// Run & test: b. Second 'up' succeeds and cleans up the failed transaction
+		testConnection.setFailingOperationPatterns(new ArrayList<String>());
+		clientA.up();
+
+		assertEquals(1, new File(testConnection.getPath() + "/databases/").listFiles().length);
+		assertTrue(new File(testConnection.getPath() + "/multichunks/").listFiles().length > 3);
+		assertEquals(0, new File(testConnection.getPath() + "/actions/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/temporary/").listFiles().length);
+
+		clientB.down();
+		TestAssertUtil.assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testParallelUploadFailsAtMultiChunkMove() throws Exception {
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(
+				Arrays.asList(new String[] {
+						// All multichunk moves after the first fail (incl. retries)
+						"rel=([2-9]|[1-9][0-9]+) .+move.+multichunk"
+				}));
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		for (int i = 1; i <= 3; i++) {
+			clientA.createNewFile("A-original-" + i, 5 * 1024 * 1024);
+		}
+
+		// Run & test: a. First 'up' fails while committing; the other client does not see the partial commit
+		assertTrue(upFails(clientA));
+
+		assertEquals(0, new File(testConnection.getPath() + "/databases/").listFiles().length);
+		assertEquals(1, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+		assertEquals(0, clientB.lsRemote().getUnknownRemoteDatabases().size());
+
+		// Run & test: b. Second 'up' succeeds
+		testConnection.setFailingOperationPatterns(new ArrayList<String>());
+		clientA.up();
+
+		assertEquals(1, new File(testConnection.getPath() + "/databases/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/transactions/").listFiles().length);
+		assertEquals(0, new File(testConnection.getPath() + "/temporary/").listFiles().length);
+
+		clientB.down();
+		TestAssertUtil.assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testParallelDownloadFailsAtMultiChunkDownload() throws Exception {
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(new ArrayList<String>());
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		for (int i = 1; i <= 3; i++) {
+			clientA.createNewFile("A-original-" + i, 5 * 1024 * 1024);
+		}
+
+		clientA.up();
+
+		// Run & test: a. First 'down' fails, no database versions are applied
+		testConnection.setFailingOperationPatterns(Arrays.asList(new String[] {
+				// All multichunk downloads after the second fail (incl. retries)
+				"rel=([3-9]|[1-9][0-9]+) .+download.+multichunk"
+		}));
+
+		boolean downFailed = false;
+
+		try {
+			clientB.down();
+		}
+		catch (StorageException e) {
+			downFailed = true;
+			logger.log(Level.INFO, e.getMessage());
+		}
+
+		assertTrue(downFailed);
+		TestAssertUtil.assertSqlResultEquals(clientB.getConfig().getDatabaseFile(), "select count(*) from databaseversion", "0");
+
+		// Run & test: b. Second 'down' succeeds
+		testConnection.setFailingOperationPatterns(new ArrayList<String>());
+		clientB.down();
+
+		TestAssertUtil.assertFileListEquals(clientA.getLocalFilesExcludeLockedAndNoRead(), clientB.getLocalFilesExcludeLockedAndNoRead());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	private boolean upFails(TestClient client) throws Exception {
+		try {
+			client.up();
+			return false;
+		}
+		catch (StorageException e) {
+			logger.log(Level.INFO, e.getMessage());
+			return true;
+		}
+	}
+}
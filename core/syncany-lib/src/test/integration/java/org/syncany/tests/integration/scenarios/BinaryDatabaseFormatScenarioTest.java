@@ -0,0 +1,75 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import org.junit.Test;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
+import org.syncany.operations.cleanup.CleanupOperationOptions;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class BinaryDatabaseFormatScenarioTest {
+	@Test
+	public void testMixedDatabaseFormats() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientA.getConfig().setDatabaseFormat(DatabaseFormat.BINARY); // B writes XML
+
+		UpOperationOptions upOptionsNoCleanup = new UpOperationOptions();
+		upOptionsNoCleanup.setForceUploadEnabled(true);
+
+		CleanupOperationOptions cleanupOptionsMergeOnly = new CleanupOperationOptions();
+		cleanupOptionsMergeOnly.setRemoveOldVersions(false);
+		cleanupOptionsMergeOnly.setMaxDatabaseFiles(3);
+
+		// Run
+		for (int i = 0; i < 5; i++) {
+			clientA.createNewFile("A-file" + i);
+			clientA.moveFile("A-file" + i, "A-file" + i + "-moved");
+			clientA.up(upOptionsNoCleanup);
+
+			clientB.down();
+			clientB.createNewFile("B-file" + i);
+			clientB.up(upOptionsNoCleanup);
+
+			clientA.down();
+		}
+
+		clientA.cleanup(cleanupOptionsMergeOnly); // Merged database written in binary
+
+		clientA.down();
+		clientB.down();
+
+		// Test
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class DecryptedDatabaseScenarioTest {
+	@Test
+	public void testDatabasesDecryptedOnceInCache() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientA.getConfig().setTransformer(new GzipTransformer());
+		clientB.getConfig().setTransformer(new GzipTransformer());
+
+		// Run
+		clientA.createNewFile("A-file1");
+		clientA.up();
+
+		clientA.createNewFile("A-file2");
+		clientA.up();
+
+		clientB.down();
+
+		// Test
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		assertTrue(clientB.getConfig().getCache().getDecryptedDatabaseFile("database-A-0000000001").exists());
+		assertTrue(clientB.getConfig().getCache().getDecryptedDatabaseFile("database-A-0000000002").exists());
+		assertFalse(clientB.getConfig().getCache().getDatabaseFile("database-A-0000000001").exists());
+		assertFalse(clientB.getConfig().getCache().getDatabaseFile("database-A-0000000002").exists());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testTamperedDatabaseNotKeptInCache() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientA.getConfig().setTransformer(new GzipTransformer());
+		clientB.getConfig().setTransformer(new GzipTransformer());
+
+		clientA.createNewFile("A-file1");
+		clientA.up();
+
+		// Tamper with database file (flip a byte in the compressed data)
+		File remoteDatabaseFile = new File(testConnection.getPath(), "databases/database-A-0000000001");
+
+		try (RandomAccessFile remoteDatabaseRandomAccessFile = new RandomAccessFile(remoteDatabaseFile, "rw")) {
+			long tamperOffset = remoteDatabaseFile.length() - 20;
+
+			remoteDatabaseRandomAccessFile.seek(tamperOffset);
+			int tamperByte = remoteDatabaseRandomAccessFile.read();
+
+			remoteDatabaseRandomAccessFile.seek(tamperOffset);
+			remoteDatabaseRandomAccessFile.write(tamperByte ^ 0xff);
+		}
+
+		// Run
+		try {
+			clientB.down();
+			fail("Down operation should have failed for a tampered database.");
+		}
+		catch (Exception e) {
+			// Expected
+		}
+
+		// Test
+		assertEquals(0, clientB.getLocalFiles().size());
+		assertFalse(clientB.getConfig().getCache().getDecryptedDatabaseFile("database-A-0000000001").exists());
+		assertFalse(clientB.getConfig().getCache().getDatabaseFile("database-A-0000000001").exists());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
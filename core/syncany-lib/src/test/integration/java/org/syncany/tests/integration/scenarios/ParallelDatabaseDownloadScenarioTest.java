@@ -0,0 +1,83 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.plugins.transfer.TransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class ParallelDatabaseDownloadScenarioTest {
+	@Test
+	public void testDownManyDatabasesFromManyClients() throws Exception {
+		// Setup
+		TransferSettings testConnection = TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		TestClient clientC = new TestClient("C", testConnection);
+		TestClient clientD = new TestClient("D", testConnection);
+
+		UpOperationOptions upOptionsNoCleanup = new UpOperationOptions();
+		upOptionsNoCleanup.setForceUploadEnabled(true);
+
+		// Run: A, B and C create many database versions, D has never synced
+		TestClient[] clients = new TestClient[] { clientA, clientB, clientC };
+
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < clients.length; j++) {
+				String fileName = "file-" + j + "-" + i;
+
+				clients[j].down();
+				clients[j].createNewFile(fileName);
+				clients[j].moveFile(fileName, fileName + "-moved");
+				clients[j].up(upOptionsNoCleanup);
+			}
+		}
+
+		clientA.down();
+		DownOperationResult downResultD = clientD.down(); // Downloads and reads 12 databases in parallel
+
+		// Test
+		List<String> downloadedDatabases = new ArrayList<String>(downResultD.getDownloadedUnknownDatabases());
+		Collections.sort(downloadedDatabases);
+
+		assertEquals(12, downloadedDatabases.size());
+		assertEquals("database-A-0000000001", downloadedDatabases.get(0));
+		assertEquals("database-C-0000000004", downloadedDatabases.get(11));
+
+		assertFileListEquals(clientA.getLocalFiles(), clientD.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientD.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+		clientD.deleteTestData();
+	}
+}
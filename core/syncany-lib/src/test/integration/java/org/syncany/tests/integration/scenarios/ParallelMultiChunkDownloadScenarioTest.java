@@ -0,0 +1,142 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlResultEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.syncany.config.LocalEventBus;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.daemon.messages.DownDownloadFileSyncExternalEvent;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.plugins.transfer.files.MultichunkRemoteFile;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.util.EnvironmentUtil;
+import org.syncany.util.FileUtil;
+
+import com.google.common.eventbus.Subscribe;
+
+public class ParallelMultiChunkDownloadScenarioTest {
+	private List<DownDownloadFileSyncExternalEvent> multiChunkDownloadEvents = Collections
+			.synchronizedList(new ArrayList<DownDownloadFileSyncExternalEvent>());
+
+	@Test
+	public void testDownManyMultiChunksInParallel() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// Run: Random (incompressible) files result in many multichunks (test multichunk size is 4 MB)
+		TestFileUtil.createRandomFilesInDirectory(clientA.getConfig().getLocalDir(), 1024 * 1024, 12);
+		clientA.createNewFile("small-file", 10);
+		clientA.up();
+
+		LocalEventBus.getInstance().register(this);
+		DownOperationResult downResultB = clientB.down(); // Downloads multichunks in parallel, decrypts them separately
+		LocalEventBus.getInstance().unregister(this);
+
+		// Test: All multichunks downloaded, progress reported in bytes
+		int multiChunkCount = new File(testConnection.getPath(), "multichunks").list().length;
+
+		assertTrue(multiChunkCount >= 3);
+		assertEquals(multiChunkCount, downResultB.getDownloadedMultiChunks().size());
+		assertEquals(multiChunkCount, multiChunkDownloadEvents.size());
+
+		long maxDownloadedSize = 0;
+
+		for (DownDownloadFileSyncExternalEvent multiChunkDownloadEvent : multiChunkDownloadEvents) {
+			assertEquals(multiChunkCount, multiChunkDownloadEvent.getMaxFileCount());
+			assertTrue(multiChunkDownloadEvent.getCurrentFileSize() > 0);
+
+			maxDownloadedSize = Math.max(maxDownloadedSize, multiChunkDownloadEvent.getDownloadedSize());
+		}
+
+		assertTrue(maxDownloadedSize > 12 * 1024 * 1024);
+
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testDownFailsFastOnDecryptFailure() throws Exception {
+		if (!EnvironmentUtil.symlinksSupported()) {
+			return; // Skip test for Windows, no symlinks there!
+		}
+
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		TestFileUtil.createRandomFilesInDirectory(clientA.getConfig().getLocalDir(), 1024 * 1024, 12);
+		clientA.up();
+
+		// Run: Decrypting one of the multichunks fails, because the decrypted file cannot be written
+		String[] multiChunkFileNames = new File(testConnection.getPath(), "multichunks").list();
+		assertTrue(multiChunkFileNames.length > 1);
+
+		MultiChunkId failingMultiChunkId = new MultiChunkId(new MultichunkRemoteFile(multiChunkFileNames[0]).getMultiChunkId());
+		File failingDecryptedMultiChunkFile = clientB.getConfig().getCache().getDecryptedMultiChunkFile(failingMultiChunkId);
+
+		FileUtil.createSymlink("/does/not/exist/" + failingDecryptedMultiChunkFile.getName(), failingDecryptedMultiChunkFile);
+
+		try {
+			clientB.down();
+			fail("Down operation should have failed.");
+		}
+		catch (Exception e) {
+			// Expected
+		}
+
+		// Test: Nothing is persisted, and the downloaded multichunk was not left behind
+		assertSqlResultEquals(clientB.getDatabaseFile(), "select count(*) from databaseversion", "0");
+		assertFalse(clientB.getConfig().getCache().getEncryptedMultiChunkFile(failingMultiChunkId).exists());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Subscribe
+	public void onDownloadFileEventReceived(DownDownloadFileSyncExternalEvent downloadFileEvent) {
+		if ("multichunk".equals(downloadFileEvent.getFileDescription())) {
+			multiChunkDownloadEvents.add(downloadFileEvent);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.operations.up.UpOperationResult;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class ParallelTransactionUploadScenarioTest {
+	@Test
+	public void testUpManyMultiChunksInParallel() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// Run: Random (incompressible) files result in many multichunks (test multichunk size is 4 MB)
+		TestFileUtil.createRandomFilesInDirectory(clientA.getConfig().getLocalDir(), 1024 * 1024, 12);
+
+		UpOperationResult upResultA = clientA.up(); // Uploads and moves multichunks in parallel
+
+		// Test: All files are in their final location, nothing is left behind
+		File[] repoMultiChunkFiles = new File(testConnection.getPath(), "multichunks").listFiles();
+
+		assertTrue(upResultA.getChangeSet().hasChanges());
+		assertTrue(repoMultiChunkFiles.length >= 3);
+		assertEquals(1, new File(testConnection.getPath(), "databases").list().length);
+		assertEquals(0, new File(testConnection.getPath(), "transactions").list().length);
+		assertEquals(0, new File(testConnection.getPath(), "temporary").list().length);
+
+		// Test: Other client gets all files
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class PipelinedApplyScenarioTest {
+	@Test
+	public void testApplyWhileDownloadingAndReleaseMultiChunks() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		// Run: Random (incompressible) files in nested folders result in many multichunks
+		clientA.createNewFolder("folder");
+		clientA.createNewFolder("folder/subfolder");
+
+		TestFileUtil.createRandomFilesInDirectory(clientA.getLocalFile("folder"), 1024 * 1024, 5);
+		TestFileUtil.createRandomFilesInDirectory(clientA.getLocalFile("folder/subfolder"), 1024 * 1024, 5);
+		clientA.createNewFile("small-file", 10);
+		clientA.up();
+
+		DownOperationResult downResultB = clientB.down(); // Applies files while multichunks are still being downloaded
+
+		// Test: All files applied, no downloaded multichunks left in the cache
+		assertTrue(downResultB.getDownloadedMultiChunks().size() >= 3);
+		assertDecryptedMultiChunksReleased(clientB, downResultB);
+
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Run: Replace folder by file and move a file into a new folder (deletes/renames must come first)
+		clientA.deleteFile("folder");
+		TestFileUtil.createRandomFile(clientA.getLocalFile("folder"), 5 * 1024 * 1024);
+
+		clientA.createNewFolder("new-folder");
+		clientA.moveFile("small-file", "new-folder/small-file");
+		TestFileUtil.createRandomFilesInDirectory(clientA.getLocalFile("new-folder"), 1024 * 1024, 3);
+		clientA.up();
+
+		downResultB = clientB.down();
+
+		// Test
+		assertFalse(clientB.getLocalFile("folder").isDirectory());
+		assertDecryptedMultiChunksReleased(clientB, downResultB);
+
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	private void assertDecryptedMultiChunksReleased(TestClient client, DownOperationResult downResult) {
+		assertTrue(downResult.getDownloadedMultiChunks().size() > 0);
+
+		for (MultiChunkId multiChunkId : downResult.getDownloadedMultiChunks()) {
+			File decryptedMultiChunkFile = client.getConfig().getCache().getDecryptedMultiChunkFile(multiChunkId);
+			assertFalse("Multichunk should have been released: " + multiChunkId, decryptedMultiChunkFile.exists());
+		}
+	}
+}
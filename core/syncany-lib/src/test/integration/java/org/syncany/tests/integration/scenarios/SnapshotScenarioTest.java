@@ -0,0 +1,194 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.syncany.operations.cleanup.CleanupOperationOptions;
+import org.syncany.operations.cleanup.CleanupOperationResult;
+import org.syncany.operations.down.DownOperationResult;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.plugins.unreliable_local.UnreliableLocalTransferSettings;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class SnapshotScenarioTest {
+	@Test
+	public void testNewClientDownloadsSnapshot() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+		TestClient clientC = new TestClient("C", testConnection);
+		TestClient clientD = new TestClient("D", testConnection);
+
+		UpOperationOptions upOptionsNoCleanup = new UpOperationOptions();
+		upOptionsNoCleanup.setForceUploadEnabled(true);
+
+		CleanupOperationOptions cleanupOptionsMergeOnly = new CleanupOperationOptions();
+		cleanupOptionsMergeOnly.setRemoveOldVersions(false);
+		cleanupOptionsMergeOnly.setForce(true);
+
+		// Run
+		for (int i = 0; i < 3; i++) {
+			clientA.down();
+			clientA.createNewFile("A-file" + i);
+			clientA.up(upOptionsNoCleanup);
+
+			clientB.down();
+			clientB.createNewFile("B-file" + i);
+			clientB.up(upOptionsNoCleanup);
+		}
+
+		clientA.down();
+		CleanupOperationResult cleanupResult = clientA.cleanup(cleanupOptionsMergeOnly); // Merges and writes snapshot-1
+
+		assertTrue(cleanupResult.isSnapshotCreated());
+		assertEquals(1, listSnapshotFiles(testConnection).length);
+
+		// New client C only downloads the snapshot
+		DownOperationResult downResultC = clientC.down();
+		assertEquals("[snapshot-1]", downResultC.getDownloadedUnknownDatabases().toString());
+
+		assertFileListEquals(clientA.getLocalFiles(), clientC.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientC.getDatabaseFile());
+		assertFalse(clientC.getConfig().getCache().getDecryptedDatabaseFile("snapshot-1").exists());
+		assertFalse(clientC.getConfig().getCache().getDatabaseFile("snapshot-1").exists());
+
+		// Existing client B (cleanup occurred) uses the snapshot as well
+		DownOperationResult downResultB = clientB.down();
+		assertTrue(downResultB.getDownloadedUnknownDatabases().contains("snapshot-1"));
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// New client D downloads the snapshot and newer databases
+		clientB.createNewFile("B-file-after-cleanup");
+		clientB.up(upOptionsNoCleanup);
+
+		DownOperationResult downResultD = clientD.down();
+		List<String> downloadedDatabasesD = new ArrayList<String>(downResultD.getDownloadedUnknownDatabases());
+		Collections.sort(downloadedDatabasesD);
+
+		assertEquals(2, downloadedDatabasesD.size());
+		assertTrue(downloadedDatabasesD.get(0).startsWith("database-B-"));
+		assertEquals("snapshot-1", downloadedDatabasesD.get(1));
+
+		clientA.down();
+		clientC.down();
+
+		assertFileListEquals(clientA.getLocalFiles(), clientD.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientC.getDatabaseFile());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientD.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+		clientC.deleteTestData();
+		clientD.deleteTestData();
+	}
+
+	@Test
+	public void testNoSnapshot() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		CleanupOperationOptions cleanupOptionsNoSnapshot = new CleanupOperationOptions();
+		cleanupOptionsNoSnapshot.setRemoveOldVersions(false);
+		cleanupOptionsNoSnapshot.setForce(true);
+		cleanupOptionsNoSnapshot.setCreateSnapshot(false);
+
+		// Run
+		clientA.createNewFile("A-file1");
+		clientA.up();
+
+		CleanupOperationResult cleanupResult = clientA.cleanup(cleanupOptionsNoSnapshot);
+		DownOperationResult downResultB = clientB.down();
+
+		// Test
+		assertFalse(cleanupResult.isSnapshotCreated());
+		assertEquals(0, listSnapshotFiles(testConnection).length);
+		assertFalse(downResultB.getDownloadedUnknownDatabases().contains("snapshot-1"));
+
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testSnapshotListingFails() throws Exception {
+		// Setup
+		UnreliableLocalTransferSettings testConnection = TestConfigUtil.createTestUnreliableLocalConnection(new ArrayList<String>());
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		CleanupOperationOptions cleanupOptionsMergeOnly = new CleanupOperationOptions();
+		cleanupOptionsMergeOnly.setRemoveOldVersions(false);
+		cleanupOptionsMergeOnly.setForce(true);
+
+		// Run
+		clientA.createNewFile("A-file1");
+		clientA.up();
+
+		CleanupOperationResult cleanupResult = clientA.cleanup(cleanupOptionsMergeOnly);
+		assertTrue(cleanupResult.isSnapshotCreated());
+
+		// Listing snapshots fails (e.g. not supported by the plugin), so B downloads the regular database files
+		testConnection.setFailingOperationPatterns(Arrays.asList(new String[] { "list\\(SnapshotRemoteFile\\)" }));
+		DownOperationResult downResultB = clientB.down();
+
+		// Test
+		assertFalse(downResultB.getDownloadedUnknownDatabases().contains("snapshot-1"));
+		assertFalse(downResultB.getDownloadedUnknownDatabases().isEmpty());
+
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	private String[] listSnapshotFiles(LocalTransferSettings testConnection) {
+		return new File(testConnection.getPath(), "databases").list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("snapshot-");
+			}
+		});
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.syncany.tests.util.TestAssertUtil.assertFileListEquals;
+import static org.syncany.tests.util.TestAssertUtil.assertSqlDatabaseEquals;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.syncany.operations.cleanup.CleanupOperationOptions;
+import org.syncany.operations.cleanup.CleanupOperationResult.CleanupResultCode;
+import org.syncany.operations.up.UpOperationOptions;
+import org.syncany.operations.up.UpOperationResult;
+import org.syncany.plugins.local.LocalTransferSettings;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestClient;
+import org.syncany.tests.util.TestConfigUtil;
+
+public class UploadWhileIndexingScenarioTest {
+	@Test
+	public void testUpManyTransactionsWhileIndexing() throws Exception {
+		// Setup
+		LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		UpOperationOptions upOptionsSmallTransactions = new UpOperationOptions();
+		upOptionsSmallTransactions.setTransactionFileLimit(2);
+
+		// Run: Multichunks are uploaded while the following transactions are still being indexed
+		TestFileUtil.createRandomFilesInDirectory(clientA.getConfig().getLocalDir(), 1024 * 1024, 10);
+		UpOperationResult upResultA = clientA.up(upOptionsSmallTransactions);
+
+		// Test: Every transaction is committed, no temporary or transaction files are left behind
+		assertEquals(5, upResultA.getTransactionsCompleted());
+		assertEquals(5, new File(testConnection.getPath(), "databases").list().length);
+		assertEquals(0, new File(testConnection.getPath(), "transactions").list().length);
+		assertEquals(0, new File(testConnection.getPath(), "temporary").list().length);
+
+		// Test: Other client gets all files
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	@Test
+	public void testUpWhileOtherClientCleansUp() throws Exception {
+		// Setup
+		final LocalTransferSettings testConnection = (LocalTransferSettings) TestConfigUtil.createTestLocalConnection();
+
+		final TestClient clientA = new TestClient("A", testConnection);
+		TestClient clientB = new TestClient("B", testConnection);
+
+		clientB.createNewFile("B-file");
+		clientB.up();
+		clientA.down();
+
+		final UpOperationOptions upOptionsSmallTransactions = new UpOperationOptions();
+		upOptionsSmallTransactions.setTransactionFileLimit(2);
+
+		CleanupOperationOptions cleanupOptions = new CleanupOperationOptions();
+		cleanupOptions.setForce(true);
+		cleanupOptions.setRemoveUnreferencedTemporaryFiles(true);
+
+		// Run: B tries to clean up while A uploads multichunks to the temporary area (not yet referenced by a transaction)
+		TestFileUtil.createRandomFilesInDirectory(clientA.getConfig().getLocalDir(), 1024 * 1024, 20);
+		ExecutorService upExecutor = Executors.newSingleThreadExecutor();
+
+		Future<UpOperationResult> upResultFutureA = upExecutor.submit(new Callable<UpOperationResult>() {
+			@Override
+			public UpOperationResult call() throws Exception {
+				return clientA.up(upOptionsSmallTransactions);
+			}
+		});
+
+		while (!upResultFutureA.isDone() && !hasActionFile(testConnection, "action-up-A-")) {
+			Thread.sleep(10);
+		}
+
+		List<CleanupResultCode> cleanupResultCodesB = new ArrayList<CleanupResultCode>();
+
+		while (!upResultFutureA.isDone()) {
+			cleanupResultCodesB.add(clientB.cleanup(cleanupOptions).getResultCode());
+		}
+
+		UpOperationResult upResultA = upResultFutureA.get();
+		upExecutor.shutdown();
+
+		// Test: A's 'up' action file kept B from cleaning up (and deleting the early uploads)
+		assertFalse(cleanupResultCodesB.isEmpty());
+		assertFalse(cleanupResultCodesB.contains(CleanupResultCode.OK));
+
+		assertEquals(10, upResultA.getTransactionsCompleted());
+		assertEquals(0, new File(testConnection.getPath(), "temporary").list().length);
+
+		// Test: Other client gets all files
+		clientB.down();
+
+		assertFileListEquals(clientA.getLocalFiles(), clientB.getLocalFiles());
+		assertSqlDatabaseEquals(clientA.getDatabaseFile(), clientB.getDatabaseFile());
+
+		// Tear down
+		clientA.deleteTestData();
+		clientB.deleteTestData();
+	}
+
+	private boolean hasActionFile(LocalTransferSettings testConnection, final String namePrefix) {
+		String[] actionFiles = new File(testConnection.getPath(), "actions").list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(namePrefix);
+			}
+		});
+
+		return actionFiles != null && actionFiles.length > 0;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios.longrunning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.config.Config;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.SqlDatabase;
+import org.syncany.tests.util.TestConfigUtil;
+import org.syncany.tests.util.TestDatabaseUtil;
+import org.syncany.tests.util.TestSqlUtil;
+
+/**
+ * Benchmarks writing a synthetic file history to an empty database, as done by the
+ * first 'down' of a new client, with and without bulk-load mode.
+ *
+ * <p>The number of files defaults to one million and can be changed with the system
+ * property <tt>syncany.test.bulkload.files</tt>.
+ */
+public class LongRunningBulkLoadScenarioTest {
+	private static final Logger logger = Logger.getLogger(LongRunningBulkLoadScenarioTest.class.getSimpleName());
+
+	private static final int FILE_COUNT = Integer.getInteger("syncany.test.bulkload.files", 1000000);
+	private static final int FILES_PER_DATABASE_VERSION = 10000;
+
+	@Test
+	public void testBulkLoadSyntheticFileHistory() throws Exception {
+		long regularWriteTime = writeSyntheticFileHistory(false);
+		long bulkLoadWriteTime = writeSyntheticFileHistory(true);
+
+		logger.info(String.format("Writing %d files: regular %d ms, bulk load %d ms (speedup %.1fx)", FILE_COUNT, regularWriteTime,
+				bulkLoadWriteTime, (double) regularWriteTime / bulkLoadWriteTime));
+	}
+
+	private long writeSyntheticFileHistory(boolean bulkLoad) throws Exception {
+		// Setup
+		Config testConfig = TestConfigUtil.createTestLocalConfig();
+		SqlDatabase database = new SqlDatabase(testConfig);
+
+		// Run
+		long startTime = System.currentTimeMillis();
+
+		if (bulkLoad) {
+			assertTrue(database.beginBulkLoad());
+		}
+
+		DatabaseVersion previousDatabaseVersion = null;
+
+		for (int fileOffset = 0; fileOffset < FILE_COUNT; fileOffset += FILES_PER_DATABASE_VERSION) {
+			DatabaseVersion databaseVersion = createSyntheticDatabaseVersion(previousDatabaseVersion, fileOffset,
+					Math.min(FILES_PER_DATABASE_VERSION, FILE_COUNT - fileOffset));
+
+			database.writeDatabaseVersion(databaseVersion);
+			previousDatabaseVersion = databaseVersion;
+		}
+
+		database.commit();
+
+		if (bulkLoad) {
+			database.endBulkLoad();
+		}
+
+		long writeTime = System.currentTimeMillis() - startTime;
+
+		// Test
+		assertEquals(FILE_COUNT, database.getCurrentFileTree().size());
+		assertTrue(database.getFileHistoriesWithLastVersionByPath("file" + (FILE_COUNT - 1)) != null);
+		assertFalse(database.beginBulkLoad());
+
+		assertEquals("TRUE", TestSqlUtil.runSqlSelect("select property_value from information_schema.system_properties "
+				+ "where property_name='hsqldb.log_data'", database.getConnection()).toUpperCase());
+		assertEquals("7", TestSqlUtil.runSqlSelect("select count(*) from information_schema.system_indexinfo "
+				+ "where table_schem='PUBLIC' and index_name like 'IDX_%' and ordinal_position=1", database.getConnection()));
+
+		// Tear down
+		database.shutdown();
+		TestConfigUtil.deleteTestLocalConfigAndData(testConfig);
+
+		return writeTime;
+	}
+
+	private DatabaseVersion createSyntheticDatabaseVersion(DatabaseVersion previousDatabaseVersion, int fileOffset, int fileCount) {
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion(previousDatabaseVersion);
+		MultiChunkEntry multiChunk = new MultiChunkEntry(new MultiChunkId(createChecksum(0xFF, fileOffset)), fileCount * 1024);
+
+		for (int i = fileOffset; i < fileOffset + fileCount; i++) {
+			ChunkEntry chunk = new ChunkEntry(new ChunkChecksum(createChecksum(0x01, i)), 1024);
+
+			FileContent fileContent = new FileContent();
+			fileContent.setChecksum(new FileChecksum(createChecksum(0x02, i)));
+			fileContent.setSize(1024L);
+			fileContent.addChunk(chunk.getChecksum());
+
+			FileVersion fileVersion = TestDatabaseUtil.createFileVersion("file" + i);
+			fileVersion.setChecksum(fileContent.getChecksum());
+			fileVersion.setSize(1024L);
+
+			PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.fromBytes(createChecksum(0x03, i)));
+			fileHistory.addFileVersion(fileVersion);
+
+			multiChunk.addChunk(chunk.getChecksum());
+
+			databaseVersion.addChunk(chunk);
+			databaseVersion.addFileContent(fileContent);
+			databaseVersion.addFileHistory(fileHistory);
+		}
+
+		databaseVersion.addMultiChunk(multiChunk);
+		return databaseVersion;
+	}
+
+	private byte[] createChecksum(int type, int index) {
+		return ByteBuffer.allocate(20).put((byte) type).putInt(index).array();
+	}
+}
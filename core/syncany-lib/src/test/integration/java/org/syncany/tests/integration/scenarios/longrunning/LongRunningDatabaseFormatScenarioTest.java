@@ -0,0 +1,164 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios.longrunning;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.DatabaseVersion;
+import org.syncany.database.FileContent;
+import org.syncany.database.FileContent.FileChecksum;
+import org.syncany.database.FileVersion;
+import org.syncany.database.MemoryDatabase;
+import org.syncany.database.MultiChunkEntry;
+import org.syncany.database.MultiChunkEntry.MultiChunkId;
+import org.syncany.database.PartialFileHistory;
+import org.syncany.database.PartialFileHistory.FileHistoryId;
+import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
+import org.syncany.tests.unit.util.TestFileUtil;
+import org.syncany.tests.util.TestDatabaseUtil;
+
+/**
+ * Benchmarks the size, write and parse time of a large synthetic database version in
+ * the XML and the binary database format, both uncompressed and Gzip-compressed.
+ * Uncompressed, binary files are much smaller; compressed, the sizes are similar,
+ * because random checksums do not compress in either format.
+ *
+ * <p>The number of files defaults to 200,000 and can be changed with the system
+ * property <tt>syncany.test.databaseformat.files</tt>.
+ */
+public class LongRunningDatabaseFormatScenarioTest {
+	private static final Logger logger = Logger.getLogger(LongRunningDatabaseFormatScenarioTest.class.getSimpleName());
+
+	private static final int FILE_COUNT = Integer.getInteger("syncany.test.databaseformat.files", 200000);
+	private static final int CHUNKS_PER_FILE = 2;
+	private static final int CHUNKS_PER_MULTICHUNK = 100;
+
+	@Test
+	public void testDatabaseFormatSizeAndSpeed() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		MemoryDatabase database = createSyntheticDatabase();
+
+		for (Transformer transformer : new Transformer[] { null, new GzipTransformer() }) {
+			long[] xmlResult = writeAndRead(database, new File(tempDir, "db-xml"), transformer, DatabaseFormat.XML);
+			long[] binaryResult = writeAndRead(database, new File(tempDir, "db-binary"), transformer, DatabaseFormat.BINARY);
+
+			String transformerName = (transformer != null) ? "gzip" : "none";
+
+			logger.info(String.format("%d files, transformer %s: XML %d bytes, write %d ms, parse %d ms", FILE_COUNT, transformerName,
+					xmlResult[0], xmlResult[1], xmlResult[2]));
+			logger.info(String.format("%d files, transformer %s: Binary %d bytes, write %d ms, parse %d ms", FILE_COUNT, transformerName,
+					binaryResult[0], binaryResult[1], binaryResult[2]));
+			logger.info(String.format("%d files, transformer %s: Binary/XML size %.2f, write speedup %.1fx, parse speedup %.1fx", FILE_COUNT,
+					transformerName, (double) binaryResult[0] / xmlResult[0], (double) xmlResult[1] / Math.max(1, binaryResult[1]),
+					(double) xmlResult[2] / Math.max(1, binaryResult[2])));
+
+			// Compressed, the random checksums dominate the size of both formats
+			if (transformer == null) {
+				assertTrue(binaryResult[0] < xmlResult[0]);
+			}
+		}
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	private long[] writeAndRead(MemoryDatabase database, File databaseFile, Transformer transformer, DatabaseFormat format) throws Exception {
+		// Write
+		long startTime = System.currentTimeMillis();
+		new DatabaseXmlSerializer(transformer, format).save(database.getDatabaseVersions(), databaseFile);
+		long writeTime = System.currentTimeMillis() - startTime;
+
+		// Parse
+		MemoryDatabase readDatabase = new MemoryDatabase();
+
+		startTime = System.currentTimeMillis();
+		new DatabaseXmlSerializer(transformer).load(readDatabase, databaseFile, null, null, DatabaseReadType.FULL);
+		long parseTime = System.currentTimeMillis() - startTime;
+
+		// Test
+		DatabaseVersion readDatabaseVersion = readDatabase.getLastDatabaseVersion();
+
+		assertEquals(FILE_COUNT, readDatabaseVersion.getFileHistories().size());
+		assertEquals(FILE_COUNT, readDatabaseVersion.getFileContents().size());
+		assertEquals(FILE_COUNT * CHUNKS_PER_FILE, readDatabaseVersion.getChunks().size());
+
+		return new long[] { databaseFile.length(), writeTime, parseTime };
+	}
+
+	private MemoryDatabase createSyntheticDatabase() {
+		Random random = new Random(4711);
+		DatabaseVersion databaseVersion = TestDatabaseUtil.createDatabaseVersion();
+
+		MultiChunkEntry multiChunk = null;
+
+		for (int i = 0; i < FILE_COUNT; i++) {
+			FileContent fileContent = new FileContent();
+			fileContent.setChecksum(new FileChecksum(createRandomChecksum(random)));
+			fileContent.setSize(CHUNKS_PER_FILE * 8 * 1024L);
+
+			for (int j = 0; j < CHUNKS_PER_FILE; j++) {
+				if (multiChunk == null || multiChunk.getChunks().size() == CHUNKS_PER_MULTICHUNK) {
+					multiChunk = new MultiChunkEntry(new MultiChunkId(createRandomChecksum(random)), CHUNKS_PER_MULTICHUNK * 8 * 1024);
+					databaseVersion.addMultiChunk(multiChunk);
+				}
+
+				ChunkEntry chunk = new ChunkEntry(new ChunkChecksum(createRandomChecksum(random)), 8 * 1024);
+
+				databaseVersion.addChunk(chunk);
+				multiChunk.addChunk(chunk.getChecksum());
+				fileContent.addChunk(chunk.getChecksum());
+			}
+
+			FileVersion fileVersion = TestDatabaseUtil.createFileVersion(String.format("Documents/Projects/project-%03d/src/module-%02d/file-%06d.txt",
+					i / 1000, (i / 100) % 10, i));
+
+			fileVersion.setChecksum(fileContent.getChecksum());
+			fileVersion.setSize(fileContent.getSize());
+			fileVersion.setPosixPermissions("rw-r--r--");
+
+			PartialFileHistory fileHistory = new PartialFileHistory(FileHistoryId.fromBytes(createRandomChecksum(random)));
+			fileHistory.addFileVersion(fileVersion);
+
+			databaseVersion.addFileContent(fileContent);
+			databaseVersion.addFileHistory(fileHistory);
+		}
+
+		MemoryDatabase database = new MemoryDatabase();
+		database.addDatabaseVersion(databaseVersion);
+
+		return database;
+	}
+
+	private byte[] createRandomChecksum(Random random) {
+		byte[] checksum = new byte[20];
+		random.nextBytes(checksum);
+
+		return checksum;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.integration.scenarios.longrunning;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.Transformer;
+
+/**
+ * Benchmarks the {@link GzipTransformer} for different compression levels, thread
+ * counts and with/without skipping incompressible data, using a mixed corpus of 50%
+ * text-like data and 50% already compressed (random) data.
+ *
+ * <p>For each configuration, all corpus entries must survive a round trip, and the
+ * overall compression ratio must be within the bounds expected for this corpus.
+ */
+public class LongRunningGzipScenarioTest {
+	private static final Logger logger = Logger.getLogger(LongRunningGzipScenarioTest.class.getSimpleName());
+
+	@Test
+	public void testGzipMixedCorpusRatioAndSpeed() throws Exception {
+		byte[][] corpus = new byte[20][];
+
+		for (int i = 0; i < corpus.length; i++) {
+			corpus[i] = (i % 2 == 0) ? createTextData(512 * 1024, i) : createRandomData(512 * 1024, i);
+		}
+
+		for (int threads : new int[] { 1, 4 }) {
+			for (boolean skipIncompressible : new boolean[] { false, true }) {
+				for (int level : new int[] { 1, 6, 9 }) {
+					double ratio = benchmark(corpus, level, skipIncompressible, threads);
+
+					// The random half is not compressible, the text half compresses to well below 50%
+					assertTrue(ratio > 0.5);
+					assertTrue(ratio < 0.8);
+				}
+			}
+		}
+	}
+
+	private double benchmark(byte[][] corpus, int level, boolean skipIncompressible, int threads) throws Exception {
+		GzipTransformer gzipTransformer = new GzipTransformer(level, skipIncompressible, threads, null);
+
+		long totalInBytes = 0;
+		long totalOutBytes = 0;
+		long totalDurationNanos = 0;
+
+		for (byte[] data : corpus) {
+			long startTime = System.nanoTime();
+			byte[] transformedData = transform(gzipTransformer, data);
+			totalDurationNanos += System.nanoTime() - startTime;
+
+			totalInBytes += data.length;
+			totalOutBytes += transformedData.length;
+
+			assertArrayEquals(data, untransform(gzipTransformer, transformedData));
+		}
+
+		double ratio = (double) totalOutBytes / totalInBytes;
+		double durationSec = totalDurationNanos / 1000000000.0;
+
+		logger.info(String.format("Gzip level %d, skip incompressible %s, threads %d: ratio %.3f, %.1f MB/s", level, skipIncompressible, threads,
+				ratio, totalInBytes / 1024.0 / 1024.0 / durationSec));
+
+		return ratio;
+	}
+
+	private byte[] transform(Transformer transformer, byte[] data) throws Exception {
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		OutputStream transformedOut = transformer.createOutputStream(bytesOut);
+
+		transformedOut.write(data);
+		transformedOut.close();
+
+		return bytesOut.toByteArray();
+	}
+
+	private byte[] untransform(Transformer transformer, byte[] data) throws Exception {
+		InputStream transformedIn = transformer.createInputStream(new ByteArrayInputStream(data));
+		byte[] untransformedData = IOUtils.toByteArray(transformedIn);
+
+		transformedIn.close();
+		return untransformedData;
+	}
+
+	private byte[] createRandomData(int size, long seed) {
+		byte[] data = new byte[size];
+		new Random(seed).nextBytes(data);
+
+		return data;
+	}
+
+	private byte[] createTextData(int size, long seed) {
+		String[] words = new String[] { "syncany", "chunk", "multichunk", "database", "version", "file", "the", "a", "of", "sync" };
+		Random random = new Random(seed);
+		StringBuilder text = new StringBuilder();
+
+		while (text.length() < size) {
+			text.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? '\n' : ' ');
+		}
+
+		return text.substring(0, size).getBytes();
+	}
+}
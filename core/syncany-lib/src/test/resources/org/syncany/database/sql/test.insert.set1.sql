@@ -63,6 +63,5 @@ INSERT INTO FILEVERSION VALUES('abcdeffaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa',1,5,'f
 INSERT INTO MULTICHUNK VALUES('dddddddddddddddddddddddddddddddddddddddd',5,55);
 INSERT INTO MULTICHUNK_CHUNK VALUES('dddddddddddddddddddddddddddddddddddddddd','ffffffffffffffffffffffffffffffffffffffff');
 
-
-
-
+-- Current file tree (maintained incrementally by the DAOs)
+INSERT INTO FILETREE_CURRENT SELECT * FROM FILEVERSION_MASTER_LAST;
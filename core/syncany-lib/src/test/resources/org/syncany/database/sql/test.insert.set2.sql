@@ -401,3 +401,6 @@ INSERT INTO MULTICHUNK_CHUNK VALUES('f092d8d1b402164baf3332ee9c60f0cdbbe8708b','
 INSERT INTO MULTICHUNK_CHUNK VALUES('f317f8de4248c39b929907a856fec349e3663d2e','953efe8f531a5a87f6d2d5a65b78b05e55599abc');
 INSERT INTO MULTICHUNK_CHUNK VALUES('fcc1cc3c0e01b083c5d89a2df2b84c03708eb4cf','655f2b71ddfafbcbd5af517f02eb9386a2a7a2a1');
 INSERT INTO MULTICHUNK_CHUNK VALUES('ff02c9fc6f3a7f8349f7a970f0b33ddf295c985a','05a79f06cf3f67f726dae68d18a2290f6c9a50c9');
+
+-- Current file tree (maintained incrementally by the DAOs)
+INSERT INTO FILETREE_CURRENT SELECT * FROM FILEVERSION_MASTER_LAST;
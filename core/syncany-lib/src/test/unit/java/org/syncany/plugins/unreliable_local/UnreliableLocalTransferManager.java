@@ -37,6 +37,13 @@ public class UnreliableLocalTransferManager extends LocalTransferManager {
 	}
 
 	private boolean isNextOperationSuccessful(String operationType, String operationDescription) {
+		// Parallel transfers use one transfer manager per thread, but share the settings (and counters)
+		synchronized (connection) {
+			return isNextOperationSuccessfulSynchronized(operationType, operationDescription);
+		}
+	}
+
+	private boolean isNextOperationSuccessfulSynchronized(String operationType, String operationDescription) {
 		// Increase absolute/overall operation counter
 		connection.increaseTotalOperationCounter();
 
@@ -31,4 +31,24 @@ public class UnreliableLocalTransferPlugin extends TransferPlugin {
 	public UnreliableLocalTransferPlugin() {
 		super("unreliable_local");
 	}
+
+	private static volatile int maxParallelTransfers = 1;
+
+	/**
+	 * Disables parallel transfers by default, because the operation patterns used to
+	 * fail operations on purpose rely on a deterministic operation order. Tests for
+	 * the parallel code paths can enable them with {@link #setMaxParallelTransfers(int)}.
+	 */
+	@Override
+	public int getMaxParallelTransfers() {
+		return maxParallelTransfers;
+	}
+
+	/**
+	 * Sets the maximum number of parallel transfers for all instances of this plugin.
+	 * Tests that change this value must reset it to <tt>1</tt> afterwards.
+	 */
+	public static void setMaxParallelTransfers(int maxParallelTransfers) {
+		UnreliableLocalTransferPlugin.maxParallelTransfers = maxParallelTransfers;
+	}
 }
@@ -0,0 +1,188 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.chunk.GzipTransformer;
+import org.syncany.chunk.ParallelGZIPOutputStream;
+import org.syncany.chunk.Transformer;
+
+public class GzipTransformerTest {
+	@Test
+	public void testEntropyProbe() {
+		byte[] randomData = createRandomData(128 * 1024, 1);
+		byte[] textData = createTextData(128 * 1024, 1);
+
+		assertTrue(GzipTransformer.isIncompressible(randomData, randomData.length));
+		assertFalse(GzipTransformer.isIncompressible(textData, textData.length));
+		assertFalse(GzipTransformer.isIncompressible(new byte[0], 0));
+	}
+
+	@Test
+	public void testRoundtripWithSkipIncompressible() throws Exception {
+		for (int size : new int[] { 0, 1, 100, GzipTransformer.ENTROPY_PROBE_SIZE - 1, GzipTransformer.ENTROPY_PROBE_SIZE,
+				GzipTransformer.ENTROPY_PROBE_SIZE + 1, 500 * 1024 }) {
+
+			assertRoundtrip(new GzipTransformer(6, true, null), createRandomData(size, size));
+			assertRoundtrip(new GzipTransformer(6, true, null), createTextData(size, size));
+		}
+	}
+
+	@Test
+	public void testRoundtripParallel() throws Exception {
+		for (int threads : new int[] { 2, 4 }) {
+			for (int size : new int[] { 0, 1, 100, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE - 1, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE,
+					ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE + 1, 2 * 1024 * 1024 + 17 }) {
+
+				assertRoundtrip(new GzipTransformer(6, true, threads, null), createRandomData(size, size));
+				assertRoundtrip(new GzipTransformer(6, true, threads, null), createTextData(size, size));
+			}
+		}
+	}
+
+	@Test
+	public void testParallelCompressionRatio() throws Exception {
+		byte[] textData = createTextData(4 * 1024 * 1024, 5);
+
+		byte[] sequentialData = transform(new GzipTransformer(6, false, 1, null), textData);
+		byte[] parallelData = transform(new GzipTransformer(6, false, 4, null), textData);
+
+		// Dictionary priming keeps the ratio within a few percent of a single stream
+		assertTrue(parallelData.length < sequentialData.length * 1.05);
+	}
+
+	@Test
+	public void testIncompressibleDataIsStored() throws Exception {
+		byte[] randomData = createRandomData(1024 * 1024, 2);
+
+		byte[] storedData = transform(new GzipTransformer(9, true, null), randomData);
+
+		// Stored deflate blocks only add a few bytes per block, plus the gzip header/trailer
+		assertTrue(storedData.length < randomData.length + randomData.length / 100);
+		assertArrayEquals(randomData, untransform(new GzipTransformer(), storedData));
+	}
+
+	@Test
+	public void testCompressibleDataAfterIncompressibleDataIsCompressed() throws Exception {
+		byte[] randomData = createRandomData(1024 * 1024, 5);
+		byte[] textData = createTextData(1024 * 1024, 6);
+
+		byte[] mixedData = new byte[randomData.length + textData.length];
+		System.arraycopy(randomData, 0, mixedData, 0, randomData.length);
+		System.arraycopy(textData, 0, mixedData, randomData.length, textData.length);
+
+		for (int threads : new int[] { 1, 4 }) {
+			byte[] compressedData = transform(new GzipTransformer(6, true, threads, null), mixedData);
+
+			// The entropy is probed per window/block, so the text after the random data is still compressed
+			assertTrue(compressedData.length < randomData.length + textData.length / 2);
+			assertArrayEquals(mixedData, untransform(new GzipTransformer(), compressedData));
+		}
+	}
+
+	@Test
+	public void testCompressibleDataIsCompressed() throws Exception {
+		byte[] textData = createTextData(1024 * 1024, 3);
+		byte[] compressedData = transform(new GzipTransformer(), textData);
+
+		assertTrue(compressedData.length < textData.length / 2);
+	}
+
+	@Test
+	public void testInitWithSettings() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(GzipTransformer.PROPERTY_LEVEL, "1");
+		settings.put(GzipTransformer.PROPERTY_SKIP_INCOMPRESSIBLE, "false");
+		settings.put(GzipTransformer.PROPERTY_THREADS, "2");
+
+		Transformer gzipTransformer = Transformer.getInstance(GzipTransformer.TYPE);
+		gzipTransformer.init(settings);
+
+		assertRoundtrip(gzipTransformer, createTextData(200 * 1024, 4));
+	}
+
+	@Test(expected = Exception.class)
+	public void testInitWithInvalidLevel() throws Exception {
+		Map<String, String> settings = new HashMap<String, String>();
+		settings.put(GzipTransformer.PROPERTY_LEVEL, "10");
+
+		new GzipTransformer().init(settings);
+	}
+
+	private void assertRoundtrip(Transformer transformer, byte[] data) throws Exception {
+		byte[] transformedData = transform(transformer, data);
+		byte[] untransformedData = untransform(transformer, transformedData);
+
+		assertEquals(data.length, untransformedData.length);
+		assertArrayEquals(data, untransformedData);
+	}
+
+	private byte[] transform(Transformer transformer, byte[] data) throws Exception {
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+		OutputStream transformedOut = transformer.createOutputStream(bytesOut);
+
+		// Write in odd-sized pieces to exercise the probe buffer
+		for (int offset = 0; offset < data.length; offset += 7777) {
+			transformedOut.write(data, offset, Math.min(7777, data.length - offset));
+		}
+
+		transformedOut.close();
+		return bytesOut.toByteArray();
+	}
+
+	private byte[] untransform(Transformer transformer, byte[] data) throws Exception {
+		InputStream transformedIn = transformer.createInputStream(new ByteArrayInputStream(data));
+		byte[] untransformedData = IOUtils.toByteArray(transformedIn);
+
+		transformedIn.close();
+		return untransformedData;
+	}
+
+	private byte[] createRandomData(int size, long seed) {
+		byte[] data = new byte[size];
+		new Random(seed).nextBytes(data);
+
+		return data;
+	}
+
+	private byte[] createTextData(int size, long seed) {
+		String[] words = new String[] { "syncany", "chunk", "multichunk", "database", "version", "file", "the", "a", "of", "sync" };
+		Random random = new Random(seed);
+		StringBuilder text = new StringBuilder();
+
+		while (text.length() < size) {
+			text.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? '\n' : ' ');
+		}
+
+		return text.substring(0, size).getBytes();
+	}
+}
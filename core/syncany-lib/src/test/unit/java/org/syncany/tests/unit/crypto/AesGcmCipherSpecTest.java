@@ -0,0 +1,156 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.config.Logging;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.CipherUtil;
+import org.syncany.crypto.specs.AesGcmCipherSpec;
+import org.syncany.crypto.specs.AesGcmCipherSpec.Engine;
+
+public class AesGcmCipherSpecTest {
+	private static final Logger logger = Logger.getLogger(AesGcmCipherSpecTest.class.getSimpleName());
+
+	static {
+		Logging.init();
+		CipherUtil.init();
+	}
+
+	@Test
+	public void testPreferredEngine() {
+		assertNotNull(getAesGcm128CipherSpec().getPreferredEngine());
+	}
+
+	@Test
+	public void testEnginesAreWireCompatible() throws Exception {
+		for (AesGcmCipherSpec cipherSpec : getUsableCipherSpecs()) {
+			for (int size : new int[] { 0, 1, 15, 16, 17, 4080, 1024 * 1024 + 3 }) {
+				byte[] secretKey = CipherUtil.createRandomArray(cipherSpec.getKeySize() / 8);
+				byte[] iv = CipherUtil.createRandomArray(cipherSpec.getIvSize() / 8);
+				byte[] plaintext = CipherUtil.createRandomArray(size);
+
+				byte[] bcCiphertext = encrypt(cipherSpec, plaintext, secretKey, iv, Engine.BOUNCY_CASTLE);
+				byte[] preferredCiphertext = encrypt(cipherSpec, plaintext, secretKey, iv, cipherSpec.getPreferredEngine());
+
+				assertArrayEquals(bcCiphertext, preferredCiphertext);
+				assertArrayEquals(plaintext, decrypt(cipherSpec, bcCiphertext, secretKey, iv, cipherSpec.getPreferredEngine()));
+				assertArrayEquals(plaintext, decrypt(cipherSpec, preferredCiphertext, secretKey, iv, Engine.BOUNCY_CASTLE));
+			}
+		}
+	}
+
+	@Test
+	public void testPreferredEngineDetectsTampering() throws Exception {
+		AesGcmCipherSpec cipherSpec = getAesGcm128CipherSpec();
+
+		byte[] secretKey = CipherUtil.createRandomArray(cipherSpec.getKeySize() / 8);
+		byte[] iv = CipherUtil.createRandomArray(cipherSpec.getIvSize() / 8);
+		byte[] ciphertext = encrypt(cipherSpec, CipherUtil.createRandomArray(10000), secretKey, iv, cipherSpec.getPreferredEngine());
+
+		ciphertext[5000] ^= 0x10;
+
+		try {
+			decrypt(cipherSpec, ciphertext, secretKey, iv, cipherSpec.getPreferredEngine());
+			fail("Tampering not detected by engine " + cipherSpec.getPreferredEngine());
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testBenchmarkEngines() throws Exception {
+		byte[] plaintext = CipherUtil.createRandomArray(4 * 1024 * 1024);
+
+		for (AesGcmCipherSpec cipherSpec : getUsableCipherSpecs()) {
+			List<Engine> engines = new ArrayList<Engine>();
+			engines.add(Engine.BOUNCY_CASTLE);
+
+			if (cipherSpec.getPreferredEngine() == Engine.JCE) {
+				engines.add(Engine.JCE);
+			}
+
+			for (Engine engine : engines) {
+				byte[] secretKey = CipherUtil.createRandomArray(cipherSpec.getKeySize() / 8);
+				byte[] iv = CipherUtil.createRandomArray(cipherSpec.getIvSize() / 8);
+
+				// Warm up
+				decrypt(cipherSpec, encrypt(cipherSpec, plaintext, secretKey, iv, engine), secretKey, iv, engine);
+
+				long encryptStartTime = System.nanoTime();
+				byte[] ciphertext = encrypt(cipherSpec, plaintext, secretKey, iv, engine);
+				long decryptStartTime = System.nanoTime();
+				decrypt(cipherSpec, ciphertext, secretKey, iv, engine);
+				long decryptEndTime = System.nanoTime();
+
+				logger.info(String.format("%s, %s: encrypt %.1f MB/s, decrypt %.1f MB/s", cipherSpec, engine,
+						toMegabytesPerSecond(plaintext.length, decryptStartTime - encryptStartTime),
+						toMegabytesPerSecond(plaintext.length, decryptEndTime - decryptStartTime)));
+			}
+		}
+	}
+
+	private AesGcmCipherSpec getAesGcm128CipherSpec() {
+		return (AesGcmCipherSpec) CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+	}
+
+	private List<AesGcmCipherSpec> getUsableCipherSpecs() {
+		List<AesGcmCipherSpec> cipherSpecs = new ArrayList<AesGcmCipherSpec>();
+		cipherSpecs.add(getAesGcm128CipherSpec());
+		cipherSpecs.add((AesGcmCipherSpec) CipherSpecs.getCipherSpec(CipherSpecs.AES_256_GCM));
+
+		return cipherSpecs;
+	}
+
+	private double toMegabytesPerSecond(long bytes, long durationNanos) {
+		return bytes / 1024.0 / 1024.0 / (durationNanos / 1000000000.0);
+	}
+
+	private byte[] encrypt(AesGcmCipherSpec cipherSpec, byte[] plaintext, byte[] secretKey, byte[] iv, Engine engine) throws Exception {
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+		OutputStream cipherOutputStream = cipherSpec.newCipherOutputStream(ciphertextOutputStream, secretKey, iv, engine);
+
+		cipherOutputStream.write(plaintext);
+		cipherOutputStream.close();
+
+		return ciphertextOutputStream.toByteArray();
+	}
+
+	private byte[] decrypt(AesGcmCipherSpec cipherSpec, byte[] ciphertext, byte[] secretKey, byte[] iv, Engine engine) throws Exception {
+		InputStream cipherInputStream = cipherSpec.newCipherInputStream(new ByteArrayInputStream(ciphertext), secretKey, iv, engine);
+		byte[] plaintext = IOUtils.toByteArray(cipherInputStream);
+
+		cipherInputStream.close();
+		return plaintext;
+	}
+}
@@ -20,6 +20,10 @@ package org.syncany.tests.unit.crypto;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.crypto.spec.SecretKeySpec;
 
 import org.junit.Test;
@@ -83,6 +87,83 @@ public class CipherSessionTest {
 		// TODO [medium] This does NOT TEST the actual read cache. How to test this. The cache is completely hidden/private?!
 	}	
 	
+	@Test
+	public void testCipherSessionReadKeyCacheEvictsLeastRecentlyUsed() throws Exception {
+		SaltedSecretKey masterKey = createDummyMasterKey();
+		CipherSession cipherSession = new CipherSession(masterKey, 2, 999);
+
+		CipherSpec cipherSpecAes128 = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+
+		byte[] readKeySalt1 = CipherUtil.createRandomArray(cipherSpecAes128.getKeySize());
+		byte[] readKeySalt2 = CipherUtil.createRandomArray(cipherSpecAes128.getKeySize());
+		byte[] readKeySalt3 = CipherUtil.createRandomArray(cipherSpecAes128.getKeySize());
+
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1); // Miss
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt2); // Miss
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1); // Hit, 1 is now most recently used
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt3); // Miss, evicts 2
+
+		assertEquals(1, cipherSession.getReadCacheHits());
+		assertEquals(3, cipherSession.getReadCacheMisses());
+
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt1); // Hit
+		cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt2); // Miss
+
+		assertEquals(2, cipherSession.getReadCacheHits());
+		assertEquals(4, cipherSession.getReadCacheMisses());
+	}
+
+	@Test
+	public void testCipherSessionConcurrentAccess() throws Exception {
+		SaltedSecretKey masterKey = createDummyMasterKey();
+		final CipherSession cipherSession = new CipherSession(masterKey, 1000, 10);
+		final CipherSpec cipherSpecAes128 = CipherSpecs.getCipherSpec(CipherSpecs.AES_128_GCM);
+		final byte[] readKeySalt = CipherUtil.createRandomArray(cipherSpecAes128.getKeySize());
+		final SaltedSecretKey expectedReadKey = new CipherSession(masterKey).getReadSecretKey(cipherSpecAes128, readKeySalt);
+
+		final int threadCount = 8;
+		final int iterationsPerThread = 50;
+		final AtomicInteger errorCount = new AtomicInteger(0);
+
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int i = 0; i < threadCount; i++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < iterationsPerThread; j++) {
+							cipherSession.getWriteSecretKey(cipherSpecAes128);
+
+							if (!expectedReadKey.equals(cipherSession.getReadSecretKey(cipherSpecAes128, readKeySalt))) {
+								errorCount.incrementAndGet();
+							}
+						}
+					}
+					catch (Exception e) {
+						errorCount.incrementAndGet();
+					}
+				}
+			}));
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, errorCount.get());
+
+		// Each write key is used exactly 10 times; the read key is derived once
+		assertEquals(threadCount * iterationsPerThread / 10, cipherSession.getWriteCacheMisses());
+		assertEquals(threadCount * iterationsPerThread, cipherSession.getWriteCacheHits() + cipherSession.getWriteCacheMisses());
+		assertEquals(1, cipherSession.getReadCacheMisses());
+		assertEquals(threadCount * iterationsPerThread - 1, cipherSession.getReadCacheHits());
+	}
+
 	private SaltedSecretKey createDummyMasterKey() {
 		return new SaltedSecretKey(
 			new SecretKeySpec(
@@ -0,0 +1,212 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com> 
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.syncany.chunk.CipherTransformer;
+import org.syncany.chunk.Transformer;
+import org.syncany.config.Logging;
+import org.syncany.crypto.CipherSpec;
+import org.syncany.crypto.CipherSpecs;
+import org.syncany.crypto.MultiCipherOutputStream;
+import org.syncany.crypto.SaltedSecretKey;
+import org.syncany.util.StringUtil;
+
+public class SegmentedCipherStreamsTest {
+	private static final int SEGMENT_SIZE = 1000;
+	private static final int TAG_SIZE = 16;
+
+	static {
+		Logging.init();
+	}
+
+	@Test
+	public void testRoundtripAes128() throws Exception {
+		doTestRoundtrip(getCipherSpecs(CipherSpecs.AES_128_GCM));
+	}
+
+	@Test
+	public void testRoundtripAes128AndTwofish128() throws Exception {
+		doTestRoundtrip(getCipherSpecs(CipherSpecs.AES_128_GCM, CipherSpecs.TWOFISH_128_GCM));
+	}
+
+	@Test
+	public void testSegmentedFormatVersionAndSize() throws Exception {
+		byte[] ciphertext = doEncrypt(new byte[2500], getSegmentedTransformer(getCipherSpecs(CipherSpecs.AES_128_GCM)));
+		int headerSize = 4 + 1 + 12 + 1 + (1 + 12 + 16) + 4 + 32;
+
+		assertEquals(MultiCipherOutputStream.STREAM_VERSION_SEGMENTED, ciphertext[4]);
+		assertEquals(headerSize + 2500 + 3 * TAG_SIZE, ciphertext.length);
+	}
+
+	@Test
+	public void testTamperedSegmentDetected() throws Exception {
+		Transformer transformer = getSegmentedTransformer(getCipherSpecs(CipherSpecs.AES_128_GCM));
+		byte[] ciphertext = doEncrypt(createRandomData(5000), transformer);
+
+		ciphertext[ciphertext.length - 2000] ^= 0x01;
+		assertDecryptFails(ciphertext, transformer);
+	}
+
+	@Test
+	public void testTruncationAtSegmentBoundaryDetected() throws Exception {
+		Transformer transformer = getSegmentedTransformer(getCipherSpecs(CipherSpecs.AES_128_GCM));
+		byte[] ciphertext = doEncrypt(createRandomData(5500), transformer);
+
+		// Drop the last (short) segment, leaving only full, non-last segments
+		byte[] truncatedCiphertext = Arrays.copyOf(ciphertext, ciphertext.length - (500 + TAG_SIZE));
+		assertDecryptFails(truncatedCiphertext, transformer);
+
+		// Drop the last two segments
+		truncatedCiphertext = Arrays.copyOf(ciphertext, ciphertext.length - (500 + TAG_SIZE) - (SEGMENT_SIZE + TAG_SIZE));
+		assertDecryptFails(truncatedCiphertext, transformer);
+	}
+
+	@Test
+	public void testReorderedSegmentsDetected() throws Exception {
+		Transformer transformer = getSegmentedTransformer(getCipherSpecs(CipherSpecs.AES_128_GCM));
+		byte[] ciphertext = doEncrypt(createRandomData(5500), transformer);
+
+		int segmentCiphertextSize = SEGMENT_SIZE + TAG_SIZE;
+		int firstSegmentOffset = ciphertext.length - (500 + TAG_SIZE) - 5 * segmentCiphertextSize;
+
+		byte[] reorderedCiphertext = ciphertext.clone();
+		System.arraycopy(ciphertext, firstSegmentOffset, reorderedCiphertext, firstSegmentOffset + segmentCiphertextSize, segmentCiphertextSize);
+		System.arraycopy(ciphertext, firstSegmentOffset + segmentCiphertextSize, reorderedCiphertext, firstSegmentOffset, segmentCiphertextSize);
+
+		assertDecryptFails(reorderedCiphertext, transformer);
+	}
+
+	@Test
+	public void testSkipToOffset() throws Exception {
+		Transformer transformer = getSegmentedTransformer(getCipherSpecs(CipherSpecs.AES_128_GCM, CipherSpecs.TWOFISH_128_GCM));
+		byte[] plaintext = createRandomData(10 * SEGMENT_SIZE + 123);
+		byte[] ciphertext = doEncrypt(plaintext, transformer);
+
+		for (int offset : new int[] { 0, 1, 999, 1000, 1001, 5555, 10000, 10122, 10123, 20000 }) {
+			InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(ciphertext));
+
+			long skipped = inputStream.skip(offset);
+			byte[] rest = IOUtils.toByteArray(inputStream);
+			inputStream.close();
+
+			assertEquals(Math.min(offset, plaintext.length), skipped);
+			assertArrayEquals(Arrays.copyOfRange(plaintext, (int) skipped, plaintext.length), rest);
+		}
+	}
+
+	@Test
+	public void testNestedFormatStillReadable() throws Exception {
+		List<CipherSpec> cipherSpecs = getCipherSpecs(CipherSpecs.AES_128_GCM);
+		byte[] plaintext = createRandomData(3000);
+
+		byte[] ciphertext = doEncrypt(plaintext, new CipherTransformer(cipherSpecs, createDummyMasterKey()));
+
+		assertEquals(MultiCipherOutputStream.STREAM_VERSION, ciphertext[4]);
+		assertArrayEquals(plaintext, doDecrypt(ciphertext, getSegmentedTransformer(cipherSpecs)));
+	}
+
+	private void doTestRoundtrip(List<CipherSpec> cipherSpecs) throws Exception {
+		Transformer transformer = getSegmentedTransformer(cipherSpecs);
+
+		for (int size : new int[] { 0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 2 * SEGMENT_SIZE, 50 * SEGMENT_SIZE + 7 }) {
+			byte[] plaintext = createRandomData(size);
+			byte[] ciphertext = doEncrypt(plaintext, transformer);
+
+			assertArrayEquals(plaintext, doDecrypt(ciphertext, transformer));
+		}
+	}
+
+	private void assertDecryptFails(byte[] ciphertext, Transformer transformer) throws Exception {
+		try {
+			doDecrypt(ciphertext, transformer);
+			fail("Decryption should have failed.");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private Transformer getSegmentedTransformer(List<CipherSpec> cipherSpecs) {
+		return new CipherTransformer(cipherSpecs, createDummyMasterKey(), SEGMENT_SIZE);
+	}
+
+	private List<CipherSpec> getCipherSpecs(int... cipherSpecIds) {
+		CipherSpec[] cipherSpecs = new CipherSpec[cipherSpecIds.length];
+
+		for (int i = 0; i < cipherSpecIds.length; i++) {
+			cipherSpecs[i] = CipherSpecs.getCipherSpec(cipherSpecIds[i]);
+		}
+
+		return Arrays.asList(cipherSpecs);
+	}
+
+	private byte[] createRandomData(int size) {
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+
+		return data;
+	}
+
+	private byte[] doEncrypt(byte[] plaintext, Transformer transformer) throws Exception {
+		ByteArrayOutputStream ciphertextOutputStream = new ByteArrayOutputStream();
+		OutputStream outputStream = transformer.createOutputStream(ciphertextOutputStream);
+
+		// Write in odd-sized pieces to cross segment boundaries
+		for (int offset = 0; offset < plaintext.length; offset += 777) {
+			outputStream.write(plaintext, offset, Math.min(777, plaintext.length - offset));
+		}
+
+		outputStream.close();
+		return ciphertextOutputStream.toByteArray();
+	}
+
+	private byte[] doDecrypt(byte[] ciphertext, Transformer transformer) throws Exception {
+		InputStream inputStream = transformer.createInputStream(new ByteArrayInputStream(ciphertext));
+		byte[] plaintext = IOUtils.toByteArray(inputStream);
+
+		inputStream.close();
+		return plaintext;
+	}
+
+	private SaltedSecretKey createDummyMasterKey() {
+		return new SaltedSecretKey(
+			new SecretKeySpec(
+				StringUtil.fromHex("44fda24d53b29828b62c362529bd9df5c8a92c2736bcae3a28b3d7b44488e36e246106aa5334813028abb2048eeb5e177df1c702d93cf82aeb7b6d59a8534ff0"),
+				"AnyAlgorithm"
+			),
+			StringUtil.fromHex("157599349e0f1bc713afff442db9d4c3201324073d51cb33407600f305500aa3fdb31136cb1f37bd51a48f183844257d42010a36133b32b424dd02bc63b349bc")
+		);
+	}
+}
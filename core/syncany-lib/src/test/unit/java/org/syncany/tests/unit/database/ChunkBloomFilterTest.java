@@ -0,0 +1,170 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.dao.ChunkBloomFilter;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class ChunkBloomFilterTest {
+	@Test
+	public void testNoFalseNegativesAndScaling() {
+		ChunkBloomFilter bloomFilter = ChunkBloomFilter.createInMemory(ChunkBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+		assertFalse(bloomFilter.isValid());
+
+		bloomFilter.clear(0);
+		assertEquals(1, bloomFilter.getStageCount());
+
+		List<ChunkChecksum> chunkChecksums = createRandomChecksums(300000, 1);
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			bloomFilter.add(chunkChecksum);
+		}
+
+		assertTrue(bloomFilter.isValid());
+		assertTrue(bloomFilter.getStageCount() > 1);
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			assertTrue(bloomFilter.mightContain(chunkChecksum));
+		}
+
+		int falsePositives = 0;
+
+		for (ChunkChecksum unknownChecksum : createRandomChecksums(100000, 2)) {
+			if (bloomFilter.mightContain(unknownChecksum)) {
+				falsePositives++;
+			}
+		}
+
+		double falsePositiveRate = falsePositives / 100000.0;
+		assertTrue("False positive rate too high: " + falsePositiveRate, falsePositiveRate < 2 * ChunkBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	@Test
+	public void testPersistAfterSync() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File filterFile = new File(tempDir, "chunkfilter");
+
+		ChunkBloomFilter bloomFilter = ChunkBloomFilter.open(filterFile);
+		assertFalse(bloomFilter.isValid());
+
+		bloomFilter.clear(0);
+
+		List<ChunkChecksum> chunkChecksums = createRandomChecksums(100000, 3);
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			bloomFilter.add(chunkChecksum);
+		}
+
+		// Not synced: A copy of the file must not be trusted
+		File unsyncedCopyFile = TestFileUtil.copyFile(filterFile, new File(tempDir, "chunkfilter-unsynced"));
+		assertFalse(ChunkBloomFilter.open(unsyncedCopyFile).isValid());
+
+		// Synced: A copy of the file must be loaded with all stages
+		bloomFilter.sync();
+
+		File syncedCopyFile = TestFileUtil.copyFile(filterFile, new File(tempDir, "chunkfilter-synced"));
+		ChunkBloomFilter loadedBloomFilter = ChunkBloomFilter.open(syncedCopyFile);
+
+		assertTrue(loadedBloomFilter.isValid());
+		assertEquals(bloomFilter.getCount(), loadedBloomFilter.getCount());
+		assertEquals(bloomFilter.getStageCount(), loadedBloomFilter.getStageCount());
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			assertTrue(loadedBloomFilter.mightContain(chunkChecksum));
+		}
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testReopenRecreatedFile() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File filterFile = new File(tempDir, "chunkfilter");
+
+		List<ChunkChecksum> chunkChecksums = createRandomChecksums(1000, 4);
+		List<ChunkChecksum> otherChunkChecksums = createRandomChecksums(1000, 5);
+
+		ChunkBloomFilter bloomFilter = ChunkBloomFilter.open(filterFile);
+		fillAndSync(bloomFilter, chunkChecksums);
+
+		// Deleted and re-created by a different filter: The new file must be loaded,
+		// otherwise the old instance reports the new chunks as "definitely new"
+		File otherFilterFile = new File(tempDir, "chunkfilter-other");
+		fillAndSync(ChunkBloomFilter.open(otherFilterFile), otherChunkChecksums);
+
+		assertTrue(filterFile.delete());
+		Files.copy(otherFilterFile.toPath(), filterFile.toPath());
+
+		ChunkBloomFilter reopenedBloomFilter = ChunkBloomFilter.open(filterFile);
+
+		assertTrue(bloomFilter != reopenedBloomFilter);
+		assertTrue(reopenedBloomFilter.isValid());
+
+		for (ChunkChecksum chunkChecksum : otherChunkChecksums) {
+			assertTrue(reopenedBloomFilter.mightContain(chunkChecksum));
+		}
+
+		// Unchanged: Same file, same instance
+		assertTrue(reopenedBloomFilter == ChunkBloomFilter.open(filterFile));
+
+		// Deleted: The next open starts from scratch
+		reopenedBloomFilter.delete();
+
+		assertFalse(filterFile.exists());
+		assertFalse(reopenedBloomFilter.isValid());
+		assertFalse(ChunkBloomFilter.open(filterFile).isValid());
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	private void fillAndSync(ChunkBloomFilter bloomFilter, List<ChunkChecksum> chunkChecksums) {
+		bloomFilter.clear(chunkChecksums.size());
+
+		for (ChunkChecksum chunkChecksum : chunkChecksums) {
+			bloomFilter.add(chunkChecksum);
+		}
+
+		bloomFilter.sync();
+	}
+
+	private List<ChunkChecksum> createRandomChecksums(int count, long seed) {
+		Random random = new Random(seed);
+		List<ChunkChecksum> chunkChecksums = new ArrayList<ChunkChecksum>(count);
+
+		for (int i = 0; i < count; i++) {
+			byte[] checksumBytes = new byte[20];
+			random.nextBytes(checksumBytes);
+
+			chunkChecksums.add(new ChunkChecksum(checksumBytes));
+		}
+
+		return chunkChecksums;
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * Syncany, www.syncany.org
+ * Copyright (C) 2011-2015 Philipp C. Heckel <philipp.heckel@gmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.syncany.tests.unit.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.syncany.database.ChunkEntry;
+import org.syncany.database.ChunkEntry.ChunkChecksum;
+import org.syncany.database.dao.ChunkIndex;
+import org.syncany.tests.unit.util.TestFileUtil;
+
+public class ChunkIndexTest {
+	@Test
+	public void testPutGetAndGrow() {
+		ChunkIndex chunkIndex = ChunkIndex.createInMemory();
+		assertFalse(chunkIndex.isValid());
+
+		chunkIndex.clear(0);
+		long initialCapacity = chunkIndex.getCapacity();
+
+		List<ChunkChecksum> chunkChecksums = createRandomChecksums(50000, 1);
+
+		for (int i = 0; i < chunkChecksums.size(); i++) {
+			assertTrue(chunkIndex.put(chunkChecksums.get(i), i, i / 100));
+		}
+
+		assertTrue(chunkIndex.isValid());
+		assertEquals(chunkChecksums.size(), chunkIndex.getCount());
+		assertTrue(chunkIndex.getCapacity() > initialCapacity);
+
+		for (int i = 0; i < chunkChecksums.size(); i++) {
+			ChunkEntry chunkEntry = chunkIndex.get(chunkChecksums.get(i));
+
+			assertNotNull(chunkEntry);
+			assertEquals(chunkChecksums.get(i), chunkEntry.getChecksum());
+			assertEquals(i, chunkEntry.getSize());
+			assertEquals(i / 100, (long) chunkIndex.getDatabaseVersionId(chunkChecksums.get(i)));
+		}
+
+		for (ChunkChecksum unknownChecksum : createRandomChecksums(1000, 2)) {
+			assertNull(chunkIndex.get(unknownChecksum));
+			assertNull(chunkIndex.getDatabaseVersionId(unknownChecksum));
+		}
+	}
+
+	@Test
+	public void testPutExistingKeepsFirstEntry() {
+		ChunkIndex chunkIndex = ChunkIndex.createInMemory();
+		chunkIndex.clear(0);
+
+		ChunkChecksum chunkChecksum = ChunkChecksum.parseChunkChecksum("615fba8c2281d5bee891eb092a252d235c237457");
+
+		assertTrue(chunkIndex.put(chunkChecksum, 8387, 1));
+		assertFalse(chunkIndex.put(chunkChecksum, 1234, 2));
+
+		assertEquals(1, chunkIndex.getCount());
+		assertEquals(8387, chunkIndex.get(chunkChecksum).getSize());
+		assertEquals(1, (long) chunkIndex.getDatabaseVersionId(chunkChecksum));
+	}
+
+	@Test
+	public void testShortChecksums() {
+		ChunkIndex chunkIndex = ChunkIndex.createInMemory();
+		chunkIndex.clear(0);
+
+		chunkIndex.put(ChunkChecksum.parseChunkChecksum("aa"), 1, 1);
+		chunkIndex.put(ChunkChecksum.parseChunkChecksum("aabb"), 2, 1);
+
+		assertEquals(1, chunkIndex.get(ChunkChecksum.parseChunkChecksum("aa")).getSize());
+		assertEquals(2, chunkIndex.get(ChunkChecksum.parseChunkChecksum("aabb")).getSize());
+		assertNull(chunkIndex.get(ChunkChecksum.parseChunkChecksum("aabbcc")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testChecksumTooLong() {
+		ChunkIndex chunkIndex = ChunkIndex.createInMemory();
+		chunkIndex.clear(0);
+
+		chunkIndex.put(new ChunkChecksum(new byte[ChunkIndex.MAX_KEY_LENGTH + 1]), 1, 1);
+	}
+
+	@Test
+	public void testPersistAfterSync() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File indexFile = new File(tempDir, "chunkindex");
+
+		ChunkIndex chunkIndex = ChunkIndex.open(indexFile);
+		assertFalse(chunkIndex.isValid());
+
+		chunkIndex.clear(0);
+
+		List<ChunkChecksum> chunkChecksums = createRandomChecksums(20000, 3);
+
+		for (int i = 0; i < chunkChecksums.size(); i++) {
+			chunkIndex.put(chunkChecksums.get(i), i, 7);
+		}
+
+		// Not synced: A copy of the file must not be trusted
+		File unsyncedCopyFile = TestFileUtil.copyFile(indexFile, new File(tempDir, "chunkindex-unsynced"));
+		assertFalse(ChunkIndex.open(unsyncedCopyFile).isValid());
+
+		// Synced: A copy of the file must be loaded as is
+		chunkIndex.sync();
+
+		File syncedCopyFile = TestFileUtil.copyFile(indexFile, new File(tempDir, "chunkindex-synced"));
+		ChunkIndex loadedChunkIndex = ChunkIndex.open(syncedCopyFile);
+
+		assertTrue(loadedChunkIndex.isValid());
+		assertEquals(chunkChecksums.size(), loadedChunkIndex.getCount());
+
+		for (int i = 0; i < chunkChecksums.size(); i++) {
+			assertEquals(i, loadedChunkIndex.get(chunkChecksums.get(i)).getSize());
+		}
+
+		// Same file, same instance
+		assertTrue(chunkIndex == ChunkIndex.open(indexFile));
+
+		// Invalidated: A copy of the file must not be trusted
+		chunkIndex.invalidate();
+
+		File invalidatedCopyFile = TestFileUtil.copyFile(indexFile, new File(tempDir, "chunkindex-invalidated"));
+		assertFalse(ChunkIndex.open(invalidatedCopyFile).isValid());
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testReopenDeletedOrReplacedFile() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File indexFile = new File(tempDir, "chunkindex");
+
+		List<ChunkChecksum> chunkChecksums = createRandomChecksums(1000, 5);
+		List<ChunkChecksum> otherChunkChecksums = createRandomChecksums(1000, 6);
+
+		ChunkIndex chunkIndex = ChunkIndex.open(indexFile);
+		fillAndSync(chunkIndex, chunkChecksums);
+
+		// Deleted: The shared instance must not be returned anymore
+		assertTrue(indexFile.delete());
+
+		ChunkIndex reopenedChunkIndex = ChunkIndex.open(indexFile);
+
+		assertTrue(chunkIndex != reopenedChunkIndex);
+		assertFalse(reopenedChunkIndex.isValid());
+		assertEquals(0, reopenedChunkIndex.getCount());
+
+		// Replaced by a different index: The new file must be loaded
+		File otherIndexFile = new File(tempDir, "chunkindex-other");
+		fillAndSync(ChunkIndex.open(otherIndexFile), otherChunkChecksums);
+
+		Files.copy(otherIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		ChunkIndex replacedChunkIndex = ChunkIndex.open(indexFile);
+
+		assertTrue(reopenedChunkIndex != replacedChunkIndex);
+		assertTrue(replacedChunkIndex.isValid());
+		assertNull(replacedChunkIndex.get(chunkChecksums.get(0)));
+		assertNotNull(replacedChunkIndex.get(otherChunkChecksums.get(0)));
+
+		// Unchanged: Same file, same instance
+		assertTrue(replacedChunkIndex == ChunkIndex.open(indexFile));
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testDelete() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File indexFile = new File(tempDir, "chunkindex");
+
+		ChunkIndex chunkIndex = ChunkIndex.open(indexFile);
+		fillAndSync(chunkIndex, createRandomChecksums(1000, 7));
+
+		chunkIndex.delete();
+
+		assertFalse(chunkIndex.isValid());
+		assertFalse(indexFile.exists());
+
+		ChunkIndex reopenedChunkIndex = ChunkIndex.open(indexFile);
+
+		assertTrue(chunkIndex != reopenedChunkIndex);
+		assertFalse(reopenedChunkIndex.isValid());
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	@Test
+	public void testGrowCompactsFile() throws Exception {
+		File tempDir = TestFileUtil.createTempDirectoryInSystemTemp();
+		File indexFile = new File(tempDir, "chunkindex");
+
+		ChunkIndex chunkIndex = ChunkIndex.open(indexFile);
+		chunkIndex.clear(0);
+
+		long initialCapacity = chunkIndex.getCapacity();
+		List<ChunkChecksum> chunkChecksums = createRandomChecksums(100000, 4);
+
+		for (int i = 0; i < chunkChecksums.size(); i++) {
+			chunkIndex.put(chunkChecksums.get(i), i, 1);
+		}
+
+		chunkIndex.sync();
+
+		// Grown several times, but the file only holds the header (64 bytes) and the live slot region (36 bytes per slot)
+		assertTrue(chunkIndex.getCapacity() >= initialCapacity * 16);
+		assertEquals(64 + chunkIndex.getCapacity() * 36, indexFile.length());
+		assertFalse(new File(tempDir, "chunkindex.tmp").exists());
+
+		// Still usable after the rewrites, also when re-opened
+		ChunkIndex loadedChunkIndex = ChunkIndex.open(TestFileUtil.copyFile(indexFile, new File(tempDir, "chunkindex-copy")));
+
+		assertTrue(loadedChunkIndex.isValid());
+
+		for (int i = 0; i < chunkChecksums.size(); i++) {
+			assertEquals(i, chunkIndex.get(chunkChecksums.get(i)).getSize());
+			assertEquals(i, loadedChunkIndex.get(chunkChecksums.get(i)).getSize());
+		}
+
+		TestFileUtil.deleteDirectory(tempDir);
+	}
+
+	private void fillAndSync(ChunkIndex chunkIndex, List<ChunkChecksum> chunkChecksums) {
+		chunkIndex.clear(chunkChecksums.size());
+
+		for (int i = 0; i < chunkChecksums.size(); i++) {
+			chunkIndex.put(chunkChecksums.get(i), i, 1);
+		}
+
+		chunkIndex.sync();
+	}
+
+	private List<ChunkChecksum> createRandomChecksums(int count, long seed) {
+		Random random = new Random(seed);
+		List<ChunkChecksum> chunkChecksums = new ArrayList<ChunkChecksum>(count);
+
+		for (int i = 0; i < count; i++) {
+			byte[] checksumBytes = new byte[20];
+			random.nextBytes(checksumBytes);
+
+			chunkChecksums.add(new ChunkChecksum(checksumBytes));
+		}
+
+		return chunkChecksums;
+	}
+}
@@ -17,7 +17,9 @@
  */
 package org.syncany.tests.unit.database;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import org.junit.Test;
 import org.syncany.database.VectorClock;
@@ -167,8 +169,8 @@ public class VectorClockTest {
 	public void testParseClock() {
 		VectorClock vc1 = VectorClock.parseVectorClock("(UnitBBB5,UnitAAA4)");
 		
-		assertEquals(4L, (long) vc1.get("UnitAAA"));
-		assertEquals(5L, (long) vc1.get("UnitBBB"));
+		assertEquals(4L, vc1.get("UnitAAA"));
+		assertEquals(5L, vc1.get("UnitBBB"));
 	}	
 	
 	@Test
@@ -182,4 +184,65 @@ public class VectorClockTest {
 		assertEquals("Expected clock value of cloned clock to be different.", 4L, (long) vc2.getClock("UnitA"));
 		assertEquals("Expected clock value of cloned clock to be different.", 5L, (long) vc2.getClock("UnitB"));
 	}	
+
+	@Test
+	public void testCloneIsIndependent() {
+		VectorClock vc1 = new  VectorClock();
+		vc1.setClock("UnitA", 4L);
+
+		VectorClock vc2 = vc1.clone();
+		vc2.incrementClock("UnitA");
+		vc2.setClock("UnitB", 1L);
+
+		assertEquals("(UnitA4)", vc1.toString());
+		assertEquals("(UnitA5,UnitB1)", vc2.toString());
+	}
+
+	@Test
+	public void testEqualsAndHashCode() {
+		VectorClock vc1 = VectorClock.parseVectorClock("(UnitB5,UnitA4)");
+
+		VectorClock vc2 = new  VectorClock();
+		vc2.setClock("UnitA", 4L);
+		vc2.setClock("UnitB", 5L);
+
+		assertEquals(vc1, vc2);
+		assertEquals(vc1.hashCode(), vc2.hashCode());
+		assertEquals("(UnitA4,UnitB5)", vc1.toString());
+
+		vc2.incrementClock("UnitB");
+		assertFalse(vc1.equals(vc2));
+	}
+
+	@Test
+	public void testCompareWithZeroUnits() {
+		VectorClock vc1 = VectorClock.parseVectorClock("(UnitA1,UnitB0)");
+		VectorClock vc2 = VectorClock.parseVectorClock("(UnitA1,UnitC0)");
+
+		assertEquals(VectorClockComparison.EQUAL, VectorClock.compare(vc1, vc2));
+		assertEquals(VectorClockComparison.SMALLER, VectorClock.compare(vc1, VectorClock.parseVectorClock("(UnitC1,UnitA1)")));
+	}
+
+	@Test
+	public void testBinarySerialization() {
+		VectorClock vc1 = new  VectorClock();
+		vc1.setClock("UnitBBB", 300L);
+		vc1.setClock("UnitAAA", 4L);
+
+		byte[] expectedBytes = new byte[] { 2, 7, 'U', 'n', 'i', 't', 'A', 'A', 'A', 4, 7, 'U', 'n', 'i', 't', 'B', 'B', 'B', (byte) 0xAC, 0x02 };
+
+		assertArrayEquals(expectedBytes, vc1.toBytes());
+		assertEquals(vc1, VectorClock.fromBytes(vc1.toBytes()));
+		assertEquals(new VectorClock(), VectorClock.fromBytes(new VectorClock().toBytes()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalidClock() {
+		VectorClock.parseVectorClock("(UnitA1,2)");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetNegativeClock() {
+		new VectorClock().setClock("UnitA", -1L);
+	}
 }
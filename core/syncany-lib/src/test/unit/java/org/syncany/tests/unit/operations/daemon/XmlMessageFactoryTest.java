@@ -17,11 +17,16 @@
  */
 package org.syncany.tests.unit.operations.daemon;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
+
 import org.junit.Test;
+import org.syncany.database.dao.SqlStatementStat;
 import org.syncany.operations.daemon.messages.GetFileFolderRequest;
 import org.syncany.operations.daemon.messages.GetFileFolderResponse;
+import org.syncany.operations.daemon.messages.GetSqlStatsFolderResponse;
 import org.syncany.operations.daemon.messages.ListWatchesManagementRequest;
 import org.syncany.operations.daemon.messages.UpUploadFileSyncExternalEvent;
 import org.syncany.operations.daemon.messages.api.Message;
@@ -84,5 +89,27 @@ public class XmlMessageFactoryTest {
 		assertEquals("<upUploadFileSyncExternalEvent><root>/some/path</root><filename>filename.jpg</filename></upUploadFileSyncExternalEvent>", xmlStr);
 	}
 	
+	@Test
+	public void testSqlStatsResponseToXmlAndBack() throws Exception {
+		SqlStatementStat statementStat = new SqlStatementStat("chunk.select.all.getChunk.sql");
+		statementStat.recordExecution(50000);
+		statementStat.recordExecution(2000000);
+		statementStat.recordRows(3);
+
+		String xmlStr = XmlMessageFactory.toXml(new GetSqlStatsFolderResponse(1234, "/some/path", Arrays.asList(statementStat)));
+		Response response = XmlMessageFactory.toResponse(xmlStr);
+
+		assertEquals(GetSqlStatsFolderResponse.class, response.getClass());
+
+		SqlStatementStat parsedStatementStat = ((GetSqlStatsFolderResponse) response).getSqlStats().get(0);
+
+		assertEquals("chunk.select.all.getChunk.sql", parsedStatementStat.getResourceId());
+		assertEquals(2, parsedStatementStat.getExecutionCount());
+		assertEquals(3, parsedStatementStat.getRowCount());
+		assertEquals(2050, parsedStatementStat.getTotalTime());
+		assertEquals(2000, parsedStatementStat.getMaxTime());
+		assertArrayEquals(new long[] { 1, 0, 1, 0, 0, 0 }, parsedStatementStat.getLatencyHistogram());
+	}
+	
 	// TODO [low] Missing tests for the converters
 }
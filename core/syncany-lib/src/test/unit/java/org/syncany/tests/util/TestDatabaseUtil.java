@@ -34,6 +34,7 @@ import org.syncany.database.FileVersion.FileType;
 import org.syncany.database.MemoryDatabase;
 import org.syncany.database.VectorClock;
 import org.syncany.database.dao.DatabaseXmlSerializer;
+import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseFormat;
 import org.syncany.database.dao.DatabaseXmlSerializer.DatabaseReadType;
 import org.syncany.operations.down.DatabaseBranch;
 import org.syncany.tests.unit.util.TestFileUtil;
@@ -122,7 +123,11 @@ public class TestDatabaseUtil {
 	}
 
 	public static void writeDatabaseFileToDisk(MemoryDatabase db, File writtenDatabaseFile, Transformer transformer) throws IOException {
-		DatabaseXmlSerializer dao = new DatabaseXmlSerializer(transformer);
+		writeDatabaseFileToDisk(db, writtenDatabaseFile, transformer, DatabaseFormat.XML);
+	}
+
+	public static void writeDatabaseFileToDisk(MemoryDatabase db, File writtenDatabaseFile, Transformer transformer, DatabaseFormat format) throws IOException {
+		DatabaseXmlSerializer dao = new DatabaseXmlSerializer(transformer, format);
 		dao.save(db.getDatabaseVersions(), writtenDatabaseFile);
 	}
 
@@ -287,8 +287,14 @@ public class AzureTransferManager extends AbstractTransferManager {
         for (ListBlobItem blob : blobs) {
             String path = blob.getUri().getPath();
             String name = path.substring(path.lastIndexOf('/') + 1);
-            T remoteFile = RemoteFile.createRemoteFile(name, remoteFileClass);
-            remoteFiles.put(name, remoteFile);
+            try {
+                T remoteFile = RemoteFile.createRemoteFile(name, remoteFileClass);
+                remoteFiles.put(name, remoteFile);
+            } catch (StorageException e) {
+                // Cleanup and snapshot files share the databases folder with database files
+                logger.log(Level.INFO, "Azure: Cannot create instance of " + remoteFileClass.getSimpleName() + " for file " + name
+                        + "; maybe invalid file name pattern. Ignoring file.");
+            }
         }
 
         return remoteFiles;
@@ -298,7 +304,8 @@ public class AzureTransferManager extends AbstractTransferManager {
     public String getRemoteFilePath(Class<? extends RemoteFile> remoteFile) {
         if (remoteFile.equals(MultichunkRemoteFile.class)) {
             return MULTICHUNKS_PATH;
-        } else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class)) {
+        } else if (remoteFile.equals(DatabaseRemoteFile.class) || remoteFile.equals(CleanupRemoteFile.class)
+                || remoteFile.equals(SnapshotRemoteFile.class)) {
             return DATABASES_PATH;
         } else if (remoteFile.equals(ActionRemoteFile.class)) {
             return ACTIONS_PATH;